@@ -1,13 +1,59 @@
+import app.AutoModerator;
+import app.BulkExporter;
+import app.BulkImporter;
+import app.ChangeEventBus;
+import app.ChangeEventType;
+import app.DumpFormat;
+import app.HttpApi;
+import app.InfluenceRank;
+import app.JsonWriter;
+import app.KeywordMatcher;
+import app.KeywordSubscription;
+import app.MentionScanner;
+import app.ParallelScan;
+import app.PersistentMap;
+import app.PersistentVector;
 import app.Post;
-import app.Report;
+import app.PostReports;
+import app.QueryCache;
+import app.Replica;
+import app.ReplicationPrimary;
 import app.ReportReason;
 import app.SafeSocialNetwork;
+import app.ShardedSocialNetwork;
+import app.Snapshot;
+import app.SocialNetwork;
 import exception.EmptyFieldException;
+import exception.PostNotFoundException;
 import exception.TestException;
 import exception.TextLengthException;
+import exception.UserNotFoundException;
 
+import javax.management.ObjectName;
+import java.io.IOException;
 import java.lang.invoke.WrongMethodTypeException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 // Leonardo Pantani | Java project for PR2 course at UNIPI
 
@@ -141,6 +187,30 @@ public class Main {
             System.out.println(entry.toString());
         }
 
+        System.out.println("TEST CONTAINING CURSORE>");
+        List<Post> pagina = sn.containing(lista_termini, null, 1);
+        if(pagina.size() == 1 && sn.containing(lista_termini, pagina.get(0), 1).get(0) == post3) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST CONTAINING CURSORE> ERRORE: paginazione non corretta!");
+        }
+
+        System.out.println("TEST WRITTENBY STREAM>");
+        if(sn.writtenByStream("leo").limit(1).findFirst().orElse(null) == post2) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST WRITTENBY STREAM> ERRORE: primo post di leo non corretto!");
+        }
+
+        System.out.println("TEST POSTSBETWEEN/LATEST>");
+        if(sn.postsBetween(post1.getTimestamp(), post3.getTimestamp() + 1).equals(Arrays.asList(post1, post2, post3))
+                && sn.latest(1).get(0) == post4
+                && sn.writtenBetween("leo", post1.getTimestamp(), post4.getTimestamp()).equals(Collections.singletonList(post2))) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST POSTSBETWEEN/LATEST> ERRORE: indice temporale non corretto!");
+        }
+
 
         System.out.println("\n### TEST SAFE SOCIAL NETWORK (3/3) ###");
         // --------------------------
@@ -209,6 +279,1563 @@ public class Main {
         } else {
             throw new TestException("TEST REMOVEREPORTEDPOSTS 1> ERRORE: " + post_rimossi + " invece di 2!");
         }
+
+        System.out.println("TEST QUERYCACHE>");
+        QueryCache cache = new QueryCache(sn, QueryCache.DEFAULT_MAX_ENTRIES);
+        List<String> influencer = cache.influencers();
+        boolean cacheOk = cache.influencers() == influencer && cache.getHitCount() == 1;
+        sn.addFollower("andrea", "marco"); // marco ora ha un follower: il risultato precedente non è più valido
+        cacheOk &= cache.influencers() != influencer && cache.influencers().contains("marco");
+        List<Post> trovati = cache.containing(lista_termini);
+        cacheOk &= cache.containing(new ArrayList<>(lista_termini)) == trovati;
+        Post post6 = new Post("marco", "Oibò, che giornata");
+        sn.addPost(post6);
+        cacheOk &= cache.containing(lista_termini).contains(post6);
+        sn.reportPost(post6, ReportReason.hateful_content);
+        cacheOk &= cache.getMostReportedPosts(1).containsKey(post6);
+        sn.deleteReport(post6.getId());
+        try {
+            cache.getMostReportedPosts(1);
+            cacheOk = false;
+        } catch(EmptyFieldException e) {
+            // nessuna segnalazione rimasta: il risultato in cache non è più valido
+        }
+        try {
+            cache.getMentionedUsers().clear();
+            cacheOk = false;
+        } catch(UnsupportedOperationException e) {
+            // i risultati in cache sono condivisi e non modificabili
+        }
+        if(cacheOk) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST QUERYCACHE> ERRORE: risultato in cache non corretto!");
+        }
+
+        System.out.println("TEST EVENT BUS>");
+        SafeSocialNetwork sn_eventi = new SafeSocialNetwork();
+        ChangeEventBus bus = new ChangeEventBus(8);
+        sn_eventi.setEventBus(bus);
+        CountDownLatch eventi = new CountDownLatch(20);
+        bus.subscribe("test-consumer", (evento, sequenza, fineLotto) -> {
+            if(evento.getType() == ChangeEventType.post_added) {
+                eventi.countDown();
+            }
+        });
+        sn_eventi.initializeUser("gemma", null);
+        for(int i = 0; i < 20; i++) { // più eventi degli slot del ring: il produttore attende il consumatore
+            sn_eventi.addPost(new Post("gemma", "Post numero " + i));
+        }
+        if(eventi.await(5, TimeUnit.SECONDS)) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST EVENT BUS> ERRORE: " + eventi.getCount() + " eventi non ricevuti!");
+        }
+
+        System.out.println("TEST AUTOMODERATOR>");
+        Map<ReportReason, Integer> soglie = new EnumMap<>(ReportReason.class);
+        soglie.put(ReportReason.spam_misleading_content, 2);
+        AutoModerator moderatore = new AutoModerator(sn_eventi, soglie, AutoModerator.DEFAULT_BATCH_SIZE);
+        moderatore.start();
+        Post spam = new Post("gemma", "Compra ora!!!");
+        sn_eventi.addPost(spam);
+        sn_eventi.reportPost(spam, ReportReason.spam_misleading_content);
+        sn_eventi.reportPost(spam, ReportReason.spam_misleading_content);
+        long scadenza = System.currentTimeMillis() + 5000;
+        while(moderatore.getRemovedCount() == 0 && System.currentTimeMillis() < scadenza) {
+            Thread.sleep(10);
+        }
+        // una soglia abbassata sotto il conteggio di un post lo fa rimuovere alla segnalazione successiva
+        Post truffa = new Post("gemma", "Hai vinto un premio!");
+        sn_eventi.addPost(truffa);
+        for(int i = 0; i < 3; i++) {
+            sn_eventi.reportPost(truffa, ReportReason.scam_attempt);
+        }
+        moderatore.setThreshold(ReportReason.scam_attempt, 2);
+        sn_eventi.reportPost(truffa, ReportReason.scam_attempt);
+        scadenza = System.currentTimeMillis() + 5000;
+        while(moderatore.getRemovedCount() < 2 && System.currentTimeMillis() < scadenza) {
+            Thread.sleep(10);
+        }
+        if(moderatore.getRemovedCount() == 2 && sn_eventi.writtenBy("gemma").size() == 20) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST AUTOMODERATOR> ERRORE: " + moderatore.getRemovedCount() + " post rimossi invece di 2!");
+        }
+        moderatore.stop();
+
+        System.out.println("TEST TRENDING>");
+        SocialNetwork sn_tendenze = new SocialNetwork();
+        sn_tendenze.enableTrending();
+        for(int i = 0; i < 50; i++) {
+            sn_tendenze.addPost(new Post("gemma", "Ciao @leo e @utente" + i));
+        }
+        sn_tendenze.addPost(new Post("federico", "Ciao @federico"));
+        sn_tendenze.addPost(new Post("federico", "Ciao @federico"));
+        Map<String, Long> tendenze = sn_tendenze.trendingMentions(Duration.ofMinutes(5), 2);
+        if(new ArrayList<>(tendenze.keySet()).equals(Arrays.asList("leo", "federico")) && tendenze.get("leo") >= 50
+                && sn_tendenze.trendingWords(Duration.ofMinutes(5), 1).containsKey("ciao")) {
+            System.out.println("OK");
+        } else {
+            throw new TestException("TEST TRENDING> ERRORE: " + tendenze);
+        }
+
+        System.out.println("TEST PARALLELSCAN>");
+        testParallelScan();
+        System.out.println("OK");
+
+        System.out.println("TEST SHARDEDSOCIALNETWORK>");
+        testShardedSocialNetwork();
+        System.out.println("OK");
+
+        System.out.println("TEST REPLICA>");
+        testReplica();
+        System.out.println("OK");
+
+        System.out.println("TEST REPLICA (post su disco)>");
+        testReplicaColdStorage();
+        System.out.println("OK");
+
+        System.out.println("TEST RECOMMENDFOLLOWS>");
+        testRecommendFollows();
+        System.out.println("OK");
+
+        System.out.println("TEST INFLUENCERSBYRANK>");
+        testInfluencersByRank();
+        System.out.println("OK");
+
+        System.out.println("TEST DUPLICATESOF>");
+        testDuplicatesOf();
+        System.out.println("OK");
+
+        System.out.println("TEST COLDSTORAGE>");
+        testColdStorage();
+        System.out.println("OK");
+
+        System.out.println("TEST SNAPSHOT>");
+        testSnapshot();
+        System.out.println("OK");
+
+        System.out.println("TEST REPORTPOST CON AUTORE>");
+        testReporterReports();
+        System.out.println("OK");
+
+        System.out.println("TEST BULKIMPORTER/BULKEXPORTER (JSONL e CSV)>");
+        testBulkImport();
+        System.out.println("OK");
+
+        System.out.println("TEST DELETEUSER/DELETEUSERS>");
+        testDeleteUsers();
+        System.out.println("OK");
+
+        System.out.println("TEST MOSTMENTIONED (classifica incrementale)>");
+        testMostMentioned();
+        System.out.println("OK");
+
+        System.out.println("TEST UNREADMENTIONS/MARKREAD (caselle delle notifiche)>");
+        testMentionInboxes();
+        System.out.println("OK");
+
+        System.out.println("TEST SUBSCRIBE (interrogazioni permanenti con Flow)>");
+        testSubscribe();
+        System.out.println("OK");
+
+        System.out.println("TEST MEMORYREPORT (confronto con l'istogramma dello heap)>");
+        testMemoryReport();
+        System.out.println("OK");
+
+        System.out.println("TEST MENTIONSCANNER (differenziale con la regex)>");
+        testMentionScanner();
+        System.out.println("OK");
+
+        System.out.println("TEST KEYWORDMATCHER (differenziale con String.contains)>");
+        testKeywordMatcher();
+        System.out.println("OK");
+
+        System.out.println("TEST PAGINAZIONE (cursore (timestamp, id))>");
+        testCursorPagination();
+        System.out.println("OK");
+
+        System.out.println("TEST HTTPAPI (richieste in loopback)>");
+        testHttpApi();
+        System.out.println("OK");
         System.out.println("===== FINE FASE DI TEST =====");
     }
-}
\ No newline at end of file
+
+    /**
+     * Confronta le interrogazioni su liste di post in modalità parallela (pool di 4 thread e
+     * soglia bassa, per forzare la divisione in pezzi) con quelle sequenziali.
+     */
+    private static void testParallelScan() throws Exception {
+        SocialNetwork rete = new SocialNetwork();
+        String[] utenti = {"gemma", "leo", "federico", "lorenzo"};
+        for(String u : utenti) {
+            rete.initializeUser(u, new HashSet<>(Collections.singleton(utenti[(u.length() + 1) % utenti.length])));
+        }
+        List<Post> lista = new ArrayList<>();
+        Random random = new Random(3);
+        for(int i = 0; i < 50_000; i++) {
+            lista.add(new Post(utenti[random.nextInt(utenti.length)], "Post " + i + " per @" + utenti[random.nextInt(utenti.length)] + (i % 7 == 0 ? " oibò" : "")));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelScan parallela = new ParallelScan(pool, 1_000);
+        List<String> parole = Arrays.asList("OIBÒ", "post 4999");
+        if(!rete.writtenBy(lista, "leo", parallela).equals(rete.writtenBy(lista, "leo", ParallelScan.SEQUENTIAL))
+                || !rete.containing(lista, parole, parallela).equals(rete.containing(lista, parole, ParallelScan.SEQUENTIAL))
+                || !rete.getMentionedUsers(lista, parallela).equals(rete.getMentionedUsers(lista, ParallelScan.SEQUENTIAL))
+                || !rete.guessFollowers(lista, parallela).equals(rete.guessFollowers(lista, ParallelScan.SEQUENTIAL))) {
+            throw new TestException("TEST PARALLELSCAN> ERRORE: risultato diverso da quello sequenziale!");
+        }
+
+        lista.set(40_000, new Post("sconosciuto", "Chi sono?"));
+        try {
+            rete.guessFollowers(lista, parallela);
+            throw new TestException("TEST PARALLELSCAN> ERRORE: eccezione non rilanciata!");
+        } catch(UserNotFoundException e) {
+            // l'eccezione di un pezzo arriva al chiamante con il suo tipo
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Esegue le stesse operazioni su una rete con 4 shard (scatter-gather su un pool di 4 thread)
+     * e su un SafeSocialNetwork, e confronta i risultati delle interrogazioni globali.
+     */
+    private static void testShardedSocialNetwork() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(4, pool);
+        SafeSocialNetwork singola = new SafeSocialNetwork();
+        Random random = new Random(11);
+
+        for(int i = 0; i < 40; i++) {
+            Set<String> seguiti = new HashSet<>();
+            for(int j = 0; j <= i % 5; j++) {
+                seguiti.add("utente" + ((i * 7 + j * j) % 13)); // follower sbilanciati: pochi influencer
+            }
+            sharded.initializeUser("utente" + i, new HashSet<>(seguiti));
+            singola.initializeUser("utente" + i, new HashSet<>(seguiti));
+        }
+        List<Post> post = new ArrayList<>();
+        for(int i = 0; i < 500; i++) {
+            Post p = new Post("utente" + random.nextInt(40), "Post " + i + " per @utente" + random.nextInt(40) + (i % 9 == 0 ? " oibò" : ""));
+            post.add(p);
+            sharded.addPost(p);
+            singola.addPost(p);
+        }
+        for(int i = 0; i < 100; i++) {
+            Post p = post.get(random.nextInt(post.size()));
+            sharded.reportPost(p, ReportReason.hateful_content);
+            singola.reportPost(p, ReportReason.hateful_content);
+        }
+
+        List<String> parole = Arrays.asList("oibò", "Post 12");
+        Map<Post, Integer> segnalati = sharded.getMostReportedPosts(2);
+        List<Integer> conteggi = new ArrayList<>(segnalati.values());
+        List<Integer> ordinati = new ArrayList<>(conteggi);
+        ordinati.sort(Comparator.reverseOrder());
+        List<Integer> primiInfluencer = new ArrayList<>();
+        for(String u : sharded.influencers()) {
+            primiInfluencer.add(singola.guessFollowers(Collections.singletonList(new Post(u, "x"))).get(u).size());
+        }
+        List<Integer> influencerOrdinati = new ArrayList<>(primiInfluencer);
+        influencerOrdinati.sort(Comparator.reverseOrder());
+
+        boolean ok = sharded.containing(parole).equals(singola.containing(parole))
+                && sharded.containing(parole, post.get(100), 7).equals(singola.containing(parole, post.get(100), 7))
+                && sharded.getMentionedUsers().equals(singola.getMentionedUsers())
+                && sharded.guessFollowers(post).equals(singola.guessFollowers(post))
+                && new HashSet<>(sharded.influencers()).equals(new HashSet<>(singola.influencers()))
+                && primiInfluencer.equals(influencerOrdinati)
+                && segnalati.equals(singola.getMostReportedPosts(2)) && conteggi.equals(ordinati)
+                && sharded.postsBetween(post.get(10).getTimestamp(), post.get(300).getTimestamp()).equals(post.subList(10, 300))
+                && sharded.latest(5).equals(singola.latest(5))
+                && sharded.writtenBy("utente3").equals(singola.writtenBy("utente3"))
+                && sharded.removeReportedPosts(2) == singola.removeReportedPosts(2)
+                && sharded.containing(parole).equals(singola.containing(parole));
+        pool.shutdown();
+        if(!ok) {
+            throw new TestException("TEST SHARDEDSOCIALNETWORK> ERRORE: risultato diverso dalla rete non divisa!");
+        }
+    }
+
+    /**
+     * Replica in loopback una rete (con uno stato iniziale e modifiche successive di ogni tipo)
+     * e confronta le interrogazioni sulla replica con quelle sul primario.
+     */
+    private static void testReplica() throws Exception {
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        rete.setEventBus(new ChangeEventBus(1024));
+        rete.initializeUser("gemma", new HashSet<>(Arrays.asList("leo", "federico")));
+        rete.initializeUser("leo", new HashSet<>(Collections.singleton("gemma")));
+        Post iniziale = new Post("gemma", "Prima della replica @leo");
+        rete.addPost(iniziale);
+        rete.reportPost(iniziale, ReportReason.custom, "Non mi piace");
+
+        ReplicationPrimary primario = new ReplicationPrimary(rete, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        primario.start();
+        Replica replica = new Replica(new InetSocketAddress(InetAddress.getLoopbackAddress(), primario.getPort()));
+        replica.start();
+
+        rete.initializeUser("federico", new HashSet<>(Arrays.asList("gemma", "leo")));
+        rete.removeFollower("gemma", "federico");
+        List<Post> inviati = new ArrayList<>();
+        for(int i = 0; i < 2_000; i++) {
+            Post p = new Post(i % 2 == 0 ? "leo" : "federico", "Post replicato " + i + " per @gemma");
+            rete.addPost(p);
+            inviati.add(p);
+            if(i % 100 == 0) {
+                rete.reportPost(p, ReportReason.hateful_content);
+            }
+        }
+        rete.deletePost(inviati.get(1));
+        rete.reportPost(inviati.get(200), ReportReason.spam_misleading_content);
+        int rimossi = rete.removeReportedPosts(2); // post 200 ha 2 segnalazioni
+
+        long scadenza = System.currentTimeMillis() + 10_000;
+        while((replica.getAppliedSequence() != primario.getSequence() || replica.getLagMillis() != 0) && System.currentTimeMillis() < scadenza) {
+            Thread.sleep(10);
+        }
+
+        SafeSocialNetwork copia = replica.getNetwork();
+        Lock lettura = copia.getLock().readLock();
+        lettura.lock();
+        boolean ok;
+        try {
+            ok = rimossi == 1 && replica.getLagRecords() == 0 && replica.getLagMillis() == 0
+                    && copia.writtenBy("leo").toString().equals(rete.writtenBy("leo").toString())
+                    && copia.writtenBy("federico").toString().equals(rete.writtenBy("federico").toString())
+                    && copia.influencers().equals(rete.influencers())
+                    && copia.getMentionedUsers().equals(rete.getMentionedUsers())
+                    && copia.guessFollowers(copia.writtenBy("gemma")).equals(rete.guessFollowers(rete.writtenBy("gemma")))
+                    && copia.getMostReportedPosts(1).toString().equals(rete.getMostReportedPosts(1).toString());
+        } finally {
+            lettura.unlock();
+        }
+        replica.stop();
+        primario.stop();
+        if(!ok) {
+            throw new TestException("TEST REPLICA> ERRORE: la replica (sequenza " + replica.getAppliedSequence()
+                    + ") non coincide con il primario (sequenza " + primario.getSequence() + ")!");
+        }
+    }
+
+    /**
+     * Avvia una replica dopo che il primario ha spostato post (anche segnalati) su disco: la
+     * fotografia iniziale deve comprendere i post su disco e le loro segnalazioni.
+     */
+    private static void testReplicaColdStorage() throws Exception {
+        Path directory = Files.createTempDirectory("cold-replica");
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        rete.setEventBus(new ChangeEventBus(1024));
+        rete.initializeUser("gemma", new HashSet<>(Collections.singleton("leo")));
+        rete.initializeUser("leo", new HashSet<>(Collections.singleton("gemma")));
+        rete.enableColdStorage(directory, Duration.ofMillis(1));
+        List<Post> vecchi = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            Post p = new Post(i % 2 == 0 ? "leo" : "gemma", "Post " + i + " per @gemma");
+            rete.addPost(p);
+            vecchi.add(p);
+        }
+        rete.reportPost(vecchi.get(10), "gemma", ReportReason.hateful_content);
+        rete.reportPost(vecchi.get(10), ReportReason.spam_misleading_content);
+        Thread.sleep(5);
+        int spostati = rete.flushColdPosts();
+        rete.addPost(new Post("leo", "Post in memoria"));
+
+        ReplicationPrimary primario = new ReplicationPrimary(rete, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        primario.start();
+        Replica replica = new Replica(new InetSocketAddress(InetAddress.getLoopbackAddress(), primario.getPort()));
+        replica.start();
+        long scadenza = System.currentTimeMillis() + 10_000;
+        while(replica.getAppliedSequence() != primario.getSequence() && System.currentTimeMillis() < scadenza) {
+            Thread.sleep(10);
+        }
+
+        SafeSocialNetwork copia = replica.getNetwork();
+        Lock lettura = copia.getLock().readLock();
+        lettura.lock();
+        boolean ok;
+        try {
+            ok = spostati == 200
+                    && copia.writtenBy("leo").toString().equals(rete.writtenBy("leo").toString())
+                    && copia.writtenBy("gemma").toString().equals(rete.writtenBy("gemma").toString())
+                    && copia.containing(List.of("Post 1")).toString().equals(rete.containing(List.of("Post 1")).toString())
+                    && rete.getReports(vecchi.get(10)) == 2;
+            Post replicato = copia.writtenBy("leo").get(5); // la copia di vecchi.get(10) sulla replica
+            ok &= replicato.getId() == vecchi.get(10).getId() && copia.getReports(replicato) == 2
+                    && copia.getPostReports(replicato).hasReported("gemma", ReportReason.hateful_content);
+        } finally {
+            lettura.unlock();
+        }
+        replica.stop();
+        primario.stop();
+        for(Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+        if(!ok) {
+            throw new TestException("TEST REPLICA> ERRORE: la replica non ha i post spostati su disco dal primario!");
+        }
+    }
+
+    /**
+     * Suggerimenti su un grafo piccolo con classifica nota (amici in comune pesati con le menzioni,
+     * esclusi l'utente, chi segue già e chi non esiste), uguale sulla rete divisa in shard.
+     */
+    private static void testRecommendFollows() throws Exception {
+        SafeSocialNetwork singola = new SafeSocialNetwork();
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(3, new ForkJoinPool(2));
+        String[][] grafo = {
+                {"anna", "bruno", "carla"},
+                {"bruno", "dario", "elena", "gino"}, // gino non esiste
+                {"carla", "dario", "fabio", "anna", "bruno"},
+                {"dario"}, {"elena"}, {"fabio"}
+        };
+        for(String[] riga : grafo) {
+            Set<String> seguiti = new HashSet<>(Arrays.asList(riga).subList(1, riga.length));
+            singola.initializeUser(riga[0], new HashSet<>(seguiti));
+            sharded.initializeUser(riga[0], new HashSet<>(seguiti));
+        }
+        for(Post p : Arrays.asList(new Post("anna", "Ciao @fabio"), new Post("fabio", "Ciao @anna"))) {
+            singola.addPost(p);
+            sharded.addPost(p);
+        }
+
+        // dario: 2 amici in comune; fabio: 1 * (1 + 2 menzioni); elena: 1
+        List<String> attesi = Arrays.asList("fabio", "dario", "elena");
+        if(!singola.recommendFollows("anna", 5).equals(attesi)
+                || !sharded.recommendFollows("anna", 5).equals(attesi)
+                || !singola.recommendFollows("anna", 2).equals(attesi.subList(0, 2))
+                || !singola.recommendFollows("dario", 5).isEmpty()) {
+            throw new TestException("TEST RECOMMENDFOLLOWS> ERRORE: " + singola.recommendFollows("anna", 5) + " invece di " + attesi);
+        }
+        try {
+            sharded.recommendFollows("gino", 5);
+            throw new TestException("TEST RECOMMENDFOLLOWS> ERRORE: utente inesistente accettato!");
+        } catch(UserNotFoundException e) {
+            // gino non è stato inizializzato
+        }
+    }
+
+    /**
+     * Un anello di bot che si seguono a vicenda ha più follower di un utente seguito da utenti
+     * reali, ma non più influenza; poi confronta il calcolo parallelo con quello sequenziale
+     * su un grafo grande e verifica che il ricalcolo venga saltato se i seguiti non cambiano.
+     */
+    private static void testInfluencersByRank() throws Exception {
+        SocialNetwork rete = new SocialNetwork();
+        for(int i = 0; i < 12; i++) {
+            Set<String> bot = new HashSet<>();
+            for(int j = 0; j < 12; j++) {
+                if(j != i) {
+                    bot.add("bot" + j);
+                }
+            }
+            rete.initializeUser("bot" + i, bot);
+        }
+        rete.initializeUser("vip", new HashSet<>());
+        for(int i = 0; i < 10; i++) {
+            rete.initializeUser("fan" + i, new HashSet<>(Collections.singleton("vip")));
+        }
+        for(int i = 0; i < 30; i++) { // i fan sono seguiti a loro volta
+            rete.initializeUser("lettore" + i, new HashSet<>(Collections.singleton("fan" + (i % 10))));
+        }
+
+        rete.addPost(new Post("vip", "Ciao a tutti")); // influencers() richiede almeno un post
+        InfluenceRank classifica = rete.enableInfluenceRank(Duration.ofHours(1));
+        classifica.refresh();
+        if(!rete.influencers().get(0).startsWith("bot") || !rete.influencersByRank(1).equals(Collections.singletonList("vip"))) {
+            throw new TestException("TEST INFLUENCERSBYRANK> ERRORE: " + rete.influencersByRank(3) + " invece di vip per primo!");
+        }
+        if(classifica.refresh()) {
+            throw new TestException("TEST INFLUENCERSBYRANK> ERRORE: ricalcolo senza modifiche ai seguiti!");
+        }
+        rete.addFollower("lettore0", "bot0");
+        if(!classifica.refresh() || classifica.getComputedVersion() != rete.getFollowedVersion()) {
+            throw new TestException("TEST INFLUENCERSBYRANK> ERRORE: ricalcolo mancato dopo una modifica!");
+        }
+        rete.removeFollower("lettore1", "bot0"); // lettore1 non segue bot0: i seguiti non cambiano
+        if(classifica.refresh()) {
+            throw new TestException("TEST INFLUENCERSBYRANK> ERRORE: ricalcolo dopo una rimozione senza effetto!");
+        }
+
+        SocialNetwork grande = new SocialNetwork();
+        Random random = new Random(5);
+        for(int i = 0; i < 20_000; i++) {
+            Set<String> seguiti = new HashSet<>();
+            for(int j = random.nextInt(8); j > 0; j--) {
+                seguiti.add("utente" + (random.nextBoolean() ? random.nextInt(100) : random.nextInt(20_000)));
+            }
+            grande.initializeUser("utente" + i, seguiti);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        InfluenceRank sequenziale = new InfluenceRank(grande, new ForkJoinPool(1));
+        InfluenceRank parallela = new InfluenceRank(grande, pool);
+        sequenziale.refresh();
+        parallela.refresh();
+        pool.shutdown();
+        for(String u : sequenziale.influencersByRank(50)) {
+            if(Math.abs(sequenziale.getRank(u) - parallela.getRank(u)) > 1e-9) {
+                throw new TestException("TEST INFLUENCERSBYRANK> ERRORE: punteggio parallelo diverso per " + u);
+            }
+        }
+    }
+
+    /**
+     * Copie esatte (a meno di maiuscole e spazi) e quasi-copie di uno spam vengono riconosciute,
+     * i testi diversi no; oltre la soglia le copie vengono segnalate, e la finestra dimentica i
+     * post più vecchi.
+     */
+    private static void testDuplicatesOf() throws Exception {
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        rete.initializeUser("spammer", new HashSet<>());
+        rete.initializeUser("gemma", new HashSet<>());
+        rete.enableDuplicateDetection(50, 0.7);
+        rete.setDuplicateReportThreshold(3);
+
+        Post ciao = new Post("gemma", "Ciao a tutti, oggi si va al mare!");
+        rete.addPost(ciao);
+        rete.addPost(new Post("gemma", "Domani si studia per l'esame di PR2"));
+        List<Post> spam = new ArrayList<>();
+        for(int i = 0; i < 6; i++) {
+            Post p = new Post("spammer", "Guadagna 1000 euro al giorno da casa! Scrivi subito a offerte" + i + "@esempio.it");
+            spam.add(p);
+            rete.addPost(p);
+        }
+
+        boolean ok = rete.duplicatesOf(new Post("gemma", "  CIAO a tutti,   oggi si va al MARE!")).equals(Collections.singletonList(ciao))
+                && rete.duplicatesOf(spam.get(0)).equals(spam.subList(1, 6))
+                && rete.duplicatesOf(new Post("gemma", "Domani si va in montagna con gli amici")).isEmpty()
+                && rete.getReports(spam.get(2)) == 0 && rete.getReports(spam.get(3)) == 1 && rete.getReports(spam.get(5)) == 1;
+
+        rete.deletePost(spam.get(1));
+        ok &= !rete.duplicatesOf(spam.get(0)).contains(spam.get(1));
+        for(int i = 0; i < 50; i++) {
+            rete.addPost(new Post("gemma", "Post numero " + i * 7919 + " su argomenti sempre diversi"));
+        }
+        ok &= rete.duplicatesOf(spam.get(0)).isEmpty();
+        if(!ok) {
+            throw new TestException("TEST DUPLICATESOF> ERRORE: " + rete.duplicatesOf(spam.get(0)));
+        }
+    }
+
+    /**
+     * Sposta su disco i post più vecchi di una rete e confronta le interrogazioni con quelle di una
+     * rete identica tutta in memoria, anche dopo eliminazioni e moderazione di post su disco.
+     */
+    private static void testColdStorage() throws Exception {
+        Path directory = Files.createTempDirectory("cold");
+        SafeSocialNetwork tiered = new SafeSocialNetwork();
+        SafeSocialNetwork memoria = new SafeSocialNetwork();
+        for(int i = 0; i < 30; i++) {
+            tiered.initializeUser("utente" + i, new HashSet<>());
+            memoria.initializeUser("utente" + i, new HashSet<>());
+        }
+        tiered.enableColdStorage(directory, Duration.ofMillis(1));
+
+        List<Post> post = new ArrayList<>();
+        Random random = new Random(17);
+        for(int i = 0; i < 3_000; i++) {
+            Post p = new Post("utente" + random.nextInt(20), "Post " + i + (i % 11 == 0 ? " è già su disco" : "") + " @utente" + random.nextInt(30));
+            post.add(p);
+            tiered.addPost(p);
+            memoria.addPost(p);
+            if(i == 1_000 || i == 2_000) {
+                Thread.sleep(5);
+                tiered.flushColdPosts();
+            }
+        }
+
+        tiered.deletePost(post.get(10));
+        memoria.deletePost(post.get(10));
+        tiered.reportPost(post.get(20), ReportReason.spam_misleading_content);
+        memoria.reportPost(post.get(20), ReportReason.spam_misleading_content);
+        tiered.removePosts(Arrays.asList(post.get(30).getId(), post.get(2_500).getId()));
+        memoria.removePosts(Arrays.asList(post.get(30).getId(), post.get(2_500).getId()));
+
+        List<String> parole = Arrays.asList("GIÀ", "Post 12");
+        long da = post.get(500).getTimestamp(), a = post.get(2_600).getTimestamp();
+        boolean ok = tiered.getColdPostCount() == 1_999
+                && same(tiered.writtenBy("utente3"), memoria.writtenBy("utente3"))
+                && tiered.writtenBy("utente25").isEmpty()
+                && same(tiered.containing(parole), memoria.containing(parole))
+                && same(tiered.postsBetween(da, a), memoria.postsBetween(da, a))
+                && same(tiered.writtenBetween("utente7", da, a), memoria.writtenBetween("utente7", da, a))
+                && same(tiered.containingBetween(parole, da, a), memoria.containingBetween(parole, da, a))
+                && tiered.getReports(post.get(20)) == 1
+                && tiered.removeReportedPosts() == 1 && memoria.removeReportedPosts() == 1
+                && same(tiered.writtenBy(post.get(20).getAuthor()), memoria.writtenBy(post.get(20).getAuthor()));
+        try {
+            tiered.getReports(post.get(10));
+            ok = false; // eliminato mentre era su disco
+        } catch(PostNotFoundException e) {
+            // corretto
+        }
+
+        // lo spostamento su disco cambia la versione dei post: la cache ricalcola invece di restituire la lista vecchia
+        QueryCache cache = new QueryCache(tiered, 16);
+        List<Post> primaDelFlush = cache.containing(List.of("Post 29"));
+        Thread.sleep(5);
+        ok &= tiered.flushColdPosts() > 0 && cache.containing(List.of("Post 29")) != primaDelFlush && cache.getMissCount() == 2
+                && same(cache.containing(List.of("Post 29")), primaDelFlush) && cache.getHitCount() == 1;
+
+        for(Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+        if(!ok) {
+            throw new TestException("TEST COLDSTORAGE> ERRORE: risultato diverso dalla rete in memoria!");
+        }
+    }
+
+    /**
+     * Confronta due liste di post per id, autore, testo e timestamp (i post letti da disco sono nuove istanze)
+     */
+    private static boolean same(List<Post> l1, List<Post> l2) {
+        if(l1.size() != l2.size()) {
+            return false;
+        }
+        for(int i = 0; i < l1.size(); i++) {
+            Post p1 = l1.get(i), p2 = l2.get(i);
+            if(p1.getId() != p2.getId() || p1.getTimestamp() != p2.getTimestamp()
+                    || !p1.getAuthor().equals(p2.getAuthor()) || !p1.getText().equals(p2.getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Confronta PersistentMap e PersistentVector con HashMap e ArrayList (con chiavi dallo stesso hash
+     * e dimensioni oltre i confini dei blocchi), poi verifica che uno snapshot di una rete resti
+     * invariato mentre un altro thread scrive, e che le sue interrogazioni non attendano il write lock.
+     */
+    private static void testSnapshot() throws Exception {
+        Random random = new Random(43);
+        PersistentMap<String, Integer> mappa = PersistentMap.empty();
+        Map<String, Integer> attesa = new HashMap<>();
+        PersistentVector<Integer> vettore = PersistentVector.empty();
+        List<Integer> lista = new ArrayList<>();
+        for(int i = 0; i < 40_000; i++) {
+            String chiave = (random.nextBoolean() ? "Aa" : "BB") + random.nextInt(3_000); // "Aa" e "BB" hanno lo stesso hash
+            if(random.nextInt(3) == 0) {
+                mappa = mappa.minus(chiave);
+                attesa.remove(chiave);
+            } else {
+                mappa = mappa.plus(chiave, i);
+                attesa.put(chiave, i);
+            }
+            vettore = vettore.plus(i);
+            lista.add(i);
+            if(i % 5_000 == 4_999) {
+                int modulo = 2 + random.nextInt(40);
+                PersistentVector<Integer> prima = vettore;
+                List<Integer> copia = new ArrayList<>(lista);
+                vettore = vettore.minusIf(x -> x % modulo == 0);
+                lista.removeIf(x -> x % modulo == 0);
+                if(!prima.equals(copia)) {
+                    throw new TestException("TEST SNAPSHOT> ERRORE: versione precedente del vettore modificata!");
+                }
+            }
+        }
+        // buchi lasciati da minusAt: le posizioni degli altri elementi non cambiano
+        for(int i = 0; i < 3_000; i++) {
+            int slot = random.nextInt(vettore.slots());
+            Integer x = vettore.slotAt(slot);
+            if(x != null) {
+                vettore = vettore.minusAt(slot);
+                lista.remove(x);
+            }
+        }
+        int centro = lista.size() / 2;
+        if(!vettore.get(centro).equals(lista.get(centro)) || vettore.indexOf(lista.get(centro)) != centro
+                || !vettore.compact().equals(lista) || vettore.compact().slots() != lista.size()) {
+            throw new TestException("TEST SNAPSHOT> ERRORE: vettore con buchi diverso dalla lista!");
+        }
+        if(!mappa.equals(attesa) || !attesa.equals(mappa) || !vettore.equals(lista) || !new ArrayList<>(vettore).equals(lista)
+                || vettore.stream().parallel().mapToLong(x -> x).sum() != lista.stream().mapToLong(x -> x).sum()) {
+            throw new TestException("TEST SNAPSHOT> ERRORE: struttura persistente diversa da quella mutabile!");
+        }
+
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        for(int i = 0; i < 20; i++) {
+            rete.initializeUser("utente" + i, new HashSet<>(Collections.singleton("utente" + (i + 1) % 5)));
+        }
+        for(int i = 0; i < 2_000; i++) {
+            rete.addPost(new Post("utente" + i % 20, "Ciao @utente" + i % 7));
+        }
+        rete.reportPost(rete.writtenBy("utente3").get(0), ReportReason.spam_misleading_content);
+
+        Snapshot snapshot;
+        Lock lettura = rete.getLock().readLock();
+        lettura.lock();
+        try {
+            snapshot = rete.snapshot();
+        } finally {
+            lettura.unlock();
+        }
+        List<String> influencers = snapshot.influencers();
+        Set<String> menzionati = snapshot.getMentionedUsers();
+        Map<Post, Integer> segnalati = snapshot.getMostReportedPosts(1);
+        boolean ok = influencers.equals(rete.influencers()) && menzionati.equals(rete.getMentionedUsers())
+                && segnalati.equals(rete.getMostReportedPosts(1)) && segnalati.size() == 1;
+
+        // chi scrive tiene il write lock mentre lo snapshot viene letto da un altro thread
+        Lock scrittura = rete.getLock().writeLock();
+        CountDownLatch letto = new CountDownLatch(1);
+        boolean[] invariato = new boolean[1];
+        scrittura.lock();
+        try {
+            for(int i = 0; i < 20; i++) {
+                rete.addFollower("utente" + i, "utente19");
+            }
+            Thread lettore = new Thread(() -> {
+                try {
+                    invariato[0] = snapshot.influencers().equals(influencers) && snapshot.getMentionedUsers().equals(menzionati);
+                } catch(EmptyFieldException e) {
+                    invariato[0] = false;
+                }
+                letto.countDown();
+            });
+            lettore.start();
+            for(int i = 0; i < 1_000; i++) {
+                rete.addPost(new Post("utente" + i % 20, "Nuovo post per @utente19"));
+            }
+            ok &= letto.await(10, TimeUnit.SECONDS);
+            rete.removeReportedPosts(1);
+        } finally {
+            scrittura.unlock();
+        }
+
+        ok &= invariato[0] && snapshot.getPosts().size() == 2_000 && rete.getPostsVersion() > snapshot.getPostsVersion()
+                && snapshot.getMostReportedPosts(1).equals(segnalati) && !rete.influencers().equals(influencers)
+                && rete.getMentionedUsers().size() > menzionati.size();
+        try {
+            rete.getMostReportedPosts();
+            ok = false;
+        } catch(EmptyFieldException e) {
+            // la segnalazione è stata rimossa dalla rete, ma non dallo snapshot
+        }
+        if(!ok) {
+            throw new TestException("TEST SNAPSHOT> ERRORE: lo snapshot è cambiato o non corrisponde alla rete!");
+        }
+    }
+
+    /**
+     * Verifica che le segnalazioni con autore contino una volta per (post, autore, motivo), anche su
+     * una rete divisa in shard, e che per un post virale il conteggio stimato resti entro tre volte
+     * l'errore standard dichiarato con memoria fissa.
+     */
+    private static void testReporterReports() throws Exception {
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        int utenti = 20_000;
+        for(int i = 0; i < utenti; i++) {
+            rete.initializeUser("utente" + i, null);
+        }
+        Post post = new Post("utente0", "Post che diventerà virale");
+        Post altro = new Post("utente1", "Post qualsiasi");
+        rete.addPost(post);
+        rete.addPost(altro);
+
+        boolean ok = rete.reportPost(altro, "utente2", ReportReason.spam_misleading_content)
+                && !rete.reportPost(altro, "utente2", ReportReason.spam_misleading_content)
+                && rete.reportPost(altro, "utente2", ReportReason.hateful_content)
+                && rete.reportPost(altro, "utente3", ReportReason.custom, "Non mi piace")
+                && !rete.reportPost(altro, "utente3", ReportReason.custom, "Proprio per niente");
+        rete.reportPost(altro, ReportReason.spam_misleading_content); // le anonime contano sempre
+        rete.reportPost(altro, ReportReason.spam_misleading_content);
+        PostReports segnalazioni = rete.getPostReports(altro);
+        ok &= rete.getReports(altro) == 5 && segnalazioni.isExact() && segnalazioni.getReportNumber(ReportReason.spam_misleading_content) == 3
+                && segnalazioni.hasReported("utente2", ReportReason.hateful_content) && !segnalazioni.hasReported("utente3", ReportReason.hateful_content);
+        try {
+            rete.reportPost(altro, "sconosciuto", ReportReason.hateful_content);
+            ok = false;
+        } catch(UserNotFoundException e) {
+            // l'autore della segnalazione deve esistere
+        }
+
+        long memoria = rete.memoryReport().get("rp");
+        for(int ripetizione = 0; ripetizione < 3; ripetizione++) {
+            for(int i = 0; i < utenti; i++) {
+                rete.reportPost(post, "utente" + i, ReportReason.spam_misleading_content);
+            }
+        }
+        int stima = rete.getReports(post);
+        long memoriaVirale = rete.memoryReport().get("rp") - memoria;
+        // il filtro cresce con le coppie: sotto il 2% di falsi positivi e al più 64 bit per coppia
+        int nuove = rete.getPostReports(post).getReportNumber(ReportReason.spam_misleading_content);
+        ok &= !rete.getPostReports(post).isExact() && Math.abs(stima - utenti) <= 3 * PostReports.COUNT_ERROR * utenti
+                && nuove <= utenti && nuove >= 0.98 * utenti
+                && memoriaVirale < 8L * utenti && rete.getMostReportedPosts(1).keySet().iterator().next() == post;
+
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(4);
+        for(int i = 0; i < 20; i++) {
+            sharded.initializeUser("utente" + i, null);
+        }
+        Post p = new Post("utente0", "Post sulla shard di utente0");
+        sharded.addPost(p);
+        for(int i = 0; i < 20; i++) {
+            sharded.reportPost(p, "utente" + i, ReportReason.scam_attempt);
+            sharded.reportPost(p, "utente" + i, ReportReason.scam_attempt);
+        }
+        ok &= sharded.getReports(p) == 20;
+        try {
+            sharded.reportPost(p, "sconosciuto", ReportReason.scam_attempt);
+            ok = false;
+        } catch(UserNotFoundException e) {
+            // verificato nella stessa sezione critica della segnalazione
+        }
+
+        // segnalazioni incrociate fra due shard da due thread: i due lock sono presi sempre nello stesso ordine
+        String lontano = "utente1";
+        for(int i = 2; sharded.shardIndex(lontano) == sharded.shardIndex("utente0"); i++) {
+            lontano = "utente" + i;
+        }
+        Post q = new Post(lontano, "Post su un'altra shard");
+        sharded.addPost(q);
+        String reporterDiP = lontano;
+        Thread[] incrociati = {
+                new Thread(() -> incrocia(sharded, p, reporterDiP)),
+                new Thread(() -> incrocia(sharded, q, "utente0"))
+        };
+        for(Thread t : incrociati) {
+            t.start();
+        }
+        for(Thread t : incrociati) {
+            t.join(10_000);
+            ok &= !t.isAlive();
+        }
+        ok &= sharded.getReports(q) == 2;
+        if(!ok) {
+            throw new TestException("TEST REPORTPOST CON AUTORE> ERRORE: stima " + stima + " su " + utenti + ", " + nuove + " nuove, " + memoriaVirale + " byte, " + sharded.getReports(p));
+        }
+    }
+
+    /**
+     * Segnala più volte post a nome di reporter (per i test di concorrenza)
+     */
+    private static void incrocia(ShardedSocialNetwork sharded, Post post, String reporter) {
+        try {
+            for(int i = 0; i < 5_000; i++) {
+                sharded.reportPost(post, reporter, ReportReason.values()[i % 2]);
+            }
+        } catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Esporta una rete (con testi che contengono virgole, virgolette, a capo e caratteri fuori dal
+     * BMP) in JSONL e in CSV, la ricarica e la confronta con l'originale; i post sono abbastanza da
+     * dividere il file in più pezzi. Un record non valido deve dare una IOException con la posizione.
+     */
+    private static void testBulkImport() throws Exception {
+        Path directory = Files.createTempDirectory("dump");
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        int utenti = 500;
+        for(int i = 0; i < utenti; i++) {
+            rete.initializeUser("utente" + i, null);
+        }
+        for(int i = 0; i < utenti; i++) {
+            rete.addFollower("utente" + i, "utente" + ((i * 7 + 1) % utenti));
+            rete.addFollower("utente" + i, "utente" + ((i * 13 + 2) % utenti));
+        }
+        String[] testi = {"Ciao @utente%d, come va?", "Virgolette \"%d\", virgole, e\nun a capo", "Emoji \uD83D\uDE00 e accenti àèì %d"};
+        for(int i = 0; i < 120_000; i++) {
+            String testo = String.format(testi[i % 3], i % utenti);
+            rete.addPost(new Post(i % 50 == 0 ? "ospite" + i : "utente" + (i % utenti), testo)); // autori non registrati ammessi
+        }
+        List<Post> posts = rete.snapshot().getPosts();
+        rete.reportPost(posts.get(0), ReportReason.hateful_content);
+        rete.reportPost(posts.get(0), "utente1", ReportReason.custom, "Testo, con \"virgolette\"");
+        for(int i = 0; i < 100; i++) {
+            rete.reportPost(posts.get(posts.size() - 1), "utente" + i, ReportReason.spam_misleading_content);
+        }
+
+        boolean ok = true;
+        for(DumpFormat formato : DumpFormat.values()) {
+            Path file = directory.resolve("dump." + formato.name().toLowerCase());
+            long scritti = BulkExporter.exportFile(rete, file);
+            SafeSocialNetwork copia = new SafeSocialNetwork();
+            long letti = BulkImporter.importFile(copia, file);
+            Snapshot s = copia.snapshot();
+            ok &= scritti == letti && file.toFile().length() > 8 << 20
+                    && s.getFollowed().equals(rete.snapshot().getFollowed())
+                    && s.getPosts().size() == posts.size()
+                    && copia.getReports(s.getPosts().get(0)) == 2 && copia.getPostReports(s.getPosts().get(0)).hasReported("utente1", ReportReason.custom)
+                    && copia.getReports(s.getPosts().get(posts.size() - 1)) == 100;
+            for(int i = 0; i < posts.size() && ok; i++) {
+                Post a = posts.get(i), b = s.getPosts().get(i);
+                ok = a.getId() == b.getId() && a.getAuthor().equals(b.getAuthor()) && a.getText().equals(b.getText()) && a.getTimestamp() == b.getTimestamp();
+            }
+            Files.delete(file);
+        }
+
+        Path errato = directory.resolve("errato.jsonl");
+        Files.writeString(errato, "{\"type\":\"user\",\"name\":\"alice\"}\n{\"type\":\"follow\",\"user\":\"alice\"}\n");
+        SafeSocialNetwork parziale = new SafeSocialNetwork();
+        try {
+            BulkImporter.importFile(parziale, errato);
+            ok = false;
+        } catch(IOException e) {
+            ok &= e.getMessage().contains("posizione 31") && parziale.snapshot().getFollowed().containsKey("alice");
+        }
+        Files.delete(errato);
+
+        // gli id dei post già nella rete (o già letti dal file) non vengono caricati una seconda volta
+        SafeSocialNetwork piccola = new SafeSocialNetwork();
+        piccola.initializeUser("bob", null);
+        piccola.addPost(new Post("bob", "Unico post di bob"));
+        Path doppio = directory.resolve("doppio.jsonl");
+        BulkExporter.exportFile(piccola, doppio);
+        try {
+            BulkImporter.importFile(piccola, doppio);
+            ok = false;
+        } catch(IOException e) {
+            ok &= e.getMessage().contains("esiste già") && piccola.snapshot().getPosts().size() == 1;
+        }
+        String record = Files.readAllLines(doppio).get(1);
+        Files.writeString(doppio, record + "\n" + record + "\n");
+        SafeSocialNetwork vuota = new SafeSocialNetwork();
+        try {
+            BulkImporter.importFile(vuota, doppio);
+            ok = false;
+        } catch(IOException e) {
+            ok &= e.getMessage().contains("esiste già") && vuota.snapshot().getPosts().size() == 1;
+        }
+
+        // i record scartati (copia, testo troppo lungo, id massimo) non fanno avanzare id e timestamp dei nuovi post
+        long futuro = 4_000_000_000_000_000L;
+        int idScartato = 2_000_000_000;
+        String[] scartati = {
+                "{\"type\":\"post\",\"id\":" + piccola.writtenBy("bob").get(0).getId() + ",\"author\":\"bob\",\"text\":\"copia\",\"timestamp\":" + futuro + "}",
+                "{\"type\":\"post\",\"id\":" + idScartato + ",\"author\":\"bob\",\"text\":\"" + "x".repeat(141) + "\",\"timestamp\":" + futuro + "}",
+                "{\"type\":\"post\",\"id\":" + Integer.MAX_VALUE + ",\"author\":\"bob\",\"text\":\"ultimo\",\"timestamp\":1}"
+        };
+        for(String scartato : scartati) {
+            Files.writeString(doppio, scartato + "\n");
+            try {
+                BulkImporter.importFile(piccola, doppio);
+                ok = false;
+            } catch(IOException e) {
+                // record rifiutato
+            }
+        }
+        Post successivo = new Post("bob", "Dopo i record scartati");
+        ok &= successivo.getId() < idScartato && successivo.getTimestamp() < futuro && piccola.snapshot().getPosts().size() == 1;
+        Files.delete(doppio);
+        Files.delete(directory);
+        if(!ok) {
+            throw new TestException("TEST BULKIMPORTER/BULKEXPORTER> ERRORE: la rete ricaricata è diversa!");
+        }
+    }
+
+    /**
+     * Elimina una rete di bot (seguiti, seguaci, post segnalati) e controlla che non ne resti
+     * traccia né nei seguiti, né nei post, né nelle segnalazioni, mentre restano le segnalazioni
+     * fatte dai bot sui post degli altri; poi lo stesso su una rete divisa in shard.
+     */
+    private static void testDeleteUsers() throws Exception {
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        List<String> bot = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            rete.initializeUser("utente" + i, null);
+        }
+        for(int i = 0; i < 10; i++) {
+            bot.add("bot" + i);
+            rete.initializeUser("bot" + i, new HashSet<>(List.of("utente0", "bot" + ((i + 1) % 10))));
+        }
+        for(int i = 0; i < 100; i++) {
+            rete.addFollower("utente" + i, "bot" + (i % 10));
+            rete.addFollower("utente" + i, "utente" + ((i + 1) % 100));
+            rete.addPost(new Post("utente" + i, "Ciao @utente" + ((i + 7) % 100)));
+        }
+        Post altro = rete.writtenBy("utente5").get(0);
+        rete.reportPost(altro, "bot3", ReportReason.spam_misleading_content);
+        for(String b : bot) {
+            for(int j = 0; j < 20; j++) {
+                Post p = new Post(b, "Offerta imperdibile per @utente" + j);
+                rete.addPost(p);
+                rete.reportPost(p, "utente" + j, ReportReason.scam_attempt);
+            }
+        }
+
+        boolean ok = rete.deleteUsers(bot.subList(0, 9)) == 9 && rete.deleteUsers(List.of("nessuno")) == 0;
+        rete.deleteUser("bot9");
+        try {
+            rete.deleteUser("bot9");
+            ok = false;
+        } catch(UserNotFoundException e) {
+            // già eliminato
+        }
+
+        Snapshot s = rete.snapshot();
+        for(Map.Entry<String, Set<String>> e : s.getFollowed().entrySet()) {
+            ok &= !e.getKey().startsWith("bot") && e.getValue().stream().noneMatch(u -> u.startsWith("bot"));
+        }
+        ok &= s.getFollowed().size() == 100 && s.getPosts().size() == 100 && s.getReports().size() == 1
+                && rete.getReports(altro) == 1 && rete.writtenBy("bot3").isEmpty()
+                && rete.guessFollowers(List.of(altro)).get("utente5").equals(Set.of("utente4"))
+                && rete.memoryReport().containsKey("followersBy") && rete.memoryReport().containsKey("postsBy");
+
+        // eliminazioni ripetute (per posizione, senza scorrere i post) alternate ad aggiunte e a deletePost
+        SafeSocialNetwork molti = new SafeSocialNetwork();
+        List<Post> attesi = new ArrayList<>();
+        for(int i = 0; i < 300; i++) {
+            molti.initializeUser("utente" + i, null);
+        }
+        for(int giro = 0; giro < 5; giro++) {
+            for(int i = 0; i < 300; i++) {
+                Post p = new Post("utente" + i, "Post " + giro + " di utente" + i);
+                molti.addPost(p);
+                attesi.add(p);
+            }
+        }
+        Random random = new Random(47);
+        for(int i = 0; i < 250; i++) {
+            String u = "utente" + (i * 7 % 300);
+            molti.deleteUser(u);
+            attesi.removeIf(p -> p.getAuthor().equals(u));
+            String v = "utente" + ((i * 7 + 1) % 300);
+            if(i % 3 == 0 && !molti.writtenBy(v).isEmpty()) {
+                Post p = new Post(v, "Ancora " + i);
+                molti.addPost(p);
+                attesi.add(p);
+            }
+            if(i % 50 == 49) {
+                Post tolto = attesi.remove(random.nextInt(attesi.size()));
+                molti.deletePost(tolto);
+            }
+        }
+        ok &= molti.snapshot().getPosts().equals(attesi) && molti.memoryReport().containsKey("positions")
+                && molti.writtenBy("utente1").equals(attesi.stream().filter(p -> p.getAuthor().equals("utente1")).toList());
+
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(4);
+        sharded.initializeUser("bot0", null);
+        for(int i = 0; i < 20; i++) {
+            sharded.initializeUser("utente" + i, null);
+            sharded.addFollower("utente" + i, "bot0");
+            sharded.addFollower("utente" + i, "utente" + ((i + 1) % 20));
+            sharded.addPost(new Post("utente" + i, "Post di utente" + i));
+        }
+        sharded.addPost(new Post("bot0", "Offerta imperdibile"));
+        ok &= sharded.influencers().get(0).equals("bot0");
+        sharded.deleteUser("bot0");
+        ok &= !sharded.influencers().contains("bot0") && sharded.writtenBy("bot0").isEmpty()
+                && sharded.recommendFollows("utente0", 5).stream().noneMatch(u -> u.equals("bot0"));
+        if(!ok) {
+            throw new TestException("TEST DELETEUSER/DELETEUSERS> ERRORE: restano tracce degli utenti eliminati!");
+        }
+    }
+
+    /**
+     * Aggiunge e rimuove post con menzioni casuali e confronta mostMentioned e mostMentionedByAuthors
+     * con i conteggi ricalcolati da tutti i post, sulla rete semplice e su quella divisa in shard.
+     */
+    private static void testMostMentioned() throws Exception {
+        SocialNetwork rete = new SocialNetwork();
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(4);
+        Random random = new Random(48);
+        List<Post> presenti = new ArrayList<>();
+        boolean ok = rete.mostMentioned(5).isEmpty();
+        for(int i = 0; i < 5_000; i++) {
+            if(i % 5 == 4) {
+                Post p = presenti.remove(random.nextInt(presenti.size()));
+                rete.deletePost(p);
+                sharded.deletePost(p);
+                continue;
+            }
+            int menzionato = (int) Math.min(199, Math.abs(random.nextGaussian() * 40));
+            Post p = new Post("autore" + random.nextInt(50), "Ciao @utente" + menzionato + " e @utente" + random.nextInt(200) + ", @utente" + menzionato);
+            presenti.add(p);
+            rete.addPost(p);
+            sharded.addPost(p);
+        }
+
+        Map<String, Integer> menzioni = new HashMap<>();
+        Map<String, Set<String>> autori = new HashMap<>();
+        for(Post p : presenti) {
+            Matcher m = Pattern.compile("@(\\w+)").matcher(p.getText());
+            while(m.find()) {
+                menzioni.merge(m.group(1), 1, Integer::sum);
+                autori.computeIfAbsent(m.group(1), u -> new HashSet<>()).add(p.getAuthor());
+            }
+        }
+        Map<String, Integer> perAutori = new HashMap<>();
+        autori.forEach((u, a) -> perAutori.put(u, a.size()));
+        for(int k : new int[]{1, 10, 50, 1_000}) {
+            Map<String, Integer> attesa = topCounts(menzioni, k);
+            Map<String, Integer> attesaAutori = topCounts(perAutori, k);
+            ok &= new ArrayList<>(rete.mostMentioned(k).entrySet()).equals(new ArrayList<>(attesa.entrySet()))
+                    && new ArrayList<>(rete.mostMentionedByAuthors(k).entrySet()).equals(new ArrayList<>(attesaAutori.entrySet()))
+                    && new ArrayList<>(sharded.mostMentioned(k).entrySet()).equals(new ArrayList<>(attesa.entrySet()))
+                    && new ArrayList<>(sharded.mostMentionedByAuthors(k).entrySet()).equals(new ArrayList<>(attesaAutori.entrySet()));
+        }
+        if(!ok) {
+            throw new TestException("TEST MOSTMENTIONED> ERRORE: classifica diversa dal ricalcolo: " + rete.mostMentioned(5) + " invece di " + topCounts(menzioni, 5));
+        }
+    }
+
+    /**
+     * I primi k conteggi, dal più alto (a parità in ordine alfabetico)
+     */
+    private static Map<String, Integer> topCounts(Map<String, Integer> conteggi, int k) {
+        Map<String, Integer> primi = new LinkedHashMap<>();
+        conteggi.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(k)
+                .forEach(e -> primi.put(e.getKey(), e.getValue()));
+        return primi;
+    }
+
+    /**
+     * Controlla consegna (una volta per post, non all'autore, solo agli utenti esistenti), ordine,
+     * cursore e sovrascrittura delle caselle; poi quattro thread pubblicano su shard diverse
+     * menzionando lo stesso utente mentre un lettore svuota la sua casella senza lock: ogni post
+     * deve essere letto esattamente una volta.
+     */
+    private static void testMentionInboxes() throws Exception {
+        SocialNetwork rete = new SocialNetwork();
+        boolean ok = false;
+        try {
+            rete.unreadMentions("leo", 10);
+        } catch(IllegalStateException e) {
+            ok = true; // caselle non attive
+        }
+        rete.enableMentionInboxes(8);
+        for(String u : List.of("leo", "gemma", "anna")) {
+            rete.initializeUser(u, null);
+        }
+        Post primo = new Post("gemma", "Ciao @leo, @anna e @nessuno! Sempre tu @leo, anche @gemma");
+        rete.addPost(primo);
+        ok &= Arrays.equals(rete.unreadMentions("leo", 10), new int[]{primo.getId()})
+                && Arrays.equals(rete.unreadMentions("anna", 10), new int[]{primo.getId()})
+                && rete.unreadMentions("gemma", 10).length == 0;
+        try {
+            rete.unreadMentions("nessuno", 10);
+            ok = false;
+        } catch(UserNotFoundException e) {
+            // solo gli utenti esistenti hanno una casella
+        }
+
+        int[] ids = new int[20];
+        for(int i = 0; i < ids.length; i++) {
+            Post p = new Post("anna", "Messaggio " + i + " per @leo");
+            rete.addPost(p);
+            ids[i] = p.getId();
+        }
+        int[] ultimi = rete.unreadMentions("leo", 100);
+        ok &= Arrays.equals(ultimi, Arrays.copyOfRange(ids, 12, 20)) && Arrays.equals(rete.unreadMentions("leo", 3), Arrays.copyOfRange(ids, 12, 15));
+        rete.markRead("leo", ids[14]);
+        ok &= Arrays.equals(rete.unreadMentions("leo", 100), Arrays.copyOfRange(ids, 15, 20));
+        rete.markRead("leo", ids[19]);
+        ok &= rete.unreadMentions("leo", 100).length == 0;
+
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(4);
+        sharded.enableMentionInboxes(1 << 16);
+        sharded.initializeUser("leo", null);
+        int scrittori = 4, perScrittore = 5_000;
+        for(int t = 0; t < scrittori; t++) {
+            sharded.initializeUser("autore" + t, null);
+        }
+        Set<Integer> pubblicati = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < scrittori; t++) {
+            String autore = "autore" + t;
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = 0; i < perScrittore; i++) {
+                        Post p = new Post(autore, "Notifica " + i + " per @leo");
+                        sharded.addPost(p);
+                        pubblicati.add(p.getId());
+                    }
+                } catch(EmptyFieldException | TextLengthException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        Set<Integer> letti = new HashSet<>();
+        boolean doppi = false;
+        while(letti.size() < scrittori * perScrittore) {
+            int[] nuovi = sharded.unreadMentions("leo", 500);
+            for(int id : nuovi) {
+                doppi |= !letti.add(id);
+            }
+            if(nuovi.length > 0) {
+                sharded.markRead("leo", nuovi[nuovi.length - 1]);
+            } else if(threads.stream().noneMatch(Thread::isAlive) && sharded.unreadMentions("leo", 1).length == 0) {
+                break;
+            }
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+        ok &= !doppi && letti.equals(pubblicati) && sharded.memoryReport().containsKey("inboxes");
+        if(!ok) {
+            throw new TestException("TEST UNREADMENTIONS/MARKREAD> ERRORE: letti " + letti.size() + " post su " + pubblicati.size() + (doppi ? ", alcuni due volte" : ""));
+        }
+    }
+
+    /**
+     * Apre mille interrogazioni permanenti e controlla che tre subscriber ricevano esattamente i
+     * post che containing troverebbe fra quelli nuovi; un subscriber che chiede un post alla volta
+     * non deve mai riceverne di più, e con il buffer pieno i post in più vengono scartati e contati.
+     */
+    private static void testSubscribe() throws Exception {
+        ShardedSocialNetwork rete = new ShardedSocialNetwork(4);
+        List<KeywordSubscription> interrogazioni = new ArrayList<>();
+        for(int i = 0; i < 1_000; i++) {
+            interrogazioni.add(rete.subscribe(List.of("parola" + i, "Tema" + (i % 7))));
+        }
+        Map<Integer, List<String>> parole = Map.of(3, List.of("parola3", "tema3"), 500, List.of("parola500", "tema3"), 998, List.of("parola998", "tema4"));
+        Map<Integer, Queue<Post>> ricevuti = new HashMap<>();
+        CountDownLatch completati = new CountDownLatch(parole.size());
+        for(int i : parole.keySet()) {
+            Queue<Post> coda = new ConcurrentLinkedQueue<>();
+            ricevuti.put(i, coda);
+            interrogazioni.get(i).subscribe(new Flow.Subscriber<Post>() {
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+                public void onNext(Post p) {
+                    coda.add(p);
+                }
+                public void onError(Throwable t) {
+                }
+                public void onComplete() {
+                    completati.countDown();
+                }
+            });
+        }
+
+        long[] inAttesa = new long[1];
+        boolean[] troppi = new boolean[1];
+        KeywordSubscription piena = rete.subscribe(List.of("tema3"), 4);
+        piena.subscribe(new Flow.Subscriber<Post>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+                synchronized(inAttesa) {
+                    inAttesa[0] = 2;
+                }
+                subscription.request(2);
+            }
+            public void onNext(Post p) {
+                synchronized(inAttesa) {
+                    troppi[0] |= --inAttesa[0] < 0;
+                }
+            }
+            public void onError(Throwable t) {
+            }
+            public void onComplete() {
+            }
+        });
+
+        List<Post> nuovi = new ArrayList<>();
+        Random random = new Random(50);
+        for(int i = 0; i < 2_000; i++) {
+            Post p = new Post("utente" + random.nextInt(40), "Post " + i + " su PAROLA" + random.nextInt(1_200) + " e tema" + random.nextInt(9));
+            rete.addPost(p);
+            nuovi.add(p);
+        }
+        for(KeywordSubscription q : interrogazioni) {
+            q.close();
+        }
+        boolean ok = completati.await(10, TimeUnit.SECONDS);
+        for(Map.Entry<Integer, List<String>> e : parole.entrySet()) {
+            Set<Post> attesi = Collections.newSetFromMap(new IdentityHashMap<>());
+            attesi.addAll(rete.containing(nuovi, e.getValue()));
+            List<Post> arrivati = new ArrayList<>(ricevuti.get(e.getKey()));
+            Set<Post> unici = Collections.newSetFromMap(new IdentityHashMap<>());
+            unici.addAll(arrivati);
+            ok &= arrivati.size() == attesi.size() && unici.equals(attesi);
+        }
+        Thread.sleep(100);
+        ok &= !troppi[0] && piena.getDroppedCount() > 0 && interrogazioni.get(0).isClosed() && !piena.isClosed();
+        piena.close();
+        if(!ok) {
+            throw new TestException("TEST SUBSCRIBE> ERRORE: post ricevuti diversi da containing (scartati " + piena.getDroppedCount() + ", troppi " + troppi[0] + ")");
+        }
+    }
+
+    /**
+     * Confronta la stima di memoryReport con la crescita dello heap vivo misurata con due
+     * istogrammi delle classi (prima e dopo la costruzione della rete).
+     */
+    private static void testMemoryReport() throws Exception {
+        long prima = liveHeapBytes();
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        Random random = new Random(13);
+        for(int i = 0; i < 20_000; i++) {
+            Set<String> seguiti = new HashSet<>();
+            for(int j = random.nextInt(20); j > 0; j--) {
+                seguiti.add("utente" + random.nextInt(20_000));
+            }
+            rete.initializeUser("utente" + i, seguiti);
+        }
+        for(int i = 0; i < 100_000; i++) {
+            Post p = new Post("utente" + random.nextInt(20_000), (i % 10 == 0 ? "Perché " : "Post ") + i + " per @utente" + random.nextInt(20_000));
+            rete.addPost(p);
+            if(i % 10 == 0) {
+                if(i % 20 == 0) {
+                    rete.reportPost(p, ReportReason.spam_misleading_content);
+                } else {
+                    rete.reportPost(p, ReportReason.custom, "Segnalazione " + i);
+                }
+            }
+        }
+        long dopo = liveHeapBytes();
+
+        Map<String, Long> report = rete.memoryReport();
+        long stima = 0;
+        for(long n : report.values()) {
+            stima += n;
+        }
+        long reale = dopo - prima;
+        if(Math.abs(stima - reale) > reale / 10) {
+            throw new TestException("TEST MEMORYREPORT> ERRORE: stima " + stima + " byte " + report + ", istogramma " + reale + " byte");
+        }
+    }
+
+    /**
+     * Byte occupati dagli oggetti vivi secondo l'istogramma delle classi della JVM (forza una GC completa)
+     */
+    private static long liveHeapBytes() throws Exception {
+        String istogramma = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[]{null}, new String[]{String[].class.getName()});
+        String[] righe = istogramma.trim().split("\\n");
+        String[] totale = righe[righe.length - 1].trim().split("\\s+"); // Total <istanze> <byte>
+        return Long.parseLong(totale[2]);
+    }
+
+    /**
+     * Confronta KeywordMatcher con la ricerca originale (toLowerCase + contains per ogni parola)
+     * su testi e liste di parole casuali, fino a 60 parole per query.
+     */
+    private static void testKeywordMatcher() throws TestException {
+        String[] alfabeto = {"a", "b", "A", "B", "c", " ", "é", "É", "@", "\uD801\uDC00", "\uD801\uDC28"}; // Deseret: maiuscola e minuscola fuori dal BMP
+        Random random = new Random(7);
+
+        // casi in cui la piegatura per carattere differisce volutamente da String.toLowerCase(): 'İ', sigma finale e locale turco
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            boolean ok = new KeywordMatcher(List.of("istanbul")).matches("İSTANBUL") && !"İSTANBUL".toLowerCase(Locale.ROOT).contains("istanbul")
+                    && new KeywordMatcher(List.of("οδοσ")).matches("ΟΔΟΣ") && !new KeywordMatcher(List.of("οδος")).matches("ΟΔΟΣ")
+                    && new KeywordMatcher(List.of("iki")).matches("IKI") && !"IKI".toLowerCase().contains("iki")
+                    && new KeywordMatcher(List.of("\uD801\uDC28")).matches("x\uD801\uDC00");
+            if(!ok) {
+                throw new TestException("TEST KEYWORDMATCHER> ERRORE: piegatura delle maiuscole diversa da quella documentata");
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+
+        for(int n = 0; n < 20_000; n++) {
+            List<String> parole = new ArrayList<>();
+            int quante = 1 + random.nextInt(60);
+            for(int w = 0; w < quante; w++) {
+                StringBuilder sb = new StringBuilder();
+                int len = 1 + random.nextInt(5);
+                for(int i = 0; i < len; i++) {
+                    sb.append(alfabeto[random.nextInt(alfabeto.length)]);
+                }
+                parole.add(sb.toString());
+            }
+            KeywordMatcher matcher = new KeywordMatcher(parole);
+
+            for(int t = 0; t < 5; t++) {
+                StringBuilder sb = new StringBuilder();
+                int len = random.nextInt(30);
+                for(int i = 0; i < len; i++) {
+                    sb.append(alfabeto[random.nextInt(alfabeto.length)]);
+                }
+                String testo = sb.toString();
+
+                boolean atteso = false;
+                for(String s : parole) {
+                    atteso |= testo.toLowerCase().contains(s.toLowerCase());
+                }
+                if(matcher.matches(testo) != atteso) {
+                    throw new TestException("TEST KEYWORDMATCHER> ERRORE: \"" + testo + "\" con " + parole);
+                }
+            }
+        }
+    }
+
+    /**
+     * Confronta MentionScanner con la regex di riferimento su testi casuali costruiti con
+     * i caratteri che toccano i casi limite della grammatica (maiuscole, '_', '.', '@' ripetute,
+     * lettere accentate, segni non spazianti, coppie surrogate).
+     */
+    private static void testMentionScanner() throws TestException {
+        Pattern mention = Pattern.compile(MentionScanner.REFERENCE_REGEX, Pattern.CASE_INSENSITIVE);
+        Pattern username = Pattern.compile("[A-Za-z0-9_.]+", Pattern.CASE_INSENSITIVE);
+        String[] alfabeto = {"@", "@", "a", "b", "Z", "0", "9", "_", ".", " ", "-", "#", "é", "\u0301", "\uD83D\uDE00", "K", "\u212A", "ı"};
+        Random random = new Random(42);
+
+        // i confini sono solo ASCII, con qualunque JDK: lettere accentate e segni non spazianti non sono "di parola".
+        // Cambiamento voluto: la regex originale (\B@...\b) con Java 17 non trovava menzioni in questi testi
+        String[][] confini = {{"caffè@leo", "leo"}, {"@leoè", "leo"}, {"ciao @leo\u0301", "leo"}, {"è@leo.", "leo"}};
+        for(String[] caso : confini) {
+            long m = MentionScanner.find(caso[0], 0);
+            if(m == MentionScanner.NOT_FOUND || !caso[0].substring(MentionScanner.start(m), MentionScanner.end(m)).equals(caso[1])
+                    || !mention.matcher(caso[0]).find()) {
+                throw new TestException("TEST MENTIONSCANNER> ERRORE: confine di parola non ASCII in \"" + caso[0] + "\"");
+            }
+        }
+
+        for(int n = 0; n < 200_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(40);
+            for(int i = 0; i < len; i++) {
+                sb.append(alfabeto[random.nextInt(alfabeto.length)]);
+            }
+            String testo = sb.toString();
+
+            Matcher matcher = mention.matcher(testo);
+            long m = MentionScanner.find(testo, 0);
+            while(matcher.find()) {
+                if(m == MentionScanner.NOT_FOUND || MentionScanner.start(m) != matcher.start() + 1 || MentionScanner.end(m) != matcher.end()) {
+                    throw new TestException("TEST MENTIONSCANNER> ERRORE: menzione diversa in \"" + testo + "\"");
+                }
+                m = MentionScanner.find(testo, MentionScanner.end(m));
+            }
+            if(m != MentionScanner.NOT_FOUND) {
+                throw new TestException("TEST MENTIONSCANNER> ERRORE: menzione in più in \"" + testo + "\"");
+            }
+
+            if(username.matcher(testo).matches() != MentionScanner.isValidUsername(testo)) {
+                throw new TestException("TEST MENTIONSCANNER> ERRORE: validazione diversa di \"" + testo + "\"");
+            }
+        }
+    }
+
+    /**
+     * Scorre a pagine writtenBy e containing dopo aver aggiunto i post in un ordine diverso da
+     * quello di creazione: ogni post deve comparire una volta sola, in ordine di (timestamp, id),
+     * anche su una rete divisa in shard. Infine controlla che le copie dello stesso post restino
+     * tutte distinte per Post.TIME_ORDER.
+     */
+    private static void testCursorPagination() throws Exception {
+        SocialNetwork rete = new SocialNetwork();
+        rete.initializeUser("leo", new HashSet<>());
+        rete.initializeUser("gemma", new HashSet<>());
+        List<Post> creati = new ArrayList<>();
+        for(int i = 0; i < 9; i++) {
+            creati.add(new Post(i % 3 == 0 ? "gemma" : "leo", "ciao numero " + i));
+        }
+        List<Post> mescolati = new ArrayList<>(creati);
+        Collections.shuffle(mescolati, new Random(5));
+        for(Post p : mescolati) {
+            rete.addPost(p);
+        }
+
+        List<Post> diLeo = new ArrayList<>();
+        List<Post> conCiao = new ArrayList<>();
+        for(List<Post> pagina = rete.writtenBy("leo", null, 2); !pagina.isEmpty(); pagina = rete.writtenBy("leo", pagina.get(pagina.size() - 1), 2)) {
+            diLeo.addAll(pagina);
+        }
+        for(List<Post> pagina = rete.containing(List.of("ciao"), null, 2); !pagina.isEmpty(); pagina = rete.containing(List.of("ciao"), pagina.get(pagina.size() - 1), 2)) {
+            conCiao.addAll(pagina);
+        }
+        List<Post> attesi = new ArrayList<>(creati);
+        attesi.removeIf(p -> !p.getAuthor().equals("leo"));
+
+        // le shard restituiscono le pagine nello stesso ordine, e l'unione le fonde su quell'ordine
+        ShardedSocialNetwork sharded = new ShardedSocialNetwork(3);
+        sharded.initializeUser("leo", null);
+        sharded.initializeUser("gemma", null);
+        for(Post p : mescolati) {
+            sharded.addPost(p);
+        }
+        List<Post> conCiaoShard = new ArrayList<>();
+        for(List<Post> pagina = sharded.containing(List.of("ciao"), null, 2); !pagina.isEmpty(); pagina = sharded.containing(List.of("ciao"), pagina.get(pagina.size() - 1), 2)) {
+            conCiaoShard.addAll(pagina);
+        }
+        if(!diLeo.equals(attesi) || !conCiao.equals(creati) || !conCiaoShard.equals(creati)) {
+            throw new TestException("TEST PAGINAZIONE> ERRORE: post persi o ripetuti fra le pagine");
+        }
+
+        // nessuna copia viene scartata da add né scambiata con un'altra da remove
+        NavigableSet<Post> copie = new TreeSet<>(Post.TIME_ORDER);
+        List<Post> tutte = new ArrayList<>();
+        for(int i = 0; i < 20_000; i++) {
+            Post copia = new Post(creati.get(0));
+            tutte.add(copia);
+            copie.add(copia);
+        }
+        boolean distinte = copie.size() == tutte.size();
+        for(Post copia : tutte) {
+            distinte &= copie.first() == copia && copie.remove(copia);
+        }
+        if(!distinte || !copie.isEmpty()) {
+            throw new TestException("TEST PAGINAZIONE> ERRORE: copie dello stesso post confuse da TIME_ORDER");
+        }
+    }
+
+    /**
+     * Avvia HttpApi su una porta libera di loopback e controlla l'instradamento dei metodi, i codici
+     * di errore (404 per metodi, utenti e post inesistenti, 400 per parametri mancanti o non validi,
+     * 409 per campi vuoti) e l'escape JSON di virgolette, barre, caratteri di controllo e surrogati.
+     */
+    private static void testHttpApi() throws Exception {
+        SafeSocialNetwork rete = new SafeSocialNetwork();
+        rete.enableMentionInboxes(8);
+        rete.initializeUser("leo", null);
+        rete.initializeUser("gemma", null);
+        HttpApi api = new HttpApi(rete, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        api.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String testo = "virgolette \" barra \\ a capo \n tab \t campanello \u0007 emoji \uD83D\uDE00 @gemma";
+            HttpResponse<String> aggiunto = httpGet(client, api, "addPost?author=leo&text=" + URLEncoder.encode(testo, StandardCharsets.UTF_8));
+            String atteso = "\"text\":\"virgolette \\\" barra \\\\ a capo \\n tab \\t campanello \\u0007 emoji \uD83D\uDE00 @gemma\"";
+            boolean ok = aggiunto.statusCode() == 200 && aggiunto.body().contains(atteso)
+                    && aggiunto.headers().firstValue("Content-Type").orElse("").startsWith("application/json");
+            int id = rete.writtenBy("leo").get(0).getId();
+
+            ok &= httpGet(client, api, "writtenBy?user=leo").body().equals("[" + aggiunto.body() + "]");
+            ok &= httpGet(client, api, "unreadMentions?user=gemma").body().equals("[" + id + "]");
+            ok &= httpGet(client, api, "markRead?user=gemma&id=" + id).statusCode() == 200
+                    && httpGet(client, api, "unreadMentions?user=gemma").body().equals("[]");
+
+            int[][] casi = {
+                    {404, httpGet(client, api, "nonEsiste").statusCode()},
+                    {404, httpGet(client, api, "unreadMentions?user=nessuno").statusCode()},
+                    {404, httpGet(client, api, "getReports?id=" + (id + 1_000_000)).statusCode()},
+                    {400, httpGet(client, api, "markRead?user=gemma").statusCode()},
+                    {400, httpGet(client, api, "markRead?user=gemma&id=abc").statusCode()},
+                    {400, httpGet(client, api, "deletePost").statusCode()},
+                    {400, httpGet(client, api, "reportPost?id=" + id + "&reason=scam_attempt").statusCode()},
+                    {409, httpGet(client, api, "addPost?author=leo&text=+++").statusCode()},
+            };
+            for(int[] caso : casi) {
+                ok &= caso[0] == caso[1];
+            }
+            ok &= httpGet(client, api, "nonEsiste").body().equals("{\"error\":\"NoSuchMethod\",\"message\":\"nonEsiste\"}");
+            if(!ok) {
+                throw new TestException("TEST HTTPAPI> ERRORE: risposta HTTP o codice di errore inatteso!");
+            }
+        } finally {
+            api.stop(0);
+        }
+
+        // i surrogati isolati non sono rappresentabili in UTF-8: diventano '?'
+        JsonWriter json = new JsonWriter(16);
+        json.beginArray().value("a\uD800b").value("\uDC00").value("\u0001\u001f\u00e8").endArray();
+        if(!json.toString().equals("[\"a?b\",\"?\",\"\\u0001\\u001f\u00e8\"]")) {
+            throw new TestException("TEST HTTPAPI> ERRORE: escape JSON non corretto: " + json);
+        }
+    }
+
+    /**
+     * Esegue una GET su un metodo di HttpApi (query già codificata)
+     */
+    private static HttpResponse<String> httpGet(HttpClient client, HttpApi api, String query) throws Exception {
+        URI uri = URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + api.getPort() + HttpApi.PREFIX + query);
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+}
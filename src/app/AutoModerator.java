@@ -0,0 +1,218 @@
+package app;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class AutoModerator implements ChangeEventHandler {
+    /*
+     *  OVERVIEW:
+     *      Moderazione automatica in background di un SafeSocialNetwork. Il moderatore è un
+     *      consumatore del ChangeEventBus della rete: per ogni segnalazione incrementa un contatore
+     *      per post e per motivo e, quando il contatore di un motivo raggiunge la soglia configurata,
+     *      mette il post fra quelli da rimuovere (una sola volta per post). Se una soglia viene
+     *      abbassata sotto il conteggio di un post, il post viene rimosso alla sua prossima segnalazione. Alla fine di ogni lotto di eventi i post da rimuovere
+     *      vengono passati (a gruppi di al massimo batchSize) a un thread separato che prende il
+     *      write lock della rete e li elimina con le loro segnalazioni in un solo passaggio.
+     *      Chi chiama reportPost non aspetta mai il moderatore: pubblica solo l'evento sul bus.
+     *      La rimozione avviene su un thread diverso dal consumatore perché pubblica a sua volta
+     *      eventi sul bus, e un consumatore non può attendere il proprio ring.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      <thresholds, counters, condemned, pending> dove:
+     *          thresholds[r] -> numero di segnalazioni con motivo r oltre cui il post viene rimosso
+     *          counters(postId)[r] -> segnalazioni con motivo r ricevute dal post postId
+     *          condemned -> id dei post già passati alla rimozione (non vengono accodati di nuovo)
+     *          pending -> id dei post che hanno superato una soglia e vanno rimossi
+     *
+     *  REPRESENTATION INVARIANT:
+     *      sn != null && thresholds.length == ReportReason.values().length &&
+     *      for each(t) in thresholds : t > 0 &&
+     *      pending è contenuto in condemned &&
+     *      counters, condemned e pending sono usati solo dal thread del consumatore
+     */
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final SafeSocialNetwork sn;
+    private final int batchSize;
+    private volatile int[] thresholds;
+
+    private final Map<Integer, int[]> counters = new HashMap<>();
+    private final Set<Integer> condemned = new HashSet<>();
+    private final List<Integer> pending = new ArrayList<>();
+
+    private final ExecutorService applier = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "auto-moderator-applier");
+        t.setDaemon(true);
+        return t;
+    });
+    private ChangeEventBus.Subscription subscription;
+
+    private final AtomicInteger queuedRemovals = new AtomicInteger();
+    private final AtomicLong removed = new AtomicLong();
+    private volatile long lagNanos;
+
+    /**
+     * Costruttore della classe AutoModerator (il moderatore non viene avviato)
+     * @param sn la rete da moderare (deve avere un bus degli eventi)
+     * @param thresholds soglia per ogni motivo di segnalazione (i motivi assenti non rimuovono mai)
+     * @param batchSize numero massimo di post rimossi per ogni acquisizione del write lock
+     */
+    public AutoModerator(SafeSocialNetwork sn, Map<ReportReason, Integer> thresholds, int batchSize) {
+        if(sn == null || thresholds == null) {
+            throw new NullPointerException();
+        }
+        if(batchSize < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.sn = sn;
+        this.batchSize = batchSize;
+        int[] soglie = new int[ReportReason.values().length];
+        Arrays.fill(soglie, Integer.MAX_VALUE);
+        this.thresholds = soglie;
+        for(Map.Entry<ReportReason, Integer> entry : thresholds.entrySet()) {
+            setThreshold(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Avvia il moderatore registrandolo come consumatore del bus della rete
+     * @throws IllegalStateException se la rete non ha un bus degli eventi
+     */
+    public synchronized void start() {
+        ChangeEventBus bus = sn.getEventBus();
+        if(bus == null) {
+            throw new IllegalStateException("La rete non ha un ChangeEventBus");
+        }
+        if(subscription == null) {
+            subscription = bus.subscribe("auto-moderator", this);
+        }
+    }
+
+    /**
+     * Ferma il moderatore (le rimozioni già accodate vengono completate)
+     */
+    public synchronized void stop() throws InterruptedException {
+        if(subscription != null) {
+            sn.getEventBus().unsubscribe(subscription);
+            subscription = null;
+        }
+        applier.shutdown();
+        applier.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Imposta la soglia di un motivo di segnalazione (i post che la superano già vengono rimossi
+     * alla loro prossima segnalazione)
+     * @param reason il motivo
+     * @param threshold numero di segnalazioni (con quel motivo) che fanno rimuovere il post
+     * @modifies this.thresholds
+     */
+    public void setThreshold(ReportReason reason, int threshold) {
+        if(reason == null) {
+            throw new NullPointerException();
+        }
+        if(threshold < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        synchronized(this) {
+            int[] soglie = thresholds.clone();
+            soglie[reason.ordinal()] = threshold;
+            thresholds = soglie;
+        }
+    }
+
+    /**
+     * Restituisce il numero di elementi in attesa: eventi pubblicati non ancora letti
+     * più post accodati per la rimozione non ancora rimossi
+     * @return la profondità della coda del moderatore
+     */
+    public long getQueueDepth() {
+        ChangeEventBus.Subscription s = subscription;
+        return (s != null ? s.getBacklog() : 0) + queuedRemovals.get();
+    }
+
+    /**
+     * Restituisce il ritardo fra la pubblicazione e la gestione dell'ultimo evento letto
+     * @return il ritardo di elaborazione in nanosecondi
+     */
+    public long getLagNanos() {
+        return lagNanos;
+    }
+
+    /**
+     * Restituisce il numero di post rimossi dal moderatore
+     * @return il numero di post rimossi
+     */
+    public long getRemovedCount() {
+        return removed.get();
+    }
+
+    /**
+     * Gestisce un evento del bus (chiamato dal thread del consumatore)
+     */
+    public void onEvent(ChangeEvent event, long sequence, boolean endOfBatch) {
+        switch(event.getType()) {
+            case post_reported:
+                int[] conteggi = counters.computeIfAbsent(event.getPostId(), k -> new int[ReportReason.values().length]);
+                int motivo = event.getReason().ordinal();
+                if(++conteggi[motivo] >= thresholds[motivo] && condemned.add(event.getPostId())) {
+                    pending.add(event.getPostId());
+                }
+                break;
+            case post_deleted:
+            case reported_post_removed:
+                counters.remove(event.getPostId());
+                condemned.remove(event.getPostId());
+                break;
+            default:
+                break;
+        }
+
+        if(endOfBatch) {
+            lagNanos = System.nanoTime() - event.getNanos();
+            flush();
+        }
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Passa i post da rimuovere al thread che li elimina, a gruppi di batchSize
+     */
+    private void flush() {
+        for(int i = 0; i < pending.size(); i += batchSize) {
+            List<Integer> lotto = new ArrayList<>(pending.subList(i, Math.min(i + batchSize, pending.size())));
+            queuedRemovals.addAndGet(lotto.size());
+            applier.execute(() -> apply(lotto));
+        }
+        pending.clear();
+    }
+
+    /**
+     * Rimuove un gruppo di post sotto il write lock della rete
+     * @param lotto gli id dei post da rimuovere
+     */
+    private void apply(List<Integer> lotto) {
+        Lock lock = sn.getLock().writeLock();
+        lock.lock();
+        try {
+            removed.addAndGet(sn.removePosts(lotto));
+        } finally {
+            lock.unlock();
+            queuedRemovals.addAndGet(-lotto.size());
+        }
+    }
+}
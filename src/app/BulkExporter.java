@@ -0,0 +1,237 @@
+package app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class BulkExporter {
+    /*
+     *  OVERVIEW:
+     *      Scrive una SafeSocialNetwork in un file JSONL o CSV (vedi DumpFormat) che BulkImporter
+     *      sa rileggere: prima gli utenti, poi i seguiti, i post in memoria nell'ordine di ps e
+     *      infine le segnalazioni dei post scritti. Il write lock non serve: si prende uno snapshot
+     *      (O(1), sotto il read lock) e lo si scrive senza lock mentre la rete continua a cambiare.
+     *      I record vengono codificati in un buffer (JsonWriter per JSONL) che viene scaricato sul
+     *      FileChannel ogni BUFFER_SIZE byte, senza tenere il file in memoria. I post spostati su
+     *      disco (enableColdStorage) non fanno parte dello snapshot e non vengono scritti; le
+     *      segnalazioni stimate di un post virale (vedi PostReports) diventano segnalazioni anonime.
+     */
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private BulkExporter() {
+    }
+
+    /**
+     * Scrive la rete nel file, con il formato deciso dall'estensione (vedi DumpFormat.of)
+     * @param sn la rete
+     * @param file il file da scrivere (sovrascritto se esiste)
+     * @return il numero di record scritti
+     * @throws IOException se la scrittura fallisce
+     */
+    public static long exportFile(SafeSocialNetwork sn, Path file) throws IOException {
+        return exportFile(sn, file, DumpFormat.of(file));
+    }
+
+    /**
+     * Scrive la rete nel file
+     * @param sn la rete
+     * @param file il file da scrivere (sovrascritto se esiste)
+     * @param format il formato del file
+     * @return il numero di record scritti
+     * @throws IOException se la scrittura fallisce
+     */
+    public static long exportFile(SafeSocialNetwork sn, Path file, DumpFormat format) throws IOException {
+        Snapshot s;
+        Lock lock = sn.getLock().readLock();
+        lock.lock();
+        try {
+            s = sn.snapshot();
+        } finally {
+            lock.unlock();
+        }
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            OutputStream out = Channels.newOutputStream(channel)) {
+            Records records = new Records(format, out);
+            Map<String, Set<String>> followed = s.getFollowed();
+            for(String utente : followed.keySet()) {
+                records.user(utente);
+            }
+            for(Map.Entry<String, Set<String>> entry : followed.entrySet()) {
+                if(entry.getValue() != null) {
+                    for(String seguito : entry.getValue()) {
+                        records.follow(entry.getKey(), seguito);
+                    }
+                }
+            }
+            List<Post> ps = s.getPosts();
+            for(Post p : ps) {
+                records.post(p);
+            }
+            Map<Integer, PostReports> rp = s.getReports();
+            if(!rp.isEmpty()) {
+                try {
+                    for(Post p : ps) {
+                        PostReports r = rp.get(p.getId());
+                        if(r != null) {
+                            r.forEachReport((reporter, reason, text) -> records.report(p.getId(), reporter, reason, text));
+                        }
+                    }
+                } catch(UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            records.flush();
+            return records.count;
+        }
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Codifica dei record nel formato scelto, scaricata su out ogni BUFFER_SIZE byte
+     */
+    private static final class Records {
+        private final DumpFormat format;
+        private final OutputStream out;
+        private final JsonWriter json = new JsonWriter(BUFFER_SIZE + BUFFER_SIZE / 4);
+        private final StringBuilder csv = new StringBuilder(BUFFER_SIZE + BUFFER_SIZE / 4);
+        private long count;
+
+        Records(DumpFormat format, OutputStream out) {
+            this.format = format;
+            this.out = out;
+        }
+
+        void user(String name) throws IOException {
+            if(format == DumpFormat.JSONL) {
+                json.beginObject().name("type").value("user").name("name").value(name).endObject();
+            } else {
+                csv.append("user,");
+                field(name);
+            }
+            end();
+        }
+
+        void follow(String user, String followed) throws IOException {
+            if(format == DumpFormat.JSONL) {
+                json.beginObject().name("type").value("follow").name("user").value(user).name("followed").value(followed).endObject();
+            } else {
+                csv.append("follow,");
+                field(user);
+                csv.append(',');
+                field(followed);
+            }
+            end();
+        }
+
+        void post(Post p) throws IOException {
+            if(format == DumpFormat.JSONL) {
+                json.beginObject().name("type").value("post")
+                        .name("id").value(p.getId())
+                        .name("author").value(p.getAuthor())
+                        .name("text").value(p.getText())
+                        .name("timestamp").value(p.getTimestamp())
+                        .endObject();
+            } else {
+                csv.append("post,").append(p.getId()).append(',');
+                field(p.getAuthor());
+                csv.append(',').append(p.getTimestamp()).append(',');
+                field(p.getText());
+            }
+            end();
+        }
+
+        /**
+         * Scrive una segnalazione (chiamato da PostReports.forEachReport, quindi senza eccezioni controllate)
+         */
+        void report(int postId, String reporter, ReportReason reason, String text) {
+            if(format == DumpFormat.JSONL) {
+                json.beginObject().name("type").value("report")
+                        .name("post").value(postId)
+                        .name("reporter").value(reporter)
+                        .name("reason").value(reason.name())
+                        .name("text").value(text)
+                        .endObject();
+            } else {
+                csv.append("report,").append(postId).append(',');
+                field(reporter);
+                csv.append(',').append(reason.name()).append(',');
+                field(text);
+            }
+            try {
+                end();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void flush() throws IOException {
+            if(format == DumpFormat.JSONL) {
+                json.writeTo(out);
+                json.reset();
+            } else {
+                out.write(csv.toString().getBytes(StandardCharsets.UTF_8));
+                csv.setLength(0);
+            }
+        }
+
+        private void end() throws IOException {
+            count++;
+            if(format == DumpFormat.JSONL) {
+                json.newline();
+                if(json.size() >= BUFFER_SIZE) {
+                    flush();
+                }
+            } else {
+                csv.append('\n');
+                if(csv.length() >= BUFFER_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Scrive un campo CSV, fra virgolette se contiene separatori o è la stringa vuota
+         * (il campo vuoto senza virgolette è null)
+         */
+        private void field(String s) {
+            if(s == null) {
+                return;
+            }
+            boolean virgolette = s.isEmpty();
+            for(int i = 0; i < s.length() && !virgolette; i++) {
+                char c = s.charAt(i);
+                virgolette = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if(!virgolette) {
+                csv.append(s);
+                return;
+            }
+            csv.append('"');
+            for(int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if(c == '"') {
+                    csv.append('"');
+                }
+                csv.append(c);
+            }
+            csv.append('"');
+        }
+    }
+}
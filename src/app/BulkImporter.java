@@ -0,0 +1,309 @@
+package app;
+
+import exception.InvalidUsernameException;
+import exception.UserNotFoundException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class BulkImporter {
+    /*
+     *  OVERVIEW:
+     *      Carica in una SafeSocialNetwork utenti, seguiti, post e segnalazioni da un file JSONL o CSV
+     *      (vedi DumpFormat). Il file viene mappato in memoria a pezzi di CHUNK_SIZE byte, tagliati a
+     *      fine record; ogni pezzo viene letto da un DumpParser sul ForkJoinPool comune, mentre il
+     *      thread chiamante applica alla rete, nell'ordine del file, i pezzi già letti: uno per volta,
+     *      ognuno sotto un'unica acquisizione del write lock della rete (getLock()), così chi legge
+     *      può procedere fra un pezzo e l'altro. I post consecutivi di un pezzo entrano in ps con
+     *      una sola nuova versione. Al più MAX_IN_FLIGHT pezzi sono letti e non ancora applicati.
+     *      I record vanno in ordine di dipendenza (l'utente prima dei suoi seguiti, il post prima
+     *      delle sue segnalazioni), come li scrive BulkExporter. Un record non valido interrompe il
+     *      caricamento con una IOException che ne indica la posizione; i record precedenti restano
+     *      applicati. I post mantengono id e timestamp (Post.restore) e non vengono segnalati come
+     *      copie (le segnalazioni sono nel file); un post con l'id di un post già presente nella rete
+     *      (in memoria o su disco) o già letto dal file è un record non valido.
+     */
+
+    // dimensione dei pezzi letti da un parser (un record più lungo allarga il pezzo)
+    static final int CHUNK_SIZE = 8 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+    private static final int MAX_IN_FLIGHT = ForkJoinPool.getCommonPoolParallelism() + 2;
+
+    private BulkImporter() {
+    }
+
+    /**
+     * Carica il file nella rete, con il formato deciso dall'estensione (vedi DumpFormat.of)
+     * @param sn la rete
+     * @param file il file da leggere
+     * @return il numero di record caricati
+     * @throws IOException se il file non è leggibile o contiene un record non valido
+     */
+    public static long importFile(SafeSocialNetwork sn, Path file) throws IOException {
+        return importFile(sn, file, DumpFormat.of(file));
+    }
+
+    /**
+     * Carica il file nella rete
+     * @param sn la rete
+     * @param file il file da leggere
+     * @param format il formato del file
+     * @return il numero di record caricati
+     * @throws IOException se il file non è leggibile o contiene un record non valido
+     * @modifies sn
+     */
+    public static long importFile(SafeSocialNetwork sn, Path file, DumpFormat format) throws IOException {
+        ArrayDeque<Future<DumpParser>> inCorso = new ArrayDeque<>();
+        PostIndex indice = new PostIndex(sn);
+        long records = 0;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = 0;
+            while(pos < size || !inCorso.isEmpty()) {
+                while(pos < size && inCorso.size() < MAX_IN_FLIGHT) {
+                    ByteBuffer pezzo = nextChunk(channel, pos, size, format, file);
+                    long base = pos;
+                    inCorso.add(ForkJoinPool.commonPool().submit(() -> new DumpParser(format, pezzo, base, file).parse()));
+                    pos += pezzo.limit();
+                }
+                records += apply(sn, await(inCorso.poll()), indice);
+            }
+        } finally {
+            for(Future<DumpParser> f : inCorso) {
+                f.cancel(false);
+            }
+        }
+        return records;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Mappa il pezzo che inizia in pos, fino alla fine dell'ultimo record completo
+     */
+    private static ByteBuffer nextChunk(FileChannel channel, long pos, long size, DumpFormat format, Path file) throws IOException {
+        for(long finestra = CHUNK_SIZE; ; finestra *= 2) {
+            long n = Math.min(finestra, size - pos);
+            ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, pos, n);
+            int fine = pos + n == size ? (int) n : lastRecordEnd(b, format);
+            if(fine > 0) {
+                return b.limit(fine);
+            }
+            if(finestra >= MAX_CHUNK_SIZE) {
+                throw new IOException("Record più lungo di " + MAX_CHUNK_SIZE + " byte alla posizione " + pos + " di " + file);
+            }
+        }
+    }
+
+    /**
+     * Restituisce la posizione che segue l'ultimo fine riga di b fuori dalle virgolette (0 se non
+     * c'è): in JSONL un a capo non compare mai in una stringa, in CSV sì
+     */
+    private static int lastRecordEnd(ByteBuffer b, DumpFormat format) {
+        if(format == DumpFormat.JSONL) {
+            for(int i = b.limit() - 1; i >= 0; i--) {
+                if(b.get(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+        boolean virgolette = false; // il pezzo inizia a fine record, quindi fuori dalle virgolette
+        int ultimo = 0;
+        for(int i = 0, n = b.limit(); i < n; i++) {
+            byte c = b.get(i);
+            if(c == '"') {
+                virgolette = !virgolette;
+            } else if(c == '\n' && !virgolette) {
+                ultimo = i + 1;
+            }
+        }
+        return ultimo;
+    }
+
+    private static DumpParser await(Future<DumpParser> f) throws IOException {
+        try {
+            return f.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Applica alla rete i record di un pezzo, sotto il write lock
+     * @return il numero di record applicati
+     * @throws IOException se un record del pezzo non è valido (quelli che lo precedono vengono applicati)
+     */
+    private static int apply(SafeSocialNetwork sn, DumpParser batch, PostIndex indice) throws IOException {
+        Lock lock = sn.getLock().writeLock();
+        lock.lock();
+        List<Post> nuovi = new ArrayList<>();
+        try {
+            indice.refresh();
+            for(int i = 0; i < batch.size(); i++) {
+                byte tipo = batch.kind(i);
+                if(tipo == DumpParser.POST) {
+                    if(indice.get(batch.postId(i)) != null) {
+                        throw batch.error(i, "il post " + batch.postId(i) + " esiste già");
+                    }
+                    Post p = Post.restore(batch.postId(i), batch.first(i), batch.second(i), batch.timestamp(i)); // ultimo: fa avanzare i contatori
+                    indice.add(p);
+                    nuovi.add(p); // come addPost, l'autore non deve per forza essere un utente
+                    continue;
+                }
+                flush(sn, nuovi, indice);
+                if(tipo == DumpParser.USER) {
+                    String utente = batch.first(i);
+                    try {
+                        if(!SocialNetwork.validateUsername(utente)) {
+                            throw new InvalidUsernameException();
+                        }
+                        sn.initializeUser(utente, null);
+                    } catch(InvalidUsernameException e) {
+                        throw batch.error(i, "nome utente non valido: " + utente);
+                    }
+                } else if(tipo == DumpParser.FOLLOW) {
+                    try {
+                        sn.addFollower(batch.first(i), batch.second(i));
+                    } catch(UserNotFoundException e) {
+                        throw batch.error(i, "l'utente " + batch.first(i) + " non esiste");
+                    }
+                } else {
+                    Post p = indice.get(batch.postId(i));
+                    String reporter = batch.first(i);
+                    if(p == null) {
+                        throw batch.error(i, "il post " + batch.postId(i) + " non esiste");
+                    }
+                    if(reporter != null && !sn.checkUser(reporter)) {
+                        throw batch.error(i, "l'utente " + reporter + " non esiste");
+                    }
+                    sn.restoreReport(p, reporter, batch.reason(i), batch.second(i));
+                }
+            }
+            if(batch.failure() != null) {
+                throw batch.failure();
+            }
+        } finally {
+            try {
+                flush(sn, nuovi, indice); // anche i post che precedono un record non valido
+            } finally {
+                lock.unlock();
+            }
+        }
+        return batch.size();
+    }
+
+    private static void flush(SafeSocialNetwork sn, List<Post> nuovi, PostIndex indice) {
+        if(nuovi.isEmpty()) {
+            return;
+        }
+        sn.restorePosts(nuovi);
+        indice.synced();
+        nuovi.clear();
+    }
+
+    /**
+     * Indice id -> post per riconoscere gli id ripetuti e risolvere le segnalazioni (indirizzamento
+     * aperto su array di int, senza boxing). Viene costruito al primo post o alla prima segnalazione
+     * dai post in memoria della rete e poi aggiornato con i post letti; gli id che non trova li
+     * cerca su disco. Se fra un pezzo e l'altro altri modificano i post della rete (la versione dei
+     * post cambia) viene ricostruito.
+     */
+    private static final class PostIndex {
+        private final SafeSocialNetwork sn;
+        private int[] ids;
+        private Post[] posts;
+        private int size;
+        // versione dei post della rete a cui corrisponde l'indice
+        private long version;
+
+        PostIndex(SafeSocialNetwork sn) {
+            this.sn = sn;
+        }
+
+        Post get(int id) {
+            if(posts == null) {
+                ids = new int[1024];
+                posts = new Post[1024];
+                size = 0;
+                for(Post p : sn.ps) {
+                    add(p);
+                }
+                version = sn.getPostsVersion();
+            }
+            for(int i = slot(id); posts[i] != null; i = (i + 1) & (ids.length - 1)) {
+                if(ids[i] == id) {
+                    return posts[i];
+                }
+            }
+            return sn.findColdPost(id);
+        }
+
+        /**
+         * Scarta l'indice se altri hanno modificato i post della rete (da chiamare sotto il write lock)
+         */
+        void refresh() {
+            if(posts != null && sn.getPostsVersion() != version) {
+                posts = null;
+                ids = null;
+            }
+        }
+
+        /**
+         * Segna che la rete contiene i post aggiunti all'indice (dopo restorePosts)
+         */
+        void synced() {
+            version = sn.getPostsVersion();
+        }
+
+        void add(Post p) {
+            if(posts == null) {
+                return;
+            }
+            if(2 * (size + 1) > ids.length) {
+                Post[] vecchi = posts;
+                ids = new int[vecchi.length * 2];
+                posts = new Post[vecchi.length * 2];
+                size = 0;
+                for(Post q : vecchi) {
+                    if(q != null) {
+                        add(q);
+                    }
+                }
+            }
+            int i = slot(p.getId());
+            while(posts[i] != null && ids[i] != p.getId()) {
+                i = (i + 1) & (ids.length - 1);
+            }
+            if(posts[i] == null) {
+                size++;
+            }
+            ids[i] = p.getId();
+            posts[i] = p;
+        }
+
+        private int slot(int id) {
+            int h = id * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (ids.length - 1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package app;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class ChangeEvent {
+    /*
+     *  OVERVIEW:
+     *      Evento di modifica della rete sociale. Gli oggetti ChangeEvent sono preallocati
+     *      nel ring buffer del ChangeEventBus e riutilizzati a ogni giro: il produttore li
+     *      sovrascrive, i consumatori li leggono senza modificarli. I campi non pertinenti
+     *      al tipo di evento valgono null (o -1 per postId).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      <type, user, target, post, postId, reason, text, nanos, millis> dove:
+     *          type -> tipo di modifica
+     *          user -> utente che ha eseguito l'azione (autore del post, utente che segue)
+     *          target -> utente seguito/non più seguito, autore della segnalazione (null se anonima)
+     *          post -> il post aggiunto/rimosso/segnalato
+     *          postId -> id del post coinvolto
+     *          reason, text -> motivo (ed eventuale testo custom) della segnalazione
+     *          nanos, millis -> istante di pubblicazione (System.nanoTime e currentTimeMillis)
+     *
+     *  REPRESENTATION INVARIANT:
+     *      type != null dopo la prima pubblicazione
+     */
+
+    private ChangeEventType type;
+    private String user;
+    private String target;
+    private Post post;
+    private int postId = -1;
+    private ReportReason reason;
+    private String text;
+    private long nanos;
+    private long millis;
+
+    ChangeEvent() {
+    }
+
+    /**
+     * Sovrascrive l'evento con i nuovi dati (usato solo dal produttore)
+     */
+    void set(ChangeEventType type, String user, String target, Post post, ReportReason reason, String text) {
+        this.type = type;
+        this.user = user;
+        this.target = target;
+        this.post = post;
+        this.postId = post != null ? post.getId() : -1;
+        this.reason = reason;
+        this.text = text;
+        this.nanos = System.nanoTime();
+        this.millis = System.currentTimeMillis();
+    }
+
+    public ChangeEventType getType() {
+        return type;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public Post getPost() {
+        return post;
+    }
+
+    public int getPostId() {
+        return postId;
+    }
+
+    public ReportReason getReason() {
+        return reason;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Istante di pubblicazione secondo System.nanoTime (per misurare la latenza nello stesso processo)
+     * @return nanoTime della pubblicazione
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Istante di pubblicazione secondo System.currentTimeMillis
+     * @return millisecondi della pubblicazione
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Restituisce una stringa per mostrare l'evento
+     * @return evento formato visualizzabile
+     */
+    public String toString() {
+        return "ChangeEvent{" +
+                "type=" + type +
+                ", user='" + user + '\'' +
+                ", target='" + target + '\'' +
+                ", postId=" + postId +
+                ", reason=" + reason +
+                ", text='" + text + '\'' +
+                '}';
+    }
+}
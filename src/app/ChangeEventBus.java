@@ -0,0 +1,222 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class ChangeEventBus {
+    /*
+     *  OVERVIEW:
+     *      Bus degli eventi di modifica della rete sociale, sul modello del Disruptor LMAX.
+     *      Gli eventi vivono in un ring buffer preallocato di dimensione potenza di 2 e vengono
+     *      riutilizzati: pubblicare un evento significa sovrascrivere uno slot e avanzare il
+     *      cursore con una scrittura ordinata, senza lock né allocazioni.
+     *      Il produttore è unico: le modifiche della rete devono essere serializzate (per esempio
+     *      sotto il write lock della rete). Ogni consumatore gira su un proprio thread con una
+     *      propria sequenza; il produttore non sovrascrive uno slot finché il consumatore più
+     *      lento non lo ha letto (se il ring è pieno il produttore attende).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      <ring, cursor, consumers> dove:
+     *          ring[s & mask] -> evento con sequenza s, per cursor - size < s <= cursor
+     *          cursor -> sequenza dell'ultimo evento pubblicato (-1 se nessuno)
+     *          consumers -> sequenze dell'ultimo evento letto da ogni consumatore
+     *
+     *  REPRESENTATION INVARIANT:
+     *      ring.length è potenza di 2 && mask == ring.length - 1 &&
+     *      for each(c) in consumers : cursor - ring.length < c.sequence <= cursor
+     */
+
+    private final ChangeEvent[] ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong(-1);
+
+    private volatile Subscription[] consumers = new Subscription[0];
+    private long cachedGating = -1; // minimo delle sequenze dei consumatori (letto solo dal produttore)
+
+    /**
+     * Costruttore della classe ChangeEventBus.
+     * @param size numero di slot del ring buffer (viene arrotondato alla potenza di 2 successiva)
+     */
+    public ChangeEventBus(int size) {
+        if(size < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = Integer.highestOneBit(size - 1) << 1;
+        ring = new ChangeEvent[Math.max(n, 1)];
+        for(int i = 0; i < ring.length; i++) {
+            ring[i] = new ChangeEvent();
+        }
+        mask = ring.length - 1;
+    }
+
+    /**
+     * Pubblica un evento (un solo thread alla volta)
+     * @param type tipo di modifica
+     * @param user utente che ha eseguito l'azione
+     * @param target utente seguito (o null)
+     * @param post post coinvolto (o null)
+     * @param reason motivo della segnalazione (o null)
+     * @param text testo custom della segnalazione (o null)
+     * @modifies this.ring, this.cursor
+     */
+    public void publish(ChangeEventType type, String user, String target, Post post, ReportReason reason, String text) {
+        long seq = cursor.get() + 1;
+        long wrap = seq - ring.length;
+        if(wrap > cachedGating) {
+            long min;
+            int spins = 0;
+            while(wrap > (min = minimumSequence(seq - 1))) {
+                if(++spins < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            cachedGating = min;
+        }
+
+        ring[(int) seq & mask].set(type, user, target, post, reason, text);
+        cursor.lazySet(seq); // store-release: i consumatori vedono l'evento completo
+    }
+
+    /**
+     * Restituisce la sequenza dell'ultimo evento pubblicato
+     * @return la sequenza dell'ultimo evento (-1 se nessuno)
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * Restituisce la dimensione del ring buffer
+     * @return il numero di slot
+     */
+    public int getSize() {
+        return ring.length;
+    }
+
+    /**
+     * Registra un consumatore e avvia il suo thread. Il consumatore riceve gli eventi
+     * pubblicati dopo la registrazione.
+     * @param name nome del thread del consumatore
+     * @param handler il gestore degli eventi
+     * @return la sottoscrizione (per fermarla o leggerne la sequenza)
+     */
+    public Subscription subscribe(String name, ChangeEventHandler handler) {
+        if(handler == null) {
+            throw new NullPointerException();
+        }
+
+        Subscription s = new Subscription(handler);
+        synchronized(this) {
+            s.sequence.set(cursor.get());
+            Subscription[] nuovi = Arrays.copyOf(consumers, consumers.length + 1);
+            nuovi[nuovi.length - 1] = s;
+            consumers = nuovi;
+        }
+        Thread t = new Thread(s, name);
+        t.setDaemon(true);
+        t.start();
+        return s;
+    }
+
+    /**
+     * Rimuove un consumatore (il suo thread termina)
+     * @param s la sottoscrizione da rimuovere
+     */
+    public synchronized void unsubscribe(Subscription s) {
+        s.running = false;
+        Subscription[] nuovi = new Subscription[consumers.length];
+        int n = 0;
+        for(Subscription c : consumers) {
+            if(c != s) {
+                nuovi[n++] = c;
+            }
+        }
+        consumers = Arrays.copyOf(nuovi, n);
+        LockSupport.unpark(s.thread);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private long minimumSequence(long def) {
+        long min = def;
+        for(Subscription s : consumers) {
+            min = Math.min(min, s.sequence.get());
+        }
+        return min;
+    }
+
+    public final class Subscription implements Runnable {
+        /*
+         *  OVERVIEW:
+         *      Consumatore del bus: legge gli eventi in ordine di sequenza su un proprio thread,
+         *      a lotti (tutti quelli disponibili), e pubblica la propria sequenza solo dopo averli
+         *      gestiti tutti. Se non ci sono eventi attende con spin, poi yield, poi park.
+         */
+
+        private final ChangeEventHandler handler;
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private volatile boolean running = true;
+        private volatile Thread thread;
+
+        private Subscription(ChangeEventHandler handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * Restituisce la sequenza dell'ultimo evento gestito
+         * @return la sequenza dell'ultimo evento gestito
+         */
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        /**
+         * Restituisce il numero di eventi pubblicati ma non ancora gestiti
+         * @return il numero di eventi in attesa
+         */
+        public long getBacklog() {
+            return cursor.get() - sequence.get();
+        }
+
+        /**
+         * Ciclo del consumatore
+         */
+        public void run() {
+            thread = Thread.currentThread();
+            long next = sequence.get() + 1;
+            int idle = 0;
+            while(running) {
+                long available = cursor.get();
+                if(available < next) {
+                    if(++idle < 100) {
+                        Thread.onSpinWait();
+                    } else if(idle < 200) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(50_000);
+                    }
+                    continue;
+                }
+
+                idle = 0;
+                for(; next <= available; next++) {
+                    try {
+                        handler.onEvent(ring[(int) next & mask], next, next == available);
+                    } catch(Exception e) {
+                        System.err.println("[ChangeEventBus] errore del consumatore " + thread.getName() + ": " + e);
+                    }
+                }
+                sequence.lazySet(available);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package app;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public interface ChangeEventHandler {
+    /**
+     * Riceve un evento pubblicato sul bus. L'oggetto event è riutilizzato dal bus: i dati
+     * che servono dopo la chiamata vanno copiati.
+     * @param event l'evento (valido solo durante la chiamata)
+     * @param sequence il numero di sequenza dell'evento
+     * @param endOfBatch true se è l'ultimo evento disponibile in questo momento
+     */
+    void onEvent(ChangeEvent event, long sequence, boolean endOfBatch) throws Exception;
+}
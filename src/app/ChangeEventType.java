@@ -0,0 +1,18 @@
+package app;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+/**
+ * Enum ChangeEventType contiene tutti i tipi di modifica della rete sociale che vengono
+ * pubblicati sul ChangeEventBus.
+ */
+public enum ChangeEventType {
+    user_initialized,
+    follower_added,
+    follower_removed,
+    post_added,
+    post_deleted,
+    post_reported,
+    reported_post_removed,
+    user_deleted
+}
@@ -0,0 +1,368 @@
+package app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class ColdSegment implements Closeable {
+    /*
+     *  OVERVIEW:
+     *      File immutabile con un gruppo di post spostati su disco da ColdStorage. I post sono divisi
+     *      in blocchi di al più BLOCK_SIZE post, ognuno compresso con Deflater; in fondo al file ci
+     *      sono l'indice sparso (per ogni blocco posizione, lunghezze, intervallo di id e di timestamp)
+     *      e un filtro di Bloom degli autori. Indice e filtro restano in memoria, i blocchi vengono
+     *      letti e decompressi solo quando un'interrogazione non li può escludere.
+     *      Formato:
+     *          [blocco compresso]*  [int blocchi] ([long posizione][int compresso][int originale]
+     *          [int post][int minId][int maxId][long minTs][long maxTs])*  [int parole][long]* [int hash]
+     *          [int post]  [long posizione dell'indice][int MAGIC]
+     *      Un post nel blocco è [int id][long timestamp][UTF autore][UTF testo].
+     *
+     *  ABSTRACTION FUNCTION:
+     *      insieme dei post memorizzati nei blocchi del file path
+     *
+     *  REPRESENTATION INVARIANT:
+     *      channel aperto su path && tutti gli array dell'indice hanno lunghezza blocks &&
+     *      bloom.length è potenza di 2 && ogni autore dei post del file è nel filtro
+     */
+
+    static final int BLOCK_SIZE = 256;
+    private static final int MAGIC = 0x50434C44; // "PCLD"
+    private static final int BITS_PER_AUTHOR = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int posts;
+
+    private final int blocks;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final int[] minIds, maxIds;
+    private int minId = Integer.MAX_VALUE, maxId = Integer.MIN_VALUE;
+    private final long[] minTimestamps, maxTimestamps;
+
+    private final long[] bloom;
+    private final int bloomHashes;
+
+    /**
+     * Scrive un nuovo segmento con i post indicati (nell'ordine della lista) e lo apre
+     * @param path il file da creare (non deve esistere)
+     * @param ps i post da scrivere (almeno uno)
+     * @return il segmento aperto
+     * @throws IOException se la scrittura fallisce
+     */
+    static ColdSegment write(Path path, List<Post> ps) throws IOException {
+        int blocchi = (ps.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long[] filtro = new long[bloomWords(ps.size())];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream grezzo = new ByteArrayOutputStream();
+        byte[] compresso = new byte[64 * 1024];
+
+        try(FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)))) {
+            ByteArrayOutputStream indice = new ByteArrayOutputStream();
+            DataOutputStream idx = new DataOutputStream(indice);
+            idx.writeInt(blocchi);
+            long posizione = 0;
+
+            for(int b = 0; b < blocchi; b++) {
+                List<Post> blocco = ps.subList(b * BLOCK_SIZE, Math.min((b + 1) * BLOCK_SIZE, ps.size()));
+                grezzo.reset();
+                DataOutputStream dati = new DataOutputStream(grezzo);
+                int minId = Integer.MAX_VALUE, maxId = Integer.MIN_VALUE;
+                long minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE;
+                for(Post p : blocco) {
+                    dati.writeInt(p.getId());
+                    dati.writeLong(p.getTimestamp());
+                    dati.writeUTF(p.getAuthor());
+                    dati.writeUTF(p.getText());
+                    minId = Math.min(minId, p.getId());
+                    maxId = Math.max(maxId, p.getId());
+                    minTs = Math.min(minTs, p.getTimestamp());
+                    maxTs = Math.max(maxTs, p.getTimestamp());
+                    bloomAdd(filtro, BLOOM_HASHES, p.getAuthor());
+                }
+
+                deflater.reset();
+                deflater.setInput(grezzo.toByteArray());
+                deflater.finish();
+                int lunghezza = 0;
+                while(!deflater.finished()) {
+                    int n = deflater.deflate(compresso);
+                    file.write(compresso, 0, n);
+                    lunghezza += n;
+                }
+
+                idx.writeLong(posizione);
+                idx.writeInt(lunghezza);
+                idx.writeInt(grezzo.size());
+                idx.writeInt(blocco.size());
+                idx.writeInt(minId);
+                idx.writeInt(maxId);
+                idx.writeLong(minTs);
+                idx.writeLong(maxTs);
+                posizione += lunghezza;
+            }
+
+            idx.writeInt(filtro.length);
+            for(long w : filtro) {
+                idx.writeLong(w);
+            }
+            idx.writeInt(BLOOM_HASHES);
+            idx.writeInt(ps.size());
+
+            file.write(indice.toByteArray());
+            file.writeLong(posizione);
+            file.writeInt(MAGIC);
+        } finally {
+            deflater.end();
+        }
+        return open(path);
+    }
+
+    /**
+     * Apre un segmento esistente leggendone indice e filtro
+     * @param path il file del segmento
+     * @return il segmento aperto
+     * @throws IOException se il file non è leggibile o non è un segmento
+     */
+    static ColdSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer coda = ByteBuffer.allocate(12);
+            readFully(channel, coda, channel.size() - 12);
+            coda.flip();
+            long inizio = coda.getLong();
+            if(coda.getInt() != MAGIC) {
+                throw new IOException("Non è un segmento: " + path);
+            }
+            ByteBuffer indice = ByteBuffer.allocate((int) (channel.size() - 12 - inizio));
+            readFully(channel, indice, inizio);
+            indice.flip();
+            return new ColdSegment(path, channel, indice);
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ColdSegment(Path path, FileChannel channel, ByteBuffer indice) {
+        this.path = path;
+        this.channel = channel;
+        blocks = indice.getInt();
+        offsets = new long[blocks];
+        compressedLengths = new int[blocks];
+        rawLengths = new int[blocks];
+        minIds = new int[blocks];
+        maxIds = new int[blocks];
+        minTimestamps = new long[blocks];
+        maxTimestamps = new long[blocks];
+        for(int b = 0; b < blocks; b++) {
+            offsets[b] = indice.getLong();
+            compressedLengths[b] = indice.getInt();
+            rawLengths[b] = indice.getInt();
+            indice.getInt(); // post del blocco
+            minIds[b] = indice.getInt();
+            maxIds[b] = indice.getInt();
+            minTimestamps[b] = indice.getLong();
+            maxTimestamps[b] = indice.getLong();
+            minId = Math.min(minId, minIds[b]);
+            maxId = Math.max(maxId, maxIds[b]);
+        }
+        bloom = new long[indice.getInt()];
+        for(int i = 0; i < bloom.length; i++) {
+            bloom[i] = indice.getLong();
+        }
+        bloomHashes = indice.getInt();
+        posts = indice.getInt();
+    }
+
+    /**
+     * Restituisce il file del segmento
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Numero di post nel segmento
+     */
+    int size() {
+        return posts;
+    }
+
+    /**
+     * Verifica se il segmento può contenere post di author (false = sicuramente no)
+     */
+    boolean mightContainAuthor(String author) {
+        int h1 = mix(author.hashCode());
+        int h2 = mix(h1 ^ 0x5BD1E995) | 1;
+        int mask = bloom.length * 64 - 1;
+        for(int i = 0; i < bloomHashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se il segmento può contenere il post con l'id indicato (false = sicuramente no)
+     */
+    boolean mightContainId(int id) {
+        if(id < minId || id > maxId) {
+            return false;
+        }
+        for(int b = 0; b < blocks; b++) {
+            if(id >= minIds[b] && id <= maxIds[b]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Aggiunge a out, nell'ordine del segmento, i post che soddisfano filter
+     * @throws UncheckedIOException se la lettura del file fallisce
+     */
+    void scan(Predicate<Post> filter, List<Post> out) {
+        for(int b = 0; b < blocks; b++) {
+            readBlock(b, filter, out);
+        }
+    }
+
+    /**
+     * Aggiunge a out i post con timestamp in [from, to) che soddisfano filter, leggendo solo i
+     * blocchi il cui intervallo di timestamp interseca [from, to)
+     * @throws UncheckedIOException se la lettura del file fallisce
+     */
+    void scanBetween(long from, long to, Predicate<Post> filter, List<Post> out) {
+        for(int b = 0; b < blocks; b++) {
+            if(maxTimestamps[b] >= from && minTimestamps[b] < to) {
+                readBlock(b, p -> p.getTimestamp() >= from && p.getTimestamp() < to && filter.test(p), out);
+            }
+        }
+    }
+
+    /**
+     * Cerca il post con l'id indicato leggendo solo i blocchi il cui intervallo di id lo contiene
+     * @return il post (una nuova istanza con gli stessi campi) o null se non c'è
+     * @throws UncheckedIOException se la lettura del file fallisce
+     */
+    Post find(int id) {
+        List<Post> trovato = new ArrayList<>(1);
+        for(int b = 0; b < blocks && trovato.isEmpty(); b++) {
+            if(id >= minIds[b] && id <= maxIds[b]) {
+                readBlock(b, p -> p.getId() == id, trovato);
+            }
+        }
+        return trovato.isEmpty() ? null : trovato.get(0);
+    }
+
+    /**
+     * Memoria occupata in heap da indice e filtro
+     */
+    long estimatedBytes() {
+        return MemoryLayout.object(12, 12) + 4 * MemoryLayout.array(blocks, 8) + 4 * MemoryLayout.array(blocks, 4)
+                + MemoryLayout.array(bloom.length, 8);
+    }
+
+    /**
+     * Dimensione del file in byte
+     */
+    long fileSize() throws IOException {
+        return channel.size();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Legge e decomprime il blocco b, aggiungendo a out i post che soddisfano filter
+     */
+    private void readBlock(int b, Predicate<Post> filter, List<Post> out) {
+        byte[] grezzo = new byte[rawLengths[b]];
+        Inflater inflater = new Inflater();
+        try {
+            ByteBuffer compresso = ByteBuffer.allocate(compressedLengths[b]);
+            readFully(channel, compresso, offsets[b]);
+            inflater.setInput(compresso.array());
+            int letti = 0;
+            while(letti < grezzo.length) {
+                int n = inflater.inflate(grezzo, letti, grezzo.length - letti);
+                if(n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Blocco " + b + " troncato in " + path);
+                }
+                letti += n;
+            }
+
+            DataInputStream dati = new DataInputStream(new ByteArrayInputStream(grezzo));
+            while(dati.available() > 0) {
+                int id = dati.readInt();
+                long timestamp = dati.readLong();
+                String author = dati.readUTF();
+                String text = dati.readUTF();
+                Post p = Post.restore(id, author, text, timestamp);
+                if(filter.test(p)) {
+                    out.add(p);
+                }
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        } catch(DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Blocco " + b + " non valido in " + path, e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if(n < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static int bloomWords(int posts) {
+        // al più un autore per post: BITS_PER_AUTHOR bit per post, potenza di 2
+        long bit = Math.max(64, (long) posts * BITS_PER_AUTHOR);
+        return (int) (Long.highestOneBit(bit - 1) << 1) / 64;
+    }
+
+    private static void bloomAdd(long[] filtro, int hash, String author) {
+        int h1 = mix(author.hashCode());
+        int h2 = mix(h1 ^ 0x5BD1E995) | 1;
+        int mask = filtro.length * 64 - 1;
+        for(int i = 0; i < hash; i++) {
+            int bit = (h1 + i * h2) & mask;
+            filtro[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
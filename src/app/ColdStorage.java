@@ -0,0 +1,237 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Predicate;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class ColdStorage implements Closeable {
+    /*
+     *  OVERVIEW:
+     *      Livello freddo dei post di un SocialNetwork: i post più vecchi di maxAge vengono scritti
+     *      in segmenti immutabili (ColdSegment) nella directory indicata e tolti dallo heap. Le
+     *      interrogazioni leggono i segmenti in ordine di creazione, saltando quelli che il filtro
+     *      di Bloom degli autori o l'indice sparso di id/timestamp escludono.
+     *      I segmenti non si modificano: un post freddo eliminato viene aggiunto alle lapidi
+     *      (deleted), tenute in memoria, e non compare più nei risultati.
+     *      Non è sincronizzato: si usa sotto il lock della rete (write lock per add e delete).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      insieme dei post dei segmenti in segments con id non in deleted
+     *
+     *  REPRESENTATION INVARIANT:
+     *      directory != null && maxAge > 0 && segments != null && deleted != null &&
+     *      ogni id in deleted è l'id di un post di un segmento
+     */
+
+    static final String SEGMENT_SUFFIX = ".cold";
+
+    private final Path directory;
+    private final Duration maxAge;
+    private final List<ColdSegment> segments = new ArrayList<>();
+    private final Set<Integer> deleted = new HashSet<>();
+    private int nextSegment;
+
+    /**
+     * Costruttore della classe ColdStorage (i segmenti già presenti nella directory non vengono
+     * letti né sovrascritti)
+     * @param directory la directory dei segmenti (creata se non esiste)
+     * @param maxAge età oltre cui un post va spostato su disco
+     * @throws IOException se la directory non può essere creata
+     */
+    ColdStorage(Path directory, Duration maxAge) throws IOException {
+        if(directory == null || maxAge == null) {
+            throw new NullPointerException();
+        }
+        if(maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException();
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.maxAge = maxAge;
+        try(DirectoryStream<Path> esistenti = Files.newDirectoryStream(directory, "segment-*" + SEGMENT_SUFFIX)) {
+            for(Path p : esistenti) {
+                String nome = p.getFileName().toString();
+                try {
+                    nextSegment = Math.max(nextSegment, 1 + Integer.parseInt(nome.substring(8, nome.length() - SEGMENT_SUFFIX.length())));
+                } catch(NumberFormatException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce il timestamp sotto cui un post va spostato su disco
+     * @return adesso - maxAge, in microsecondi dall'epoch
+     */
+    long cutoff() {
+        Instant limite = Instant.now().minus(maxAge);
+        return limite.getEpochSecond() * 1_000_000L + limite.getNano() / 1_000;
+    }
+
+    /**
+     * Scrive i post in un nuovo segmento
+     * @param ps i post da scrivere, nell'ordine in cui verranno restituiti dalle interrogazioni
+     * @throws IOException se la scrittura fallisce (in tal caso nessun post è stato aggiunto)
+     */
+    void add(List<Post> ps) throws IOException {
+        if(ps.isEmpty()) {
+            return;
+        }
+        Path file = directory.resolve(String.format("segment-%06d%s", nextSegment++, SEGMENT_SUFFIX));
+        try {
+            segments.add(ColdSegment.write(file, ps));
+        } catch(IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Restituisce i post di author, saltando i segmenti il cui filtro di Bloom lo esclude
+     */
+    List<Post> writtenBy(String author) {
+        List<Post> lista = new ArrayList<>();
+        for(ColdSegment s : segments) {
+            if(s.mightContainAuthor(author)) {
+                s.scan(live(p -> p.getAuthor().equals(author)), lista);
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Restituisce i post che soddisfano filter (legge tutti i segmenti)
+     */
+    List<Post> matching(Predicate<Post> filter) {
+        List<Post> lista = new ArrayList<>();
+        for(ColdSegment s : segments) {
+            s.scan(live(filter), lista);
+        }
+        return lista;
+    }
+
+    /**
+     * Restituisce i post con timestamp in [from, to) che soddisfano filter, in ordine di tempo
+     * (legge solo i blocchi il cui intervallo di timestamp interseca [from, to))
+     */
+    List<Post> between(long from, long to, Predicate<Post> filter) {
+        List<Post> lista = new ArrayList<>();
+        for(ColdSegment s : segments) {
+            s.scanBetween(from, to, live(filter), lista);
+        }
+        lista.sort(Post.TIME_ORDER);
+        return lista;
+    }
+
+    /**
+     * Cerca un post per id, leggendo solo i blocchi il cui intervallo di id lo contiene
+     * @return il post o null se non c'è (o è stato eliminato)
+     */
+    Post find(int id) {
+        if(deleted.contains(id)) {
+            return null;
+        }
+        for(ColdSegment s : segments) {
+            if(s.mightContainId(id)) {
+                Post p = s.find(id);
+                if(p != null) {
+                    return p;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Verifica se il post è su disco (stessi id, autore, testo e timestamp)
+     */
+    boolean contains(Post post) {
+        Post p = find(post.getId());
+        return p != null && p.getTimestamp() == post.getTimestamp()
+                && p.getAuthor().equals(post.getAuthor()) && p.getText().equals(post.getText());
+    }
+
+    /**
+     * Elimina un post freddo aggiungendolo alle lapidi
+     * @return il post eliminato, o null se non era su disco
+     */
+    Post delete(int id) {
+        Post p = find(id);
+        if(p != null) {
+            deleted.add(id);
+        }
+        return p;
+    }
+
+    /**
+     * Numero di post su disco non eliminati
+     */
+    int size() {
+        int n = 0;
+        for(ColdSegment s : segments) {
+            n += s.size();
+        }
+        return n - deleted.size();
+    }
+
+    /**
+     * Numero di segmenti
+     */
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Memoria occupata in heap da indici, filtri e lapidi
+     */
+    long estimatedBytes() {
+        long n = MemoryLayout.object(5, 4) + MemoryLayout.arrayList(segments.size()) + MemoryLayout.hashSet(deleted.size())
+                + deleted.size() * MemoryLayout.object(0, 4);
+        for(ColdSegment s : segments) {
+            n += s.estimatedBytes();
+        }
+        return n;
+    }
+
+    /**
+     * Byte occupati su disco dai segmenti
+     */
+    long diskBytes() {
+        long n = 0;
+        for(ColdSegment s : segments) {
+            try {
+                n += s.fileSize();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Chiude i file dei segmenti (i file restano nella directory)
+     */
+    public void close() throws IOException {
+        for(ColdSegment s : segments) {
+            s.close();
+        }
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private Predicate<Post> live(Predicate<Post> filter) {
+        return p -> !deleted.contains(p.getId()) && filter.test(p);
+    }
+}
@@ -0,0 +1,94 @@
+package app;
+
+import java.util.Arrays;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class CountMinSketch {
+    /*
+     *  OVERVIEW:
+     *      Count-Min sketch a memoria fissa: stima la frequenza di una stringa con errore
+     *      solo per eccesso (al più 2N/width con probabilità 1 - 2^-depth, dove N è il totale
+     *      degli incrementi). Ogni riga usa una funzione hash diversa ottenuta mescolando
+     *      hashCode() con un seme per riga.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      estimate(s) = min over r in [0, depth) of table[r * width + h_r(s)]
+     *
+     *  REPRESENTATION INVARIANT:
+     *      width è potenza di 2 && table.length == depth * width &&
+     *      for each(c) in table : c >= 0
+     */
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L
+    };
+
+    private final int depth;
+    private final int mask;
+    private final int[] table;
+
+    /**
+     * Costruttore della classe CountMinSketch.
+     * @param depth numero di righe (1..8)
+     * @param width numero di contatori per riga (arrotondato alla potenza di 2 successiva)
+     */
+    public CountMinSketch(int depth, int width) {
+        if(depth < 1 || depth > SEEDS.length || width < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        int w = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.depth = depth;
+        this.mask = w - 1;
+        this.table = new int[depth * w];
+    }
+
+    /**
+     * Incrementa di 1 la frequenza della stringa
+     * @param key la stringa da contare
+     * @modifies this.table
+     */
+    public void add(String key) {
+        int h = key.hashCode();
+        for(int r = 0; r < depth; r++) {
+            table[r * (mask + 1) + index(h, r)]++;
+        }
+    }
+
+    /**
+     * Stima (per eccesso) la frequenza della stringa
+     * @param key la stringa
+     * @return la frequenza stimata
+     */
+    public int estimate(String key) {
+        int h = key.hashCode();
+        int min = Integer.MAX_VALUE;
+        for(int r = 0; r < depth; r++) {
+            min = Math.min(min, table[r * (mask + 1) + index(h, r)]);
+        }
+        return min;
+    }
+
+    /**
+     * Azzera tutti i contatori
+     * @modifies this.table
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    /**
+     * Restituisce la memoria occupata dai contatori
+     * @return byte occupati dalla tabella
+     */
+    public long sizeInBytes() {
+        return 16L + 4L * table.length;
+    }
+
+    private int index(int h, int r) {
+        long x = (h ^ SEEDS[r]) * SEEDS[(r + 1) % SEEDS.length];
+        return (int) (x ^ (x >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,34 @@
+package app;
+
+import java.nio.file.Path;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+/**
+ * Enum DumpFormat contiene i formati dei file letti da BulkImporter e scritti da BulkExporter.
+ * Un file contiene un record per riga, di quattro tipi: utente, seguito, post e segnalazione.
+ * JSONL:
+ *      {"type":"user","name":"alice"}
+ *      {"type":"follow","user":"alice","followed":"bob"}
+ *      {"type":"post","id":7,"author":"alice","text":"ciao @bob","timestamp":1700000000000000}
+ *      {"type":"report","post":7,"reporter":"bob","reason":"custom","text":"motivo"}
+ * CSV (campi con virgole, virgolette o a capo fra virgolette, "" per la virgoletta; campo vuoto = null):
+ *      user,alice
+ *      follow,alice,bob
+ *      post,7,alice,1700000000000000,"ciao @bob"
+ *      report,7,bob,custom,motivo
+ * Nelle segnalazioni reporter e text possono mancare (segnalazione anonima, senza testo).
+ */
+public enum DumpFormat {
+    JSONL,
+    CSV;
+
+    /**
+     * Deduce il formato dall'estensione del file (.csv per CSV, altrimenti JSONL)
+     * @param file il file
+     * @return il formato
+     */
+    public static DumpFormat of(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : JSONL;
+    }
+}
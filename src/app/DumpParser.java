@@ -0,0 +1,686 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class DumpParser {
+    /*
+     *  OVERVIEW:
+     *      Tokenizer scritto a mano per un pezzo di un file JSONL o CSV (vedi DumpFormat). Legge i byte
+     *      direttamente dal buffer (di solito la mappatura in memoria del file) senza copiarli né
+     *      passare da un Reader: i valori vengono decodificati da UTF-8 in un array di caratteri
+     *      riutilizzato e diventano stringhe solo quando servono al record. I nomi degli utenti, che
+     *      si ripetono in quasi tutti i record, passano da una piccola cache così i post di uno
+     *      stesso autore condividono la stringa. I record letti finiscono in array paralleli che
+     *      BulkImporter applica poi alla rete; un parser legge un solo pezzo ed è usato da un solo
+     *      thread.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      record i (0 <= i < size) ->
+     *          kinds[i] == USER   -> utente firsts[i]
+     *          kinds[i] == FOLLOW -> firsts[i] segue seconds[i]
+     *          kinds[i] == POST   -> post postIds[i] di firsts[i] con testo seconds[i] e timestamp
+     *                                timestamps[i] (il Post viene creato da BulkImporter con Post.restore
+     *                                solo dopo i suoi controlli, così un record scartato non fa avanzare
+     *                                i contatori di id e timestamp)
+     *          kinds[i] == REPORT -> segnalazione del post postIds[i] da firsts[i] (null se anonima),
+     *                                per reasons[i], con testo seconds[i] (null se assente)
+     *      offsets[i] -> posizione nel file del primo byte del record
+     *      failure -> errore del record che segue l'ultimo letto (null se il pezzo è stato letto tutto)
+     *
+     *  REPRESENTATION INVARIANT:
+     *      0 <= size <= kinds.length && tutti gli array dei record hanno la stessa lunghezza &&
+     *      0 <= pos <= buf.limit() && names.length è potenza di 2
+     */
+
+    static final byte USER = 0;
+    static final byte FOLLOW = 1;
+    static final byte POST = 2;
+    static final byte REPORT = 3;
+    private static final String[] TYPES = {"user", "follow", "post", "report"};
+
+    // campi dei record JSONL (gli altri vengono ignorati)
+    private static final String[] FIELDS = {"type", "name", "user", "followed", "id", "author", "text", "timestamp", "post", "reporter", "reason"};
+    private static final int F_TYPE = 0, F_NAME = 1, F_USER = 2, F_FOLLOWED = 3, F_ID = 4, F_AUTHOR = 5,
+            F_TEXT = 6, F_TIMESTAMP = 7, F_POST = 8, F_REPORTER = 9, F_REASON = 10;
+    private static final byte MISSING = 0, STRING = 1, NUMBER = 2, NULL = 3;
+
+    private static final ReportReason[] REASONS = ReportReason.values();
+    private static final int NAME_CACHE = 1024;
+
+    private final DumpFormat format;
+    private final ByteBuffer buf;
+    private final long base;
+    private final Path source;
+    private int pos;
+
+    // ultimo valore letto: chars[0..length)
+    private char[] chars = new char[256];
+    private int length;
+
+    // valori dei campi del record JSONL corrente
+    private final byte[] fieldKinds = new byte[FIELDS.length];
+    private final String[] fieldStrings = new String[FIELDS.length];
+    private final long[] fieldNumbers = new long[FIELDS.length];
+
+    private final String[] names = new String[NAME_CACHE];
+    private IOException failure;
+
+    private int size;
+    private byte[] kinds = new byte[1024];
+    private long[] offsets = new long[1024];
+    private String[] firsts = new String[1024];
+    private String[] seconds = new String[1024];
+    private long[] timestamps = new long[1024];
+    private int[] postIds = new int[1024];
+    private ReportReason[] reasons = new ReportReason[1024];
+
+    /**
+     * Costruttore della classe DumpParser.
+     * @param format formato del file
+     * @param buf i byte del pezzo, da 0 a limit() (limit() a fine record)
+     * @param base posizione nel file del primo byte di buf (per i messaggi di errore)
+     * @param source il file (per i messaggi di errore)
+     */
+    DumpParser(DumpFormat format, ByteBuffer buf, long base, Path source) {
+        this.format = format;
+        this.buf = buf;
+        this.base = base;
+        this.source = source;
+    }
+
+    /**
+     * Legge i record del pezzo fino alla fine o al primo record non valido (vedi failure)
+     * @return questo parser
+     */
+    DumpParser parse() {
+        int end = buf.limit();
+        try {
+            while(pos < end) {
+                if(format == DumpFormat.JSONL) {
+                    jsonRecord();
+                } else {
+                    csvRecord();
+                }
+            }
+        } catch(IOException e) {
+            failure = e;
+        }
+        return this;
+    }
+
+    /**
+     * Restituisce l'errore del primo record non valido (i record letti sono quelli che lo precedono)
+     * @return l'errore, o null se il pezzo è stato letto tutto
+     */
+    IOException failure() {
+        return failure;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte kind(int i) {
+        return kinds[i];
+    }
+
+    /**
+     * Utente (USER), utente che segue (FOLLOW), autore del post (POST) o autore della segnalazione
+     * (REPORT, null se anonima)
+     */
+    String first(int i) {
+        return firsts[i];
+    }
+
+    /**
+     * Utente seguito (FOLLOW), testo del post (POST) o testo della segnalazione (REPORT, null se assente)
+     */
+    String second(int i) {
+        return seconds[i];
+    }
+
+    /**
+     * Id del post (POST) o del post segnalato (REPORT)
+     */
+    int postId(int i) {
+        return postIds[i];
+    }
+
+    long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    ReportReason reason(int i) {
+        return reasons[i];
+    }
+
+    /**
+     * Costruisce l'errore per il record i
+     */
+    IOException error(int i, String message) {
+        return error(offsets[i], message);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private IOException error(long offset, String message) {
+        return new IOException("Record non valido alla posizione " + offset + " di " + source + ": " + message);
+    }
+
+    private IOException error(String message) {
+        return error(base + pos, message);
+    }
+
+    /**
+     * Legge un record JSONL: un oggetto su una riga, con valori stringa, numero o null
+     */
+    private void jsonRecord() throws IOException {
+        long inizio = base + pos;
+        skipSpaces();
+        if(pos == buf.limit() || buf.get(pos) == '\n') {
+            pos = Math.min(pos + 1, buf.limit()); // riga vuota
+            return;
+        }
+        Arrays.fill(fieldKinds, MISSING);
+        expect('{');
+        skipSpaces();
+        if(peek() == '}') {
+            pos++;
+        } else {
+            while(true) {
+                skipSpaces();
+                expect('"');
+                jsonString();
+                int campo = match(FIELDS);
+                skipSpaces();
+                expect(':');
+                skipSpaces();
+                jsonValue(campo);
+                skipSpaces();
+                if(peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    break;
+                }
+            }
+        }
+        skipSpaces();
+        if(pos < buf.limit()) {
+            expect('\n');
+        }
+
+        if(fieldKinds[F_TYPE] != STRING) {
+            throw error(inizio, "manca il campo type");
+        }
+        switch((int) fieldNumbers[F_TYPE]) {
+            case USER:
+                addUser(inizio, string(inizio, F_NAME));
+                break;
+            case FOLLOW:
+                addFollow(inizio, string(inizio, F_USER), string(inizio, F_FOLLOWED));
+                break;
+            case POST:
+                addPost(inizio, number(inizio, F_ID), string(inizio, F_AUTHOR), string(inizio, F_TEXT), number(inizio, F_TIMESTAMP));
+                break;
+            default:
+                if(fieldKinds[F_REASON] != STRING) {
+                    throw error(inizio, "manca il campo reason");
+                }
+                addReport(inizio, number(inizio, F_POST), optionalString(F_REPORTER), REASONS[(int) fieldNumbers[F_REASON]], optionalString(F_TEXT));
+        }
+    }
+
+    /**
+     * Legge il valore del campo (campo < 0 se il campo va ignorato)
+     */
+    private void jsonValue(int campo) throws IOException {
+        byte c = peek();
+        byte tipo;
+        if(c == '"') {
+            pos++;
+            jsonString();
+            tipo = STRING;
+            if(campo == F_TYPE || campo == F_REASON) { // confrontati senza creare stringhe
+                int i = campo == F_TYPE ? match(TYPES) : matchReason();
+                if(i < 0) {
+                    throw error("valore sconosciuto per " + FIELDS[campo]);
+                }
+                fieldNumbers[campo] = i;
+            } else if(campo >= 0) {
+                boolean nome = campo == F_NAME || campo == F_USER || campo == F_FOLLOWED || campo == F_AUTHOR || campo == F_REPORTER;
+                fieldStrings[campo] = nome ? name() : new String(chars, 0, length);
+            }
+        } else if(c == 'n') {
+            expect('n');
+            expect('u');
+            expect('l');
+            expect('l');
+            tipo = NULL;
+        } else if(c == '-' || (c >= '0' && c <= '9')) {
+            long v = jsonNumber();
+            tipo = NUMBER;
+            if(campo >= 0) {
+                fieldNumbers[campo] = v;
+            }
+        } else {
+            throw error("valore non supportato");
+        }
+        if(campo >= 0) {
+            fieldKinds[campo] = tipo;
+        }
+    }
+
+    /**
+     * Decodifica una stringa JSON (dopo la virgoletta di apertura) in chars
+     */
+    private void jsonString() throws IOException {
+        length = 0;
+        int end = buf.limit();
+        while(true) {
+            if(pos >= end) {
+                throw error("stringa non terminata");
+            }
+            byte b = buf.get(pos);
+            if(b == '"') {
+                pos++;
+                return;
+            }
+            if(b == '\n') {
+                throw error("stringa non terminata");
+            }
+            if(b != '\\') {
+                utf8();
+                continue;
+            }
+            if(pos + 1 >= end) {
+                throw error("escape non terminato");
+            }
+            byte e = buf.get(pos + 1);
+            pos += 2;
+            switch(e) {
+                case '"': case '\\': case '/': put((char) e); break;
+                case 'b': put('\b'); break;
+                case 'f': put('\f'); break;
+                case 'n': put('\n'); break;
+                case 'r': put('\r'); break;
+                case 't': put('\t'); break;
+                case 'u':
+                    int u = 0;
+                    for(int i = 0; i < 4; i++) {
+                        int h = pos < end ? Character.digit(buf.get(pos++), 16) : -1;
+                        if(h < 0) {
+                            throw error("escape \\u non valido");
+                        }
+                        u = (u << 4) | h;
+                    }
+                    put((char) u);
+                    break;
+                default:
+                    throw error("escape non valido");
+            }
+        }
+    }
+
+    private long jsonNumber() throws IOException {
+        boolean negativo = peek() == '-';
+        if(negativo) {
+            pos++;
+        }
+        long v = 0;
+        int cifre = 0;
+        int end = buf.limit();
+        while(pos < end) {
+            byte b = buf.get(pos);
+            if(b < '0' || b > '9') {
+                break;
+            }
+            if(v > (Long.MAX_VALUE - (b - '0')) / 10) {
+                throw error("numero troppo grande");
+            }
+            v = v * 10 + (b - '0');
+            pos++;
+            cifre++;
+        }
+        if(cifre == 0 || (pos < end && (buf.get(pos) == '.' || buf.get(pos) == 'e' || buf.get(pos) == 'E'))) {
+            throw error("atteso un numero intero");
+        }
+        return negativo ? -v : v;
+    }
+
+    /**
+     * Legge un record CSV: il tipo e poi i campi del tipo, separati da virgole
+     */
+    private void csvRecord() throws IOException {
+        long inizio = base + pos;
+        if(csvEndOfLine()) {
+            return; // riga vuota
+        }
+        if(!csvField()) {
+            throw error(inizio, "manca il tipo");
+        }
+        int tipo = match(TYPES);
+        switch(tipo) {
+            case USER:
+                addUser(inizio, csvName(inizio));
+                break;
+            case FOLLOW:
+                addFollow(inizio, csvName(inizio), csvName(inizio));
+                break;
+            case POST:
+                long id = csvNumber(inizio);
+                String autore = csvName(inizio);
+                long timestamp = csvNumber(inizio);
+                addPost(inizio, id, autore, csvString(inizio), timestamp);
+                break;
+            case REPORT:
+                long post = csvNumber(inizio);
+                csvComma(inizio);
+                String reporter = csvField() ? name() : null;
+                csvComma(inizio);
+                int motivo = csvField() ? matchReason() : -1;
+                if(motivo < 0) {
+                    throw error(inizio, "motivo mancante o sconosciuto");
+                }
+                String testo = null;
+                if(pos < buf.limit() && buf.get(pos) == ',') {
+                    pos++;
+                    testo = csvField() ? new String(chars, 0, length) : null;
+                }
+                addReport(inizio, post, reporter, REASONS[motivo], testo);
+                break;
+            default:
+                throw error(inizio, "tipo sconosciuto");
+        }
+        if(!csvEndOfLine()) {
+            throw error("attesa la fine della riga");
+        }
+    }
+
+    /**
+     * Salta la fine della riga (\n o \r\n) se c'è
+     * @return true se il record è finito (fine riga o fine del pezzo)
+     */
+    private boolean csvEndOfLine() {
+        int end = buf.limit();
+        if(pos == end) {
+            return true;
+        }
+        byte b = buf.get(pos);
+        if(b == '\n') {
+            pos++;
+            return true;
+        }
+        if(b == '\r' && (pos + 1 == end || buf.get(pos + 1) == '\n')) {
+            pos = Math.min(pos + 2, end);
+            return true;
+        }
+        return false;
+    }
+
+    private void csvComma(long inizio) throws IOException {
+        if(pos >= buf.limit() || buf.get(pos) != ',') {
+            throw error(inizio, "mancano dei campi");
+        }
+        pos++;
+    }
+
+    private String csvName(long inizio) throws IOException {
+        csvComma(inizio);
+        if(!csvField()) {
+            throw error(inizio, "utente mancante");
+        }
+        return name();
+    }
+
+    private String csvString(long inizio) throws IOException {
+        csvComma(inizio);
+        if(!csvField()) {
+            throw error(inizio, "testo mancante");
+        }
+        return new String(chars, 0, length);
+    }
+
+    private long csvNumber(long inizio) throws IOException {
+        csvComma(inizio);
+        if(!csvField() || length > 19) {
+            throw error(inizio, "atteso un numero");
+        }
+        long v = 0;
+        for(int i = length > 0 && chars[0] == '-' ? 1 : 0; i < length; i++) {
+            char c = chars[i];
+            if(c < '0' || c > '9' || v > (Long.MAX_VALUE - (c - '0')) / 10) {
+                throw error(inizio, "atteso un numero");
+            }
+            v = v * 10 + (c - '0');
+        }
+        return length > 0 && chars[0] == '-' ? -v : v;
+    }
+
+    /**
+     * Decodifica un campo CSV (fino alla virgola o alla fine della riga, esclusa) in chars
+     * @return false se il campo è vuoto e senza virgolette (null)
+     */
+    private boolean csvField() throws IOException {
+        length = 0;
+        int end = buf.limit();
+        if(pos < end && buf.get(pos) == '"') {
+            pos++;
+            while(true) {
+                if(pos >= end) {
+                    throw error("virgolette non chiuse");
+                }
+                if(buf.get(pos) == '"') {
+                    if(pos + 1 < end && buf.get(pos + 1) == '"') {
+                        put('"');
+                        pos += 2;
+                        continue;
+                    }
+                    pos++;
+                    return true;
+                }
+                utf8();
+            }
+        }
+        while(pos < end) {
+            byte b = buf.get(pos);
+            if(b == ',' || b == '\n' || (b == '\r' && (pos + 1 == end || buf.get(pos + 1) == '\n'))) {
+                break;
+            }
+            if(b == '"') {
+                throw error("virgolette in un campo senza virgolette");
+            }
+            utf8();
+        }
+        return length > 0;
+    }
+
+    /**
+     * Decodifica in chars il carattere UTF-8 in pos (le sequenze non valide diventano U+FFFD)
+     */
+    private void utf8() {
+        int end = buf.limit();
+        int b = buf.get(pos++) & 0xFF;
+        if(b < 0x80) {
+            put((char) b);
+        } else if((b & 0xE0) == 0xC0 && pos < end) {
+            put((char) (((b & 0x1F) << 6) | (buf.get(pos++) & 0x3F)));
+        } else if((b & 0xF0) == 0xE0 && pos + 1 < end) {
+            put((char) (((b & 0x0F) << 12) | ((buf.get(pos) & 0x3F) << 6) | (buf.get(pos + 1) & 0x3F)));
+            pos += 2;
+        } else if((b & 0xF8) == 0xF0 && pos + 2 < end) {
+            int cp = ((b & 0x07) << 18) | ((buf.get(pos) & 0x3F) << 12) | ((buf.get(pos + 1) & 0x3F) << 6) | (buf.get(pos + 2) & 0x3F);
+            pos += 3;
+            put(Character.highSurrogate(cp));
+            put(Character.lowSurrogate(cp));
+        } else {
+            put('\uFFFD');
+        }
+    }
+
+    private void put(char c) {
+        if(length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    /**
+     * Restituisce l'indice della stringa di tabella uguale a chars[0..length), -1 se non c'è
+     */
+    private int match(String[] tabella) {
+        for(int i = 0; i < tabella.length; i++) {
+            if(equals(tabella[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int matchReason() {
+        for(int i = 0; i < REASONS.length; i++) {
+            if(equals(REASONS[i].name())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean equals(String s) {
+        if(s.length() != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(s.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce chars[0..length) come stringa, riusando quella del nome già letto se è lo stesso
+     */
+    private String name() {
+        int h = 0;
+        for(int i = 0; i < length; i++) {
+            h = 31 * h + chars[i];
+        }
+        int slot = (h ^ (h >>> 16)) & (NAME_CACHE - 1);
+        String s = names[slot];
+        if(s == null || !equals(s)) {
+            s = new String(chars, 0, length);
+            names[slot] = s;
+        }
+        return s;
+    }
+
+    private String string(long inizio, int campo) throws IOException {
+        if(fieldKinds[campo] != STRING) {
+            throw error(inizio, "manca il campo stringa " + FIELDS[campo]);
+        }
+        return fieldStrings[campo];
+    }
+
+    private String optionalString(int campo) {
+        return fieldKinds[campo] == STRING ? fieldStrings[campo] : null;
+    }
+
+    private long number(long inizio, int campo) throws IOException {
+        if(fieldKinds[campo] != NUMBER) {
+            throw error(inizio, "manca il campo numerico " + FIELDS[campo]);
+        }
+        return fieldNumbers[campo];
+    }
+
+    private byte peek() throws IOException {
+        if(pos >= buf.limit()) {
+            throw error("record troncato");
+        }
+        return buf.get(pos);
+    }
+
+    private void expect(char c) throws IOException {
+        if(peek() != c) {
+            throw error("atteso '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipSpaces() {
+        int end = buf.limit();
+        while(pos < end) {
+            byte b = buf.get(pos);
+            if(b != ' ' && b != '\t' && b != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void addUser(long offset, String name) {
+        int i = add(offset, USER);
+        firsts[i] = name;
+    }
+
+    private void addFollow(long offset, String user, String followed) {
+        int i = add(offset, FOLLOW);
+        firsts[i] = user;
+        seconds[i] = followed;
+    }
+
+    private void addPost(long offset, long id, String author, String text, long timestamp) throws IOException {
+        if(id < 0 || id >= Integer.MAX_VALUE || timestamp <= 0) { // id + 1 deve restare un int (vedi Post.restore)
+            throw error(offset, "id o timestamp fuori intervallo");
+        }
+        if(author.isBlank() || text.isBlank()) {
+            throw error(offset, "autore o testo vuoto");
+        }
+        if(text.length() > Post.TEXT_LIMIT) {
+            throw error(offset, "testo più lungo di " + Post.TEXT_LIMIT + " caratteri");
+        }
+        int i = add(offset, POST);
+        postIds[i] = (int) id;
+        firsts[i] = author;
+        seconds[i] = text;
+        timestamps[i] = timestamp;
+    }
+
+    private void addReport(long offset, long post, String reporter, ReportReason reason, String text) throws IOException {
+        if(post < 0 || post > Integer.MAX_VALUE) {
+            throw error(offset, "id del post fuori intervallo");
+        }
+        if(text != null && text.length() > PostReports.MAX_CUSTOM_TEXT_LENGTH) {
+            throw error(offset, "testo della segnalazione più lungo di " + PostReports.MAX_CUSTOM_TEXT_LENGTH + " caratteri");
+        }
+        int i = add(offset, REPORT);
+        postIds[i] = (int) post;
+        firsts[i] = reporter;
+        seconds[i] = text;
+        reasons[i] = reason;
+    }
+
+    private int add(long offset, byte kind) {
+        if(size == kinds.length) {
+            int n = size * 2;
+            kinds = Arrays.copyOf(kinds, n);
+            offsets = Arrays.copyOf(offsets, n);
+            firsts = Arrays.copyOf(firsts, n);
+            seconds = Arrays.copyOf(seconds, n);
+            timestamps = Arrays.copyOf(timestamps, n);
+            postIds = Arrays.copyOf(postIds, n);
+            reasons = Arrays.copyOf(reasons, n);
+        }
+        kinds[size] = kind;
+        offsets[size] = offset;
+        return size++;
+    }
+}
@@ -0,0 +1,373 @@
+package app;
+
+import java.util.*;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class DuplicateIndex {
+    /*
+     *  OVERVIEW:
+     *      Impronte del contenuto degli ultimi window post indicizzati, per riconoscere copie e
+     *      quasi-copie (inondazioni di spam copiate e incollate) nel momento in cui arrivano.
+     *      Il testo viene normalizzato (minuscole, spazi compattati); l'impronta esatta è un hash a
+     *      64 bit del testo normalizzato, quella approssimata una firma MinHash di SIGNATURE valori
+     *      sugli shingle di SHINGLE caratteri. La firma è divisa in BANDS bande di ROWS valori (LSH):
+     *      due testi simili hanno con alta probabilità almeno una banda uguale, per cui i candidati
+     *      sono i post nelle stesse liste di una delle BANDS + 1 chiavi del post, e un candidato è una
+     *      quasi-copia se la frazione di valori uguali delle firme (stima della somiglianza di
+     *      Jaccard) è almeno similarity. Di ogni banda si esaminano al più MAX_BAND_CANDIDATES
+     *      candidati, i più recenti, per cui il costo per post non dipende da window.
+     *      I post sono in un anello di window posizioni: il post più vecchio viene dimenticato
+     *      quando ne arriva uno nuovo, e siccome le liste delle chiavi sono in ordine di arrivo
+     *      la sua voce è sempre la prima di ognuna delle sue liste.
+     *      Liste e tabella sono array di interi: nessun oggetto viene allocato per post indicizzato.
+     *      Va usato sotto lo stesso lock della rete (add e remove da chi scrive, le query da chi legge).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      posts[s] != null -> post indicizzato nella posizione s, con firma
+     *      signatures[s * SIGNATURE ..] e chiavi keys[s * KEYS ..] (la 0 è l'impronta esatta,
+     *      la 1 + b è la banda b)
+     *      lista(k) -> posizioni, in ordine di arrivo, dei post ancora nell'anello con chiave k:
+     *      da tableOldest[t] seguendo newer, con tableKeys[t] == k
+     *
+     *  REPRESENTATION INVARIANT:
+     *      window >= 1 && 0 < similarity <= 1 && posts.length == window &&
+     *      ogni posizione occupata dell'anello compare nella lista di ognuna delle sue chiavi &&
+     *      tableOldest[t] == EMPTY <-> la posizione t della tabella è libera
+     */
+
+    public static final int DEFAULT_WINDOW = 50_000;
+    public static final double DEFAULT_SIMILARITY = 0.7;
+
+    private static final int SHINGLE = 4;
+    private static final int BANDS = 8;
+    private static final int ROWS = 4;
+    private static final int SIGNATURE = BANDS * ROWS;
+    // candidati più recenti esaminati per ogni banda (l'impronta esatta non ha limite)
+    private static final int MAX_BAND_CANDIDATES = 256;
+    private static final int[] SEEDS = new int[SIGNATURE];
+    private static final int[] OFFSETS = new int[SIGNATURE];
+
+    static {
+        Random random = new Random(0x5EED);
+        for(int i = 0; i < SIGNATURE; i++) {
+            SEEDS[i] = random.nextInt() | 1;
+            OFFSETS[i] = random.nextInt();
+        }
+    }
+
+    private static final int KEYS = BANDS + 1;
+    private static final int EMPTY = -1;
+
+    private final int window;
+    private final double similarity;
+    private final Post[] posts;
+    private final long[] keys;          // keys[s * KEYS + j]: chiave j della posizione s
+    private final int[] signatures;     // signatures[s * SIGNATURE + k]: valore k della firma di s
+
+    // liste delle chiavi: la voce e = s * KEYS + j è collegata alla voce precedente e successiva
+    // con la stessa chiave (in ordine di arrivo)
+    private final int[] older;
+    private final int[] newer;
+
+    // tabella hash ad indirizzamento aperto chiave -> voce più vecchia e più recente della sua lista
+    private final long[] tableKeys;
+    private final int[] tableOldest;
+    private final int[] tableNewest;
+    private final int mask;
+
+    private long added;
+
+    /**
+     * Costruttore della classe DuplicateIndex.
+     * @param window numero di post recenti ricordati
+     * @param similarity somiglianza di Jaccard (stimata) oltre cui due testi sono quasi-copie
+     */
+    public DuplicateIndex(int window, double similarity) {
+        if(window < 1 || window > Integer.MAX_VALUE / (KEYS * 2) || similarity <= 0 || similarity > 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.window = window;
+        this.similarity = similarity;
+        this.posts = new Post[window];
+        this.keys = new long[window * KEYS];
+        this.signatures = new int[window * SIGNATURE];
+        this.older = new int[window * KEYS];
+        this.newer = new int[window * KEYS];
+        int capacita = Integer.highestOneBit(window * KEYS * 4 / 3) << 1;
+        this.tableKeys = new long[capacita];
+        this.tableOldest = new int[capacita];
+        this.tableNewest = new int[capacita];
+        this.mask = capacita - 1;
+        Arrays.fill(tableOldest, EMPTY);
+    }
+
+    /**
+     * Indicizza un post, dimenticando il più vecchio se l'anello è pieno
+     * @param p il post
+     * @modifies this
+     */
+    public void add(Post p) {
+        int s = (int) (added % window);
+        if(added++ >= window) {
+            for(int e = s * KEYS; e < (s + 1) * KEYS; e++) {
+                unlinkOldest(e);
+            }
+        }
+
+        String testo = normalize(p.getText());
+        signature(testo, signatures, s * SIGNATURE);
+        keys(testo, signatures, s * SIGNATURE, keys, s * KEYS);
+        posts[s] = p;
+        for(int e = s * KEYS; e < (s + 1) * KEYS; e++) {
+            linkNewest(e);
+        }
+    }
+
+    /**
+     * Dimentica un post (per esempio perché è stato eliminato dalla rete), riconosciuto per id
+     * @param p il post
+     * @modifies this
+     */
+    public void remove(Post p) {
+        long[] esatta = new long[1];
+        keys(normalize(p.getText()), null, 0, esatta, 0);
+        int t = find(esatta[0]);
+        for(int e = t >= 0 ? tableOldest[t] : EMPTY; e != EMPTY; e = newer[e]) {
+            int s = e / KEYS;
+            if(posts[s] != null && posts[s].getId() == p.getId()) {
+                posts[s] = null; // la posizione resta nelle liste fino a quando l'anello la riusa
+                return;
+            }
+        }
+    }
+
+    /**
+     * Restituisce i post ricordati che sono copie o quasi-copie del post (escluso il post stesso)
+     * @param p il post
+     * @return i duplicati, dal più vecchio
+     */
+    public List<Post> duplicatesOf(Post p) {
+        return find(p, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Conta i duplicati del post fermandosi a limit (in O(limit) atteso anche durante un'inondazione)
+     * @param p il post
+     * @param limit numero massimo di duplicati contati
+     * @return min(numero di duplicati, limit)
+     */
+    public int countDuplicates(Post p, int limit) {
+        return find(p, limit).size();
+    }
+
+    /**
+     * Numero di post nell'anello
+     */
+    public int size() {
+        return (int) Math.min(added, window);
+    }
+
+    /**
+     * Memoria occupata dall'indice, esclusi i post (già contati dalla rete)
+     */
+    long estimatedBytes() {
+        return MemoryLayout.object(11, 20) + MemoryLayout.refArray(posts.length)
+                + MemoryLayout.array(keys.length, 8) + MemoryLayout.array(signatures.length, 4)
+                + MemoryLayout.array(older.length, 4) + MemoryLayout.array(newer.length, 4)
+                + MemoryLayout.array(tableKeys.length, 8) + MemoryLayout.array(tableOldest.length, 4)
+                + MemoryLayout.array(tableNewest.length, 4);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private List<Post> find(Post p, int limit) {
+        String testo = normalize(p.getText());
+        int[] firma = new int[SIGNATURE];
+        long[] chiavi = new long[KEYS];
+        signature(testo, firma, 0);
+        keys(testo, firma, 0, chiavi, 0);
+
+        List<Post> lista = new ArrayList<>();
+        Set<Integer> visti = new HashSet<>();
+        for(int j = 0; j < KEYS && lista.size() < limit; j++) {
+            int t = find(chiavi[j]);
+            if(t < 0) {
+                continue;
+            }
+            // impronta esatta: tutta la lista dal più vecchio; bande: i MAX_BAND_CANDIDATES più recenti
+            int e = j == 0 ? tableOldest[t] : tableNewest[t];
+            for(int esaminati = 0; e != EMPTY && lista.size() < limit; esaminati++) {
+                if(j > 0 && esaminati == MAX_BAND_CANDIDATES) {
+                    break;
+                }
+                int s = e / KEYS;
+                e = j == 0 ? newer[e] : older[e];
+                Post q = posts[s];
+                if(q == null || q == p || q.getId() == p.getId() || !visti.add(s)) {
+                    continue;
+                }
+                // stessa impronta esatta: stesso testo normalizzato (salvo collisioni, verificate)
+                if(j == 0 ? testo.equals(normalize(q.getText())) : estimate(firma, s * SIGNATURE) >= similarity) {
+                    lista.add(q);
+                }
+            }
+        }
+        lista.sort(Comparator.comparingInt(Post::getId));
+        return lista;
+    }
+
+    /**
+     * Aggiunge la voce e in fondo alla lista della sua chiave
+     */
+    private void linkNewest(int e) {
+        long k = keys[e];
+        int t = slot(k);
+        if(tableOldest[t] == EMPTY) {
+            tableKeys[t] = k;
+            tableOldest[t] = e;
+            older[e] = EMPTY;
+        } else {
+            newer[tableNewest[t]] = e;
+            older[e] = tableNewest[t];
+        }
+        newer[e] = EMPTY;
+        tableNewest[t] = e;
+    }
+
+    /**
+     * Toglie la voce e, che è la più vecchia della lista della sua chiave
+     */
+    private void unlinkOldest(int e) {
+        int t = find(keys[e]);
+        tableOldest[t] = newer[e];
+        if(newer[e] == EMPTY) {
+            delete(t);
+        } else {
+            older[newer[e]] = EMPTY;
+        }
+    }
+
+    /**
+     * Posizione della chiave nella tabella, o -1 se non c'è
+     */
+    private int find(long k) {
+        int t = slot(k);
+        return tableOldest[t] == EMPTY ? -1 : t;
+    }
+
+    /**
+     * Posizione della chiave nella tabella, o la posizione libera dove inserirla (scansione lineare)
+     */
+    private int slot(long k) {
+        for(int t = home(k); ; t = (t + 1) & mask) {
+            if(tableOldest[t] == EMPTY || tableKeys[t] == k) {
+                return t;
+            }
+        }
+    }
+
+    private int home(long k) {
+        k *= 0x9E3779B97F4A7C15L;
+        return (int) (k ^ (k >>> 32)) & mask;
+    }
+
+    /**
+     * Libera la posizione t spostando indietro le chiavi successive (nessuna lapide)
+     */
+    private void delete(int t) {
+        int libera = t;
+        for(int i = (t + 1) & mask; tableOldest[i] != EMPTY; i = (i + 1) & mask) {
+            int h = home(tableKeys[i]);
+            // la chiave in i può andare in libera se libera è fra la sua posizione naturale e i
+            if(((i - h) & mask) >= ((i - libera) & mask)) {
+                tableKeys[libera] = tableKeys[i];
+                tableOldest[libera] = tableOldest[i];
+                tableNewest[libera] = tableNewest[i];
+                libera = i;
+            }
+        }
+        tableOldest[libera] = EMPTY;
+    }
+
+    /**
+     * Minuscole e spazi compattati (gli spazi iniziali e finali vengono tolti)
+     */
+    private static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean spazio = false;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(Character.isWhitespace(c)) {
+                spazio = sb.length() > 0;
+            } else {
+                if(spazio) {
+                    sb.append(' ');
+                    spazio = false;
+                }
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Firma MinHash: per ogni permutazione, il minimo dell'hash degli shingle del testo
+     * (scritta in out a partire da from)
+     */
+    private static void signature(String testo, int[] out, int from) {
+        Arrays.fill(out, from, from + SIGNATURE, Integer.MAX_VALUE);
+        int ultimi = Math.max(testo.length() - SHINGLE, 0);
+        for(int i = 0; i <= ultimi; i++) {
+            int h = 0;
+            for(int j = i; j < Math.min(i + SHINGLE, testo.length()); j++) {
+                h = h * 31 + testo.charAt(j);
+            }
+            h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+            h ^= h >>> 13;
+            for(int k = 0; k < SIGNATURE; k++) {
+                // permutazione k-esima: moltiplicazione per un seme dispari più un secondo seme
+                int x = h * SEEDS[k] + OFFSETS[k];
+                if(x < out[from + k]) {
+                    out[from + k] = x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Chiavi del post scritte in out a partire da at: l'impronta esatta e, se la firma è data,
+     * l'hash di ogni banda
+     */
+    private static void keys(String testo, int[] firma, int from, long[] out, int at) {
+        long h = 0xCBF29CE484222325L; // FNV-1a a 64 bit
+        for(int i = 0; i < testo.length(); i++) {
+            h = (h ^ testo.charAt(i)) * 0x100000001B3L;
+        }
+        out[at] = h;
+        for(int b = 0; firma != null && b < BANDS; b++) {
+            long k = b + 1;
+            for(int r = 0; r < ROWS; r++) {
+                k = k * 0x9E3779B97F4A7C15L + firma[from + b * ROWS + r];
+            }
+            out[at + 1 + b] = k;
+        }
+    }
+
+    /**
+     * Frazione di valori uguali fra la firma e quella memorizzata da from (stima della somiglianza di Jaccard)
+     */
+    private double estimate(int[] firma, int from) {
+        int uguali = 0;
+        for(int i = 0; i < SIGNATURE; i++) {
+            if(firma[i] == signatures[from + i]) {
+                uguali++;
+            }
+        }
+        return (double) uguali / SIGNATURE;
+    }
+}
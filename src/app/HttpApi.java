@@ -0,0 +1,476 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exception.EmptyFieldException;
+import exception.InvalidUsernameException;
+import exception.PostNotFoundException;
+import exception.TextLengthException;
+import exception.UserNotFoundException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.WrongMethodTypeException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class HttpApi {
+    /*
+     *  OVERVIEW:
+     *      Front end HTTP/JSON di un SafeSocialNetwork basato su com.sun.net.httpserver.
+     *      Ogni richiesta viene servita da un virtual thread (un thread di piattaforma se la
+     *      JVM non li supporta). Ogni metodo di SocialNetworkInterface e SafeSocialNetworkInterface
+     *      (più i metodi per popolare la rete) è esposto come /api/<nomeMetodo>, con i parametri
+     *      passati in query string o nel corpo (application/x-www-form-urlencoded).
+     *      Le interrogazioni prendono il read lock della rete, le modifiche il write lock.
+     *      Le risposte sono codificate con JsonWriter presi da un piccolo pool, così a regime
+     *      la codifica non alloca buffer nuovi.
+     *
+     *      Parametri: user, target, follows (lista separata da virgole), ids (id dei post separati
+     *      da virgole), id, author, text, words (separate da virgole), after e afterTime (id e timestamp
+     *      dell'ultimo post della pagina precedente), limit, reason, reporter, min, from, to (timestamp
+     *      in microsecondi), n, k, by.
+     *      reportPost richiede reporter: le segnalazioni anonime restano per la moderazione e la replica.
+     *      unreadMentions e markRead non prendono il lock (le caselle delle notifiche non lo usano).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      <sn, server, writers> dove:
+     *          sn -> la rete sociale esposta
+     *          server -> il server HTTP in ascolto
+     *          writers -> pool di encoder JSON riutilizzabili
+     *
+     *  REPRESENTATION INVARIANT:
+     *      sn != null && server != null && writers != null
+     */
+
+    public static final String PREFIX = "/api/";
+
+    private static final int WRITER_POOL_SIZE = 256;
+    private static final int WRITER_CAPACITY = 4096;
+
+    static {
+        // l'HttpServer del JDK scrive header e corpo separatamente: senza TCP_NODELAY
+        // l'algoritmo di Nagle unito al delayed ACK aggiunge ~40ms a ogni risposta keep-alive
+        if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final SafeSocialNetwork sn;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BlockingQueue<JsonWriter> writers = new ArrayBlockingQueue<>(WRITER_POOL_SIZE);
+
+    /**
+     * Costruttore della classe HttpApi (il server non viene avviato)
+     * @param sn la rete sociale da esporre
+     * @param address indirizzo e porta su cui ascoltare (porta 0 = porta libera qualsiasi)
+     * @throws IOException se non è possibile aprire la socket
+     */
+    public HttpApi(SafeSocialNetwork sn, InetSocketAddress address) throws IOException {
+        if(sn == null || address == null) {
+            throw new NullPointerException();
+        }
+
+        this.sn = sn;
+        this.server = HttpServer.create(address, 1024);
+        this.executor = VirtualThreads.newPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(PREFIX, this::handle);
+    }
+
+    /**
+     * Avvia il server
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Ferma il server aspettando al massimo delay secondi le richieste in corso
+     * @param delay secondi di attesa massima
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Restituisce la porta su cui il server è in ascolto
+     * @return la porta del server
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Avvia il server in modalità servizio su una rete vuota.
+     * @param args [porta] (default 8080)
+     */
+    public static void main(String[] args) throws IOException {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        HttpApi api = new HttpApi(new SafeSocialNetwork(), new InetSocketAddress(porta));
+        api.start();
+        System.out.println("Server in ascolto su http://localhost:" + api.getPort() + PREFIX
+                + (VirtualThreads.available() ? " (virtual thread)" : " (thread di piattaforma)"));
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    // azione da eseguire sotto lock che può sollevare le eccezioni della rete
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * Gestisce una richiesta: esegue il metodo richiesto e spedisce la risposta JSON
+     * @param ex lo scambio HTTP
+     */
+    private void handle(HttpExchange ex) throws IOException {
+        JsonWriter json = writers.poll();
+        if(json == null) {
+            json = new JsonWriter(WRITER_CAPACITY);
+        }
+
+        int status;
+        try {
+            Map<String, String> params = params(ex);
+            String metodo = ex.getRequestURI().getPath().substring(PREFIX.length());
+            status = dispatch(metodo, params, json.reset()) ? 200 : 404;
+            if(status == 404) {
+                error(json.reset(), "NoSuchMethod", metodo);
+            }
+        } catch(UserNotFoundException | PostNotFoundException e) {
+            status = 404;
+            error(json.reset(), e.getClass().getSimpleName(), e.getMessage());
+        } catch(EmptyFieldException e) {
+            status = 409;
+            error(json.reset(), e.getClass().getSimpleName(), e.getMessage());
+        } catch(InvalidUsernameException | TextLengthException | WrongMethodTypeException | IllegalArgumentException | NullPointerException e) {
+            status = 400;
+            error(json.reset(), e.getClass().getSimpleName(), e.getMessage());
+        } catch(Exception e) {
+            status = 500;
+            error(json.reset(), e.getClass().getSimpleName(), e.getMessage());
+        }
+
+        try {
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(status, json.size());
+            try(OutputStream out = ex.getResponseBody()) {
+                json.writeTo(out);
+            }
+        } finally {
+            writers.offer(json);
+            ex.close();
+        }
+    }
+
+    /**
+     * Esegue il metodo richiesto scrivendo il risultato su json
+     * @param metodo nome del metodo
+     * @param params parametri della richiesta
+     * @param json encoder su cui scrivere il risultato
+     * @return false se il metodo non esiste, true altrimenti
+     */
+    private boolean dispatch(String metodo, Map<String, String> params, JsonWriter json) throws Exception {
+        switch(metodo) {
+            // ----- SocialNetworkInterface -----
+            case "guessFollowers":
+                read(() -> {
+                    json.beginObject();
+                    for(Map.Entry<String, Set<String>> entry : sn.guessFollowers(posts(params)).entrySet()) {
+                        json.name(entry.getKey());
+                        strings(json, entry.getValue());
+                    }
+                    json.endObject();
+                });
+                return true;
+            case "influencers":
+                read(() -> strings(json, sn.influencers()));
+                return true;
+            case "recommendFollows":
+                read(() -> strings(json, sn.recommendFollows(required(params, "user"), intParam(params, "k", 10))));
+                return true;
+            case "mostMentioned":
+                read(() -> {
+                    int k = intParam(params, "k", 10);
+                    Map<String, Integer> classifica = "authors".equals(params.get("by")) ? sn.mostMentionedByAuthors(k) : sn.mostMentioned(k);
+                    json.beginArray();
+                    for(Map.Entry<String, Integer> entry : classifica.entrySet()) {
+                        json.beginObject().name("user").value(entry.getKey()).name("count").value(entry.getValue()).endObject();
+                    }
+                    json.endArray();
+                });
+                return true;
+            case "memoryReport":
+                read(() -> {
+                    json.beginObject();
+                    for(Map.Entry<String, Long> entry : sn.memoryReport().entrySet()) {
+                        json.name(entry.getKey()).value(entry.getValue());
+                    }
+                    json.endObject();
+                });
+                return true;
+            case "unreadMentions":
+                json.beginArray();
+                for(int id : sn.unreadMentions(required(params, "user"), intParam(params, "limit", 100))) {
+                    json.value(id);
+                }
+                json.endArray();
+                return true;
+            case "markRead":
+                sn.markRead(required(params, "user"), idParam(params));
+                json.beginObject().name("ok").value(true).endObject();
+                return true;
+            case "getMentionedUsers":
+                read(() -> strings(json, params.containsKey("ids") ? sn.getMentionedUsers(posts(params)) : sn.getMentionedUsers()));
+                return true;
+            case "writtenBy":
+                read(() -> {
+                    String user = required(params, "user");
+                    if(params.containsKey("ids")) {
+                        posts(json, sn.writtenBy(posts(params), user));
+                    } else if(params.containsKey("limit")) {
+                        posts(json, sn.writtenBy(user, cursor(params), intParam(params, "limit", 0)));
+                    } else {
+                        posts(json, sn.writtenBy(user));
+                    }
+                });
+                return true;
+            case "containing":
+                read(() -> {
+                    List<String> words = list(required(params, "words"));
+                    if(params.containsKey("ids")) {
+                        posts(json, sn.containing(posts(params), words));
+                    } else if(params.containsKey("limit")) {
+                        posts(json, sn.containing(words, cursor(params), intParam(params, "limit", 0)));
+                    } else {
+                        posts(json, sn.containing(words));
+                    }
+                });
+                return true;
+            case "postsBetween":
+                read(() -> posts(json, sn.postsBetween(longParam(params, "from"), longParam(params, "to"))));
+                return true;
+            case "latest":
+                read(() -> posts(json, sn.latest(intParam(params, "n", 20))));
+                return true;
+            case "writtenBetween":
+                read(() -> posts(json, sn.writtenBetween(required(params, "user"), longParam(params, "from"), longParam(params, "to"))));
+                return true;
+            case "containingBetween":
+                read(() -> posts(json, sn.containingBetween(list(required(params, "words")), longParam(params, "from"), longParam(params, "to"))));
+                return true;
+
+            // ----- SafeSocialNetworkInterface -----
+            case "reportPost":
+                write(() -> {
+                    Post post = sn.getPost(idParam(params));
+                    ReportReason reason = ReportReason.valueOf(required(params, "reason"));
+                    // dall'esterno solo segnalazioni con autore: quelle anonime conterebbero sempre
+                    String reporter = required(params, "reporter");
+                    boolean contata = params.containsKey("text")
+                            ? sn.reportPost(post, reporter, reason, params.get("text"))
+                            : sn.reportPost(post, reporter, reason);
+                    json.beginObject().name("reports").value(sn.getReports(post)).name("counted").value(contata).endObject();
+                });
+                return true;
+            case "getReports":
+                read(() -> json.beginObject().name("reports").value(sn.getReports(sn.getPost(idParam(params)))).endObject());
+                return true;
+            case "getMostReportedPosts":
+                read(() -> {
+                    Map<Post, Integer> mappa = params.containsKey("min") ? sn.getMostReportedPosts(intParam(params, "min", 0)) : sn.getMostReportedPosts();
+                    json.beginArray();
+                    for(Map.Entry<Post, Integer> entry : mappa.entrySet()) {
+                        json.beginObject().name("post").value(entry.getKey()).name("reports").value(entry.getValue()).endObject();
+                    }
+                    json.endArray();
+                });
+                return true;
+            case "removeReportedPosts":
+                write(() -> {
+                    int rimossi = params.containsKey("min") ? sn.removeReportedPosts(intParam(params, "min", 0)) : sn.removeReportedPosts();
+                    json.beginObject().name("removed").value(rimossi).endObject();
+                });
+                return true;
+
+            // ----- popolamento della rete -----
+            case "initializeUser":
+                write(() -> {
+                    String user = required(params, "user");
+                    sn.initializeUser(user, params.containsKey("follows") ? new HashSet<>(list(params.get("follows"))) : null);
+                    json.beginObject().name("user").value(user).endObject();
+                });
+                return true;
+            case "addFollower":
+                write(() -> {
+                    sn.addFollower(required(params, "user"), required(params, "target"));
+                    json.beginObject().name("ok").value(true).endObject();
+                });
+                return true;
+            case "removeFollower":
+                write(() -> {
+                    sn.removeFollower(required(params, "user"), required(params, "target"));
+                    json.beginObject().name("ok").value(true).endObject();
+                });
+                return true;
+            case "addPost":
+                Post nuovo = new Post(required(params, "author"), required(params, "text"));
+                write(() -> {
+                    sn.addPost(nuovo);
+                    json.value(nuovo);
+                });
+                return true;
+            case "deletePost":
+                write(() -> {
+                    sn.deletePost(sn.getPost(idParam(params)));
+                    json.beginObject().name("ok").value(true).endObject();
+                });
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void read(Action action) throws Exception {
+        locked(sn.getLock().readLock(), action);
+    }
+
+    private void write(Action action) throws Exception {
+        locked(sn.getLock().writeLock(), action);
+    }
+
+    private static void locked(Lock lock, Action action) throws Exception {
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restituisce i post i cui id sono nel parametro "ids" (va chiamato sotto lock)
+     */
+    private List<Post> posts(Map<String, String> params) throws PostNotFoundException {
+        List<Post> lista = new ArrayList<>();
+        for(String id : list(required(params, "ids"))) {
+            lista.add(sn.getPost(Integer.parseInt(id)));
+        }
+        return lista;
+    }
+
+    private static void posts(JsonWriter json, List<Post> lista) {
+        json.beginArray();
+        for(Post p : lista) {
+            json.value(p);
+        }
+        json.endArray();
+    }
+
+    private static void strings(JsonWriter json, Collection<String> lista) {
+        json.beginArray();
+        for(String s : lista) {
+            json.value(s);
+        }
+        json.endArray();
+    }
+
+    private static void error(JsonWriter json, String error, String message) {
+        json.beginObject().name("error").value(error).name("message").value(message).endObject();
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if(value == null) {
+            throw new IllegalArgumentException("Parametro mancante: " + name);
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int def) {
+        String value = params.get(name);
+        return value == null ? def : Integer.parseInt(value);
+    }
+
+    private static int idParam(Map<String, String> params) {
+        return Integer.parseInt(required(params, "id"));
+    }
+
+    private static long longParam(Map<String, String> params, String name) {
+        return Long.parseLong(required(params, name));
+    }
+
+    /**
+     * Cursore della paginazione: l'ultimo post già visto, dato da after (id) e afterTime (timestamp)
+     */
+    private static Post cursor(Map<String, String> params) {
+        String after = params.get("after");
+        return after == null ? null : Post.probe(longParam(params, "afterTime"), Integer.parseInt(after));
+    }
+
+    private static List<String> list(String value) {
+        List<String> lista = new ArrayList<>();
+        int inizio = 0;
+        for(int i = 0; i <= value.length(); i++) {
+            if(i == value.length() || value.charAt(i) == ',') {
+                if(i > inizio) {
+                    lista.add(value.substring(inizio, i));
+                }
+                inizio = i + 1;
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Legge i parametri della query string e del corpo (form urlencoded)
+     */
+    private static Map<String, String> params(HttpExchange ex) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parse(ex.getRequestURI().getRawQuery(), params);
+        try(InputStream in = ex.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if(body.length > 0) {
+                parse(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parse(String query, Map<String, String> params) {
+        if(query == null || query.isEmpty()) {
+            return;
+        }
+        int inizio = 0;
+        while(inizio <= query.length()) {
+            int fine = query.indexOf('&', inizio);
+            if(fine < 0) {
+                fine = query.length();
+            }
+            int uguale = query.indexOf('=', inizio);
+            if(uguale > inizio && uguale < fine) {
+                params.put(decode(query.substring(inizio, uguale)), decode(query.substring(uguale + 1, fine)));
+            }
+            inizio = fine + 1;
+        }
+    }
+
+    private static String decode(String s) {
+        return (s.indexOf('%') < 0 && s.indexOf('+') < 0) ? s : URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+}
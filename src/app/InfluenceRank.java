@@ -0,0 +1,352 @@
+package app;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class InfluenceRank {
+    /*
+     *  OVERVIEW:
+     *      Classifica degli utenti di un SocialNetwork per influenza, calcolata con PageRank sul grafo
+     *      dei seguiti (un arco u -> v per ogni v seguito da u, se v esiste): un utente è influente se
+     *      è seguito da utenti influenti, per cui un gruppo di bot che si seguono a vicenda non guadagna
+     *      posizioni come con il semplice numero di follower.
+     *      Il ricalcolo copia il grafo in array di interi (archi entranti in formato CSR) sotto il read
+     *      lock della rete, poi itera senza alcun lock: ogni iterazione è divisa a intervalli di nodi
+     *      sul ForkJoinPool. Il ricalcolo riparte dai punteggi del risultato precedente (di solito
+     *      bastano poche iterazioni) e viene saltato se i seguiti non sono cambiati.
+     *      Le letture restituiscono l'ultimo risultato completo, pubblicato con un riferimento
+     *      volatile: non prendono lock e non attendono il ricalcolo in corso.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      ranking.names[i] -> utente in posizione i della classifica (dal più influente)
+     *      ranking.ranks[i] -> punteggio di ranking.names[i] (i punteggi sommano a 1)
+     *      ranking.version -> followedVersion della rete al momento della copia del grafo
+     *
+     *  REPRESENTATION INVARIANT:
+     *      sn != null && pool != null && ranking != null &&
+     *      ranking.names.length == ranking.ranks.length &&
+     *      ranking.ranks è ordinato in modo non crescente
+     */
+
+    public static final double DAMPING = 0.85;
+    // somma delle variazioni dei punteggi sotto cui il calcolo si ferma
+    public static final double TOLERANCE = 1e-6;
+    public static final int MAX_ITERATIONS = 100;
+    // sotto questo numero di nodi un'iterazione non viene divisa
+    private static final int PARALLEL_CUTOFF = 8_192;
+
+    private final SocialNetwork sn;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "influence-rank");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Ranking ranking = new Ranking(-1, new String[0], new double[0], 0);
+
+    /**
+     * Risultato di un calcolo (immutabile)
+     */
+    private static final class Ranking {
+        final long version;
+        final String[] names;
+        final double[] ranks;
+        final int iterations;
+
+        Ranking(long version, String[] names, double[] ranks, int iterations) {
+            this.version = version;
+            this.names = names;
+            this.ranks = ranks;
+            this.iterations = iterations;
+        }
+    }
+
+    /**
+     * Costruttore della classe InfluenceRank (il ricalcolo periodico non viene avviato)
+     * @param sn la rete da classificare
+     * @param pool il pool su cui eseguire le iterazioni
+     */
+    public InfluenceRank(SocialNetwork sn, ForkJoinPool pool) {
+        if(sn == null || pool == null) {
+            throw new NullPointerException();
+        }
+        this.sn = sn;
+        this.pool = pool;
+    }
+
+    /**
+     * Avvia il ricalcolo periodico (il primo subito)
+     * @param period intervallo fra la fine di un ricalcolo e l'inizio del successivo
+     */
+    public void start(Duration period) {
+        if(period == null) {
+            throw new NullPointerException();
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch(RuntimeException e) {
+                System.err.println("[InfluenceRank] ricalcolo fallito: " + e);
+            }
+        }, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ferma il ricalcolo periodico (l'ultimo risultato resta disponibile)
+     */
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ricalcola la classifica nel thread chiamante, se i seguiti sono cambiati dall'ultimo calcolo
+     * (il chiamante non deve avere il lock della rete)
+     * @return true se la classifica è stata ricalcolata, false se era già aggiornata
+     */
+    public synchronized boolean refresh() {
+        Ranking precedente = ranking;
+        String[] nomi;
+        int[][] uscenti;
+        long versione;
+
+        Lock lock = sn.getLock().readLock();
+        lock.lock();
+        try {
+            versione = sn.getFollowedVersion();
+            if(versione == precedente.version) {
+                return false;
+            }
+            Map<String, Integer> indici = new HashMap<>(sn.followed.size() * 4 / 3 + 1);
+            nomi = new String[sn.followed.size()];
+            for(String u : sn.followed.keySet()) {
+                nomi[indici.size()] = u;
+                indici.put(u, indici.size());
+            }
+            uscenti = new int[nomi.length][];
+            for(int u = 0; u < nomi.length; u++) {
+                Set<String> seguiti = sn.followed.get(nomi[u]);
+                int[] archi = new int[seguiti != null ? seguiti.size() : 0];
+                int n = 0;
+                if(seguiti != null) {
+                    for(String v : seguiti) {
+                        Integer i = indici.get(v);
+                        if(i != null && i != u) {
+                            archi[n++] = i;
+                        }
+                    }
+                }
+                uscenti[u] = n == archi.length ? archi : Arrays.copyOf(archi, n);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        ranking = compute(versione, nomi, uscenti, precedente);
+        return true;
+    }
+
+    /**
+     * Restituisce i k utenti più influenti secondo l'ultimo calcolo completo
+     * @param k numero massimo di utenti
+     * @return lista di al più k utenti, dal più influente (vuota se nessun calcolo è terminato)
+     */
+    public List<String> influencersByRank(int k) {
+        Ranking r = ranking;
+        return Collections.unmodifiableList(Arrays.asList(r.names).subList(0, Math.max(0, Math.min(k, r.names.length))));
+    }
+
+    /**
+     * Restituisce il punteggio di un utente secondo l'ultimo calcolo completo
+     * @param username nome utente
+     * @return il punteggio (0 se l'utente non era nella rete al momento del calcolo)
+     */
+    public double getRank(String username) {
+        Ranking r = ranking;
+        for(int i = 0; i < r.names.length; i++) {
+            if(r.names[i].equals(username)) {
+                return r.ranks[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Restituisce la versione dei seguiti su cui è stato fatto l'ultimo calcolo
+     * @return la followedVersion della rete (-1 se nessun calcolo è terminato)
+     */
+    public long getComputedVersion() {
+        return ranking.version;
+    }
+
+    /**
+     * Restituisce il numero di iterazioni dell'ultimo calcolo
+     * @return il numero di iterazioni
+     */
+    public int getLastIterations() {
+        return ranking.iterations;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Itera PageRank (con i punteggi dei nodi senza archi uscenti distribuiti su tutti i nodi)
+     * partendo dai punteggi del calcolo precedente
+     */
+    private Ranking compute(long versione, String[] nomi, int[][] uscenti, Ranking precedente) {
+        int n = nomi.length;
+        if(n == 0) {
+            return new Ranking(versione, nomi, new double[0], 0);
+        }
+
+        // archi entranti in formato CSR: le sorgenti degli archi verso v sono in sorgenti[inizio[v] .. inizio[v + 1])
+        int[] inizio = new int[n + 1];
+        int[] grado = new int[n];
+        for(int u = 0; u < n; u++) {
+            grado[u] = uscenti[u].length;
+            for(int v : uscenti[u]) {
+                inizio[v + 1]++;
+            }
+        }
+        for(int v = 0; v < n; v++) {
+            inizio[v + 1] += inizio[v];
+        }
+        int[] sorgenti = new int[inizio[n]];
+        int[] riempiti = Arrays.copyOf(inizio, n);
+        for(int u = 0; u < n; u++) {
+            for(int v : uscenti[u]) {
+                sorgenti[riempiti[v]++] = u;
+            }
+        }
+
+        double[] rank = warmStart(nomi, precedente);
+        double[] prossimo = new double[n];
+        double[] contributo = new double[n];
+        int iterazioni = 0;
+        double variazione = Double.MAX_VALUE;
+        while(iterazioni < MAX_ITERATIONS && variazione > TOLERANCE) {
+            double[] r = rank;
+            double senzaUscita = forEachRange(n, (da, a) -> {
+                double s = 0;
+                for(int u = da; u < a; u++) {
+                    if(grado[u] == 0) {
+                        contributo[u] = 0;
+                        s += r[u];
+                    } else {
+                        contributo[u] = r[u] / grado[u];
+                    }
+                }
+                return s;
+            });
+            double base = (1 - DAMPING + DAMPING * senzaUscita) / n;
+            double[] p = prossimo;
+            variazione = forEachRange(n, (da, a) -> {
+                double d = 0;
+                for(int v = da; v < a; v++) {
+                    double s = 0;
+                    for(int i = inizio[v]; i < inizio[v + 1]; i++) {
+                        s += contributo[sorgenti[i]];
+                    }
+                    p[v] = base + DAMPING * s;
+                    d += Math.abs(p[v] - r[v]);
+                }
+                return d;
+            });
+            prossimo = rank;
+            rank = p;
+            iterazioni++;
+        }
+
+        // classifica: per punteggio decrescente, a parità in ordine alfabetico
+        double[] punteggi = rank;
+        Integer[] ordine = new Integer[n];
+        for(int i = 0; i < n; i++) {
+            ordine[i] = i;
+        }
+        Arrays.sort(ordine, (a, b) -> {
+            int c = Double.compare(punteggi[b], punteggi[a]);
+            return c != 0 ? c : nomi[a].compareTo(nomi[b]);
+        });
+        String[] nomiOrdinati = new String[n];
+        double[] punteggiOrdinati = new double[n];
+        for(int i = 0; i < n; i++) {
+            nomiOrdinati[i] = nomi[ordine[i]];
+            punteggiOrdinati[i] = punteggi[ordine[i]];
+        }
+        return new Ranking(versione, nomiOrdinati, punteggiOrdinati, iterazioni);
+    }
+
+    /**
+     * Punteggi iniziali: quelli del calcolo precedente per gli utenti già presenti, 1/n per i nuovi,
+     * normalizzati a somma 1
+     */
+    private static double[] warmStart(String[] nomi, Ranking precedente) {
+        Map<String, Double> vecchi = new HashMap<>(precedente.names.length * 4 / 3 + 1);
+        for(int i = 0; i < precedente.names.length; i++) {
+            vecchi.put(precedente.names[i], precedente.ranks[i]);
+        }
+        double[] rank = new double[nomi.length];
+        double somma = 0;
+        for(int i = 0; i < nomi.length; i++) {
+            rank[i] = vecchi.getOrDefault(nomi[i], 1.0 / nomi.length);
+            somma += rank[i];
+        }
+        for(int i = 0; i < nomi.length; i++) {
+            rank[i] /= somma;
+        }
+        return rank;
+    }
+
+    /**
+     * Corpo di un'iterazione su un intervallo di nodi
+     */
+    @FunctionalInterface
+    private interface RangeBody {
+        double run(int from, int to);
+    }
+
+    /**
+     * Esegue body sui nodi 0..n divisi a intervalli sul pool e somma i risultati
+     */
+    private double forEachRange(int n, RangeBody body) {
+        if(pool.getParallelism() < 2 || n < PARALLEL_CUTOFF) {
+            return body.run(0, n);
+        }
+        int foglia = Math.max(PARALLEL_CUTOFF / 4, n / (pool.getParallelism() * 4));
+        return pool.invoke(new RangeTask(body, 0, n, foglia));
+    }
+
+    private static final class RangeTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeBody body;
+        private final int from, to, leaf;
+
+        RangeTask(RangeBody body, int from, int to, int leaf) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected Double compute() {
+            if(to - from <= leaf) {
+                return body.run(from, to);
+            }
+            int mezzo = (from + to) >>> 1;
+            RangeTask sinistra = new RangeTask(body, from, mezzo, leaf);
+            sinistra.fork();
+            double destra = new RangeTask(body, mezzo, to, leaf).compute();
+            return sinistra.join() + destra;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class JsonWriter {
+    /*
+     *  OVERVIEW:
+     *      Encoder JSON scritto a mano che produce direttamente byte UTF-8 in un buffer
+     *      riutilizzabile. Non crea stringhe intermedie (né per i numeri né per l'escape
+     *      dei caratteri), quindi un'istanza riusata con reset() non alloca nulla finché
+     *      il buffer è abbastanza grande. Le virgole fra gli elementi vengono inserite
+     *      automaticamente tenendo traccia del livello di annidamento.
+     *      Non è thread-safe: ogni istanza va usata da un thread alla volta.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      buf[0..size) -> il documento JSON scritto finora
+     *      first[d] -> true se al livello d non è ancora stato scritto alcun elemento
+     *      afterName -> true se l'ultimo token scritto è il nome di un campo
+     *
+     *  REPRESENTATION INVARIANT:
+     *      buf != null && 0 <= size <= buf.length &&
+     *      0 <= depth < first.length
+     */
+
+    private byte[] buf;
+    private int size;
+
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] LONG_MIN = Long.toString(Long.MIN_VALUE).getBytes();
+
+    /**
+     * Costruttore della classe JsonWriter.
+     * @param capacity capacità iniziale del buffer in byte
+     */
+    public JsonWriter(int capacity) {
+        buf = new byte[Math.max(capacity, 16)];
+        reset();
+    }
+
+    /**
+     * Svuota il writer per riutilizzarlo (il buffer viene mantenuto)
+     * @return questo writer
+     */
+    public JsonWriter reset() {
+        size = 0;
+        depth = 0;
+        first[0] = true;
+        afterName = false;
+        return this;
+    }
+
+    /**
+     * Apre un oggetto JSON
+     * @return questo writer
+     */
+    public JsonWriter beginObject() {
+        separator();
+        push();
+        write((byte) '{');
+        return this;
+    }
+
+    /**
+     * Chiude l'oggetto JSON corrente
+     * @return questo writer
+     */
+    public JsonWriter endObject() {
+        depth--;
+        write((byte) '}');
+        return this;
+    }
+
+    /**
+     * Apre un array JSON
+     * @return questo writer
+     */
+    public JsonWriter beginArray() {
+        separator();
+        push();
+        write((byte) '[');
+        return this;
+    }
+
+    /**
+     * Chiude l'array JSON corrente
+     * @return questo writer
+     */
+    public JsonWriter endArray() {
+        depth--;
+        write((byte) ']');
+        return this;
+    }
+
+    /**
+     * Scrive il nome di un campo (il valore va scritto subito dopo)
+     * @param name nome del campo
+     * @return questo writer
+     */
+    public JsonWriter name(String name) {
+        separator();
+        string(name);
+        write((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Scrive una stringa (null viene scritto come null)
+     * @param value la stringa da scrivere
+     * @return questo writer
+     */
+    public JsonWriter value(String value) {
+        separator();
+        if(value == null) {
+            write(NULL);
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * Scrive un numero intero senza passare da Long.toString
+     * @param value il numero da scrivere
+     * @return questo writer
+     */
+    public JsonWriter value(long value) {
+        separator();
+        if(value == Long.MIN_VALUE) {
+            write(LONG_MIN);
+            return this;
+        }
+        if(value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for(long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for(int i = size + digits - 1; i >= size; i--) {
+            buf[i] = DIGITS[(int) (value % 10)];
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Scrive un booleano
+     * @param value il booleano da scrivere
+     * @return questo writer
+     */
+    public JsonWriter value(boolean value) {
+        separator();
+        write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    /**
+     * Scrive il valore null
+     * @return questo writer
+     */
+    public JsonWriter nullValue() {
+        separator();
+        write(NULL);
+        return this;
+    }
+
+    /**
+     * Termina una riga di un file JSONL: il valore successivo al livello più esterno non è
+     * preceduto dalla virgola
+     * @return questo writer
+     */
+    public JsonWriter newline() {
+        write((byte) '\n');
+        first[depth] = true;
+        return this;
+    }
+
+    /**
+     * Scrive un post come oggetto JSON {id, author, text, timestamp}
+     * @param p il post da scrivere
+     * @return questo writer
+     */
+    public JsonWriter value(Post p) {
+        return beginObject()
+                .name("id").value(p.getId())
+                .name("author").value(p.getAuthor())
+                .name("text").value(p.getText())
+                .name("timestamp").value(p.getTimestamp())
+                .endObject();
+    }
+
+    /**
+     * Restituisce il numero di byte scritti
+     * @return dimensione del documento in byte
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copia il documento scritto sullo stream
+     * @param out lo stream di destinazione
+     * @throws IOException in caso di errore di scrittura
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, size);
+    }
+
+    /**
+     * Restituisce il documento scritto come stringa (alloca: usare solo per debug/test)
+     * @return il documento JSON
+     */
+    public String toString() {
+        return new String(buf, 0, size, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private void push() {
+        depth++;
+        if(depth == first.length) {
+            first = Arrays.copyOf(first, first.length * 2);
+        }
+        first[depth] = true;
+    }
+
+    private void separator() {
+        if(afterName) {
+            afterName = false;
+        } else {
+            if(!first[depth]) {
+                write((byte) ',');
+            }
+            first[depth] = false;
+        }
+    }
+
+    private void string(String s) {
+        int len = s.length();
+        ensure(len + 2);
+        buf[size++] = '"';
+        for(int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if(c < 0x80) {
+                if(c == '"' || c == '\\') {
+                    ensure(3);
+                    buf[size++] = '\\';
+                    buf[size++] = (byte) c;
+                } else if(c < 0x20) {
+                    ensure(7);
+                    buf[size++] = '\\';
+                    switch(c) {
+                        case '\n': buf[size++] = 'n'; break;
+                        case '\r': buf[size++] = 'r'; break;
+                        case '\t': buf[size++] = 't'; break;
+                        default:
+                            buf[size++] = 'u';
+                            buf[size++] = '0';
+                            buf[size++] = '0';
+                            buf[size++] = DIGITS[c >> 4];
+                            buf[size++] = DIGITS[c & 0xF];
+                    }
+                } else {
+                    ensure(2);
+                    buf[size++] = (byte) c;
+                }
+            } else if(c < 0x800) {
+                ensure(3);
+                buf[size++] = (byte) (0xC0 | (c >> 6));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(5);
+                buf[size++] = (byte) (0xF0 | (cp >> 18));
+                buf[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (cp & 0x3F));
+            } else if(Character.isSurrogate(c)) {
+                ensure(2);
+                buf[size++] = '?'; // surrogato isolato: non rappresentabile in UTF-8
+            } else {
+                ensure(4);
+                buf[size++] = (byte) (0xE0 | (c >> 12));
+                buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[size++] = '"';
+    }
+
+    private void write(byte b) {
+        ensure(1);
+        buf[size++] = b;
+    }
+
+    private void write(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, size, b.length);
+        size += b.length;
+    }
+
+    private void ensure(int n) {
+        if(size + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package app;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class KeywordMatcher {
+    /*
+     *  OVERVIEW:
+     *      Automa di Aho-Corasick che cerca contemporaneamente tutte le parole di una query
+     *      in un testo, ignorando maiuscole e minuscole (vedi fold: Character.toLowerCase per
+     *      code point, senza locale). Si costruisce una volta per query; ogni testo viene poi
+     *      letto una sola volta, qualunque sia il numero di parole, senza allocare nulla.
+     *      Le transizioni sono in una tabella hash ad indirizzamento aperto di primitivi
+     *      (chiave = stato e carattere), con un array diretto per i caratteri ASCII della radice.
+     *      L'oggetto è immutabile dopo la costruzione e può essere condiviso fra thread.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      words -> insieme delle parole cercate (in minuscolo)
+     *      goto(s, c) -> stato raggiunto da s leggendo c (-1 se non definito)
+     *      fail[s] -> stato del suffisso proprio più lungo di s che è anche prefisso di una parola
+     *      output[s] -> indici delle parole che terminano nello stato s (anche tramite i fail)
+     *
+     *  REPRESENTATION INVARIANT:
+     *      states >= 1 && stato 0 = radice &&
+     *      fail[0] == 0 && for each(s) in [1, states) : 0 <= fail[s] < states &&
+     *      keys.length == values.length è potenza di 2
+     */
+
+    private static final int[] NO_OUTPUT = new int[0];
+    private static final long EMPTY = -1L;
+
+    private final int words;
+    private final boolean matchesEverything; // la query contiene la parola vuota
+
+    private int states = 1;
+    private final int[] fail;
+    private final int[][] output;
+    private final int[] firstChild;  // figli di ogni stato come lista concatenata
+    private final int[] sibling;     // (0 = nessuno: la radice non è mai figlia)
+    private final char[] label;
+    private final int[] rootAscii = new int[128];
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+
+    /**
+     * Costruttore della classe KeywordMatcher.
+     * @param words le parole da cercare
+     */
+    public KeywordMatcher(Collection<String> words) {
+        if(words == null) {
+            throw new NullPointerException();
+        }
+
+        this.words = words.size();
+        int caratteri = 1;
+        boolean vuota = false;
+        for(String w : words) {
+            caratteri += w.length();
+            vuota |= w.isEmpty();
+        }
+        this.matchesEverything = vuota;
+
+        int capacita = Integer.highestOneBit(Math.max(caratteri * 2, 16) - 1) << 1;
+        keys = new long[capacita];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacita];
+        mask = capacita - 1;
+        Arrays.fill(rootAscii, -1);
+
+        fail = new int[caratteri];
+        output = new int[caratteri][];
+        firstChild = new int[caratteri];
+        sibling = new int[caratteri];
+        label = new char[caratteri];
+
+        // 1) trie delle parole
+        int indice = 0;
+        for(String w : words) {
+            int s = 0;
+            for(int i = 0; i < w.length(); i++) {
+                char c = fold(w, i);
+                int next = next(s, c);
+                if(next < 0) {
+                    next = states++;
+                    put(s, c, next);
+                }
+                s = next;
+            }
+            output[s] = append(output[s], indice++);
+        }
+
+        // 2) link di fallimento in ampiezza (e unione degli output lungo i link)
+        Deque<Integer> coda = new ArrayDeque<>();
+        for(int t = firstChild[0]; t != 0; t = sibling[t]) {
+            fail[t] = 0;
+            coda.add(t);
+        }
+        while(!coda.isEmpty()) {
+            int s = coda.poll();
+            for(int t = firstChild[s]; t != 0; t = sibling[t]) {
+                char c = label[t];
+                int f = fail[s];
+                while(f != 0 && next(f, c) < 0) {
+                    f = fail[f];
+                }
+                int g = next(f, c);
+                fail[t] = (g >= 0 && g != t) ? g : 0;
+                if(output[fail[t]] != null) {
+                    for(int o : output[fail[t]]) {
+                        output[t] = append(output[t], o);
+                    }
+                }
+                coda.add(t);
+            }
+        }
+        for(int s = 0; s < states; s++) {
+            if(output[s] == null) {
+                output[s] = NO_OUTPUT;
+            }
+        }
+    }
+
+    /**
+     * Verifica se il testo contiene almeno una delle parole (si ferma alla prima trovata)
+     * @param text il testo in cui cercare
+     * @return true se il testo contiene almeno una parola, false altrimenti
+     */
+    public boolean matches(CharSequence text) {
+        if(matchesEverything) {
+            return true;
+        }
+        if(words == 0) {
+            return false;
+        }
+
+        int s = 0;
+        for(int i = 0, len = text.length(); i < len; i++) {
+            s = step(s, fold(text, i));
+            if(output[s].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Restituisce il numero di parole cercate
+     * @return il numero di parole
+     */
+    public int size() {
+        return words;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Minuscolo del carattere i di s, usato sia per le parole sia per i testi: Character.toLowerCase
+     * del code point (le coppie surrogate sono piegate insieme), indipendente dal locale e sempre un
+     * carattere per carattere. A differenza di String.toLowerCase(), usato in origine da containing,
+     * 'İ' diventa 'i' (non "i" più U+0307), 'Σ' diventa sempre 'σ' (anche in fine di parola) e con il
+     * locale turco 'I' diventa 'i' (non 'ı').
+     */
+    static char fold(CharSequence s, int i) {
+        char c = s.charAt(i);
+        if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toLowerCase(Character.toCodePoint(c, s.charAt(i + 1)));
+            return Character.isSupplementaryCodePoint(cp) ? Character.highSurrogate(cp) : c;
+        }
+        if(Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(s.charAt(i - 1))) {
+            int cp = Character.toLowerCase(Character.toCodePoint(s.charAt(i - 1), c));
+            return Character.isSupplementaryCodePoint(cp) ? Character.lowSurrogate(cp) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * Transizione dell'automa: segue i link di fallimento finché non trova c
+     */
+    int step(int s, char c) {
+        while(true) {
+            int t = next(s, c);
+            if(t >= 0) {
+                return t;
+            }
+            if(s == 0) {
+                return 0;
+            }
+            s = fail[s];
+        }
+    }
+
+    /**
+     * Indici delle parole riconosciute nello stato s
+     */
+    int[] output(int s) {
+        return output[s];
+    }
+
+    private int next(int s, char c) {
+        if(s == 0 && c < 128) {
+            return rootAscii[c];
+        }
+        long key = ((long) s << 16) | c;
+        for(int i = hash(key); ; i = (i + 1) & mask) {
+            if(keys[i] == EMPTY) {
+                return -1;
+            }
+            if(keys[i] == key) {
+                return values[i];
+            }
+        }
+    }
+
+    private void put(int s, char c, int t) {
+        if(s == 0 && c < 128) {
+            rootAscii[c] = t;
+        }
+        long key = ((long) s << 16) | c;
+        int i = hash(key);
+        while(keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = t;
+        label[t] = c;
+        sibling[t] = firstChild[s];
+        firstChild[s] = t;
+    }
+
+    private int hash(long key) {
+        long x = key * 0x9E3779B97F4A7C15L;
+        return (int) (x ^ (x >>> 29)) & mask;
+    }
+
+    private static int[] append(int[] array, int value) {
+        if(array == null) {
+            return new int[]{value};
+        }
+        int[] nuovo = Arrays.copyOf(array, array.length + 1);
+        nuovo[array.length] = value;
+        return nuovo;
+    }
+}
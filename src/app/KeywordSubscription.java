@@ -0,0 +1,114 @@
+package app;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class KeywordSubscription implements Flow.Publisher<Post>, AutoCloseable {
+    /*
+     *  OVERVIEW:
+     *      Interrogazione permanente su un insieme di parole (vedi SocialNetwork.subscribe): ogni
+     *      post aggiunto alla rete che contiene almeno una delle parole (come containing) viene
+     *      pubblicato ai Flow.Subscriber iscritti. La consegna passa per una SubmissionPublisher:
+     *      ogni subscriber riceve al più quanto ha chiesto con request(n), e i post in più restano
+     *      nel suo buffer (di bufferCapacity post); chi pubblica è il thread che aggiunge il post,
+     *      sotto il write lock, e non aspetta mai: con il buffer pieno il post viene scartato per
+     *      quel subscriber e contato in getDroppedCount. close() toglie l'interrogazione dalla rete
+     *      e chiude il flusso (onComplete).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      words -> le parole cercate
+     *      publisher -> i subscriber e i post in attesa di ognuno
+     *      dropped -> post scartati perché il buffer di un subscriber era pieno
+     *
+     *  REPRESENTATION INVARIANT:
+     *      words != null && publisher != null && owner != null && dropped != null
+     */
+
+    private final List<String> words;
+    private final SubmissionPublisher<Post> publisher;
+    private final KeywordSubscriptions owner;
+    private final LongAdder dropped = new LongAdder();
+
+    KeywordSubscription(List<String> words, Executor executor, int bufferCapacity, KeywordSubscriptions owner) {
+        this.words = Collections.unmodifiableList(words);
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+        this.owner = owner;
+    }
+
+    /**
+     * Iscrive un subscriber: riceverà i post aggiunti da questo momento che contengono le parole
+     * @param subscriber il subscriber
+     */
+    public void subscribe(Flow.Subscriber<? super Post> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Restituisce le parole cercate
+     * @return lista non modificabile delle parole
+     */
+    public List<String> getWords() {
+        return words;
+    }
+
+    /**
+     * Restituisce il numero di post scartati perché un subscriber non ne chiedeva abbastanza
+     * @return i post scartati (contati una volta per subscriber)
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Restituisce il numero di subscriber iscritti
+     * @return il numero di subscriber
+     */
+    public int getNumberOfSubscribers() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Indica se l'interrogazione è stata chiusa
+     * @return true dopo close()
+     */
+    public boolean isClosed() {
+        return publisher.isClosed();
+    }
+
+    /**
+     * Toglie l'interrogazione dalla rete e completa il flusso di ogni subscriber (dopo i post già
+     * nel suo buffer)
+     */
+    public void close() {
+        owner.remove(this);
+        publisher.close();
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Pubblica un post senza attendere (chiamato da chi aggiunge il post)
+     */
+    void offer(Post p) {
+        if(publisher.getNumberOfSubscribers() == 0) {
+            return;
+        }
+        try {
+            publisher.offer(p, (subscriber, post) -> {
+                dropped.increment();
+                return false;
+            });
+        } catch(IllegalStateException e) {
+            // chiusa nel frattempo da close()
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package app;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class KeywordSubscriptions {
+    /*
+     *  OVERVIEW:
+     *      Le interrogazioni permanenti (KeywordSubscription) di una rete. Le parole di tutte le
+     *      interrogazioni stanno in un unico automa di Aho-Corasick (KeywordMatcher), per cui ogni
+     *      post aggiunto viene letto una volta sola e il costo dipende dalla lunghezza del testo e
+     *      dalle interrogazioni che corrispondono, non dal numero di interrogazioni. L'automa e gli
+     *      elenchi parola -> interrogazioni sono immutabili e vengono ricostruiti (copy-on-write) a
+     *      ogni iscrizione o chiusura, che sono rare; deliver li legge senza lock, anche da più
+     *      shard insieme.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      state.all -> le interrogazioni aperte
+     *      state.byWord[i] -> le interrogazioni che cercano la parola i dell'automa (in minuscolo)
+     *      state.everything -> le interrogazioni con la parola vuota (ricevono ogni post)
+     *
+     *  REPRESENTATION INVARIANT:
+     *      state != null && executor != null &&
+     *      state.matcher == null <=> nessuna parola non vuota &&
+     *      state.byWord.length == numero di parole dell'automa
+     */
+
+    private static final class State {
+        final List<KeywordSubscription> all;
+        final KeywordMatcher matcher;
+        final KeywordSubscription[][] byWord;
+        final KeywordSubscription[] everything;
+
+        State(List<KeywordSubscription> all, KeywordMatcher matcher, KeywordSubscription[][] byWord, KeywordSubscription[] everything) {
+            this.all = all;
+            this.matcher = matcher;
+            this.byWord = byWord;
+            this.everything = everything;
+        }
+    }
+
+    private static final State EMPTY = new State(Collections.emptyList(), null, new KeywordSubscription[0][], new KeywordSubscription[0]);
+
+    private volatile State state = EMPTY;
+    private Executor executor;
+
+    /**
+     * Apre un'interrogazione permanente
+     * @param words le parole cercate
+     * @param bufferCapacity post tenuti per ogni subscriber in attesa di request
+     * @return l'interrogazione
+     */
+    synchronized KeywordSubscription add(Collection<String> words, int bufferCapacity) {
+        if(words == null) {
+            throw new NullPointerException();
+        }
+        if(bufferCapacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if(executor == null) {
+            executor = VirtualThreads.newPerTaskExecutor();
+        }
+        KeywordSubscription s = new KeywordSubscription(new ArrayList<>(words), executor, bufferCapacity, this);
+        List<KeywordSubscription> tutte = new ArrayList<>(state.all);
+        tutte.add(s);
+        state = build(tutte);
+        return s;
+    }
+
+    /**
+     * Chiude un'interrogazione (se è ancora aperta)
+     */
+    synchronized void remove(KeywordSubscription s) {
+        List<KeywordSubscription> tutte = new ArrayList<>(state.all);
+        if(tutte.remove(s)) {
+            state = build(tutte);
+        }
+    }
+
+    /**
+     * Pubblica il post alle interrogazioni di cui contiene almeno una parola (una volta per interrogazione)
+     * @param p il post aggiunto
+     */
+    void deliver(Post p) {
+        State s = state;
+        if(s.all.isEmpty()) {
+            return;
+        }
+        for(KeywordSubscription q : s.everything) {
+            q.offer(p);
+        }
+        if(s.matcher == null) {
+            return;
+        }
+
+        String text = p.getText();
+        BitSet parole = null;
+        Set<KeywordSubscription> avvisate = null;
+        int stato = 0;
+        for(int i = 0, len = text.length(); i < len; i++) {
+            stato = s.matcher.step(stato, KeywordMatcher.fold(text, i));
+            for(int w : s.matcher.output(stato)) {
+                if(parole == null) {
+                    parole = new BitSet();
+                    avvisate = Collections.newSetFromMap(new IdentityHashMap<>());
+                }
+                if(parole.get(w)) {
+                    continue;
+                }
+                parole.set(w);
+                for(KeywordSubscription q : s.byWord[w]) {
+                    if(avvisate.add(q)) {
+                        q.offer(p);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Numero di interrogazioni aperte
+     */
+    int size() {
+        return state.all.size();
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Costruisce l'automa con le parole (senza ripetizioni) di tutte le interrogazioni
+     */
+    private static State build(List<KeywordSubscription> tutte) {
+        Map<String, List<KeywordSubscription>> perParola = new LinkedHashMap<>();
+        List<KeywordSubscription> sempre = new ArrayList<>();
+        for(KeywordSubscription q : tutte) {
+            if(q.getWords().contains("")) {
+                sempre.add(q);
+                continue;
+            }
+            for(String w : q.getWords()) {
+                List<KeywordSubscription> lista = perParola.computeIfAbsent(lower(w), k -> new ArrayList<>(1));
+                if(lista.isEmpty() || lista.get(lista.size() - 1) != q) {
+                    lista.add(q);
+                }
+            }
+        }
+
+        KeywordSubscription[][] byWord = new KeywordSubscription[perParola.size()][];
+        int i = 0;
+        for(List<KeywordSubscription> lista : perParola.values()) {
+            byWord[i++] = lista.toArray(new KeywordSubscription[0]);
+        }
+        KeywordMatcher matcher = perParola.isEmpty() ? null : new KeywordMatcher(perParola.keySet());
+        return new State(Collections.unmodifiableList(tutte), matcher, byWord, sempre.toArray(new KeywordSubscription[0]));
+    }
+
+    /**
+     * Minuscolo carattere per carattere, come KeywordMatcher (vedi KeywordMatcher.fold)
+     */
+    private static String lower(String w) {
+        char[] c = new char[w.length()];
+        for(int i = 0; i < c.length; i++) {
+            c[i] = KeywordMatcher.fold(w, i);
+        }
+        return new String(c);
+    }
+}
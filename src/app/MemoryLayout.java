@@ -0,0 +1,194 @@
+package app;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.ToLongFunction;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class MemoryLayout {
+    /*
+     *  OVERVIEW:
+     *      Stime della memoria occupata dagli oggetti secondo il layout di HotSpot (intestazione,
+     *      riferimenti compressi o meno, allineamento), letto all'avvio dalle opzioni della JVM.
+     *      Le dimensioni delle classi della libreria (String, HashMap, ArrayList, ...) sono calcolate
+     *      dai loro campi; le capacità non visibili (tabelle delle HashMap, array delle ArrayList)
+     *      sono stimate dal numero di elementi. Per le collezioni grandi si misurano al più SAMPLE
+     *      elementi e si moltiplica la media per il numero di elementi.
+     */
+
+    // elementi misurati per ogni collezione
+    static final int SAMPLE = 1_024;
+
+    static final int REF;
+    static final int HEADER;
+    static final int ARRAY_HEADER;
+    static final int ALIGN;
+
+    static {
+        boolean oopsCompressi = true;
+        boolean classiCompresse = true;
+        int allineamento = 8;
+        try {
+            HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            oopsCompressi = Boolean.parseBoolean(hotspot.getVMOption("UseCompressedOops").getValue());
+            classiCompresse = Boolean.parseBoolean(hotspot.getVMOption("UseCompressedClassPointers").getValue());
+            allineamento = Integer.parseInt(hotspot.getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch(RuntimeException | LinkageError e) {
+            // JVM non HotSpot: si assume il layout predefinito di una JVM a 64 bit con heap < 32 GB
+        }
+        REF = oopsCompressi ? 4 : 8;
+        HEADER = classiCompresse ? 12 : 16;
+        ARRAY_HEADER = classiCompresse ? 16 : 24;
+        ALIGN = allineamento;
+    }
+
+    private MemoryLayout() {
+    }
+
+    /**
+     * Dimensione di un oggetto con refs riferimenti e primitiveBytes byte di campi primitivi
+     */
+    static long object(int refs, int primitiveBytes) {
+        return align(HEADER + (long) refs * REF + primitiveBytes);
+    }
+
+    /**
+     * Dimensione di un array di length elementi da elementBytes byte
+     */
+    static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * Dimensione di un array di length riferimenti
+     */
+    static long refArray(long length) {
+        return array(length, REF);
+    }
+
+    /**
+     * Dimensione di una String con il suo array di byte (1 byte per carattere se tutti i caratteri
+     * sono Latin-1, altrimenti 2)
+     */
+    static long string(String s) {
+        if(s == null) {
+            return 0;
+        }
+        int perCarattere = 1;
+        for(int i = 0; i < s.length(); i++) {
+            if(s.charAt(i) > 0xFF) {
+                perCarattere = 2;
+                break;
+            }
+        }
+        // value, hash, coder, hashIsZero
+        return object(1, 6) + array((long) s.length() * perCarattere, 1);
+    }
+
+    /**
+     * Dimensione di una HashMap con size coppie, esclusi chiavi e valori
+     */
+    static long hashMap(int size) {
+        // table, entrySet, keySet, values; size, modCount, threshold, loadFactor
+        long n = object(4, 16);
+        if(size > 0) {
+            n += refArray(tableSize(size));
+        }
+        // Node: hash, key, value, next
+        return n + size * object(3, 4);
+    }
+
+    /**
+     * Dimensione di una IdentityHashMap con size coppie, esclusi chiavi e valori (chiavi e valori
+     * stanno alternati in un solo array, pieno al più per 2/3)
+     */
+    static long identityHashMap(int size) {
+        // table, entrySet, keySet, values; size, modCount
+        int capacita = Math.max(32, Integer.highestOneBit(size + (size << 1)));
+        return object(4, 8) + refArray(2L * capacita);
+    }
+
+    /**
+     * Dimensione di un HashSet con size elementi, esclusi gli elementi
+     */
+    static long hashSet(int size) {
+        return object(1, 0) + hashMap(size);
+    }
+
+    /**
+     * Dimensione di una ArrayList con size elementi, esclusi gli elementi (l'array cresce di 1.5
+     * volte, in media è pieno all'80%)
+     */
+    static long arrayList(int size) {
+        return object(1, 8) + refArray(size + size / 4);
+    }
+
+    /**
+     * Dimensione di un TreeSet con size elementi, esclusi gli elementi
+     */
+    static long treeSet(int size) {
+        // TreeMap: comparator, root, entrySet, navigableKeySet, descendingMap, keySet, values; size, modCount
+        // Entry: key, value, left, right, parent; color
+        return object(1, 0) + object(7, 8) + size * object(5, 1);
+    }
+
+    /**
+     * Dimensione di una ConcurrentSkipList con size elementi, esclusi gli elementi
+     * (nodi del livello base più in media 1/3 di nodi indice per elemento)
+     */
+    static long skipList(int size) {
+        return object(6, 4) + object(3, 0) + size * object(3, 0) + size * object(3, 0) / 3;
+    }
+
+    /**
+     * Stima la somma di size(e) sugli elementi di una collezione misurandone al più SAMPLE
+     * (i primi dell'iterazione, o a intervalli regolari se la collezione è una lista)
+     */
+    static <T> long sampled(Collection<T> c, ToLongFunction<? super T> size) {
+        int n = c.size();
+        if(n == 0) {
+            return 0;
+        }
+        int campioni = Math.min(n, SAMPLE);
+        long somma = 0;
+        if(c instanceof List && c instanceof RandomAccess) {
+            List<T> lista = (List<T>) c;
+            for(int i = 0; i < campioni; i++) {
+                somma += size.applyAsLong(lista.get((int) ((long) i * n / campioni)));
+            }
+        } else {
+            Iterator<T> it = c.iterator();
+            for(int i = 0; i < campioni; i++) {
+                somma += size.applyAsLong(it.next());
+            }
+        }
+        return campioni == n ? somma : (long) ((double) somma / campioni * n);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private static long align(long n) {
+        return (n + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    /**
+     * Capacità della tabella di una HashMap con size coppie (la minima potenza di 2 con
+     * size <= capacità * 0.75, almeno 16)
+     */
+    private static int tableSize(int size) {
+        int capacita = 16;
+        while(size > capacita * 3 / 4) {
+            capacita <<= 1;
+        }
+        return capacita;
+    }
+}
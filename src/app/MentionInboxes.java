@@ -0,0 +1,187 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class MentionInboxes {
+    /*
+     *  OVERVIEW:
+     *      Caselle delle notifiche di menzione: quando un post menziona @leo, l'id del post entra
+     *      nella casella di leo (una volta per post, mai per l'autore stesso, solo se leo esiste).
+     *      Ogni casella è un anello di capacity long (nessun oggetto per notifica) con un contatore
+     *      delle scritture (head) e un cursore di lettura (read); quando l'anello è pieno le
+     *      notifiche più vecchie vengono sovrascritte. Ogni posizione contiene l'id del post insieme
+     *      al numero della scrittura che l'ha riempita, per cui chi scrive prende una posizione con
+     *      un getAndIncrement e la riempie senza lock (anche da più shard insieme) con un CAS che
+     *      non sostituisce mai una scrittura successiva, e chi legge riconosce le posizioni non
+     *      ancora riempite o già sovrascritte. Lettura e cursore non
+     *      usano il lock della rete.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      inboxes(u) -> le ultime capacity notifiche di u, in ordine di arrivo:
+     *          la scrittura numero pos è slots[pos & mask] se (slots[..] >>> 32) == (int) (pos + 1)
+     *          e ha id (int) slots[..]; quelle con pos >= read sono da leggere
+     *
+     *  REPRESENTATION INVARIANT:
+     *      capacity è potenza di 2 && mask == capacity - 1 && exists != null &&
+     *      per ogni casella: slots.length() == capacity && 0 <= read <= head &&
+     *          il numero di scrittura di ogni posizione non diminuisce mai (in distanza con segno)
+     */
+
+    private final int capacity;
+    private final int mask;
+    private final Predicate<String> exists;
+    private final ConcurrentHashMap<String, Inbox> inboxes = new ConcurrentHashMap<>();
+
+    private static final class Inbox {
+        final AtomicLongArray slots;
+        final AtomicLong head = new AtomicLong();
+        final AtomicLong read = new AtomicLong();
+
+        Inbox(int capacity) {
+            slots = new AtomicLongArray(capacity);
+        }
+    }
+
+    /**
+     * Costruttore della classe MentionInboxes.
+     * @param capacity notifiche tenute per utente (arrotondato alla potenza di 2 successiva, almeno 2)
+     * @param exists dice se un utente esiste (chiamato senza lock, deve leggere una versione pubblicata)
+     */
+    MentionInboxes(int capacity, Predicate<String> exists) {
+        if(capacity <= 0 || capacity > 1 << 20) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.exists = exists;
+    }
+
+    /**
+     * Consegna il post agli utenti che menziona
+     * @param p il post aggiunto
+     */
+    void deliver(Post p) {
+        String text = p.getText();
+        long m = MentionScanner.find(text, 0);
+        if(m == MentionScanner.NOT_FOUND) {
+            return;
+        }
+        List<String> avvisati = new ArrayList<>(2);
+        while(m != MentionScanner.NOT_FOUND) {
+            String utente = text.substring(MentionScanner.start(m), MentionScanner.end(m));
+            if(!utente.equals(p.getAuthor()) && !avvisati.contains(utente) && exists.test(utente)) {
+                avvisati.add(utente);
+                push(inboxOf(utente), p.getId());
+            }
+            m = MentionScanner.find(text, MentionScanner.end(m));
+        }
+    }
+
+    /**
+     * Restituisce le notifiche da leggere di un utente, dalla più vecchia
+     * @param user l'utente
+     * @param limit numero massimo di notifiche
+     * @return gli id dei post che menzionano user
+     */
+    int[] unread(String user, int limit) {
+        Inbox inbox = inboxes.get(user);
+        if(inbox == null || limit <= 0) {
+            return new int[0];
+        }
+        long h = inbox.head.get();
+        long pos = Math.max(inbox.read.get(), h - capacity);
+        int[] ids = new int[(int) Math.min(limit, h - pos)];
+        int n = 0;
+        for(; pos < h && n < ids.length; pos++) {
+            long v = inbox.slots.get((int) (pos & mask));
+            int distanza = (int) (v >>> 32) - (int) (pos + 1);
+            if(distanza < 0) { // posizione presa ma non ancora riempita: le successive alla prossima lettura
+                break;
+            }
+            if(distanza == 0) {
+                ids[n++] = (int) v;
+            } // distanza > 0: sovrascritta nel frattempo, persa
+        }
+        return n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Segna come lette le notifiche di un utente fino a quella del post indicato compresa
+     * (di solito l'ultimo restituito da unread); se il post non è più nella casella segna come
+     * lette solo quelle già sovrascritte
+     * @param user l'utente
+     * @param postId l'id del post
+     */
+    void markRead(String user, int postId) {
+        Inbox inbox = inboxes.get(user);
+        if(inbox == null) {
+            return;
+        }
+        long h = inbox.head.get();
+        long da = Math.max(inbox.read.get(), h - capacity);
+        long cursore = h - capacity;
+        for(long pos = h - 1; pos >= da; pos--) {
+            long v = inbox.slots.get((int) (pos & mask));
+            if((int) (v >>> 32) == (int) (pos + 1) && (int) v == postId) {
+                cursore = pos + 1;
+                break;
+            }
+        }
+        inbox.read.accumulateAndGet(cursore, Math::max);
+    }
+
+    /**
+     * Elimina la casella di un utente
+     */
+    void remove(String user) {
+        inboxes.remove(user);
+    }
+
+    /**
+     * Stima la memoria occupata dalle caselle, nomi compresi (misurandone al più MemoryLayout.SAMPLE)
+     * @return i byte stimati
+     */
+    long estimatedBytes() {
+        int n = inboxes.size();
+        // Inbox, AtomicLongArray con il suo array, head e read
+        long casella = MemoryLayout.object(3, 0) + MemoryLayout.object(1, 0) + MemoryLayout.array(capacity, 8) + 2 * MemoryLayout.object(0, 8);
+        return MemoryLayout.hashMap(n) + n * casella + MemoryLayout.sampled(inboxes.keySet(), MemoryLayout::string);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private Inbox inboxOf(String user) {
+        Inbox inbox = inboxes.get(user);
+        return inbox != null ? inbox : inboxes.computeIfAbsent(user, u -> new Inbox(capacity));
+    }
+
+    /**
+     * Aggiunge una notifica: prende la posizione e la riempie, senza lock. Le scritture pos e
+     * pos + capacity cadono nella stessa posizione e possono finire in ordine inverso: la
+     * posizione viene sostituita (con un CAS) solo se contiene una scrittura precedente, altrimenti
+     * la notifica è già stata sovrascritta e va persa
+     */
+    private void push(Inbox inbox, int postId) {
+        long pos = inbox.head.getAndIncrement();
+        int i = (int) (pos & mask);
+        long nuovo = (pos + 1) << 32 | (postId & 0xFFFFFFFFL);
+        long v;
+        do {
+            v = inbox.slots.get(i);
+            if((int) (v >>> 32) - (int) (pos + 1) >= 0) { // distanza con segno: i numeri a 32 bit ricominciano da capo
+                return;
+            }
+        } while(!inbox.slots.compareAndSet(i, v, nuovo));
+    }
+}
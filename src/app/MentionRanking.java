@@ -0,0 +1,129 @@
+package app;
+
+import java.util.*;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class MentionRanking {
+    /*
+     *  OVERVIEW:
+     *      Classifica degli utenti menzionati, aggiornata ad ogni post aggiunto o rimosso: per ogni
+     *      utente il numero di menzioni e il numero di autori diversi che lo menzionano, con due
+     *      insiemi ordinati (uno per criterio) che danno i primi k in O(k) e si aggiornano in
+     *      O(log n) per menzione, senza mai riscandire i post. Non è sincronizzato: si usa sotto il
+     *      lock della rete.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      entries(u) -> (menzioni di u, autori che menzionano u)
+     *      byMentions, byAuthors -> gli utenti con conteggio > 0, dal conteggio più alto
+     *      (a parità in ordine alfabetico)
+     *
+     *  REPRESENTATION INVARIANT:
+     *      ogni Entry in entries ha mentions > 0 || authors > 0 &&
+     *      e in byMentions <=> e in entries && e.mentions > 0 &&
+     *      e in byAuthors <=> e in entries && e.authors > 0
+     */
+
+    private static final class Entry {
+        final String user;
+        int mentions;
+        int authors;
+
+        Entry(String user) {
+            this.user = user;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> byMentions = new TreeSet<>((e1, e2) -> {
+        int c = Integer.compare(e2.mentions, e1.mentions);
+        return c != 0 ? c : e1.user.compareTo(e2.user);
+    });
+    private final NavigableSet<Entry> byAuthors = new TreeSet<>((e1, e2) -> {
+        int c = Integer.compare(e2.authors, e1.authors);
+        return c != 0 ? c : e1.user.compareTo(e2.user);
+    });
+
+    /**
+     * Aggiorna i conteggi di un utente
+     * @param user l'utente menzionato
+     * @param mentions variazione del numero di menzioni
+     * @param authors variazione del numero di autori che lo menzionano
+     */
+    void add(String user, int mentions, int authors) {
+        Entry e = entries.get(user);
+        if(e == null) {
+            if(mentions <= 0 && authors <= 0) {
+                return;
+            }
+            e = new Entry(user);
+            entries.put(user, e);
+        }
+        // un elemento di un TreeSet va tolto prima di cambiarne la chiave d'ordinamento
+        if(mentions != 0 && e.mentions > 0) {
+            byMentions.remove(e);
+        }
+        if(authors != 0 && e.authors > 0) {
+            byAuthors.remove(e);
+        }
+        e.mentions += mentions;
+        e.authors += authors;
+        if(mentions != 0 && e.mentions > 0) {
+            byMentions.add(e);
+        }
+        if(authors != 0 && e.authors > 0) {
+            byAuthors.add(e);
+        }
+        if(e.mentions <= 0 && e.authors <= 0) {
+            entries.remove(user);
+        }
+    }
+
+    /**
+     * Restituisce i primi k utenti della classifica
+     * @param k numero massimo di utenti
+     * @param byAuthors true per ordinare per autori diversi, false per numero di menzioni
+     * @return mappa utente -> conteggio, dal più alto (a parità in ordine alfabetico)
+     */
+    Map<String, Integer> top(int k, boolean byAuthors) {
+        Map<String, Integer> primi = new LinkedHashMap<>();
+        for(Entry e : byAuthors ? this.byAuthors : byMentions) {
+            if(primi.size() >= k) {
+                break;
+            }
+            primi.put(e.user, byAuthors ? e.authors : e.mentions);
+        }
+        return primi;
+    }
+
+    /**
+     * Restituisce il conteggio di un utente
+     * @param user l'utente
+     * @param byAuthors true per gli autori diversi, false per le menzioni
+     * @return il conteggio (0 se l'utente non è mai menzionato)
+     */
+    int count(String user, boolean byAuthors) {
+        Entry e = entries.get(user);
+        if(e == null) {
+            return 0;
+        }
+        return byAuthors ? e.authors : e.mentions;
+    }
+
+    /**
+     * Numero di utenti menzionati
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stima la memoria occupata, nomi compresi (misurandone al più MemoryLayout.SAMPLE)
+     * @return i byte stimati
+     */
+    long estimatedBytes() {
+        return MemoryLayout.hashMap(entries.size()) + entries.size() * MemoryLayout.object(1, 8)
+                + MemoryLayout.sampled(entries.keySet(), MemoryLayout::string)
+                + MemoryLayout.treeSet(byMentions.size()) + MemoryLayout.treeSet(byAuthors.size());
+    }
+}
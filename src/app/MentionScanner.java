@@ -0,0 +1,140 @@
+package app;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class MentionScanner {
+    /*
+     *  OVERVIEW:
+     *      Scanner scritto a mano, in un solo passaggio e senza allocazioni, per la grammatica
+     *      delle menzioni e degli username. Riproduce esattamente la semantica di REFERENCE_REGEX
+     *      (usata con Pattern.CASE_INSENSITIVE):
+     *          - la '@' non deve seguire un carattere "di parola";
+     *          - la sequenza massima di caratteri [A-Za-z0-9._] dopo la '@' deve contenere
+     *            al più un '_' e al più un '.' (i due lookahead negativi);
+     *          - la menzione è il prefisso più lungo di quella sequenza, fra MIN_USERNAME_LENGTH
+     *            e MAX_USERNAME_LENGTH caratteri, che finisce su un confine di parola.
+     *      Sono "di parola" solo i caratteri ASCII [A-Za-z0-9_], come negli username: la regex non
+     *      usa \b e \B, il cui significato dipende dalla versione del JDK (Unicode fino a Java 18,
+     *      solo ASCII da Java 19), ma lookaround con classi esplicite.
+     *      È un cambiamento voluto rispetto alla regex originale di SocialNetwork (\B@...\b): con
+     *      Java 17 quella considerava "di parola" anche lettere accentate e segni non spazianti, per
+     *      cui "caffè@leo", "@leoè" e "@leo\u0301" non contenevano menzioni, mentre ora menzionano leo.
+     *      Le menzioni sono restituite come offset nel testo originale, impacchettati in un long.
+     */
+
+    // grammatica di riferimento (equivalente allo scanner, usata nei test differenziali)
+    public static final String REFERENCE_REGEX = "(?<![A-Za-z0-9_])@(?!(?:[A-Za-z0-9.]*_){2})(?!(?:[A-Za-z0-9_]*\\.){2})[._A-Za-z0-9]{"
+            + SocialNetwork.MIN_USERNAME_LENGTH + "," + SocialNetwork.MAX_USERNAME_LENGTH + "}"
+            + "(?:(?<=[A-Za-z0-9_])(?![A-Za-z0-9_])|(?<![A-Za-z0-9_])(?=[A-Za-z0-9_]))";
+
+    // risultato di find quando non ci sono altre menzioni
+    public static final long NOT_FOUND = -1L;
+
+    private MentionScanner() {
+    }
+
+    /**
+     * Cerca la prossima menzione nel testo a partire dalla posizione from
+     * @param text il testo in cui cercare
+     * @param from la posizione da cui iniziare (0 oppure la fine della menzione precedente)
+     * @return la menzione trovata come (inizio << 32 | fine), dove [inizio, fine) è lo username
+     *         senza '@', oppure NOT_FOUND
+     */
+    public static long find(CharSequence text, int from) {
+        int len = text.length();
+        for(int at = from; at < len; at++) {
+            if(text.charAt(at) != '@' || isWordBefore(text, at)) {
+                continue;
+            }
+
+            int inizio = at + 1;
+            int fine = inizio;
+            int underscore = 0;
+            int punti = 0;
+            char c;
+            while(fine < len && isUsernameChar(c = text.charAt(fine))) {
+                if(c == '_') {
+                    underscore++;
+                } else if(c == '.') {
+                    punti++;
+                }
+                fine++;
+            }
+            if(underscore > 1 || punti > 1) {
+                continue;
+            }
+
+            for(int n = Math.min(fine - inizio, SocialNetwork.MAX_USERNAME_LENGTH); n >= SocialNetwork.MIN_USERNAME_LENGTH; n--) {
+                if(isBoundaryAfter(text, inizio + n)) {
+                    return ((long) inizio << 32) | (inizio + n);
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Inizio dello username (escluso '@') di una menzione restituita da find
+     */
+    public static int start(long mention) {
+        return (int) (mention >>> 32);
+    }
+
+    /**
+     * Fine (esclusa) dello username di una menzione restituita da find
+     */
+    public static int end(long mention) {
+        return (int) mention;
+    }
+
+    /**
+     * Verifica che lo username contenga solo i caratteri ammessi [A-Za-z0-9_.]
+     * (la lunghezza va controllata a parte)
+     * @param username lo username da controllare
+     * @return true se tutti i caratteri sono ammessi e lo username non è vuoto, false altrimenti
+     */
+    public static boolean isValidUsername(CharSequence username) {
+        int len = username.length();
+        if(len == 0) {
+            return false;
+        }
+        for(int i = 0; i < len; i++) {
+            if(!isUsernameChar(username.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private static boolean isUsernameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.';
+    }
+
+    /**
+     * Carattere "di parola" per i confini delle menzioni: solo ASCII [A-Za-z0-9_]
+     */
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Il carattere prima della posizione i è "di parola"?
+     */
+    private static boolean isWordBefore(CharSequence text, int i) {
+        return i > 0 && isWord(text.charAt(i - 1));
+    }
+
+    /**
+     * C'è un confine di parola in i, sapendo che il carattere prima di i è in [A-Za-z0-9._]?
+     */
+    private static boolean isBoundaryAfter(CharSequence text, int i) {
+        boolean left = isWord(text.charAt(i - 1));
+        boolean right = i < text.length() && isWord(text.charAt(i));
+        return left != right;
+    }
+}
@@ -0,0 +1,165 @@
+package app;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class ParallelScan {
+    /*
+     *  OVERVIEW:
+     *      Modalità di esecuzione delle interrogazioni su liste di post (writtenBy, containing,
+     *      getMentionedUsers, guessFollowers). In modalità parallela la lista viene divisa
+     *      ricorsivamente con il suo Spliterator in pezzi lavorati da un ForkJoinPool; ogni pezzo
+     *      produce un risultato parziale e i parziali vengono uniti da sinistra a destra, per cui
+     *      l'ordine del risultato è lo stesso dell'esecuzione sequenziale.
+     *      Sotto la soglia cutoff (o con un pool di un solo thread) la lista viene scorsa in modo
+     *      sequenziale dal thread chiamante, senza alcun costo aggiuntivo.
+     *      La lista non deve essere modificata durante la scansione.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      pool -> pool su cui vengono eseguiti i pezzi (null = sempre sequenziale)
+     *      cutoff -> numero minimo di post perché la scansione diventi parallela
+     *
+     *  REPRESENTATION INVARIANT:
+     *      cutoff >= 1
+     */
+
+    // sotto questa soglia il costo di fork/join supera il guadagno (misurato con writtenBy e containing)
+    public static final int DEFAULT_CUTOFF = 16_384;
+    // dimensione minima di un pezzo
+    private static final int MIN_LEAF = 2_048;
+
+    public static final ParallelScan SEQUENTIAL = new ParallelScan(null, Integer.MAX_VALUE);
+    public static final ParallelScan PARALLEL = new ParallelScan(ForkJoinPool.commonPool(), DEFAULT_CUTOFF);
+
+    private final ForkJoinPool pool;
+    private final int cutoff;
+
+    /**
+     * Accumula un post nel risultato parziale di un pezzo
+     */
+    @FunctionalInterface
+    public interface Accumulator<R, X extends Exception> {
+        void accept(R partial, Post p) throws X;
+    }
+
+    /**
+     * Costruttore della classe ParallelScan.
+     * @param pool il pool su cui eseguire la scansione (null = sempre sequenziale)
+     * @param cutoff numero minimo di post per eseguire la scansione in parallelo
+     */
+    public ParallelScan(ForkJoinPool pool, int cutoff) {
+        if(cutoff < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.pool = pool;
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Restituisce la soglia oltre cui la scansione è parallela
+     * @return il numero minimo di post per la scansione parallela
+     */
+    public int getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Verifica se una lista di n post verrebbe scorsa in parallelo
+     * @param n numero di post
+     * @return true se la scansione sarebbe parallela, false altrimenti
+     */
+    public boolean isParallel(int n) {
+        return pool != null && pool.getParallelism() > 1 && n >= cutoff;
+    }
+
+    /**
+     * Scorre la lista accumulando i post in risultati parziali e li unisce in ordine
+     * @param ps lista dei post
+     * @param identity crea un risultato parziale vuoto
+     * @param accumulator aggiunge un post a un risultato parziale
+     * @param combiner unisce due parziali (il primo precede il secondo nella lista)
+     * @return il risultato della scansione
+     * @throws X se l'accumulatore lancia un'eccezione (viene rilanciata la prima incontrata)
+     */
+    public <R, X extends Exception> R scan(List<Post> ps, Supplier<R> identity, Accumulator<R, X> accumulator, BinaryOperator<R> combiner) throws X {
+        if(!isParallel(ps.size())) {
+            R risultato = identity.get();
+            for(Post p : ps) {
+                accumulator.accept(risultato, p);
+            }
+            return risultato;
+        }
+
+        long leaf = Math.max(ps.size() / (4L * pool.getParallelism()), MIN_LEAF);
+        try {
+            return pool.invoke(new Task<>(ps.spliterator(), leaf, identity, accumulator, combiner));
+        } catch(Failure f) {
+            @SuppressWarnings("unchecked")
+            X causa = (X) f.getCause();
+            throw causa;
+        }
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Trasporta fuori dal pool l'eccezione (controllata) di un accumulatore
+     */
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    private static final class Task<R, X extends Exception> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<Post> sp;
+        private final long leaf;
+        private final Supplier<R> identity;
+        private final Accumulator<R, X> accumulator;
+        private final BinaryOperator<R> combiner;
+
+        Task(Spliterator<Post> sp, long leaf, Supplier<R> identity, Accumulator<R, X> accumulator, BinaryOperator<R> combiner) {
+            this.sp = sp;
+            this.leaf = leaf;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        protected R compute() {
+            Spliterator<Post> prefisso;
+            if(sp.estimateSize() > leaf && (prefisso = sp.trySplit()) != null) {
+                Task<R, X> sinistra = new Task<>(prefisso, leaf, identity, accumulator, combiner);
+                sinistra.fork();
+                R destra = new Task<>(sp, leaf, identity, accumulator, combiner).compute();
+                return combiner.apply(sinistra.join(), destra);
+            }
+
+            R risultato = identity.get();
+            sp.forEachRemaining(p -> {
+                try {
+                    accumulator.accept(risultato, p);
+                } catch(RuntimeException e) {
+                    throw e;
+                } catch(Exception e) {
+                    throw new Failure(e);
+                }
+            });
+            return risultato;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package app;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    /*
+     *  OVERVIEW:
+     *      Mappa immutabile e persistente (hash array mapped trie): plus e minus restituiscono una
+     *      nuova versione copiando solo il cammino dalla radice al nodo modificato (O(log32 n) nodi),
+     *      e condividono tutto il resto con la versione di partenza. Tenere un riferimento ad una
+     *      versione costa O(1) e la versione non cambia più; le versioni non più raggiungibili sono
+     *      recuperate dal garbage collector.
+     *      Ogni nodo ha una bitmap dei 32 figli possibili e un array compatto di coppie: una coppia
+     *      (chiave, valore) è un elemento, una coppia (null, nodo) è un sottoalbero indicizzato dai
+     *      5 bit successivi dell'hash. Le chiavi con lo stesso hash finiscono in un nodo di
+     *      collisione (bitmap 0) con le coppie in fila.
+     *      Le chiavi non possono essere null, i valori sì. I metodi di modifica di Map lanciano
+     *      UnsupportedOperationException.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      { (k, v) | (k, v) è una coppia di un nodo raggiungibile da root con k != null }
+     *
+     *  REPRESENTATION INVARIANT:
+     *      (root == null <-> size == 0) &&
+     *      size == numero di coppie (k != null) raggiungibili da root &&
+     *      per ogni nodo con bitmap != 0: array.length == 2 * bitCount(bitmap) &&
+     *      una chiave è raggiungibile al più una volta
+     */
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object NOT_FOUND = new Object();
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * Nodo del trie (immutabile una volta pubblicato)
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] array;
+
+        Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Restituisce la mappa vuota
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Restituisce una nuova versione con key associata a value
+     * @param key la chiave (non null)
+     * @param value il valore
+     * @return la nuova versione (this se key era già associata proprio a value)
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        int h = hash(key);
+        if(root == null) {
+            return new PersistentMap<>(new Node(1 << (h & MASK), new Object[]{key, value}), 1);
+        }
+        int[] aggiunte = new int[1];
+        Node r = plus(root, 0, h, key, value, aggiunte);
+        return r == root ? this : new PersistentMap<>(r, size + aggiunte[0]);
+    }
+
+    /**
+     * Restituisce una nuova versione senza key
+     * @param key la chiave
+     * @return la nuova versione (this se key non c'era)
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if(key == null || root == null) {
+            return this;
+        }
+        Node r = minus(root, 0, hash(key), key);
+        if(r == root) {
+            return this;
+        }
+        return r == null ? empty() : new PersistentMap<>(r, size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v = find(key);
+        return v == NOT_FOUND ? null : (V) v;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if(root != null) {
+            forEach(root, (BiConsumer<Object, Object>) action);
+        }
+    }
+
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Memoria occupata dai nodi, escluse chiavi e valori
+     */
+    long estimatedBytes() {
+        return MemoryLayout.object(2, 4) + (root != null ? estimatedBytes(root) : 0);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Object find(Object key) {
+        if(key == null || root == null) {
+            return NOT_FOUND;
+        }
+        int h = hash(key);
+        Node n = root;
+        for(int shift = 0; ; shift += BITS) {
+            if(n.bitmap == 0) {
+                for(int i = 0; i < n.array.length; i += 2) {
+                    if(key.equals(n.array[i])) {
+                        return n.array[i + 1];
+                    }
+                }
+                return NOT_FOUND;
+            }
+            int bit = 1 << ((h >>> shift) & MASK);
+            if((n.bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = 2 * Integer.bitCount(n.bitmap & (bit - 1));
+            Object k = n.array[i];
+            if(k == null) {
+                n = (Node) n.array[i + 1];
+            } else {
+                return key.equals(k) ? n.array[i + 1] : NOT_FOUND;
+            }
+        }
+    }
+
+    /**
+     * Inserisce (key, value) nel sottoalbero n al livello shift, copiando il cammino
+     * (aggiunte[0] = 1 se key non c'era)
+     */
+    private static Node plus(Node n, int shift, int h, Object key, Object value, int[] aggiunte) {
+        if(n.bitmap == 0) {
+            int h0 = hash(n.array[0]);
+            if(h0 != h) {
+                // la nuova chiave si separa dalle collisioni a questo livello
+                return plus(new Node(1 << ((h0 >>> shift) & MASK), new Object[]{null, n}), shift, h, key, value, aggiunte);
+            }
+            for(int i = 0; i < n.array.length; i += 2) {
+                if(key.equals(n.array[i])) {
+                    return n.array[i + 1] == value ? n : new Node(0, with(n.array, i + 1, value));
+                }
+            }
+            aggiunte[0] = 1;
+            return new Node(0, inserted(n.array, n.array.length, key, value));
+        }
+
+        int bit = 1 << ((h >>> shift) & MASK);
+        int i = 2 * Integer.bitCount(n.bitmap & (bit - 1));
+        if((n.bitmap & bit) == 0) {
+            aggiunte[0] = 1;
+            return new Node(n.bitmap | bit, inserted(n.array, i, key, value));
+        }
+        Object k = n.array[i];
+        if(k == null) {
+            Node figlio = (Node) n.array[i + 1];
+            Node nuovo = plus(figlio, shift + BITS, h, key, value, aggiunte);
+            return nuovo == figlio ? n : new Node(n.bitmap, with(n.array, i + 1, nuovo));
+        }
+        if(key.equals(k)) {
+            return n.array[i + 1] == value ? n : new Node(n.bitmap, with(n.array, i + 1, value));
+        }
+        aggiunte[0] = 1;
+        Object[] array = with(n.array, i + 1, pair(shift + BITS, k, n.array[i + 1], hash(k), key, value, h));
+        array[i] = null;
+        return new Node(n.bitmap, array);
+    }
+
+    /**
+     * Sottoalbero con le due coppie, a partire dal livello shift
+     */
+    private static Node pair(int shift, Object k1, Object v1, int h1, Object k2, Object v2, int h2) {
+        if(h1 == h2) {
+            return new Node(0, new Object[]{k1, v1, k2, v2});
+        }
+        int i1 = (h1 >>> shift) & MASK;
+        int i2 = (h2 >>> shift) & MASK;
+        if(i1 == i2) {
+            return new Node(1 << i1, new Object[]{null, pair(shift + BITS, k1, v1, h1, k2, v2, h2)});
+        }
+        return new Node((1 << i1) | (1 << i2), i1 < i2 ? new Object[]{k1, v1, k2, v2} : new Object[]{k2, v2, k1, v1});
+    }
+
+    /**
+     * Toglie key dal sottoalbero n al livello shift, copiando il cammino
+     * @return n se key non c'era, null se il sottoalbero resta vuoto
+     */
+    private static Node minus(Node n, int shift, int h, Object key) {
+        if(n.bitmap == 0) {
+            for(int i = 0; i < n.array.length; i += 2) {
+                if(key.equals(n.array[i])) {
+                    return n.array.length == 2 ? null : new Node(0, removed(n.array, i));
+                }
+            }
+            return n;
+        }
+
+        int bit = 1 << ((h >>> shift) & MASK);
+        if((n.bitmap & bit) == 0) {
+            return n;
+        }
+        int i = 2 * Integer.bitCount(n.bitmap & (bit - 1));
+        Object k = n.array[i];
+        if(k == null) {
+            Node figlio = (Node) n.array[i + 1];
+            Node nuovo = minus(figlio, shift + BITS, h, key);
+            if(nuovo == figlio) {
+                return n;
+            }
+            if(nuovo == null) {
+                return n.bitmap == bit ? null : new Node(n.bitmap ^ bit, removed(n.array, i));
+            }
+            if(nuovo.array.length == 2 && nuovo.array[0] != null) {
+                // sottoalbero con un solo elemento: torna in questo nodo
+                Object[] array = with(n.array, i + 1, nuovo.array[1]);
+                array[i] = nuovo.array[0];
+                return new Node(n.bitmap, array);
+            }
+            return new Node(n.bitmap, with(n.array, i + 1, nuovo));
+        }
+        if(!key.equals(k)) {
+            return n;
+        }
+        return n.bitmap == bit ? null : new Node(n.bitmap ^ bit, removed(n.array, i));
+    }
+
+    private static Object[] with(Object[] array, int i, Object value) {
+        Object[] copia = array.clone();
+        copia[i] = value;
+        return copia;
+    }
+
+    private static Object[] inserted(Object[] array, int i, Object key, Object value) {
+        Object[] copia = new Object[array.length + 2];
+        System.arraycopy(array, 0, copia, 0, i);
+        copia[i] = key;
+        copia[i + 1] = value;
+        System.arraycopy(array, i, copia, i + 2, array.length - i);
+        return copia;
+    }
+
+    private static Object[] removed(Object[] array, int i) {
+        Object[] copia = new Object[array.length - 2];
+        System.arraycopy(array, 0, copia, 0, i);
+        System.arraycopy(array, i + 2, copia, i, array.length - i - 2);
+        return copia;
+    }
+
+    private static void forEach(Node n, BiConsumer<Object, Object> action) {
+        for(int i = 0; i < n.array.length; i += 2) {
+            if(n.array[i] == null) {
+                forEach((Node) n.array[i + 1], action);
+            } else {
+                action.accept(n.array[i], n.array[i + 1]);
+            }
+        }
+    }
+
+    private static long estimatedBytes(Node n) {
+        long bytes = MemoryLayout.object(1, 4) + MemoryLayout.refArray(n.array.length);
+        for(int i = 0; i < n.array.length; i += 2) {
+            if(n.array[i] == null) {
+                bytes += estimatedBytes((Node) n.array[i + 1]);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Visita in profondità con una pila esplicita di nodi e posizioni
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Node[] nodi = new Node[8];
+        private final int[] posizioni = new int[8];
+        private int livello = -1;
+        private Entry<K, V> prossimo;
+
+        EntryIterator(Node root) {
+            if(root != null) {
+                nodi[++livello] = root;
+            }
+            advance();
+        }
+
+        public boolean hasNext() {
+            return prossimo != null;
+        }
+
+        public Entry<K, V> next() {
+            if(prossimo == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> e = prossimo;
+            advance();
+            return e;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            prossimo = null;
+            while(livello >= 0) {
+                Node n = nodi[livello];
+                int i = posizioni[livello];
+                if(i >= n.array.length) {
+                    posizioni[livello--] = 0;
+                    continue;
+                }
+                posizioni[livello] = i + 2;
+                if(n.array[i] == null) {
+                    nodi[++livello] = (Node) n.array[i + 1];
+                } else {
+                    prossimo = new SimpleImmutableEntry<>((K) n.array[i], (V) n.array[i + 1]);
+                    return;
+                }
+            }
+        }
+    }
+}
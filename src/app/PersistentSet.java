@@ -0,0 +1,118 @@
+package app;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class PersistentSet<E> extends AbstractSet<E> {
+    /*
+     *  OVERVIEW:
+     *      Insieme immutabile e persistente: le chiavi di una PersistentMap. plus e minus restituiscono
+     *      una nuova versione che condivide i nodi non toccati con quella di partenza.
+     *      Gli elementi non possono essere null; i metodi di modifica di Set lanciano
+     *      UnsupportedOperationException.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      { e | map.containsKey(e) }
+     *
+     *  REPRESENTATION INVARIANT:
+     *      map != null && ogni valore di map è Boolean.TRUE
+     */
+
+    private static final PersistentSet<?> EMPTY = new PersistentSet<>(PersistentMap.empty());
+
+    private final PersistentMap<E, Boolean> map;
+
+    private PersistentSet(PersistentMap<E, Boolean> map) {
+        this.map = map;
+    }
+
+    /**
+     * Restituisce l'insieme vuoto
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSet<E> empty() {
+        return (PersistentSet<E>) EMPTY;
+    }
+
+    /**
+     * Restituisce un insieme con gli elementi di c
+     * @param c la collezione da copiare (null per l'insieme vuoto)
+     * @return c stessa se è già un PersistentSet, altrimenti una copia
+     */
+    public static <E> PersistentSet<E> copyOf(Collection<? extends E> c) {
+        if(c instanceof PersistentSet) {
+            @SuppressWarnings("unchecked")
+            PersistentSet<E> s = (PersistentSet<E>) c;
+            return s;
+        }
+        PersistentSet<E> s = empty();
+        if(c != null) {
+            for(E e : c) {
+                s = s.plus(e);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Restituisce una nuova versione con e
+     * @return la nuova versione (this se e c'era già)
+     */
+    public PersistentSet<E> plus(E e) {
+        PersistentMap<E, Boolean> m = map.plus(e, Boolean.TRUE);
+        return m == map ? this : new PersistentSet<>(m);
+    }
+
+    /**
+     * Restituisce una nuova versione senza e
+     * @return la nuova versione (this se e non c'era)
+     */
+    public PersistentSet<E> minus(Object e) {
+        PersistentMap<E, Boolean> m = map.minus(e);
+        return m == map ? this : (m.isEmpty() ? empty() : new PersistentSet<>(m));
+    }
+
+    /**
+     * Restituisce una nuova versione senza gli elementi che soddisfano filter
+     * @return la nuova versione (this se nessun elemento soddisfa filter)
+     */
+    public PersistentSet<E> minusIf(Predicate<? super E> filter) {
+        PersistentSet<E> s = this;
+        for(E e : this) {
+            if(filter.test(e)) {
+                s = s.minus(e);
+            }
+        }
+        return s;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    public Iterator<E> iterator() {
+        Iterator<Map.Entry<E, Boolean>> it = map.entrySet().iterator();
+        return new Iterator<>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public E next() {
+                return it.next().getKey();
+            }
+        };
+    }
+
+    /**
+     * Memoria occupata dall'insieme, esclusi gli elementi
+     */
+    long estimatedBytes() {
+        return MemoryLayout.object(1, 0) + map.estimatedBytes();
+    }
+}
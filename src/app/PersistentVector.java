@@ -0,0 +1,439 @@
+package app;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    /*
+     *  OVERVIEW:
+     *      Lista immutabile e persistente a blocchi: gli elementi stanno in blocchi di CHUNK
+     *      riferimenti, foglie di un albero di fattore CHUNK, più un blocco finale (tail) fuori
+     *      dall'albero. plus copia il tail e, quando è pieno, lo appende all'albero copiando solo
+     *      il cammino dalla radice (O(log32 n)); minusIf riusa i blocchi che precedono il primo
+     *      elemento tolto. Le versioni precedenti restano valide e condividono i blocchi con le
+     *      nuove; quelle non più raggiungibili sono recuperate dal garbage collector.
+     *      minusAt toglie l'elemento di una posizione (slot) senza spostare i successivi: al suo
+     *      posto resta un buco (HOLE), in O(log32 n), e le posizioni degli altri elementi non
+     *      cambiano finché minusIf o compact non tolgono i buchi. La scansione (iteratore, forEach,
+     *      spliterator) legge un blocco alla volta e salta i buchi; con dei buchi get e indexOf
+     *      scorrono la lista (compact() la riporta ad accesso diretto).
+     *      I metodi di modifica di List lanciano UnsupportedOperationException.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      la sequenza, senza i buchi, di [s_0, ..., s_size-1] con s_i nella foglia i / CHUNK
+     *      dell'albero, posizione i % CHUNK, se i < tailOffset(), altrimenti tail[i - tailOffset()]
+     *
+     *  REPRESENTATION INVARIANT:
+     *      root != null && tail != null && shift >= BITS && shift % BITS == 0 &&
+     *      (size == 0 || 1 <= tail.length <= CHUNK) && tail.length == size - tailOffset() &&
+     *      le foglie dell'albero sono piene e riempite da sinistra &&
+     *      holes == numero di posizioni che contengono HOLE
+     */
+
+    private static final int BITS = 5;
+    static final int CHUNK = 1 << BITS;
+    private static final int MASK = CHUNK - 1;
+    private static final Object[] NO_ELEMENTS = new Object[0];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, NO_ELEMENTS, NO_ELEMENTS, 0);
+    // segnaposto di un elemento tolto con minusAt
+    private static final Object HOLE = new Object();
+
+    // posizioni, buchi compresi
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+    private final int holes;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail, int holes) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+        this.holes = holes;
+    }
+
+    /**
+     * Restituisce la lista vuota
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Restituisce una nuova versione con e in fondo
+     */
+    public PersistentVector<E> plus(E e) {
+        if(tail.length < CHUNK) {
+            Object[] t = Arrays.copyOf(tail, tail.length + 1);
+            t[tail.length] = e;
+            return new PersistentVector<>(size + 1, shift, root, t, holes);
+        }
+        // tail pieno: diventa l'ultima foglia dell'albero
+        Object[] r;
+        int s = shift;
+        if((size >>> BITS) > (1 << shift)) {
+            r = new Object[]{root, path(shift, tail)};
+            s += BITS;
+        } else {
+            r = pushTail(size, shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, s, r, new Object[]{e}, holes);
+    }
+
+    /**
+     * Restituisce una nuova versione con gli elementi di c in fondo, nell'ordine di c; il tail viene
+     * riempito un blocco alla volta invece di essere copiato per ogni elemento
+     * @return la nuova versione (this se c è vuota)
+     */
+    public PersistentVector<E> plusAll(Collection<? extends E> c) {
+        PersistentVector<E> v = this;
+        Iterator<? extends E> it = c.iterator();
+        while(it.hasNext()) {
+            if(v.tail.length == CHUNK) {
+                v = v.plus(it.next()); // sposta il tail pieno nell'albero
+                continue;
+            }
+            Object[] t = Arrays.copyOf(v.tail, CHUNK);
+            int n = v.tail.length;
+            while(n < CHUNK && it.hasNext()) {
+                t[n++] = it.next();
+            }
+            v = new PersistentVector<>(v.tailOffset() + n, v.shift, v.root, n == CHUNK ? t : Arrays.copyOf(t, n), v.holes);
+        }
+        return v;
+    }
+
+    /**
+     * Restituisce una nuova versione senza la prima occorrenza di o (confrontata con equals)
+     * @return la nuova versione (this se o non c'è)
+     */
+    public PersistentVector<E> minus(Object o) {
+        int i = indexOf(o);
+        if(i < 0) {
+            return this;
+        }
+        int[] posizione = {0};
+        return minusIf(e -> posizione[0]++ == i);
+    }
+
+    /**
+     * Restituisce una nuova versione senza l'elemento della posizione slot, lasciando un buco: le
+     * posizioni degli altri elementi non cambiano (copia solo il cammino fino alla foglia)
+     * @param slot posizione dell'elemento (vedi slots e slotAt)
+     * @return la nuova versione
+     * @throws IndexOutOfBoundsException se slot non è una posizione
+     * @throws IllegalArgumentException se la posizione è già un buco
+     */
+    public PersistentVector<E> minusAt(int slot) {
+        Objects.checkIndex(slot, size);
+        if(chunkFor(slot)[slot & MASK] == HOLE) {
+            throw new IllegalArgumentException();
+        }
+        if(slot >= tailOffset()) {
+            Object[] t = tail.clone();
+            t[slot & MASK] = HOLE;
+            return new PersistentVector<>(size, shift, root, t, holes + 1);
+        }
+        return new PersistentVector<>(size, shift, withHole(root, shift, slot), tail, holes + 1);
+    }
+
+    /**
+     * Restituisce una versione senza buchi (in O(n) se ce ne sono)
+     * @return la nuova versione (this se non ci sono buchi)
+     */
+    public PersistentVector<E> compact() {
+        return holes == 0 ? this : minusIf(e -> false);
+    }
+
+    /**
+     * Numero di posizioni, buchi compresi (la posizione del prossimo elemento aggiunto)
+     */
+    public int slots() {
+        return size;
+    }
+
+    /**
+     * Restituisce l'elemento della posizione slot (null se è un buco)
+     */
+    @SuppressWarnings("unchecked")
+    public E slotAt(int slot) {
+        Objects.checkIndex(slot, size);
+        Object o = chunkFor(slot)[slot & MASK];
+        return o == HOLE ? null : (E) o;
+    }
+
+    /**
+     * Restituisce una nuova versione senza gli elementi che soddisfano filter (filter è valutato
+     * una volta per elemento, in ordine) e senza buchi
+     * @return la nuova versione (this se nessun elemento soddisfa filter e non ci sono buchi)
+     */
+    public PersistentVector<E> minusIf(Predicate<? super E> filter) {
+        List<Object[]> foglie = new ArrayList<>();
+        Object[] blocco = new Object[CHUNK];
+        int n = 0;
+        boolean tolti = false;
+        for(int inizio = 0; inizio < size; inizio += CHUNK) {
+            Object[] foglia = chunkFor(inizio);
+            boolean intatta = !tolti;
+            for(Object o : foglia) {
+                @SuppressWarnings("unchecked")
+                E e = (E) o;
+                if(o == HOLE || filter.test(e)) {
+                    tolti = true;
+                    intatta = false;
+                    continue;
+                }
+                blocco[n++] = e;
+                if(n == CHUNK) {
+                    foglie.add(intatta && foglia.length == CHUNK ? foglia : blocco);
+                    blocco = new Object[CHUNK];
+                    n = 0;
+                }
+            }
+        }
+        if(!tolti) {
+            return this;
+        }
+        if(n == 0 && !foglie.isEmpty()) {
+            // il tail non può essere vuoto
+            blocco = foglie.remove(foglie.size() - 1);
+            n = CHUNK;
+        }
+        return fromLeaves(foglie, Arrays.copyOf(blocco, n));
+    }
+
+    public int size() {
+        return size - holes;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size - holes);
+        if(holes == 0) {
+            return (E) chunkFor(index)[index & MASK];
+        }
+        for(E e : this) {
+            if(index-- == 0) {
+                return e;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    public int indexOf(Object o) {
+        int i = 0;
+        for(E e : this) {
+            if(Objects.equals(o, e)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        for(int inizio = 0; inizio < size; inizio += CHUNK) {
+            for(Object o : chunkFor(inizio)) {
+                if(o != HOLE) {
+                    action.accept((E) o);
+                }
+            }
+        }
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int i;
+            private Object[] blocco;
+
+            public boolean hasNext() {
+                // salta i buchi fino al prossimo elemento
+                while(i < size) {
+                    if((i & MASK) == 0) {
+                        blocco = chunkFor(i);
+                    }
+                    if(blocco[i & MASK] != HOLE) {
+                        return true;
+                    }
+                    i++;
+                }
+                return false;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (E) blocco[i++ & MASK];
+            }
+        };
+    }
+
+    public Spliterator<E> spliterator() {
+        return new ChunkSpliterator(0, size);
+    }
+
+    /**
+     * Memoria occupata dai blocchi, esclusi gli elementi
+     */
+    long estimatedBytes() {
+        return MemoryLayout.object(2, 8) + MemoryLayout.refArray(tail.length) + (size > tail.length ? estimatedBytes(root, shift) : 0);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private int tailOffset() {
+        return size - tail.length;
+    }
+
+    /**
+     * Blocco che contiene l'elemento i
+     */
+    private Object[] chunkFor(int i) {
+        if(i >= tailOffset()) {
+            return tail;
+        }
+        Object[] nodo = root;
+        for(int livello = shift; livello > 0; livello -= BITS) {
+            nodo = (Object[]) nodo[(i >>> livello) & MASK];
+        }
+        return nodo;
+    }
+
+    /**
+     * Copia il cammino fino alla foglia della posizione slot, con un buco al posto dell'elemento
+     */
+    private static Object[] withHole(Object[] nodo, int livello, int slot) {
+        Object[] copia = nodo.clone();
+        int i = (slot >>> livello) & MASK;
+        if(livello == BITS) {
+            Object[] foglia = ((Object[]) nodo[i]).clone();
+            foglia[slot & MASK] = HOLE;
+            copia[i] = foglia;
+        } else {
+            copia[i] = withHole((Object[]) nodo[i], livello - BITS, slot);
+        }
+        return copia;
+    }
+
+    /**
+     * Copia il cammino fino al posto della nuova foglia (count elementi prima dell'aggiunta)
+     */
+    private static Object[] pushTail(int count, int livello, Object[] padre, Object[] foglia) {
+        int i = ((count - 1) >>> livello) & MASK;
+        Object[] copia = Arrays.copyOf(padre, Math.max(padre.length, i + 1));
+        if(livello == BITS) {
+            copia[i] = foglia;
+        } else if(i < padre.length) {
+            copia[i] = pushTail(count, livello - BITS, (Object[]) padre[i], foglia);
+        } else {
+            copia[i] = path(livello - BITS, foglia);
+        }
+        return copia;
+    }
+
+    private static Object[] path(int livello, Object[] foglia) {
+        return livello == 0 ? foglia : new Object[]{path(livello - BITS, foglia)};
+    }
+
+    /**
+     * Costruisce l'albero dal basso a partire dalle foglie (tutte piene)
+     */
+    private static <E> PersistentVector<E> fromLeaves(List<Object[]> foglie, Object[] tail) {
+        int size = foglie.size() * CHUNK + tail.length;
+        if(size == 0) {
+            return empty();
+        }
+        List<Object[]> livello = foglie;
+        int shift = BITS;
+        while(livello.size() > CHUNK) {
+            List<Object[]> sopra = new ArrayList<>((livello.size() + MASK) / CHUNK);
+            for(int i = 0; i < livello.size(); i += CHUNK) {
+                sopra.add(livello.subList(i, Math.min(i + CHUNK, livello.size())).toArray());
+            }
+            livello = sopra;
+            shift += BITS;
+        }
+        return new PersistentVector<>(size, shift, livello.toArray(), tail, 0);
+    }
+
+    private static long estimatedBytes(Object[] nodo, int livello) {
+        long bytes = MemoryLayout.refArray(nodo.length);
+        for(Object figlio : nodo) {
+            bytes += livello == BITS ? MemoryLayout.refArray(((Object[]) figlio).length) : estimatedBytes((Object[]) figlio, livello - BITS);
+        }
+        return bytes;
+    }
+
+    /**
+     * Scansione di [from, to) un blocco alla volta; si divide a metà, a confini di blocco
+     */
+    private final class ChunkSpliterator implements Spliterator<E> {
+        private int from;
+        private final int to;
+
+        ChunkSpliterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while(from < to) {
+                Object o = chunkFor(from)[from & MASK];
+                from++;
+                if(o != HOLE) {
+                    action.accept((E) o);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            while(from < to) {
+                Object[] blocco = chunkFor(from);
+                int fine = Math.min(to - (from & ~MASK), blocco.length);
+                for(int i = from & MASK; i < fine; i++) {
+                    if(blocco[i] != HOLE) {
+                        action.accept((E) blocco[i]);
+                    }
+                }
+                from = (from & ~MASK) + fine;
+            }
+        }
+
+        public Spliterator<E> trySplit() {
+            int mezzo = ((from + to) >>> 1) & ~MASK;
+            if(mezzo <= from) {
+                return null;
+            }
+            ChunkSpliterator prefisso = new ChunkSpliterator(from, mezzo);
+            from = mezzo;
+            return prefisso;
+        }
+
+        public long estimateSize() {
+            return to - from;
+        }
+
+        public int characteristics() {
+            return holes == 0 ? ORDERED | SIZED | SUBSIZED | IMMUTABLE : ORDERED | IMMUTABLE; // con buchi la stima è un limite superiore
+        }
+    }
+}
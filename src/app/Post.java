@@ -3,6 +3,11 @@ package app;
 import exception.EmptyFieldException;
 import exception.TextLengthException;
 
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 // Leonardo Pantani | Java project for PR2 course at UNIPI
 
 public final class Post implements PostInterface {
@@ -19,23 +24,46 @@ public final class Post implements PostInterface {
      *          id (int) -> è l'indentificatore univoco del post
      *          author (string) -> è il nome dell'autore del post
      *          text (string) -> è il testo del post (max. 140 caratteri)
-     *          timestamp (timestamp) -> è la data e ora di invio del post
+     *          timestamp (timestamp) -> è la data e ora di invio del post (microsecondi dall'epoch,
+     *              strettamente crescente fra i post creati: l'ordine nello stesso secondo è stabile)
      *
      *  REPRESENTATION INVARIANT:
      *      id > 0 &&
      *      author != "" &&
      *      text != "" && len(text) < 140 &&
-     *      int(timestamp) && timestamp > 0 && timestamp < 2^31
+     *      timestamp > 0
      */
-    private static int ids = 0;
+    // contatore degli id (atomico: i post possono essere creati da più thread)
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    // ultimo timestamp assegnato (per rendere i timestamp strettamente crescenti)
+    private static final AtomicLong lastTimestamp = new AtomicLong();
+
+    // contatore delle istanze (distingue le copie dello stesso post, vedi TIME_ORDER)
+    private static final AtomicLong instances = new AtomicLong();
+
+    // ordine temporale dei post: timestamp, poi id, poi istanza (per le copie dello stesso post,
+    // che non sono mai uguali fra loro per il comparatore)
+    public static final Comparator<Post> TIME_ORDER = (a, b) -> {
+        int c = Long.compare(a.timestamp, b.timestamp);
+        if(c == 0) {
+            c = Integer.compare(a.id, b.id);
+        }
+        if(c == 0) {
+            c = Long.compare(a.instance, b.instance);
+        }
+        return c;
+    };
 
     private final int id;
     private final String author;
     private final String text;
     private final long timestamp;
+    private final long instance = instances.getAndIncrement();
 
     // lunghezza massima del testo dei Post
-    public final int MAX_TEXT_LENGTH = 140;
+    static final int TEXT_LIMIT = 140;
+    public final int MAX_TEXT_LENGTH = TEXT_LIMIT;
 
     /**
      * Costruttore della classe Post.
@@ -57,11 +85,10 @@ public final class Post implements PostInterface {
             throw new TextLengthException(MAX_TEXT_LENGTH);
         }
 
-        this.id = ids;
-        ids++;
+        this.id = ids.getAndIncrement();
         this.author = author;
         this.text = text;
-        this.timestamp = System.currentTimeMillis() / 1000L;
+        this.timestamp = nextTimestamp();
     }
 
     /**
@@ -80,6 +107,77 @@ public final class Post implements PostInterface {
     }
 
 
+    /**
+     * Costruttore di un post "sonda" usato solo come estremo nelle ricerche per intervallo di tempo.
+     * @param timestamp il timestamp della sonda
+     * @param id l'id della sonda
+     */
+    private Post(long timestamp, int id) {
+        this.id = id;
+        this.author = null;
+        this.text = null;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Costruttore di un post già esistente altrove (stesso id e timestamp), usato per ricostruire i post.
+     */
+    private Post(int id, String author, String text, long timestamp) {
+        this.id = id;
+        this.author = author;
+        this.text = text;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Ricostruisce un post con id e timestamp già assegnati (per esempio dal primario di una replica).
+     * I contatori vengono portati oltre id e timestamp, così i post creati in seguito non li riusano.
+     * @param id l'id del post (0 <= id < Integer.MAX_VALUE, perché il prossimo id sia id + 1)
+     * @param author autore del post
+     * @param text contenuto testo del post
+     * @param timestamp timestamp del post (microsecondi dall'epoch)
+     * @return il post ricostruito
+     * @throws IllegalArgumentException se id è fuori intervallo
+     */
+    static Post restore(int id, String author, String text, long timestamp) {
+        if(author == null || text == null) {
+            throw new NullPointerException();
+        }
+        if(id < 0 || id == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("id fuori intervallo: " + id);
+        }
+        ids.accumulateAndGet(id + 1, Math::max);
+        lastTimestamp.accumulateAndGet(timestamp, Math::max);
+        return new Post(id, author, text, timestamp);
+    }
+
+    /**
+     * Restituisce una sonda che nell'ordine TIME_ORDER precede (id = Integer.MIN_VALUE)
+     * o segue (id = Integer.MAX_VALUE) tutti i post con lo stesso timestamp
+     */
+    static Post probe(long timestamp, int id) {
+        return new Post(timestamp, id);
+    }
+
+    /**
+     * Stima la memoria occupata dal post, con autore e testo (vedi MemoryLayout)
+     * @return i byte stimati
+     */
+    long estimatedBytes() {
+        return MemoryLayout.object(2, 20) + MemoryLayout.string(author) + MemoryLayout.string(text);
+    }
+
+    /**
+     * Restituisce l'istante attuale in microsecondi dall'epoch, maggiore di tutti quelli già assegnati
+     * @return il nuovo timestamp
+     */
+    private static long nextTimestamp() {
+        Instant now = Instant.now();
+        long micros = now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+        return lastTimestamp.updateAndGet(last -> Math.max(last + 1, micros));
+    }
+
+
     /**
      * Getter dell'id
      * @return id del post
@@ -106,7 +204,7 @@ public final class Post implements PostInterface {
 
     /**
      * Getter del timestamp
-     * @return timestamp del post
+     * @return timestamp del post (microsecondi dall'epoch)
      */
     public long getTimestamp() {
         return timestamp;
@@ -23,7 +23,7 @@ public interface PostInterface {
 
     /**
      * Getter del timestamp
-     * @return timestamp del post
+     * @return timestamp del post (microsecondi dall'epoch)
      */
     long getTimestamp();
 
@@ -0,0 +1,437 @@
+package app;
+
+import java.util.Arrays;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class PostReports {
+    /*
+     *  OVERVIEW:
+     *      Segnalazioni ricevute da un post (immutabile: plus restituisce una nuova versione).
+     *      Una segnalazione con autore conta una sola volta per (post, autore, motivo); quelle
+     *      anonime contano sempre.
+     *      Finché le segnalazioni sono al più EXACT_LIMIT sono tenute una per una (autore, motivo,
+     *      testo custom) e i conteggi sono esatti. Oltre, per i post virali, le coppie (autore, motivo)
+     *      finiscono in un filtro di Bloom, che riconosce le segnalazioni ripetute, e in un
+     *      HyperLogLog di dimensione fissa, che stima quante sono le coppie distinte con errore
+     *      standard relativo COUNT_ERROR. L'HyperLogLog non dipende dal filtro: una coppia che il
+     *      filtro crede già vista (falso positivo) ma che alza un registro è sicuramente nuova e viene
+     *      contata, una che non lo alza non cambierebbe comunque la stima. I conteggi per motivo
+     *      sono invece incrementati solo per le segnalazioni che il filtro considera nuove, per cui
+     *      in modalità stimata sono un limite inferiore.
+     *      Il filtro cresce con le coppie (filtro di Bloom a strati): lo strato i contiene al più
+     *      FIRST_CAPACITY << i coppie con BLOOM_HASHES + i funzioni hash e circa 1,44 bit per hash e
+     *      per coppia, per cui da pieno sbaglia con probabilità circa 2^-(BLOOM_HASHES + i); quando
+     *      l'ultimo strato è pieno se ne aggiunge uno. La probabilità di falso positivo complessiva
+     *      resta sotto la somma degli strati, circa 1,6% (2^-6) per qualunque numero di coppie (0,3-0,5%
+     *      misurato fra 2*10^4 e 10^6 coppie), al costo di circa 30 bit per coppia. Ogni strato è diviso in
+     *      blocchi di BLOCK_BITS bit e i bit di una coppia stanno tutti nello stesso blocco: plus
+     *      copia solo il blocco che cambia (e l'elenco dei blocchi), e i blocchi vuoti non sono allocati.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      modalità esatta (reporters != null): segnalazioni (reporters[i], reasons[i], texts[i]),
+     *          con reporters[i] == null per quelle anonime
+     *      modalità stimata (reporters == null): anonymous segnalazioni anonime più le coppie
+     *          (autore, motivo) inserite in bloom e registers (circa distinct); bloom contiene i
+     *          blocchi degli strati [0, layers(bloom)), lo strato i in [LAYER_START[i], LAYER_START[i + 1]),
+     *          e filled coppie sono state inserite nell'ultimo (null = blocco vuoto)
+     *      byReason[r] -> segnalazioni con motivo r
+     *
+     *  REPRESENTATION INVARIANT:
+     *      byReason.length == numero di motivi &&
+     *      (reporters != null && reporters.length == reasons.length <= EXACT_LIMIT &&
+     *          (texts == null || texts.length == reporters.length) &&
+     *          nessuna coppia (reporters[i], reasons[i]) con reporters[i] != null si ripete &&
+     *          bloom == null && registers == null)
+     *      || (reporters == null && bloom.length == LAYER_START[l] per qualche 1 <= l <= MAX_LAYERS &&
+     *          ogni blocco di bloom è null o lungo BLOCK_LONGS &&
+     *          0 <= filled <= capacità dell'ultimo strato (o qualunque, se l == MAX_LAYERS) &&
+     *          registers.length == REGISTERS && distinct == stima dei registri)
+     */
+
+    public static final int MAX_CUSTOM_TEXT_LENGTH = 70;
+    // segnalazioni tenute una per una prima di passare alla modalità stimata
+    public static final int EXACT_LIMIT = 64;
+
+    private static final int REGISTER_BITS = 10;
+    private static final int REGISTERS = 1 << REGISTER_BITS;
+    // errore standard relativo del conteggio in modalità stimata (1.04 / sqrt(REGISTERS), circa 3,3%)
+    public static final double COUNT_ERROR = 1.04 / Math.sqrt(REGISTERS);
+    // filtro di Bloom a strati: capacità e funzioni hash del primo strato, dimensione dei blocchi
+    private static final int FIRST_CAPACITY = 128;
+    private static final int BLOOM_HASHES = 7;
+    private static final int BLOCK_LONGS = 64;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    private static final int MAX_LAYERS = 24;
+    // blocchi di ogni strato e posizione del suo primo blocco
+    private static final int[] LAYER_BLOCKS = new int[MAX_LAYERS];
+    private static final int[] LAYER_START = new int[MAX_LAYERS + 1];
+    private static final int REASONS = ReportReason.values().length;
+
+    static {
+        for(int i = 0; i < MAX_LAYERS; i++) {
+            double bit = (double) capacity(i) * (BLOOM_HASHES + i) / Math.log(2);
+            LAYER_BLOCKS[i] = (int) Math.ceil(bit / BLOCK_BITS);
+            LAYER_START[i + 1] = LAYER_START[i] + LAYER_BLOCKS[i];
+        }
+    }
+
+    private final int postId;
+    private final int[] byReason;
+
+    private final String[] reporters;
+    private final byte[] reasons;
+    private final String[] texts;
+
+    private final int anonymous;
+    private final long[][] bloom;
+    private final int filled;
+    private final byte[] registers;
+    private final int distinct;
+
+    /**
+     * Costruttore della classe PostReports (nessuna segnalazione)
+     * @param postId l'id del post
+     */
+    PostReports(int postId) {
+        this(postId, new int[REASONS], new String[0], new byte[0], null, 0, null, 0, null, 0);
+    }
+
+    private PostReports(int postId, int[] byReason, String[] reporters, byte[] reasons, String[] texts,
+                        int anonymous, long[][] bloom, int filled, byte[] registers, int distinct) {
+        this.postId = postId;
+        this.byReason = byReason;
+        this.reporters = reporters;
+        this.reasons = reasons;
+        this.texts = texts;
+        this.anonymous = anonymous;
+        this.bloom = bloom;
+        this.filled = filled;
+        this.registers = registers;
+        this.distinct = distinct;
+    }
+
+    /**
+     * Restituisce una nuova versione con la segnalazione aggiunta
+     * @param reporter l'autore della segnalazione (null se anonima)
+     * @param reason il motivo
+     * @param text il testo della segnalazione custom (null per gli altri motivi)
+     * @return la nuova versione, o this se reporter aveva già segnalato il post per reason
+     */
+    PostReports plus(String reporter, ReportReason reason, String text) {
+        int[] conteggi = byReason.clone();
+        conteggi[reason.ordinal()]++;
+
+        if(reporters != null) {
+            if(reporter != null) {
+                for(int i = 0; i < reporters.length; i++) {
+                    if(reasons[i] == reason.ordinal() && reporter.equals(reporters[i])) {
+                        return this;
+                    }
+                }
+            }
+            int n = reporters.length;
+            String[] autori = Arrays.copyOf(reporters, n + 1);
+            byte[] motivi = Arrays.copyOf(reasons, n + 1);
+            autori[n] = reporter;
+            motivi[n] = (byte) reason.ordinal();
+            String[] testi = texts;
+            if(text != null || texts != null) {
+                testi = texts != null ? Arrays.copyOf(texts, n + 1) : new String[n + 1];
+                testi[n] = text;
+            }
+            if(n + 1 <= EXACT_LIMIT) {
+                return new PostReports(postId, conteggi, autori, motivi, testi, 0, null, 0, null, 0);
+            }
+            return estimated(conteggi, autori, motivi);
+        }
+
+        if(reporter == null) {
+            return new PostReports(postId, conteggi, null, null, null, anonymous + 1, bloom, filled, registers, distinct);
+        }
+        long h = hash(reporter, reason);
+        long[][] filtro = bloom;
+        int pieni = filled;
+        if(!mightContain(bloom, h)) {
+            int ultimo = layers(bloom) - 1;
+            if(filled >= capacity(ultimo) && ultimo + 1 < MAX_LAYERS) { // ultimo strato pieno: se ne apre uno nuovo
+                filtro = Arrays.copyOf(bloom, LAYER_START[ultimo + 2]);
+                ultimo++;
+                pieni = 0;
+            } else {
+                filtro = bloom.clone();
+            }
+            addTo(filtro, ultimo, h);
+            pieni++;
+        } else {
+            conteggi = byReason; // probabilmente ripetuta: il conteggio per motivo non cambia
+        }
+        byte[] r = registers;
+        if(rank(h) > registers[index(h)]) {
+            r = registers.clone();
+            r[index(h)] = rank(h);
+        }
+        if(filtro == bloom && r == registers) {
+            return this;
+        }
+        return new PostReports(postId, conteggi, null, null, null, anonymous, filtro, pieni, r, r == registers ? distinct : estimate(r));
+    }
+
+    /**
+     * Restituisce l'id del post segnalato
+     */
+    public int getPostID() {
+        return postId;
+    }
+
+    /**
+     * Restituisce il numero di segnalazioni del post (stimato in modalità stimata, vedi COUNT_ERROR)
+     */
+    public int getReportNumber() {
+        return reporters != null ? reporters.length : anonymous + distinct;
+    }
+
+    /**
+     * Restituisce il numero di segnalazioni con il motivo indicato (in modalità stimata è un
+     * limite inferiore)
+     */
+    public int getReportNumber(ReportReason reason) {
+        return byReason[reason.ordinal()];
+    }
+
+    /**
+     * Verifica se reporter ha segnalato il post per reason (in modalità stimata può rispondere
+     * true per errore, mai false per errore)
+     */
+    public boolean hasReported(String reporter, ReportReason reason) {
+        if(reporters == null) {
+            return reporter != null && mightContain(bloom, hash(reporter, reason));
+        }
+        for(int i = 0; i < reporters.length; i++) {
+            if(reasons[i] == reason.ordinal() && reporters[i] != null && reporters[i].equals(reporter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifica se i conteggi sono esatti (segnalazioni tenute una per una)
+     */
+    public boolean isExact() {
+        return reporters != null;
+    }
+
+    /**
+     * Visitatore delle segnalazioni
+     */
+    @FunctionalInterface
+    interface ReportVisitor {
+        void visit(String reporter, ReportReason reason, String text);
+    }
+
+    /**
+     * Passa a visitor ogni segnalazione (in modalità stimata, per ogni motivo, tante segnalazioni
+     * anonime senza testo quanti sono i conteggi del motivo)
+     */
+    void forEachReport(ReportVisitor visitor) {
+        ReportReason[] tutti = ReportReason.values();
+        if(reporters != null) {
+            for(int i = 0; i < reporters.length; i++) {
+                visitor.visit(reporters[i], tutti[reasons[i]], texts != null ? texts[i] : null);
+            }
+            return;
+        }
+        for(int r = 0; r < REASONS; r++) {
+            for(int i = 0; i < byReason[r]; i++) {
+                visitor.visit(null, tutti[r], null);
+            }
+        }
+    }
+
+    /**
+     * Stima la memoria occupata (vedi MemoryLayout); gli autori sono nomi di utenti, già contati
+     * dalla rete
+     */
+    long estimatedBytes() {
+        long n = MemoryLayout.object(6, 12) + MemoryLayout.array(REASONS, 4);
+        if(reporters != null) {
+            n += MemoryLayout.refArray(reporters.length) + MemoryLayout.array(reasons.length, 1);
+            if(texts != null) {
+                n += MemoryLayout.refArray(texts.length);
+                for(String t : texts) {
+                    n += MemoryLayout.string(t);
+                }
+            }
+        } else {
+            n += MemoryLayout.refArray(bloom.length) + MemoryLayout.array(registers.length, 1);
+            for(long[] blocco : bloom) {
+                if(blocco != null) {
+                    n += MemoryLayout.array(BLOCK_LONGS, 8);
+                }
+            }
+        }
+        return n;
+    }
+
+    public String toString() {
+        return "PostReports{" +
+                "post_id=" + postId +
+                ", reports=" + getReportNumber() +
+                (reporters != null ? "" : " (stimate)") +
+                '}';
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Passa alla modalità stimata con le segnalazioni date
+     */
+    private PostReports estimated(int[] conteggi, String[] autori, byte[] motivi) {
+        ReportReason[] tutti = ReportReason.values();
+        long[][] filtro = new long[LAYER_START[1]][];
+        byte[] r = new byte[REGISTERS];
+        int anonime = 0;
+        for(int i = 0; i < autori.length; i++) {
+            if(autori[i] == null) {
+                anonime++;
+                continue;
+            }
+            long h = hash(autori[i], tutti[motivi[i]]);
+            addTo(filtro, 0, h);
+            r[index(h)] = (byte) Math.max(r[index(h)], rank(h));
+        }
+        // EXACT_LIMIT < FIRST_CAPACITY: le coppie (distinte) stanno nel primo strato
+        return new PostReports(postId, conteggi, null, null, null, anonime, filtro, autori.length - anonime, r, estimate(r));
+    }
+
+    /**
+     * Hash a 64 bit della coppia (autore, motivo): FNV-1a seguito dal mescolamento finale di MurmurHash3
+     */
+    private static long hash(String reporter, ReportReason reason) {
+        long h = 0xCBF29CE484222325L;
+        for(int i = 0; i < reporter.length(); i++) {
+            h = (h ^ reporter.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ reason.ordinal()) * 0x100000001B3L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Coppie contenute al più dallo strato i del filtro
+     */
+    private static int capacity(int i) {
+        return FIRST_CAPACITY << i;
+    }
+
+    /**
+     * Numero di strati del filtro
+     */
+    private static int layers(long[][] filtro) {
+        int l = 1;
+        while(LAYER_START[l] < filtro.length) {
+            l++;
+        }
+        return l;
+    }
+
+    /**
+     * Hash della coppia per lo strato i (gli strati usano posizioni indipendenti)
+     */
+    private static long layerHash(long h, int i) {
+        h += (i + 1) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Blocco dello strato i che contiene i bit della coppia (32 bit alti di g ridotti al numero di blocchi)
+     */
+    private static int block(long g, int i) {
+        return LAYER_START[i] + (int) (((g >>> 32) * LAYER_BLOCKS[i]) >>> 32);
+    }
+
+    /**
+     * Verifica se la coppia con hash h può essere in uno degli strati del filtro; posizioni nel
+     * blocco: h1 + j * h2 (doppio hashing con le due metà dei 32 bit bassi di layerHash)
+     */
+    private static boolean mightContain(long[][] filtro, long h) {
+        for(int i = 0, l = layers(filtro); i < l; i++) {
+            long g = layerHash(h, i);
+            long[] blocco = filtro[block(g, i)];
+            if(blocco == null) {
+                continue;
+            }
+            int h1 = (int) g & 0xFFFF;
+            int h2 = ((int) g >>> 16) | 1;
+            boolean tutti = true;
+            for(int j = 0; j < BLOOM_HASHES + i && tutti; j++) {
+                int bit = (h1 + j * h2) & (BLOCK_BITS - 1);
+                tutti = (blocco[bit >>> 6] & (1L << bit)) != 0;
+            }
+            if(tutti) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inserisce la coppia con hash h nello strato i, sostituendo il suo blocco con una copia
+     * (filtro è già una copia dell'elenco dei blocchi)
+     */
+    private static void addTo(long[][] filtro, int i, long h) {
+        long g = layerHash(h, i);
+        int b = block(g, i);
+        long[] blocco = filtro[b] == null ? new long[BLOCK_LONGS] : filtro[b].clone();
+        int h1 = (int) g & 0xFFFF;
+        int h2 = ((int) g >>> 16) | 1;
+        for(int j = 0; j < BLOOM_HASHES + i; j++) {
+            int bit = (h1 + j * h2) & (BLOCK_BITS - 1);
+            blocco[bit >>> 6] |= 1L << bit;
+        }
+        filtro[b] = blocco;
+    }
+
+    /**
+     * Registro dell'HyperLogLog: i REGISTER_BITS bit più alti di h
+     */
+    private static int index(long h) {
+        return (int) (h >>> (64 - REGISTER_BITS));
+    }
+
+    /**
+     * Posizione del primo bit a 1 nei bit restanti di h
+     */
+    private static byte rank(long h) {
+        return (byte) (Long.numberOfLeadingZeros((h << REGISTER_BITS) | (1L << (REGISTER_BITS - 1))) + 1);
+    }
+
+    /**
+     * Stima di HyperLogLog, con il conteggio lineare dei registri a zero per le cardinalità piccole
+     */
+    private static int estimate(byte[] r) {
+        double somma = 0;
+        int zeri = 0;
+        for(byte x : r) {
+            somma += 1.0 / (1L << x);
+            if(x == 0) {
+                zeri++;
+            }
+        }
+        double m = REGISTERS;
+        double stima = 0.7213 / (1 + 1.079 / m) * m * m / somma;
+        if(stima <= 2.5 * m && zeri > 0) {
+            stima = m * Math.log(m / zeri);
+        }
+        return (int) Math.round(stima);
+    }
+}
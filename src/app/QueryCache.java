@@ -0,0 +1,215 @@
+package app;
+
+import exception.EmptyFieldException;
+import exception.PostNotFoundException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class QueryCache {
+    /*
+     *  OVERVIEW:
+     *      Cache dei risultati delle interrogazioni più ripetute di un SafeSocialNetwork
+     *      (influencers, getMostReportedPosts, getMentionedUsers e containing). La chiave è il
+     *      metodo con i suoi argomenti; ogni risultato è salvato insieme alla versione delle
+     *      strutture da cui dipende (followed, ps, rp), letta prima di calcolarlo. Le modifiche della
+     *      rete incrementano le versioni, per cui un risultato in cache è valido solo se la sua
+     *      versione coincide con quella corrente: un hit è una sola lettura della mappa più un
+     *      confronto, e un risultato non aggiornato non viene mai restituito (viene ricalcolato).
+     *      La cache ha al più maxEntries risultati e scarta quello usato meno di recente (LRU).
+     *      I risultati sono restituiti come viste non modificabili, condivise fra i chiamanti.
+     *      Come la rete, la cache non acquisisce il lock: i chiamanti concorrenti devono
+     *      tenere il read lock della rete.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      entries(<metodo, argomenti>) -> <versione, risultato> del metodo calcolato alla versione
+     *
+     *  REPRESENTATION INVARIANT:
+     *      sn != null && maxEntries >= 1 && entries.size() <= maxEntries
+     */
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final String INFLUENCERS = "influencers";
+    private static final String MOST_REPORTED = "getMostReportedPosts";
+    private static final String MENTIONED = "getMentionedUsers";
+    private static final String CONTAINING = "containing";
+
+    private final SafeSocialNetwork sn;
+    private final int maxEntries;
+    private final Map<List<Object>, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static final class Entry {
+        final long version;
+        final Object value;
+
+        Entry(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Costruttore della classe QueryCache.
+     * @param sn la rete di cui mettere in cache le interrogazioni
+     * @param maxEntries numero massimo di risultati in cache
+     */
+    public QueryCache(SafeSocialNetwork sn, int maxEntries) {
+        if(sn == null) {
+            throw new NullPointerException();
+        }
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.sn = sn;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                return size() > QueryCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Restituisce gli utenti più influenti della rete (vedi SocialNetwork.influencers)
+     * @return lista (non modificabile) degli utenti con maggior numero di follower
+     * @throws EmptyFieldException se nella rete non ci sono post
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> influencers() throws EmptyFieldException {
+        List<Object> key = Collections.singletonList(INFLUENCERS);
+        long version = sn.getFollowedVersion() + sn.getPostsVersion();
+        Object value = lookup(key, version);
+        if(value == null) {
+            value = store(key, version, Collections.unmodifiableList(sn.influencers()));
+        }
+        return (List<String>) value;
+    }
+
+    /**
+     * Restituisce i post con almeno minReports segnalazioni (vedi SafeSocialNetwork.getMostReportedPosts)
+     * @param minReports numero di segnalazioni minime
+     * @return mappa (non modificabile) post -> numero di segnalazioni
+     * @throws EmptyFieldException se non ci sono segnalazioni
+     * @throws PostNotFoundException se una segnalazione riguarda un post non più presente
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Post, Integer> getMostReportedPosts(int minReports) throws EmptyFieldException, PostNotFoundException {
+        List<Object> key = Arrays.asList(MOST_REPORTED, minReports);
+        long version = sn.getPostsVersion() + sn.getReportsVersion();
+        Object value = lookup(key, version);
+        if(value == null) {
+            value = store(key, version, Collections.unmodifiableMap(sn.getMostReportedPosts(minReports)));
+        }
+        return (Map<Post, Integer>) value;
+    }
+
+    /**
+     * Restituisce l'insieme degli utenti menzionati nei post della rete (vedi SocialNetwork.getMentionedUsers)
+     * @return insieme (non modificabile) degli utenti menzionati
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> getMentionedUsers() {
+        List<Object> key = Collections.singletonList(MENTIONED);
+        long version = sn.getPostsVersion();
+        Object value = lookup(key, version);
+        if(value == null) {
+            value = store(key, version, Collections.unmodifiableSet(sn.getMentionedUsers()));
+        }
+        return (Set<String>) value;
+    }
+
+    /**
+     * Restituisce i post della rete che contengono almeno una delle parole (vedi SocialNetwork.containing)
+     * @param words lista di stringhe (parole)
+     * @return lista (non modificabile) dei post che contengono almeno una delle parole in "words"
+     */
+    @SuppressWarnings("unchecked")
+    public List<Post> containing(List<String> words) {
+        List<Object> key = Arrays.asList(CONTAINING, new ArrayList<>(words));
+        long version = sn.getPostsVersion();
+        Object value = lookup(key, version);
+        if(value == null) {
+            value = store(key, version, Collections.unmodifiableList(sn.containing(words)));
+        }
+        return (List<Post>) value;
+    }
+
+    /**
+     * Restituisce il numero di interrogazioni servite dalla cache
+     * @return il numero di hit
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Restituisce il numero di interrogazioni ricalcolate sulla rete
+     * @return il numero di miss
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Restituisce il numero di risultati in cache (anche non più validi, finché non vengono richiesti o scartati)
+     * @return il numero di risultati in cache
+     */
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Svuota la cache
+     * @modifies this.entries
+     */
+    public void clear() {
+        synchronized(entries) {
+            entries.clear();
+        }
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Restituisce il risultato in cache se è stato calcolato alla versione indicata
+     * (le versioni delle strutture crescono sempre, quindi anche la loro somma)
+     * @param key metodo e argomenti
+     * @param version versione corrente delle strutture da cui dipende il risultato
+     * @return il risultato in cache, oppure null se assente o non più valido
+     */
+    private Object lookup(List<Object> key, long version) {
+        Entry e;
+        synchronized(entries) {
+            e = entries.get(key);
+        }
+        if(e != null && e.version == version) {
+            hits.incrementAndGet();
+            return e.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Salva un risultato calcolato alla versione indicata (letta prima di calcolarlo)
+     * @return il risultato salvato
+     */
+    private Object store(List<Object> key, long version, Object value) {
+        synchronized(entries) {
+            entries.put(key, new Entry(version, value));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,297 @@
+package app;
+
+import exception.InvalidUsernameException;
+import exception.PostNotFoundException;
+import exception.TextLengthException;
+import exception.UserNotFoundException;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class Replica {
+    /*
+     *  OVERVIEW:
+     *      Replica in sola lettura di un SafeSocialNetwork, alimentata dal log di un ReplicationPrimary.
+     *      Un thread legge il log dal SocketChannel del primario a blocchi, decodifica tutti i record
+     *      completi arrivati e li applica alla rete locale in un colpo solo sotto il suo write lock
+     *      (i lettori vedono solo stati fra un blocco e l'altro). I post vengono ricostruiti con lo
+     *      stesso id e timestamp che hanno sul primario.
+     *      Le interrogazioni si fanno sulla rete restituita da getNetwork, sotto il suo read lock,
+     *      come per qualsiasi SafeSocialNetwork; la rete della replica non va modificata.
+     *      Il ritardo è calcolato con gli heartbeat del primario, che arrivano quando la replica ha
+     *      ricevuto tutto il log: se l'ultimo messaggio letto è un heartbeat con la sequenza
+     *      dell'ultimo record applicato la replica è allineata (ritardo 0), altrimenti il ritardo
+     *      è il tempo trascorso dalla pubblicazione sul primario dell'ultimo record applicato.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      sn -> stato del primario dopo i record con sequenza 0..appliedSeq
+     *      primarySeq -> ultima sequenza nota del primario
+     *
+     *  REPRESENTATION INVARIANT:
+     *      sn != null && posts contiene esattamente i post di sn, per id &&
+     *      appliedSeq <= primarySeq
+     */
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final InetSocketAddress primary;
+    private final SafeSocialNetwork sn = new SafeSocialNetwork();
+    private final Map<Integer, Post> posts = new HashMap<>(); // usata solo dal thread della replica
+
+    private SocketChannel channel;
+    private Thread reader;
+    private volatile boolean running;
+
+    private volatile long appliedSeq = -1;
+    private volatile long appliedMillis;
+    private volatile long primarySeq = -1;
+    private volatile boolean caughtUp;
+
+    /**
+     * Costruttore della classe Replica (la replica non viene avviata)
+     * @param primary indirizzo del primario
+     */
+    public Replica(InetSocketAddress primary) {
+        if(primary == null) {
+            throw new NullPointerException();
+        }
+        this.primary = primary;
+    }
+
+    /**
+     * Si collega al primario e avvia il thread che applica il log
+     * @throws IOException se non è possibile collegarsi
+     */
+    public synchronized void start() throws IOException {
+        if(running) {
+            return;
+        }
+        channel = SocketChannel.open(primary);
+        channel.socket().setTcpNoDelay(true);
+        running = true;
+        reader = new Thread(this::readLoop, "replica-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Chiude la connessione con il primario (la rete resta interrogabile)
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        try {
+            if(channel != null) {
+                channel.close();
+            }
+        } catch(IOException ignored) {
+        }
+        if(reader != null) {
+            reader.join(5000);
+        }
+    }
+
+    /**
+     * Restituisce la rete della replica (da interrogare sotto getNetwork().getLock().readLock())
+     * @return la rete della replica
+     */
+    public SafeSocialNetwork getNetwork() {
+        return sn;
+    }
+
+    /**
+     * Verifica se la replica è collegata al primario
+     * @return true se collegata, false altrimenti
+     */
+    public boolean isConnected() {
+        return running && channel != null && channel.isOpen();
+    }
+
+    /**
+     * Restituisce la sequenza dell'ultimo record applicato
+     * @return la sequenza applicata (-1 se nessuna)
+     */
+    public long getAppliedSequence() {
+        return appliedSeq;
+    }
+
+    /**
+     * Restituisce il numero di record noti del primario non ancora applicati
+     * @return il ritardo in record
+     */
+    public long getLagRecords() {
+        return Math.max(primarySeq - appliedSeq, 0);
+    }
+
+    /**
+     * Restituisce il ritardo della replica rispetto al primario
+     * @return 0 se allineata, altrimenti i millisecondi trascorsi dalla pubblicazione
+     *         dell'ultimo record applicato
+     */
+    public long getLagMillis() {
+        if(caughtUp) {
+            return 0;
+        }
+        return appliedSeq < 0 ? 0 : Math.max(System.currentTimeMillis() - appliedMillis, 0);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Ciclo del thread della replica: legge dal socket e applica i record completi
+     */
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        ReplicationCodec.Record record = new ReplicationCodec.Record();
+        List<ReplicationCodec.Record> lotto = new ArrayList<>();
+        try {
+            while(running) {
+                if(!buffer.hasRemaining()) { // un frame più grande del buffer
+                    ByteBuffer grande = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    grande.put(buffer);
+                    buffer = grande;
+                }
+                if(channel.read(buffer) < 0) {
+                    break;
+                }
+
+                buffer.flip();
+                boolean heartbeat = false;
+                long heartbeatSeq = -1;
+                while(ReplicationCodec.decode(buffer, record)) {
+                    if(record.type == ReplicationCodec.HEARTBEAT) {
+                        heartbeat = true;
+                        heartbeatSeq = record.seq;
+                    } else {
+                        heartbeat = false;
+                        lotto.add(record);
+                        record = new ReplicationCodec.Record();
+                    }
+                }
+                buffer.compact();
+
+                if(!lotto.isEmpty()) {
+                    caughtUp = false;
+                    apply(lotto);
+                    ReplicationCodec.Record ultimo = lotto.get(lotto.size() - 1);
+                    appliedMillis = ultimo.millis;
+                    appliedSeq = ultimo.seq;
+                    primarySeq = Math.max(primarySeq, ultimo.seq);
+                    lotto.clear();
+                }
+                if(heartbeat) {
+                    primarySeq = Math.max(primarySeq, heartbeatSeq);
+                    caughtUp = heartbeatSeq == appliedSeq;
+                }
+            }
+        } catch(IOException e) {
+            if(running) {
+                System.err.println("[Replica] connessione persa: " + e);
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Applica un lotto di record alla rete della replica sotto il write lock
+     */
+    private void apply(List<ReplicationCodec.Record> lotto) {
+        Lock lock = sn.getLock().writeLock();
+        lock.lock();
+        try {
+            for(ReplicationCodec.Record r : lotto) {
+                try {
+                    apply(r);
+                } catch(UserNotFoundException | PostNotFoundException | InvalidUsernameException | TextLengthException e) {
+                    System.err.println("[Replica] record " + r.seq + " non applicabile: " + e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(ReplicationCodec.Record r) throws UserNotFoundException, PostNotFoundException, InvalidUsernameException, TextLengthException {
+        Post p;
+        switch(r.getType()) {
+            case user_initialized:
+                sn.initializeUser(r.user, null);
+                break;
+            case follower_added:
+                sn.addFollower(r.user, r.target);
+                break;
+            case follower_removed:
+                sn.removeFollower(r.user, r.target);
+                break;
+            case post_added:
+                posts.put(r.post.getId(), r.post);
+                sn.addPost(r.post);
+                break;
+            case post_deleted:
+                p = posts.remove(r.postId);
+                if(p != null) {
+                    sn.deletePost(p);
+                }
+                break;
+            case post_reported:
+                p = posts.get(r.postId);
+                if(p == null) {
+                    throw new PostNotFoundException();
+                }
+                if(r.target != null) { // con autore: senza verificarlo, la replica applica quello che il primario ha accettato
+                    sn.reportPostBy(p, r.target, r.reason, r.text);
+                } else if(r.reason == ReportReason.custom) {
+                    sn.reportPost(p, r.reason, r.text);
+                } else {
+                    sn.reportPost(p, r.reason);
+                }
+                break;
+            case reported_post_removed:
+                if(posts.remove(r.postId) != null) {
+                    sn.removePosts(Collections.singleton(r.postId));
+                }
+                break;
+            case user_deleted:
+                sn.deleteUser(r.user);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Avvia una replica collegata a un primario (java app.ReplicationPrimary porta) e ne stampa
+     * ogni secondo il ritardo; se indicata, espone la rete della replica con HttpApi
+     * @param args host porta [porta http]
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : InetAddress.getLoopbackAddress().getHostAddress();
+        int porta = args.length > 1 ? Integer.parseInt(args[1]) : 9400;
+
+        Replica replica = new Replica(new InetSocketAddress(host, porta));
+        replica.start();
+        if(args.length > 2) {
+            HttpApi api = new HttpApi(replica.getNetwork(), new InetSocketAddress(Integer.parseInt(args[2])));
+            api.start();
+            System.out.println("[Replica] interrogazioni su http://localhost:" + args[2] + "/api/");
+        }
+
+        while(replica.isConnected()) {
+            Thread.sleep(1000);
+            System.out.println("[Replica] sequenza " + replica.getAppliedSequence() + ", ritardo "
+                    + replica.getLagMillis() + " ms (" + replica.getLagRecords() + " record)");
+        }
+        System.out.println("[Replica] primario disconnesso");
+    }
+}
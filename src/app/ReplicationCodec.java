@@ -0,0 +1,151 @@
+package app;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class ReplicationCodec {
+    /*
+     *  OVERVIEW:
+     *      Formato binario del log di replica. Ogni record è un frame
+     *          [int lunghezza][byte tipo][long sequenza][long millis]
+     *          [str user][str target][byte post? (id, timestamp, author, text)][byte motivo][str testo]
+     *      dove lunghezza conta i byte dopo il campo lunghezza, tipo è l'ordinale di ChangeEventType
+     *      (HEARTBEAT per i segnali del primario), millis è l'istante di pubblicazione sul primario e
+     *      le stringhe sono [int lunghezza in byte (-1 = null)][UTF-8].
+     */
+
+    // tipo dei frame di controllo: "hai ricevuto tutto fino a sequenza" (non fanno parte del log)
+    static final byte HEARTBEAT = -1;
+
+    private static final ChangeEventType[] TYPES = ChangeEventType.values();
+    private static final ReportReason[] REASONS = ReportReason.values();
+
+    private ReplicationCodec() {
+    }
+
+    /**
+     * Record decodificato
+     */
+    static final class Record {
+        byte type;
+        long seq;
+        long millis;
+        String user;
+        String target;
+        Post post;
+        int postId;
+        ReportReason reason;
+        String text;
+
+        ChangeEventType getType() {
+            return TYPES[type];
+        }
+    }
+
+    /**
+     * Scrive un frame nel buffer (che deve avere abbastanza spazio, vedi maxSize)
+     */
+    static void encode(ByteBuffer out, byte type, long seq, long millis, String user, String target, Post post, ReportReason reason, String text) {
+        int inizio = out.position();
+        out.putInt(0);
+        out.put(type);
+        out.putLong(seq);
+        out.putLong(millis);
+        putString(out, user);
+        putString(out, target);
+        if(post != null) {
+            out.put((byte) 1);
+            out.putInt(post.getId());
+            out.putLong(post.getTimestamp());
+            putString(out, post.getAuthor());
+            putString(out, post.getText());
+        } else {
+            out.put((byte) 0);
+        }
+        out.put(reason != null ? (byte) reason.ordinal() : -1);
+        putString(out, text);
+        out.putInt(inizio, out.position() - inizio - 4);
+    }
+
+    /**
+     * Limite superiore della dimensione di un frame
+     */
+    static int maxSize(String user, String target, Post post, String text) {
+        int n = 4 + 1 + 8 + 8 + 1 + 1 + size(user) + size(target) + size(text);
+        if(post != null) {
+            n += 4 + 8 + size(post.getAuthor()) + size(post.getText());
+        }
+        return n;
+    }
+
+    /**
+     * Legge il prossimo frame completo dal buffer
+     * @param in buffer in modalità lettura
+     * @param r il record da riempire
+     * @return true se è stato letto un frame, false se il buffer non contiene un frame completo
+     *         (in tal caso la posizione non cambia)
+     */
+    static boolean decode(ByteBuffer in, Record r) {
+        if(in.remaining() < 4 || in.remaining() < 4 + in.getInt(in.position())) {
+            return false;
+        }
+
+        try {
+            in.getInt();
+            r.type = in.get();
+            r.seq = in.getLong();
+            r.millis = in.getLong();
+            r.user = getString(in);
+            r.target = getString(in);
+            if(in.get() == 1) {
+                int id = in.getInt();
+                long timestamp = in.getLong();
+                String author = getString(in);
+                String text = getString(in);
+                r.post = r.type == ChangeEventType.post_added.ordinal() ? Post.restore(id, author, text, timestamp) : null;
+                r.postId = id;
+            } else {
+                r.post = null;
+                r.postId = -1;
+            }
+            byte motivo = in.get();
+            r.reason = motivo >= 0 ? REASONS[motivo] : null;
+            r.text = getString(in);
+        } catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Frame di replica non valido", e);
+        }
+        return true;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private static int size(String s) {
+        return 4 + (s != null ? s.length() * 3 : 0);
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        if(s == null) {
+            out.putInt(-1);
+        } else {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.putInt(b.length);
+            out.put(b);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int n = in.getInt();
+        if(n < 0) {
+            return null;
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), n, StandardCharsets.UTF_8);
+        in.position(in.position() + n);
+        return s;
+    }
+}
@@ -0,0 +1,367 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class ReplicationPrimary implements ChangeEventHandler {
+    /*
+     *  OVERVIEW:
+     *      Primario della replica di un SafeSocialNetwork. Il primario è un consumatore del
+     *      ChangeEventBus della rete: codifica ogni modifica (utenti, follow, post, segnalazioni,
+     *      rimozioni) come record del log di replica (vedi ReplicationCodec) e la aggiunge a un log
+     *      in memoria. All'avvio il log viene iniziato con una fotografia dello stato corrente,
+     *      presa sotto il read lock della rete.
+     *      Un thread con un Selector NIO accetta le repliche su un ServerSocketChannel e, per ogni
+     *      replica, scrive in modo non bloccante tutti i byte del log che la replica non ha ancora
+     *      ricevuto: le modifiche arrivate nel frattempo partono insieme in una sola write (batch).
+     *      Una replica che si collega più tardi riceve il log dall'inizio. Quando una replica ha
+     *      ricevuto tutto il log le viene inviato un heartbeat con l'ultima sequenza, così può
+     *      sapere di essere allineata (e calcolare il ritardo).
+     *      Il log non viene mai troncato: la memoria occupata cresce con il numero di modifiche.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      log[0..logSize) -> record con sequenza 0..seq, nell'ordine in cui sono stati pubblicati
+     *      replicas -> repliche collegate, ognuna con la posizione nel log fino a cui ha ricevuto
+     *
+     *  REPRESENTATION INVARIANT:
+     *      sn != null && 0 <= logSize <= log.length && log[0..logSize) contiene solo frame completi &&
+     *      for each(r) in replicas : 0 <= r.offset <= logSize
+     */
+
+    private static final long HEARTBEAT_MILLIS = 100;
+
+    private final SafeSocialNetwork sn;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+
+    // log (scritto dal consumatore del bus, letto dal thread del selector)
+    private byte[] log = new byte[64 * 1024];
+    private int logSize;
+    private long seq = -1;
+
+    private ByteBuffer scratch = ByteBuffer.allocate(4096); // usato solo dal consumatore del bus
+    private ChangeEventBus.Subscription subscription;
+    private Thread sender;
+    private volatile boolean running;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        int offset;               // byte del log già inviati
+        long heartbeatSeq = -2;   // sequenza dell'ultimo heartbeat inviato
+        long heartbeatMillis;
+        ByteBuffer pending;       // heartbeat non ancora inviato del tutto (o null)
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Costruttore della classe ReplicationPrimary (il primario non viene avviato)
+     * @param sn la rete da replicare (deve avere un bus degli eventi)
+     * @param address indirizzo su cui accettare le repliche (porta 0 = porta libera)
+     * @throws IOException se non è possibile aprire il socket
+     */
+    public ReplicationPrimary(SafeSocialNetwork sn, InetSocketAddress address) throws IOException {
+        if(sn == null || address == null) {
+            throw new NullPointerException();
+        }
+
+        this.sn = sn;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Restituisce la porta su cui il primario accetta le repliche
+     * @return la porta
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Avvia il primario: fotografa lo stato della rete, si registra sul bus e avvia il thread di invio
+     * @throws IllegalStateException se la rete non ha un bus degli eventi
+     */
+    public synchronized void start() {
+        ChangeEventBus bus = sn.getEventBus();
+        if(bus == null) {
+            throw new IllegalStateException("La rete non ha un ChangeEventBus");
+        }
+        if(running) {
+            return;
+        }
+
+        Lock lock = sn.getLock().readLock();
+        lock.lock();
+        try {
+            snapshot();
+            subscription = bus.subscribe("replication-primary", this);
+        } finally {
+            lock.unlock();
+        }
+
+        running = true;
+        sender = new Thread(this::sendLoop, "replication-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Ferma il primario e chiude le connessioni con le repliche
+     */
+    public synchronized void stop() throws InterruptedException {
+        if(subscription != null) {
+            sn.getEventBus().unsubscribe(subscription);
+            subscription = null;
+        }
+        running = false;
+        selector.wakeup();
+        if(sender != null) {
+            sender.join(5000);
+        }
+    }
+
+    /**
+     * Restituisce la sequenza dell'ultimo record del log
+     * @return la sequenza dell'ultimo record (-1 se il log è vuoto)
+     */
+    public synchronized long getSequence() {
+        return seq;
+    }
+
+    /**
+     * Restituisce la dimensione del log
+     * @return i byte occupati dal log
+     */
+    public synchronized long getLogSize() {
+        return logSize;
+    }
+
+    /**
+     * Gestisce un evento del bus (chiamato dal thread del consumatore): lo aggiunge al log
+     */
+    public void onEvent(ChangeEvent event, long sequence, boolean endOfBatch) {
+        append((byte) event.getType().ordinal(), event.getMillis(), event.getUser(), event.getTarget(),
+                event.getPost(), event.getReason(), event.getText());
+        if(endOfBatch) {
+            selector.wakeup();
+        }
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Scrive nel log lo stato corrente della rete, post su disco compresi (va chiamato sotto il read lock)
+     */
+    private void snapshot() {
+        long now = System.currentTimeMillis();
+        for(Map.Entry<String, Set<String>> entry : sn.followed.entrySet()) {
+            append((byte) ChangeEventType.user_initialized.ordinal(), now, entry.getKey(), null, null, null, null);
+            if(entry.getValue() != null) {
+                for(String seguito : entry.getValue()) {
+                    append((byte) ChangeEventType.follower_added.ordinal(), now, entry.getKey(), seguito, null, null, null);
+                }
+            }
+        }
+        // prima i post su disco (i più vecchi), poi quelli in memoria: la replica li tiene tutti in memoria
+        Map<Integer, Post> perId = new HashMap<>();
+        for(Post p : sn.coldPosts()) {
+            append((byte) ChangeEventType.post_added.ordinal(), now, p.getAuthor(), null, p, null, null);
+            perId.put(p.getId(), p);
+        }
+        for(Post p : sn.ps) {
+            append((byte) ChangeEventType.post_added.ordinal(), now, p.getAuthor(), null, p, null, null);
+            perId.put(p.getId(), p);
+        }
+        // i post virali (segnalazioni stimate) vengono ricostruiti con segnalazioni anonime, per motivo
+        for(PostReports r : sn.snapshot().getReports().values()) {
+            Post p = perId.get(r.getPostID());
+            if(p != null) {
+                r.forEachReport((autore, motivo, testo) -> append((byte) ChangeEventType.post_reported.ordinal(), now, p.getAuthor(), autore, p, motivo,
+                        motivo == ReportReason.custom && testo == null ? "" : testo));
+            }
+        }
+    }
+
+    /**
+     * Codifica un record e lo aggiunge al log
+     */
+    private void append(byte type, long millis, String user, String target, Post post, ReportReason reason, String text) {
+        int max = ReplicationCodec.maxSize(user, target, post, text);
+        if(scratch.capacity() < max) {
+            scratch = ByteBuffer.allocate(Integer.highestOneBit(max) << 1);
+        }
+        scratch.clear();
+
+        synchronized(this) {
+            ReplicationCodec.encode(scratch, type, seq + 1, millis, user, target, post, reason, text);
+            int n = scratch.position();
+            if(logSize + n > log.length) {
+                log = Arrays.copyOf(log, Math.max(log.length * 2, logSize + n));
+            }
+            System.arraycopy(scratch.array(), 0, log, logSize, n);
+            logSize += n;
+            seq++;
+        }
+    }
+
+    /**
+     * Ciclo del thread di invio: accetta le repliche e invia a ognuna il log che le manca
+     */
+    private void sendLoop() {
+        List<Connection> repliche = new ArrayList<>();
+        try {
+            while(running) {
+                selector.select(HEARTBEAT_MILLIS);
+                for(SelectionKey key : selector.selectedKeys()) {
+                    if(key.isValid() && key.isAcceptable()) {
+                        SocketChannel channel = server.accept();
+                        if(channel != null) {
+                            channel.configureBlocking(false);
+                            channel.socket().setTcpNoDelay(true);
+                            Connection c = new Connection(channel);
+                            channel.register(selector, 0, c);
+                            repliche.add(c);
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                byte[] dati;
+                int dimensione;
+                long ultima;
+                synchronized(this) {
+                    dati = log; // il log cresce solo in coda: i primi logSize byte restano validi
+                    dimensione = logSize;
+                    ultima = seq;
+                }
+
+                Iterator<Connection> it = repliche.iterator();
+                while(it.hasNext()) {
+                    Connection c = it.next();
+                    try {
+                        if(!send(c, dati, dimensione, ultima)) {
+                            c.channel.keyFor(selector).interestOps(SelectionKey.OP_WRITE);
+                        } else {
+                            c.channel.keyFor(selector).interestOps(0);
+                        }
+                    } catch(IOException e) {
+                        it.remove();
+                        close(c.channel);
+                    }
+                }
+            }
+        } catch(IOException e) {
+            System.err.println("[ReplicationPrimary] errore: " + e);
+        } finally {
+            for(Connection c : repliche) {
+                close(c.channel);
+            }
+            close(server);
+            try {
+                selector.close();
+            } catch(IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Invia a una replica il log che le manca e, se è allineata, un heartbeat
+     * @return true se tutto è stato inviato, false se il socket è pieno
+     */
+    private boolean send(Connection c, byte[] dati, int dimensione, long ultima) throws IOException {
+        if(c.pending != null) {
+            c.channel.write(c.pending);
+            if(c.pending.hasRemaining()) {
+                return false;
+            }
+            c.pending = null;
+        }
+
+        if(c.offset < dimensione) {
+            c.offset += c.channel.write(ByteBuffer.wrap(dati, c.offset, dimensione - c.offset));
+            if(c.offset < dimensione) {
+                return false;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if(c.heartbeatSeq != ultima || now - c.heartbeatMillis >= HEARTBEAT_MILLIS) {
+            ByteBuffer hb = ByteBuffer.allocate(ReplicationCodec.maxSize(null, null, null, null));
+            ReplicationCodec.encode(hb, ReplicationCodec.HEARTBEAT, ultima, now, null, null, null, null, null);
+            hb.flip();
+            c.heartbeatSeq = ultima;
+            c.heartbeatMillis = now;
+            c.channel.write(hb);
+            if(hb.hasRemaining()) {
+                c.pending = hb;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void close(Closeable c) {
+        try {
+            c.close();
+        } catch(IOException ignored) {
+        }
+    }
+
+    /**
+     * Avvia un primario con una rete di prova che riceve modifiche continue, per provare
+     * le repliche da un altro processo (java app.Replica 127.0.0.1 porta)
+     * @param args [porta] (default 9400)
+     */
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : 9400;
+
+        SafeSocialNetwork sn = new SafeSocialNetwork();
+        sn.setEventBus(new ChangeEventBus(4096));
+        ReplicationPrimary primario = new ReplicationPrimary(sn, new InetSocketAddress(InetAddress.getLoopbackAddress(), porta));
+        primario.start();
+        System.out.println("[ReplicationPrimary] in ascolto su 127.0.0.1:" + primario.getPort());
+
+        Lock lock = sn.getLock().writeLock();
+        Random random = new Random();
+        for(int i = 0; ; i++) {
+            lock.lock();
+            try {
+                if(i < 100) {
+                    sn.initializeUser("user" + i, new HashSet<>(Collections.singleton("user" + ((i + 1) % 100))));
+                } else {
+                    Post p = new Post("user" + random.nextInt(100), "post numero " + i + " per @user" + random.nextInt(100));
+                    sn.addPost(p);
+                    if(i % 10 == 0) {
+                        sn.reportPost(p, ReportReason.spam_misleading_content);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if(i % 1000 == 0) {
+                System.out.println("[ReplicationPrimary] sequenza " + primario.getSequence() + ", log " + primario.getLogSize() + " byte");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -3,9 +3,11 @@ package app;
 import exception.EmptyFieldException;
 import exception.PostNotFoundException;
 import exception.TextLengthException;
+import exception.UserNotFoundException;
 
 import java.lang.invoke.WrongMethodTypeException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Map.Entry.comparingByValue;
 import static java.util.stream.Collectors.toMap;
@@ -25,20 +27,70 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
      *      che hanno una determinata quantità di segnalazioni, oppure rimuovere tutti quelli
      *      che ne possiedono almeno una.
      *
+     *      Una segnalazione può indicare chi la fa: in tal caso conta una sola volta per
+     *      (post, autore, motivo), così un utente non può far salire un post in getMostReportedPosts
+     *      segnalandolo più volte. Le segnalazioni di ogni post sono un PostReports, esatto per i post
+     *      con poche segnalazioni e a memoria fissa (filtro di Bloom e HyperLogLog) per quelli virali.
+     *
+     *      Come i post, le segnalazioni sono in una struttura persistente (PersistentMap), per cui
+     *      compaiono anche negli snapshot.
+     *
      *  ABSTRACTION FUNCTION:
-     *      Set<Report> rp dove:
-     *          Report -> è un oggetto di tipo "Report"
+     *      Map<Integer, PostReports> rp dove:
+     *          Integer -> id del post segnalato
+     *          PostReports -> le segnalazioni del post
      *
      *  REPRESENTATION INVARIANT:
      *      rp != null &&
-     *      for each(report) in rp : report != null && unique
+     *      for each(id, r) in rp : r != null && r.getPostID() == id && r.getReportNumber() > 0
      */
 
-    private final Set<Report> rp;
+    private volatile PersistentMap<Integer, PostReports> rp;
+
+    // versione delle segnalazioni, incrementata da ogni modifica di rp
+    private final AtomicLong reportsVersion = new AtomicLong();
+
+    // copie recenti oltre cui un nuovo post viene segnalato come spam (0 = mai)
+    private int duplicateReportThreshold;
 
     public SafeSocialNetwork() {
         super();
-        rp = new HashSet<>();
+        rp = PersistentMap.empty();
+    }
+
+    /**
+     * Aggiunge un post alla lista; se la segnalazione automatica delle copie è attiva e il post ha
+     * almeno la soglia di copie fra i post recenti, lo segnala come spam_misleading_content.
+     * @param p il post da aggiungere
+     * @modifies this.ps, this.byTime, this.rp
+     * @effects this.ps = pre(this.ps) U {p}
+     */
+    public void addPost(Post p) {
+        super.addPost(p);
+        int soglia = duplicateReportThreshold;
+        if(soglia > 0 && countDuplicates(p, soglia) >= soglia) {
+            try {
+                reportPost(p, ReportReason.spam_misleading_content);
+            } catch(PostNotFoundException e) { // impossibile: il post è appena stato aggiunto
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Imposta la segnalazione automatica delle copie (richiede enableDuplicateDetection)
+     * @param minDuplicates numero di copie recenti oltre cui un nuovo post viene segnalato (0 = mai)
+     * @throws IllegalStateException se il riconoscimento delle copie non è attivo
+     * @modifies this.duplicateReportThreshold
+     */
+    public void setDuplicateReportThreshold(int minDuplicates) {
+        if(minDuplicates < 0) {
+            throw new IllegalArgumentException();
+        }
+        if(minDuplicates > 0 && !isDuplicateDetectionEnabled()) {
+            throw new IllegalStateException("Riconoscimento delle copie non attivo: chiamare enableDuplicateDetection()");
+        }
+        duplicateReportThreshold = minDuplicates;
     }
 
     /**
@@ -57,12 +109,10 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
             throw new NullPointerException();
         } else {
             if(checkPost(post)) {
-                Report segnalazione = new Report(post.getId());
                 if(reason == ReportReason.custom) {
                     throw new WrongMethodTypeException("Usare il metodo reportPost specificando anche il testo della segnalazione custom!");
                 } else {
-                    segnalazione.setReport(reason);
-                    rp.add(segnalazione);
+                    addReport(post, null, reason, null);
                 }
             } else {
                 throw new PostNotFoundException();
@@ -87,10 +137,9 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
             throw new NullPointerException();
         } else {
             if (checkPost(post)) {
-                Report segnalazione = new Report(post.getId());
                 if (reason == ReportReason.custom) {
-                    segnalazione.setCustomReport(text);
-                    rp.add(segnalazione);
+                    checkCustomText(text);
+                    addReport(post, null, reason, text);
                 } else {
                     throw new WrongMethodTypeException("Usare il metodo reportPost per creare una segnalazione custom!");
                 }
@@ -100,21 +149,78 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
         }
     }
 
+    /**
+     * Segnala un post a nome di reporter: la segnalazione conta una sola volta per (post, reporter, reason)
+     * @param post il post da segnalare
+     * @param reporter l'utente che segnala
+     * @param reason il motivo di segnalazione del post
+     * @return true se la segnalazione è stata contata, false se reporter aveva già segnalato il post per reason
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @throws UserNotFoundException se reporter non esiste
+     * @modifies this.rp
+     */
+    public boolean reportPost(Post post, String reporter, ReportReason reason) throws PostNotFoundException, UserNotFoundException {
+        if(post == null || reporter == null) {
+            throw new NullPointerException();
+        }
+        if(reason == ReportReason.custom) {
+            throw new WrongMethodTypeException("Usare il metodo reportPost specificando anche il testo della segnalazione custom!");
+        }
+        if(!checkUser(reporter)) {
+            throw new UserNotFoundException();
+        }
+        return reportPostBy(post, reporter, reason, null);
+    }
+
+    /**
+     * Segnala un post con la segnalazione personalizzata a nome di reporter: conta una sola volta
+     * per (post, reporter), qualunque sia il testo
+     * @param post il post da segnalare
+     * @param reporter l'utente che segnala
+     * @param reason il motivo di segnalazione del post (deve essere per forza "custom" con questo metodo)
+     * @param text il motivo personalizzato
+     * @return true se la segnalazione è stata contata, false se reporter aveva già segnalato il post
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @throws UserNotFoundException se reporter non esiste
+     * @modifies this.rp
+     */
+    public boolean reportPost(Post post, String reporter, ReportReason reason, String text) throws PostNotFoundException, UserNotFoundException, TextLengthException {
+        if(post == null || reporter == null) {
+            throw new NullPointerException();
+        }
+        if(reason != ReportReason.custom) {
+            throw new WrongMethodTypeException("Usare il metodo reportPost per creare una segnalazione custom!");
+        }
+        checkCustomText(text);
+        if(!checkUser(reporter)) {
+            throw new UserNotFoundException();
+        }
+        return reportPostBy(post, reporter, reason, text);
+    }
+
     /**
      * Restituisce il numero di report assegnati ad un post (parametro del metodo)
      * @param post il post di cui vedere i report
      * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
      */
     public int getReports(Post post) throws PostNotFoundException {
-        int somma = 0;
+        if(checkPost(post)) {
+            PostReports r = rp.get(post.getId());
+            return r != null ? r.getReportNumber() : 0;
+        } else {
+            throw new PostNotFoundException();
+        }
+    }
 
+    /**
+     * Restituisce le segnalazioni di un post, per motivo e autore
+     * @param post il post di cui vedere le segnalazioni
+     * @return le segnalazioni (null se il post non ne ha)
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     */
+    public PostReports getPostReports(Post post) throws PostNotFoundException {
         if(checkPost(post)) {
-            for(Report report : rp) {
-                if(report.getPostID() == post.getId()) {
-                    somma += report.getReportNumber();
-                }
-            }
-            return somma;
+            return rp.get(post.getId());
         } else {
             throw new PostNotFoundException();
         }
@@ -126,23 +232,7 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
      *  Integer è il numero di segnalazioni di quel post
      */
     public Map<Post, Integer> getMostReportedPosts() throws EmptyFieldException, PostNotFoundException {
-        if(rp.isEmpty()) {
-            throw new EmptyFieldException();
-        } else {
-            Map<Post, Integer> mappa = new LinkedHashMap<>();
-
-            for(Post p : ps) {
-                mappa.put(p, getReports(p));
-            }
-
-            return mappa.entrySet()
-                    .stream()
-                    .sorted(comparingByValue(Comparator.reverseOrder()))
-                    .collect(toMap(Map.Entry::getKey,
-                            Map.Entry::getValue,
-                            (e1, e2) -> null, // or throw an exception
-                            LinkedHashMap::new));
-        }
+        return getMostReportedPosts(0);
     }
 
     /**
@@ -155,22 +245,7 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
         if(rp.isEmpty()) {
             throw new EmptyFieldException();
         } else {
-            int reports;
-            Map<Post, Integer> mappa = new LinkedHashMap<>();
-
-            for(Post p : ps) {
-                reports = getReports(p);
-                if(reports >= minReports)
-                    mappa.put(p, reports);
-            }
-
-            return mappa.entrySet()
-                    .stream()
-                    .sorted(comparingByValue(Comparator.reverseOrder()))
-                    .collect(toMap(Map.Entry::getKey,
-                            Map.Entry::getValue,
-                            (e1, e2) -> null, // or throw an exception
-                            LinkedHashMap::new));
+            return mostReported(ps, rp, minReports);
         }
     }
 
@@ -182,19 +257,7 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
      *      this.rp = pre(this.rp) \ {this.rp[i]}
      */
     public int removeReportedPosts() throws PostNotFoundException {
-        int removeCount = 0;
-
-        for(Post p : new ArrayList<>(ps)) {
-            if(getReports(p) > 0) {
-                ps.remove(p);
-                if(deleteReport(p.getId()) == 0) { // errore imprevisto
-                    throw new NoSuchFieldError();
-                }
-                removeCount++;
-            }
-        }
-
-        return removeCount;
+        return removeReportedPosts(1);
     }
 
     /**
@@ -206,17 +269,89 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
      *      this.rp = pre(this.rp) \ {this.rp[i]}
      */
     public int removeReportedPosts(int minReports) throws PostNotFoundException {
+        PersistentMap<Integer, PostReports> segnalazioni = rp;
+        List<Post> rimossi = new ArrayList<>();
+        ps = ps.minusIf(p -> {
+            PostReports r = segnalazioni.get(p.getId());
+            return (r != null ? r.getReportNumber() : 0) >= minReports && rimossi.add(p);
+        });
+
+        for(Post p : rimossi) {
+            unindexPost(p);
+            if(deleteReport(p.getId()) == 0) { // errore imprevisto
+                throw new NoSuchFieldError();
+            }
+            publish(ChangeEventType.reported_post_removed, p.getAuthor(), null, p, null, null);
+        }
+
+        return rimossi.size() + removeReportedColdPosts(minReports);
+    }
+
+    /**
+     * Restituisce la versione delle segnalazioni: cambia ad ogni segnalazione aggiunta o rimossa
+     * @return la versione corrente di rp
+     */
+    public long getReportsVersion() {
+        return reportsVersion.get();
+    }
+
+    /**
+     * Stima la memoria occupata dalle strutture della rete, segnalazioni comprese
+     * (vedi SocialNetwork.memoryReport)
+     * @return mappa struttura -> byte stimati (followed, ps, byTime, mentionsBy, rp)
+     */
+    public Map<String, Long> memoryReport() {
+        Map<String, Long> report = super.memoryReport();
+        report.put("rp", rp.estimatedBytes() + rp.size() * MemoryLayout.object(0, 4)
+                + MemoryLayout.sampled(rp.values(), PostReports::estimatedBytes));
+        return report;
+    }
+
+    /**
+     * Restituisce una vista immutabile della rete in questo istante, segnalazioni comprese
+     * (vedi SocialNetwork.snapshot)
+     * @return lo snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(followed, ps, rp, getParallelScan(), getFollowedVersion(), getPostsVersion(), reportsVersion.get());
+    }
+
+    /**
+     * Elimina in un solo passaggio i post con gli id specificati e tutte le loro segnalazioni
+     * @param ids gli id dei post da eliminare
+     * @return il numero di post rimossi
+     * @modifies this.ps, this.rp
+     * @effects this.ps = pre(this.ps) \ {p | p.getId() in ids} &&
+     *      this.rp = pre(this.rp) \ {r | r.getPostID() in ids}
+     */
+    public int removePosts(Collection<Integer> ids) {
+        Set<Integer> daRimuovere = new HashSet<>(ids);
         int removeCount = 0;
 
-        for(Post p : new ArrayList<>(ps)) {
-            if(getReports(p) >= minReports) {
-                ps.remove(p);
-                if(deleteReport(p.getId()) == 0) { // errore imprevisto
-                    throw new NoSuchFieldError();
+        List<Post> rimossi = new ArrayList<>();
+        ps = ps.minusIf(p -> daRimuovere.contains(p.getId()) && rimossi.add(p));
+        for(Post p : rimossi) {
+            unindexPost(p);
+            publish(ChangeEventType.reported_post_removed, p.getAuthor(), null, p, null, null);
+            removeCount++;
+        }
+        if(removeCount < daRimuovere.size()) { // gli altri possono essere su disco
+            for(int id : daRimuovere) {
+                Post p = deleteColdPost(id);
+                if(p != null) {
+                    publish(ChangeEventType.reported_post_removed, p.getAuthor(), null, p, null, null);
+                    removeCount++;
                 }
-                removeCount++;
             }
         }
+        PersistentMap<Integer, PostReports> rimaste = rp;
+        for(int id : daRimuovere) {
+            rimaste = rimaste.minus(id);
+        }
+        if(rimaste != rp) {
+            rp = rimaste;
+            reportsVersion.incrementAndGet();
+        }
 
         return removeCount;
     }
@@ -230,15 +365,125 @@ public class SafeSocialNetwork extends SocialNetwork implements SafeSocialNetwor
      *      this.rp = pre(this.rp) \ this.rp[post_id]
      */
     public int deleteReport(int post_id) {
-        int removeCount = 0;
+        PostReports r = rp.get(post_id);
+        if(r == null) {
+            return 0;
+        }
+        rp = rp.minus(post_id);
+        reportsVersion.incrementAndGet();
 
-        for(Report r : new ArrayList<>(rp)) {
-            if(r.getPostID() == post_id) {
-                rp.remove(r);
-                removeCount++;
-            }
+        return r.getReportNumber();
+    }
+
+    /**
+     * Restituisce i post con almeno minReports segnalazioni, dal più segnalato (a parità
+     * nell'ordine di ps)
+     * @param ps lista dei post
+     * @param rp le segnalazioni
+     * @param minReports numero di segnalazioni minime per apparire nella mappa
+     * @return mappa post -> numero di segnalazioni
+     */
+    static Map<Post, Integer> mostReported(List<Post> ps, Map<Integer, PostReports> rp, int minReports) {
+        Map<Post, Integer> mappa = new LinkedHashMap<>();
+
+        for(Post p : ps) {
+            PostReports r = rp.get(p.getId());
+            int reports = r != null ? r.getReportNumber() : 0;
+            if(reports >= minReports)
+                mappa.put(p, reports);
         }
 
+        return mappa.entrySet()
+                .stream()
+                .sorted(comparingByValue(Comparator.reverseOrder()))
+                .collect(toMap(Map.Entry::getKey,
+                        Map.Entry::getValue,
+                        (e1, e2) -> null, // or throw an exception
+                        LinkedHashMap::new));
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Come SocialNetwork.purgeUsers, eliminando anche le segnalazioni dei post rimossi (quelle fatte
+     * dagli utenti eliminati sui post degli altri restano, come le segnalazioni anonime)
+     * @modifies this.rp
+     */
+    protected List<Post> purgeUsers(Set<String> utenti) {
+        List<Post> rimossi = super.purgeUsers(utenti);
+        PersistentMap<Integer, PostReports> rimaste = rp;
+        for(Post p : rimossi) {
+            rimaste = rimaste.minus(p.getId());
+        }
+        if(rimaste != rp) {
+            rp = rimaste;
+            reportsVersion.incrementAndGet();
+        }
+        return rimossi;
+    }
+
+    /**
+     * Segnala un post già verificato a nome di reporter (null se anonima) senza verificare che
+     * reporter esista (lo fa il chiamante, per esempio ShardedSocialNetwork sulla shard di reporter)
+     * @return true se la segnalazione è stata contata
+     * @throws PostNotFoundException se il post non è nella rete
+     */
+    boolean reportPostBy(Post post, String reporter, ReportReason reason, String text) throws PostNotFoundException {
+        if(!checkPost(post)) {
+            throw new PostNotFoundException();
+        }
+        return addReport(post, reporter, reason, text);
+    }
+
+    /**
+     * Ricostruisce una segnalazione di un post già verificato senza alcun controllo (li fa il
+     * chiamante, per esempio BulkImporter)
+     * @return true se la segnalazione è stata contata
+     */
+    boolean restoreReport(Post post, String reporter, ReportReason reason, String text) {
+        return addReport(post, reporter, reason, text);
+    }
+
+    private boolean addReport(Post post, String reporter, ReportReason reason, String text) {
+        PostReports prima = rp.get(post.getId());
+        PostReports dopo = (prima != null ? prima : new PostReports(post.getId())).plus(reporter, reason, text);
+        if(dopo == prima) {
+            return false;
+        }
+        rp = rp.plus(post.getId(), dopo);
+        reportsVersion.incrementAndGet();
+        publish(ChangeEventType.post_reported, post.getAuthor(), reporter, post, reason, text);
+        return true;
+    }
+
+    private static void checkCustomText(String text) throws TextLengthException {
+        if(text.length() > PostReports.MAX_CUSTOM_TEXT_LENGTH) {
+            throw new TextLengthException(PostReports.MAX_CUSTOM_TEXT_LENGTH);
+        }
+    }
+
+    /**
+     * Elimina i post su disco con almeno minReports segnalazioni e le loro segnalazioni
+     * @return il numero di post rimossi
+     */
+    private int removeReportedColdPosts(int minReports) {
+        if(getColdPostCount() == 0) {
+            return 0;
+        }
+        int removeCount = 0;
+        for(Map.Entry<Integer, PostReports> entry : rp.entrySet()) {
+            if(entry.getValue().getReportNumber() >= minReports) {
+                Post p = deleteColdPost(entry.getKey());
+                if(p != null) {
+                    deleteReport(p.getId());
+                    publish(ChangeEventType.reported_post_removed, p.getAuthor(), null, p, null, null);
+                    removeCount++;
+                }
+            }
+        }
         return removeCount;
     }
 }
@@ -3,6 +3,7 @@ package app;
 import exception.EmptyFieldException;
 import exception.PostNotFoundException;
 import exception.TextLengthException;
+import exception.UserNotFoundException;
 
 import java.util.Map;
 
@@ -10,7 +11,8 @@ import java.util.Map;
 
 public interface SafeSocialNetworkInterface {
     /**
-     * Segnala un post (parametro del metodo).
+     * Segnala un post (parametro del metodo). La segnalazione è anonima e conta sempre: è per chi
+     * segnala dall'interno (moderazione automatica, replica); per gli utenti si usa la versione con l'autore.
      * @param post il post da segnalare
      * @param reason il motivo di segnalazione del post
      * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
@@ -23,7 +25,8 @@ public interface SafeSocialNetworkInterface {
     void reportPost(Post post, ReportReason reason) throws PostNotFoundException;
 
     /**
-     * Segnala un post con la segnalazione personalizzata (parametro del metodo).
+     * Segnala un post con la segnalazione personalizzata (parametro del metodo). Anonima come la
+     * precedente: conta sempre.
      * @param post il post da segnalare
      * @param reason il motivo di segnalazione del post (deve essere per forza "custom" con questo metodo)
      * @param text il motivo personalizzato
@@ -36,6 +39,32 @@ public interface SafeSocialNetworkInterface {
      */
     void reportPost(Post post, ReportReason reason, String text) throws PostNotFoundException, TextLengthException;
 
+    /**
+     * Segnala un post a nome di reporter: la segnalazione conta una sola volta per (post, reporter, reason)
+     * @param post il post da segnalare
+     * @param reporter l'utente che segnala
+     * @param reason il motivo di segnalazione del post
+     * @return true se la segnalazione è stata contata, false se reporter aveva già segnalato il post per reason
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @throws UserNotFoundException se reporter non esiste
+     * @modifies this.rp
+     */
+    boolean reportPost(Post post, String reporter, ReportReason reason) throws PostNotFoundException, UserNotFoundException;
+
+    /**
+     * Segnala un post con la segnalazione personalizzata a nome di reporter: conta una sola volta
+     * per (post, reporter), qualunque sia il testo
+     * @param post il post da segnalare
+     * @param reporter l'utente che segnala
+     * @param reason il motivo di segnalazione del post (deve essere per forza "custom" con questo metodo)
+     * @param text il motivo personalizzato
+     * @return true se la segnalazione è stata contata, false se reporter aveva già segnalato il post
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @throws UserNotFoundException se reporter non esiste
+     * @modifies this.rp
+     */
+    boolean reportPost(Post post, String reporter, ReportReason reason, String text) throws PostNotFoundException, UserNotFoundException, TextLengthException;
+
     /**
      * Restituisce il numero di report assegnati ad un post (parametro del metodo)
      * @param post il post di cui vedere i report
@@ -0,0 +1,992 @@
+package app;
+
+import exception.EmptyFieldException;
+import exception.InvalidUsernameException;
+import exception.PostNotFoundException;
+import exception.TextLengthException;
+import exception.UserNotFoundException;
+
+import java.lang.invoke.WrongMethodTypeException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class ShardedSocialNetwork implements SocialNetworkInterface, SafeSocialNetworkInterface {
+    /*
+     *  OVERVIEW:
+     *      Rete sociale divisa in N shard indipendenti (ognuna è un SafeSocialNetwork con il proprio
+     *      lock). Ogni utente, con i suoi seguiti, i suoi post e le segnalazioni dei suoi post, vive
+     *      nella shard scelta dall'hash del suo username; le operazioni su un solo utente toccano
+     *      solo la sua shard, per cui operazioni su utenti diversi procedono in parallelo.
+     *      Le interrogazioni globali sono scatter-gather: vengono eseguite su tutte le shard in
+     *      parallelo (su un ForkJoinPool, ognuna sotto il read lock della propria shard) e i risultati
+     *      parziali vengono uniti: influencers somma i conteggi dei follower e li ordina, containing e
+     *      getMentionedUsers fanno l'unione (i post in ordine di id), getMostReportedPosts fonde
+     *      le classifiche delle shard (k-way merge) e le interrogazioni per tempo fondono per timestamp.
+     *      A differenza di SocialNetwork la facciata si sincronizza da sola: ogni operazione prende
+     *      il lock della shard che tocca. Un'interrogazione globale non è una fotografia atomica di
+     *      tutte le shard: vede ogni shard in un istante diverso.
+     *      Gli stream restituiti sono calcolati subito (non possono tenere il lock della shard).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      shards[i] -> utenti u con shardIndex(u) == i, i loro seguiti, i loro post e le segnalazioni
+     *      rete = unione delle reti shards[0..N-1]
+     *
+     *  REPRESENTATION INVARIANT:
+     *      shards.length >= 1 && for each(s) in shards : s != null &&
+     *      for each(i) in [0, N) : for each(p) in shards[i].ps : shardIndex(p.getAuthor()) == i &&
+     *      pool != null
+     */
+
+    private final SafeSocialNetwork[] shards;
+    private final ForkJoinPool pool;
+
+    // caselle delle notifiche di menzione condivise dalle shard (null finché non vengono attivate)
+    private volatile MentionInboxes inboxes;
+
+    // interrogazioni permanenti condivise dalle shard
+    private final KeywordSubscriptions subscriptions = new KeywordSubscriptions();
+
+    // ordine dei post per id (ordine di creazione)
+    private static final Comparator<Post> ID_ORDER = Comparator.comparingInt(Post::getId);
+
+    /**
+     * Interrogazione (o modifica) eseguita su una shard
+     */
+    @FunctionalInterface
+    private interface ShardQuery<R, X extends Exception> {
+        R apply(SafeSocialNetwork shard) throws X;
+    }
+
+    /**
+     * Classifica delle segnalazioni di una shard
+     */
+    @FunctionalInterface
+    private interface ReportQuery {
+        Map<Post, Integer> apply(SafeSocialNetwork shard) throws EmptyFieldException, PostNotFoundException;
+    }
+
+    /**
+     * Costruttore della classe ShardedSocialNetwork (scatter-gather sul pool comune).
+     * @param shards numero di shard
+     */
+    public ShardedSocialNetwork(int shards) {
+        this(shards, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Costruttore della classe ShardedSocialNetwork.
+     * @param shards numero di shard
+     * @param pool pool su cui eseguire le interrogazioni sulle shard in parallelo
+     */
+    public ShardedSocialNetwork(int shards, ForkJoinPool pool) {
+        if(pool == null) {
+            throw new NullPointerException();
+        }
+        if(shards < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.shards = new SafeSocialNetwork[shards];
+        for(int i = 0; i < shards; i++) {
+            this.shards[i] = new SafeSocialNetwork();
+            this.shards[i].setKeywordSubscriptions(subscriptions);
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Restituisce il numero di shard
+     * @return il numero di shard
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Restituisce l'indice della shard che contiene l'utente
+     * @param username nome utente
+     * @return l'indice della shard dell'utente
+     */
+    public int shardIndex(String username) {
+        int h = username.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+
+    // ------------------------------
+    // SOCIAL NETWORK
+    // ------------------------------
+
+    /**
+     * Restituisce la rete sociale derivata dalla lista di post (parametro del metodo):
+     * i follower di ogni autore vengono cercati su tutte le shard
+     * @param ps lista dei post
+     * @return rete utente-lista follower in base agli autori dei post
+     * @throws UserNotFoundException se l'autore di un post non esiste
+     */
+    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws UserNotFoundException {
+        return guessFollowers(ps, ParallelScan.SEQUENTIAL);
+    }
+
+    /**
+     * Restituisce la rete sociale derivata dalla lista di post, scorrendo la lista con la modalità indicata
+     * @param ps lista dei post
+     * @param mode modalità di scansione della lista (sequenziale o parallela)
+     * @return rete utente-lista follower in base agli autori dei post
+     * @throws UserNotFoundException se l'autore di un post non esiste
+     */
+    public Map<String, Set<String>> guessFollowers(List<Post> ps, ParallelScan mode) throws UserNotFoundException {
+        Set<String> autori = mode.scan(ps, HashSet::new, (set, p) -> set.add(p.getAuthor()), (s1, s2) -> {
+            s1.addAll(s2);
+            return s1;
+        });
+        for(String autore : autori) {
+            if(!read(shardFor(autore), s -> s.checkUser(autore))) {
+                throw new UserNotFoundException();
+            }
+        }
+
+        Map<String, Set<String>> rs = new HashMap<>();
+        for(String autore : autori) {
+            rs.put(autore, new HashSet<>());
+        }
+        for(Map<String, Set<String>> parziale : scatter(s -> {
+            Map<String, Set<String>> followers = new HashMap<>();
+            for(String autore : autori) {
+                followers.put(autore, s.followersOf(autore));
+            }
+            return followers;
+        })) {
+            for(Map.Entry<String, Set<String>> entry : parziale.entrySet()) {
+                rs.get(entry.getKey()).addAll(entry.getValue());
+            }
+        }
+
+        return rs;
+    }
+
+    /**
+     * Restituisce gli utenti più influenti delle rete sociale, ovvero quelli che hanno un
+     * numero maggiore di “follower” (somma dei follower contati su ogni shard)
+     * @return lista degli utenti con maggior numero di follower
+     * @throws EmptyFieldException se nella rete non ci sono post
+     */
+    public List<String> influencers() throws EmptyFieldException {
+        boolean vuota = true;
+        for(Boolean b : scatter(s -> s.ps.isEmpty())) {
+            vuota &= b;
+        }
+        if(vuota) {
+            throw new EmptyFieldException();
+        }
+
+        Map<String, Integer> u_f = new HashMap<>();
+        for(Map<String, Integer> parziale : scatter(SocialNetwork::followerCounts)) {
+            for(Map.Entry<String, Integer> entry : parziale.entrySet()) {
+                u_f.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+
+        List<String> lista = new ArrayList<>(u_f.keySet());
+        lista.sort((u1, u2) -> Integer.compare(u_f.get(u2), u_f.get(u1)));
+        return lista;
+    }
+
+    /**
+     * Suggerisce chi seguire fra gli amici degli amici (vedi SocialNetwork.recommendFollows):
+     * ogni shard visita i seguiti di username che contiene, e i conteggi vengono sommati
+     * (i limiti della visita valgono per ogni shard)
+     * @param username nome utente
+     * @param k numero massimo di utenti suggeriti
+     * @return lista di al più k utenti, dal punteggio più alto (a parità, in ordine alfabetico)
+     * @throws UserNotFoundException se l'utente specificato non esiste
+     */
+    public List<String> recommendFollows(String username, int k) throws UserNotFoundException {
+        SafeSocialNetwork shardUtente = shardFor(username);
+        Set<String> seguiti = read(shardUtente, s -> {
+            if(!s.checkUser(username)) {
+                throw new UserNotFoundException();
+            }
+            Set<String> set = s.followed.get(username);
+            return set != null ? new HashSet<>(set) : Collections.<String>emptySet();
+        });
+        if(k <= 0 || seguiti.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        StringCounter candidati = new StringCounter(64);
+        for(StringCounter parziale : scatter(s -> s.twoHopCounts(username, seguiti))) {
+            for(int i = 0; i < parziale.capacity(); i++) {
+                if(parziale.keyAt(i) != null) {
+                    candidati.add(parziale.keyAt(i), parziale.countAt(i));
+                }
+            }
+        }
+
+        return SocialNetwork.bestCandidates(candidati, k, (c, amici) -> {
+            SafeSocialNetwork shardCandidato = shardFor(c);
+            long menzioni = read(shardCandidato, s -> s.checkUser(c) ? s.mentionCount(c, username) : -1);
+            if(menzioni < 0) {
+                return -1;
+            }
+            menzioni += read(shardUtente, s -> s.mentionCount(username, c));
+            return amici * (1 + menzioni);
+        });
+    }
+
+    /**
+     * Restituisce i k utenti più menzionati, unendo le classifiche delle shard (vedi mergeMentioned)
+     * @param k numero massimo di utenti
+     * @return mappa utente -> numero di menzioni, dal più menzionato (a parità in ordine alfabetico)
+     */
+    public Map<String, Integer> mostMentioned(int k) {
+        return mergeMentioned(k, false);
+    }
+
+    /**
+     * Restituisce i k utenti menzionati dal maggior numero di autori diversi, unendo le classifiche
+     * delle shard (ogni autore sta su una sola shard, per cui i conteggi si sommano)
+     * @param k numero massimo di utenti
+     * @return mappa utente -> numero di autori che lo menzionano, dal più alto (a parità in ordine alfabetico)
+     */
+    public Map<String, Integer> mostMentionedByAuthors(int k) {
+        return mergeMentioned(k, true);
+    }
+
+    /**
+     * Apre un'interrogazione permanente (vedi SocialNetwork.subscribe): l'automa delle parole è
+     * condiviso da tutte le shard, e ogni shard pubblica i post dei suoi autori
+     * @param words lista di stringhe (parole)
+     * @return l'interrogazione, da chiudere con close() quando non serve più
+     */
+    public KeywordSubscription subscribe(Collection<String> words) {
+        return subscribe(words, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Apre un'interrogazione permanente con il buffer indicato (vedi SocialNetwork.subscribe)
+     * @param words lista di stringhe (parole)
+     * @param bufferCapacity post tenuti per ogni subscriber in attesa delle sue request
+     * @return l'interrogazione, da chiudere con close() quando non serve più
+     */
+    public KeywordSubscription subscribe(Collection<String> words, int bufferCapacity) {
+        return subscriptions.add(words, bufferCapacity);
+    }
+
+    /**
+     * Attiva le caselle delle notifiche di menzione (vedi SocialNetwork.enableMentionInboxes): le
+     * caselle sono condivise da tutte le shard, per cui un post viene consegnato dalla shard del suo
+     * autore anche agli utenti delle altre shard
+     * @param capacity notifiche tenute per utente
+     * @modifies tutte le shard
+     */
+    public void enableMentionInboxes(int capacity) {
+        if(inboxes == null) {
+            MentionInboxes caselle = new MentionInboxes(capacity, u -> shardFor(u).checkUser(u));
+            scatterWrite(s -> {
+                s.setMentionInboxes(caselle);
+                return null;
+            });
+            inboxes = caselle;
+        }
+    }
+
+    /**
+     * Restituisce le notifiche di menzione non ancora lette, dalla più vecchia (senza lock)
+     * @param user l'utente
+     * @param limit numero massimo di notifiche
+     * @return gli id dei post che menzionano user
+     * @throws UserNotFoundException se l'utente non esiste
+     * @throws IllegalStateException se le caselle non sono attive
+     */
+    public int[] unreadMentions(String user, int limit) throws UserNotFoundException {
+        return shardFor(user).unreadMentions(user, limit);
+    }
+
+    /**
+     * Segna come lette le notifiche di menzione fino a quella del post indicato compresa (senza lock)
+     * @param user l'utente
+     * @param postId l'id del post
+     * @throws UserNotFoundException se l'utente non esiste
+     * @throws IllegalStateException se le caselle non sono attive
+     */
+    public void markRead(String user, int postId) throws UserNotFoundException {
+        shardFor(user).markRead(user, postId);
+    }
+
+    /**
+     * Stima la memoria occupata dalle strutture della rete, sommando le stime delle shard
+     * (vedi SafeSocialNetwork.memoryReport)
+     * @return mappa struttura -> byte stimati
+     */
+    public Map<String, Long> memoryReport() {
+        Map<String, Long> report = new LinkedHashMap<>();
+        for(Map<String, Long> parziale : scatter(SafeSocialNetwork::memoryReport)) {
+            parziale.forEach((struttura, n) -> report.merge(struttura, n, Long::sum));
+        }
+        if(inboxes != null) { // condivise: contate una volta sola
+            report.put("inboxes", inboxes.estimatedBytes());
+        }
+        return report;
+    }
+
+    /**
+     * Restituisce l’insieme degli utenti menzionati (inclusi) nei post presenti nella rete sociale
+     * @return lista degli utenti menzionati
+     */
+    public Set<String> getMentionedUsers() {
+        Set<String> utenti = new HashSet<>();
+        for(Set<String> parziale : scatter(SocialNetwork::getMentionedUsers)) {
+            utenti.addAll(parziale);
+        }
+        return utenti;
+    }
+
+    /**
+     * Restituisce l’insieme degli utenti menzionati (inclusi) nella lista di post
+     * @param ps lista dei post
+     * @return lista degli utenti menzionati nei post dentro la lista "ps"
+     */
+    public Set<String> getMentionedUsers(List<Post> ps) {
+        return shards[0].getMentionedUsers(ps, ParallelScan.SEQUENTIAL);
+    }
+
+    /**
+     * Restituisce l’insieme degli utenti menzionati nella lista di post, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista degli utenti menzionati nei post dentro la lista "ps"
+     */
+    public Set<String> getMentionedUsers(List<Post> ps, ParallelScan mode) {
+        return shards[0].getMentionedUsers(ps, mode);
+    }
+
+    /**
+     * Restituisce la lista dei post effettuati dall’utente nella rete sociale
+     * il cui nome è dato dal parametro username
+     * @param username nome utente
+     * @return lista di tutti i post dell'utente "username"
+     */
+    public List<Post> writtenBy(String username) {
+        return read(shardFor(username), s -> s.writtenBy(username));
+    }
+
+    /**
+     * Restituisce la lista dei post effettuati dall’utente il cui nome è dato
+     * dal parametro username presenti nella lista ps
+     * @param ps lista dei post
+     * @param username nome utente
+     * @return lista dei post scritti da username dentro la lista "ps"
+     */
+    public List<Post> writtenBy(List<Post> ps, String username) {
+        return shards[0].writtenBy(ps, username, ParallelScan.SEQUENTIAL);
+    }
+
+    /**
+     * Restituisce la lista dei post di username presenti nella lista ps, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param username nome utente
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista dei post scritti da username dentro la lista "ps", nello stesso ordine
+     */
+    public List<Post> writtenBy(List<Post> ps, String username, ParallelScan mode) {
+        return shards[0].writtenBy(ps, username, mode);
+    }
+
+    /**
+     * Restituisce la lista dei post presenti nella rete sociale che includono almeno una
+     * delle parole presenti nella lista delle parole argomento del metodo, in ordine di id
+     * @param words lista di stringhe (parole)
+     * @return lista dei post che contengono almeno una delle parole in "words"
+     */
+    public List<Post> containing(List<String> words) {
+        return merge(scatter(s -> s.containing(words)), ID_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Restituisce la lista dei post presenti nella lista ps che includono almeno una
+     * delle parole presenti nella lista delle parole argomento del metodo
+     * @param ps lista dei post
+     * @param words lista di stringhe (parole)
+     * @return lista dei post dentro la lista "ps" che contengono almeno una delle parole in "words"
+     */
+    public List<Post> containing(List<Post> ps, List<String> words) {
+        return shards[0].containing(ps, words, ParallelScan.SEQUENTIAL);
+    }
+
+    /**
+     * Restituisce la lista dei post presenti nella lista ps che includono almeno una
+     * delle parole, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param words lista di stringhe (parole)
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista dei post dentro la lista "ps" che contengono almeno una delle parole in "words", nello stesso ordine
+     */
+    public List<Post> containing(List<Post> ps, List<String> words, ParallelScan mode) {
+        return shards[0].containing(ps, words, mode);
+    }
+
+    /**
+     * Restituisce uno stream dei post effettuati dall’utente nella rete sociale
+     * (calcolato subito sotto il lock della shard dell'utente)
+     * @param username nome utente
+     * @return stream dei post dell'utente "username"
+     */
+    public Stream<Post> writtenByStream(String username) {
+        return writtenBy(username).stream();
+    }
+
+    /**
+     * Restituisce al massimo limit post effettuati dall’utente nella rete sociale
+     * successivi al post after, in ordine di (timestamp, id) (cursore per la paginazione)
+     * @param username nome utente
+     * @param after l'ultimo post già visto (null per iniziare dal primo)
+     * @param limit numero massimo di post restituiti
+     * @return pagina dei post dell'utente "username" successivi ad after
+     */
+    public List<Post> writtenBy(String username, Post after, int limit) {
+        return read(shardFor(username), s -> s.writtenBy(username, after, limit));
+    }
+
+    /**
+     * Restituisce uno stream dei post presenti nella rete sociale che includono almeno una
+     * delle parole presenti nella lista (calcolato subito, in ordine di id)
+     * @param words lista di stringhe (parole)
+     * @return stream dei post che contengono almeno una delle parole in "words"
+     */
+    public Stream<Post> containingStream(List<String> words) {
+        return containing(words).stream();
+    }
+
+    /**
+     * Restituisce al massimo limit post che includono almeno una delle parole presenti
+     * nella lista successivi al post after, in ordine di (timestamp, id) (cursore per la paginazione)
+     * @param words lista di stringhe (parole)
+     * @param after l'ultimo post già visto (null per iniziare dal primo)
+     * @param limit numero massimo di post restituiti
+     * @return pagina dei post che contengono almeno una delle parole in "words" successivi ad after
+     */
+    public List<Post> containing(List<String> words, Post after, int limit) {
+        return merge(scatter(s -> s.containing(words, after, limit)), Post.TIME_ORDER, limit);
+    }
+
+    /**
+     * Restituisce i post della rete sociale inviati nell'intervallo [from, to), in ordine di invio
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post inviati fra from e to
+     */
+    public List<Post> postsBetween(long from, long to) {
+        return merge(scatter(s -> s.postsBetween(from, to)), Post.TIME_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Restituisce gli n post più recenti della rete sociale, dal più recente
+     * @param n numero massimo di post restituiti
+     * @return lista degli n post più recenti
+     */
+    public List<Post> latest(int n) {
+        return merge(scatter(s -> s.latest(n)), Post.TIME_ORDER.reversed(), n);
+    }
+
+    /**
+     * Restituisce i post effettuati dall’utente username nell'intervallo [from, to), in ordine di invio
+     * @param username nome utente
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post di "username" inviati fra from e to
+     */
+    public List<Post> writtenBetween(String username, long from, long to) {
+        return read(shardFor(username), s -> s.writtenBetween(username, from, to));
+    }
+
+    /**
+     * Restituisce i post inviati nell'intervallo [from, to) che includono almeno una
+     * delle parole presenti nella lista, in ordine di invio
+     * @param words lista di stringhe (parole)
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post inviati fra from e to che contengono almeno una delle parole in "words"
+     */
+    public List<Post> containingBetween(List<String> words, long from, long to) {
+        return merge(scatter(s -> s.containingBetween(words, from, to)), Post.TIME_ORDER, Integer.MAX_VALUE);
+    }
+
+
+    // ------------------------------
+    // SAFE SOCIAL NETWORK
+    // ------------------------------
+
+    /**
+     * Segnala un post (parametro del metodo).
+     * @param post il post da segnalare
+     * @param reason il motivo di segnalazione del post
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @modifies la shard dell'autore del post
+     */
+    public void reportPost(Post post, ReportReason reason) throws PostNotFoundException {
+        if(post == null) {
+            throw new NullPointerException();
+        }
+        this.<Void, PostNotFoundException>write(shardFor(post.getAuthor()), s -> {
+            s.reportPost(post, reason);
+            return null;
+        });
+    }
+
+    /**
+     * Segnala un post con la segnalazione personalizzata (parametro del metodo).
+     * @param post il post da segnalare
+     * @param reason il motivo di segnalazione del post (deve essere per forza "custom" con questo metodo)
+     * @param text il motivo personalizzato
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @modifies la shard dell'autore del post
+     */
+    public void reportPost(Post post, ReportReason reason, String text) throws PostNotFoundException, TextLengthException {
+        if(post == null) {
+            throw new NullPointerException();
+        }
+        SafeSocialNetwork shard = shardFor(post.getAuthor());
+        Lock lock = shard.getLock().writeLock();
+        lock.lock();
+        try {
+            shard.reportPost(post, reason, text);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Segnala un post a nome di reporter (la shard di reporter viene letta per verificare che esista,
+     * tenendone il read lock fino alla fine della segnalazione)
+     * @param post il post da segnalare
+     * @param reporter l'utente che segnala
+     * @param reason il motivo di segnalazione del post
+     * @return true se la segnalazione è stata contata, false se reporter aveva già segnalato il post per reason
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @throws UserNotFoundException se reporter non esiste
+     * @modifies la shard dell'autore del post
+     */
+    public boolean reportPost(Post post, String reporter, ReportReason reason) throws PostNotFoundException, UserNotFoundException {
+        if(post == null || reporter == null) {
+            throw new NullPointerException();
+        }
+        if(reason == ReportReason.custom) {
+            throw new WrongMethodTypeException("Usare il metodo reportPost specificando anche il testo della segnalazione custom!");
+        }
+        return reportBy(post, reporter, reason, null);
+    }
+
+    /**
+     * Segnala un post con la segnalazione personalizzata a nome di reporter
+     * @param post il post da segnalare
+     * @param reporter l'utente che segnala
+     * @param reason il motivo di segnalazione del post (deve essere per forza "custom" con questo metodo)
+     * @param text il motivo personalizzato
+     * @return true se la segnalazione è stata contata, false se reporter aveva già segnalato il post
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     * @throws UserNotFoundException se reporter non esiste
+     * @modifies la shard dell'autore del post
+     */
+    public boolean reportPost(Post post, String reporter, ReportReason reason, String text) throws PostNotFoundException, UserNotFoundException, TextLengthException {
+        if(post == null || reporter == null) {
+            throw new NullPointerException();
+        }
+        if(reason != ReportReason.custom) {
+            throw new WrongMethodTypeException("Usare il metodo reportPost per creare una segnalazione custom!");
+        }
+        if(text.length() > PostReports.MAX_CUSTOM_TEXT_LENGTH) {
+            throw new TextLengthException(PostReports.MAX_CUSTOM_TEXT_LENGTH);
+        }
+        return reportBy(post, reporter, reason, text);
+    }
+
+    /**
+     * Restituisce il numero di report assegnati ad un post (parametro del metodo)
+     * @param post il post di cui vedere i report
+     * @throws PostNotFoundException se il post specificato non è nella lista dei post nel social network
+     */
+    public int getReports(Post post) throws PostNotFoundException {
+        return read(shardFor(post.getAuthor()), s -> s.getReports(post));
+    }
+
+    /**
+     * Restituisce la lista completa delle segnalazioni, dove:
+     *  Post è il post segnalato
+     *  Integer è il numero di segnalazioni di quel post
+     * @throws EmptyFieldException se nessuna shard ha segnalazioni
+     */
+    public Map<Post, Integer> getMostReportedPosts() throws EmptyFieldException, PostNotFoundException {
+        return mostReported(s -> s.getMostReportedPosts());
+    }
+
+    /**
+     * Restituisce la lista delle segnalazioni dei post con almeno minReports segnalazioni, dove:
+     *  Post è il post segnalato
+     *  Integer è il numero di segnalazioni di quel post
+     * @param minReports numero di reports minimi per poter apparire nella lista restituita
+     * @throws EmptyFieldException se nessuna shard ha segnalazioni
+     */
+    public Map<Post, Integer> getMostReportedPosts(int minReports) throws EmptyFieldException, PostNotFoundException {
+        return mostReported(s -> s.getMostReportedPosts(minReports));
+    }
+
+    /**
+     * Elimina tutti i post con almeno 1 segnalazione (su tutte le shard in parallelo)
+     * @return il numero di post rimossi
+     * @modifies tutte le shard
+     */
+    public int removeReportedPosts() throws PostNotFoundException {
+        int removeCount = 0;
+        for(int n : scatterWrite(SafeSocialNetwork::removeReportedPosts)) {
+            removeCount += n;
+        }
+        return removeCount;
+    }
+
+    /**
+     * Elimina tutti i post con almeno minReports segnalazioni (su tutte le shard in parallelo)
+     * @param minReports il numero di segnalazioni minime perché il post sia cancellato
+     * @return il numero di post rimossi
+     * @modifies tutte le shard
+     */
+    public int removeReportedPosts(int minReports) throws PostNotFoundException {
+        int removeCount = 0;
+        for(int n : scatterWrite(s -> s.removeReportedPosts(minReports))) {
+            removeCount += n;
+        }
+        return removeCount;
+    }
+
+
+    // ------------------------------
+    // MODIFICHE
+    // ------------------------------
+
+    /**
+     * Inizializza un utente nella sua shard
+     * @param username il nome dell'utente da creare
+     * @param set il set di persone che username segue
+     * @modifies la shard di username
+     */
+    public void initializeUser(String username, Set<String> set) throws InvalidUsernameException {
+        SocialNetwork.validateUsername(username);
+        this.<Void, InvalidUsernameException>write(shardFor(username), s -> {
+            s.initializeUser(username, set);
+            return null;
+        });
+    }
+
+    /**
+     * Aggiunge un utente che username segue alla lista
+     * @param username l'utente a cui viene aggiunto l'username da seguire
+     * @param follower l'utente seguito da username
+     * @throws UserNotFoundException se il parametro username non esiste
+     * @modifies la shard di username
+     */
+    public void addFollower(String username, String follower) throws UserNotFoundException {
+        this.<Void, UserNotFoundException>write(shardFor(username), s -> {
+            s.addFollower(username, follower);
+            return null;
+        });
+    }
+
+    /**
+     * Rimuove un utente che username segue alla lista
+     * @param username l'utente a cui viene rimosso l'username seguito
+     * @param follower l'utente seguito da username
+     * @throws UserNotFoundException se il parametro username non esiste
+     * @modifies la shard di username
+     */
+    public void removeFollower(String username, String follower) throws UserNotFoundException {
+        this.<Void, UserNotFoundException>write(shardFor(username), s -> {
+            s.removeFollower(username, follower);
+            return null;
+        });
+    }
+
+    /**
+     * Aggiunge un post alla shard del suo autore
+     * @param p il post da aggiungere
+     * @modifies la shard dell'autore del post
+     */
+    public void addPost(Post p) {
+        write(shardFor(p.getAuthor()), s -> {
+            s.addPost(p);
+            return null;
+        });
+    }
+
+    /**
+     * Rimuove un post dalla shard del suo autore
+     * @param p il post da rimuovere
+     * @modifies la shard dell'autore del post
+     */
+    public void deletePost(Post p) {
+        write(shardFor(p.getAuthor()), s -> {
+            s.deletePost(p);
+            return null;
+        });
+    }
+
+    /**
+     * Elimina un utente come SocialNetwork.deleteUser: sulla sua shard con seguiti, post e
+     * segnalazioni, e su ogni shard i seguiti di chi lo segue
+     * @param username l'utente da eliminare
+     * @throws UserNotFoundException se l'utente non esiste
+     * @modifies tutte le shard
+     */
+    public void deleteUser(String username) throws UserNotFoundException {
+        if(deleteUsers(Collections.singleton(username)) == 0) {
+            throw new UserNotFoundException();
+        }
+    }
+
+    /**
+     * Elimina più utenti come SocialNetwork.deleteUsers, con un solo passaggio per shard (le shard
+     * vengono modificate in parallelo, non atomicamente fra loro)
+     * @param usernames gli utenti da eliminare (quelli che non esistono vengono ignorati)
+     * @return il numero di utenti eliminati
+     * @modifies tutte le shard
+     */
+    public int deleteUsers(Collection<String> usernames) {
+        Set<String> utenti = new HashSet<>(usernames);
+        int eliminati = 0;
+        for(int n : scatterWrite(s -> {
+            s.unfollowAll(utenti);
+            return s.deleteUsers(utenti);
+        })) {
+            eliminati += n;
+        }
+        return eliminati;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Unisce le classifiche dei menzionati delle shard senza leggerle tutte (threshold algorithm):
+     * i primi n di ogni shard sono i candidati, con il conteggio sommato su tutte le shard; chi non è
+     * candidato ha al più la somma degli n-esimi conteggi delle shard, per cui se il k-esimo
+     * candidato la supera la classifica è esatta, altrimenti si riprova con n doppio
+     */
+    private Map<String, Integer> mergeMentioned(int k, boolean byAuthors) {
+        Map<String, Integer> classifica = new LinkedHashMap<>();
+        if(k <= 0) {
+            return classifica;
+        }
+        for(int n = k; ; n = n > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : n * 2) {
+            int richiesti = n;
+            Set<String> candidati = new HashSet<>();
+            long soglia = 0;
+            boolean esaurite = true;
+            for(Map<String, Integer> parziale : scatter(s -> byAuthors ? s.mostMentionedByAuthors(richiesti) : s.mostMentioned(richiesti))) {
+                candidati.addAll(parziale.keySet());
+                if(parziale.size() == richiesti) { // la shard può avere altri utenti, con al più l'ultimo conteggio
+                    int ultimo = 0;
+                    for(int c : parziale.values()) {
+                        ultimo = c;
+                    }
+                    soglia += ultimo;
+                    esaurite = false;
+                }
+            }
+
+            Map<String, Integer> totali = new HashMap<>();
+            for(Map<String, Integer> parziale : scatter(s -> s.mentionedCounts(candidati, byAuthors))) {
+                parziale.forEach((u, c) -> totali.merge(u, c, Integer::sum));
+            }
+            List<Map.Entry<String, Integer>> ordinati = new ArrayList<>(totali.entrySet());
+            ordinati.sort((e1, e2) -> {
+                int c = Integer.compare(e2.getValue(), e1.getValue());
+                return c != 0 ? c : e1.getKey().compareTo(e2.getKey());
+            });
+            if(esaurite || (ordinati.size() >= k && ordinati.get(k - 1).getValue() > soglia)) {
+                for(Map.Entry<String, Integer> entry : ordinati.subList(0, Math.min(k, ordinati.size()))) {
+                    classifica.put(entry.getKey(), entry.getValue());
+                }
+                return classifica;
+            }
+        }
+    }
+
+    private SafeSocialNetwork shardFor(String username) {
+        return shards[shardIndex(username)];
+    }
+
+    /**
+     * Segnala post a nome di reporter nella stessa sezione critica in cui verifica che reporter
+     * esista: il read lock della shard di reporter resta preso mentre si scrive nella shard del post,
+     * per cui un deleteUser concorrente di reporter avviene tutto prima o tutto dopo la segnalazione.
+     * I due lock sono presi in ordine di indice della shard, così due segnalazioni incrociate non si
+     * bloccano a vicenda.
+     */
+    private boolean reportBy(Post post, String reporter, ReportReason reason, String text) throws PostNotFoundException, UserNotFoundException {
+        int diReporter = shardIndex(reporter);
+        int delPost = shardIndex(post.getAuthor());
+        Lock lettura = shards[diReporter].getLock().readLock();
+        Lock scrittura = shards[delPost].getLock().writeLock();
+        if(diReporter < delPost) {
+            lettura.lock();
+        }
+        scrittura.lock();
+        if(diReporter > delPost) {
+            lettura.lock();
+        }
+        try {
+            if(!shards[diReporter].checkUser(reporter)) {
+                throw new UserNotFoundException();
+            }
+            return shards[delPost].reportPostBy(post, reporter, reason, text);
+        } finally {
+            if(diReporter != delPost) {
+                lettura.unlock();
+            }
+            scrittura.unlock();
+        }
+    }
+
+    /**
+     * Esegue un'interrogazione su una shard sotto il suo read lock
+     */
+    private <R, X extends Exception> R read(SafeSocialNetwork shard, ShardQuery<R, X> query) throws X {
+        Lock lock = shard.getLock().readLock();
+        lock.lock();
+        try {
+            return query.apply(shard);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Esegue una modifica su una shard sotto il suo write lock
+     */
+    private <R, X extends Exception> R write(SafeSocialNetwork shard, ShardQuery<R, X> query) throws X {
+        Lock lock = shard.getLock().writeLock();
+        lock.lock();
+        try {
+            return query.apply(shard);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Esegue un'interrogazione su tutte le shard in parallelo, ognuna sotto il proprio read lock
+     * @return i risultati parziali, nell'ordine delle shard
+     */
+    private <R, X extends Exception> List<R> scatter(ShardQuery<R, X> query) throws X {
+        return gather(query, false);
+    }
+
+    /**
+     * Esegue una modifica su tutte le shard in parallelo, ognuna sotto il proprio write lock
+     * @return i risultati parziali, nell'ordine delle shard
+     */
+    private <R, X extends Exception> List<R> scatterWrite(ShardQuery<R, X> query) throws X {
+        return gather(query, true);
+    }
+
+    private <R, X extends Exception> List<R> gather(ShardQuery<R, X> query, boolean write) throws X {
+        List<R> risultati = new ArrayList<>(shards.length);
+        if(shards.length == 1 || pool.getParallelism() == 1) {
+            for(SafeSocialNetwork shard : shards) {
+                risultati.add(write ? write(shard, query) : read(shard, query));
+            }
+            return risultati;
+        }
+
+        List<Future<R>> parziali = new ArrayList<>(shards.length);
+        for(SafeSocialNetwork shard : shards) {
+            parziali.add(pool.submit(() -> write ? write(shard, query) : read(shard, query)));
+        }
+        try {
+            for(Future<R> f : parziali) {
+                risultati.add(f.get());
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch(ExecutionException e) {
+            Throwable causa = e.getCause();
+            if(causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if(causa instanceof Error) {
+                throw (Error) causa;
+            }
+            @SuppressWarnings("unchecked")
+            X x = (X) causa;
+            throw x;
+        }
+        return risultati;
+    }
+
+    /**
+     * Fonde le classifiche delle segnalazioni delle shard (ognuna già in ordine decrescente);
+     * le shard senza segnalazioni non contribuiscono
+     */
+    private Map<Post, Integer> mostReported(ReportQuery query) throws EmptyFieldException, PostNotFoundException {
+        List<List<Map.Entry<Post, Integer>>> classifiche = scatter(s -> {
+            try {
+                return new ArrayList<>(query.apply(s).entrySet());
+            } catch(EmptyFieldException e) {
+                return null;
+            }
+        });
+
+        classifiche.removeIf(Objects::isNull);
+        if(classifiche.isEmpty()) {
+            throw new EmptyFieldException();
+        }
+
+        Map<Post, Integer> mappa = new LinkedHashMap<>();
+        for(Map.Entry<Post, Integer> entry : merge(classifiche, Map.Entry.<Post, Integer>comparingByValue().reversed(), Integer.MAX_VALUE)) {
+            mappa.put(entry.getKey(), entry.getValue());
+        }
+        return mappa;
+    }
+
+    /**
+     * Fonde liste già ordinate secondo order (k-way merge con una coda di priorità)
+     * @param lists le liste ordinate
+     * @param order l'ordine delle liste e del risultato
+     * @param limit numero massimo di elementi restituiti
+     * @return i primi limit elementi dell'unione, in ordine
+     */
+    private static <T> List<T> merge(List<List<T>> lists, Comparator<? super T> order, int limit) {
+        int totale = 0;
+        for(List<T> l : lists) {
+            totale += l.size();
+        }
+        List<T> risultato = new ArrayList<>(Math.min(totale, Math.max(limit, 0)));
+
+        // ogni elemento della coda è {indice della lista, posizione nella lista}
+        PriorityQueue<int[]> coda = new PriorityQueue<>(Math.max(lists.size(), 1),
+                (a, b) -> order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for(int i = 0; i < lists.size(); i++) {
+            if(!lists.get(i).isEmpty()) {
+                coda.add(new int[]{i, 0});
+            }
+        }
+        while(!coda.isEmpty() && risultato.size() < limit) {
+            int[] testa = coda.poll();
+            List<T> l = lists.get(testa[0]);
+            risultato.add(l.get(testa[1]));
+            if(++testa[1] < l.size()) {
+                coda.add(testa);
+            }
+        }
+        return risultato;
+    }
+}
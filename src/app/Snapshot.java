@@ -0,0 +1,124 @@
+package app;
+
+import exception.EmptyFieldException;
+
+import java.util.*;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class Snapshot {
+    /*
+     *  OVERVIEW:
+     *      Vista immutabile e coerente di un SocialNetwork in un istante: seguiti, post in memoria e
+     *      segnalazioni. Le strutture della rete sono persistenti (PersistentMap, PersistentVector,
+     *      PersistentSet), per cui prendere uno snapshot costa O(1): si tengono le radici delle
+     *      versioni correnti, che le scritture successive non modificano (ne creano di nuove
+     *      condividendo i nodi non toccati). Le interrogazioni lunghe sullo snapshot non prendono
+     *      alcun lock, non bloccano chi scrive e non incontrano ConcurrentModificationException.
+     *      Le versioni non più usate né dalla rete né da uno snapshot sono recuperate dal garbage
+     *      collector. I post spostati su disco (enableColdStorage) non fanno parte dello snapshot.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      followed -> utente -> insieme dei suoi seguiti (null se non ne ha mai avuti)
+     *      ps -> post in memoria, in ordine di inserimento
+     *      rp -> id del post -> sue segnalazioni (vuoto per un SocialNetwork senza segnalazioni)
+     *      followedVersion, postsVersion, reportsVersion -> versioni della rete al momento dello snapshot
+     *
+     *  REPRESENTATION INVARIANT:
+     *      followed != null && ps != null && rp != null && scan != null
+     */
+
+    private final PersistentMap<String, Set<String>> followed;
+    private final PersistentVector<Post> ps;
+    private final PersistentMap<Integer, PostReports> rp;
+    private final ParallelScan scan;
+    private final long followedVersion;
+    private final long postsVersion;
+    private final long reportsVersion;
+
+    Snapshot(PersistentMap<String, Set<String>> followed, PersistentVector<Post> ps, PersistentMap<Integer, PostReports> rp,
+             ParallelScan scan, long followedVersion, long postsVersion, long reportsVersion) {
+        this.followed = followed;
+        this.ps = ps;
+        this.rp = rp;
+        this.scan = scan;
+        this.followedVersion = followedVersion;
+        this.postsVersion = postsVersion;
+        this.reportsVersion = reportsVersion;
+    }
+
+    /**
+     * Restituisce gli utenti ordinati per numero di follower (come SocialNetwork.influencers)
+     * @return lista degli utenti seguiti da almeno un utente, dal più seguito
+     * @throws EmptyFieldException se nello snapshot non ci sono post
+     */
+    public List<String> influencers() throws EmptyFieldException {
+        if(ps.isEmpty()) {
+            throw new EmptyFieldException();
+        }
+        return SocialNetwork.byFollowers(SocialNetwork.countFollowers(followed));
+    }
+
+    /**
+     * Restituisce gli utenti menzionati nei post dello snapshot (come SocialNetwork.getMentionedUsers)
+     * @return insieme degli utenti menzionati
+     */
+    public Set<String> getMentionedUsers() {
+        return SocialNetwork.mentionedUsers(ps, scan);
+    }
+
+    /**
+     * Restituisce i post dello snapshot con il numero di segnalazioni, dal più segnalato
+     * (come SafeSocialNetwork.getMostReportedPosts)
+     * @throws EmptyFieldException se nello snapshot non ci sono segnalazioni
+     */
+    public Map<Post, Integer> getMostReportedPosts() throws EmptyFieldException {
+        return getMostReportedPosts(0);
+    }
+
+    /**
+     * Restituisce i post dello snapshot con almeno minReports segnalazioni, dal più segnalato
+     * (come SafeSocialNetwork.getMostReportedPosts)
+     * @param minReports numero di segnalazioni minime per apparire nella mappa
+     * @throws EmptyFieldException se nello snapshot non ci sono segnalazioni
+     */
+    public Map<Post, Integer> getMostReportedPosts(int minReports) throws EmptyFieldException {
+        if(rp.isEmpty()) {
+            throw new EmptyFieldException();
+        }
+        return SafeSocialNetwork.mostReported(ps, rp, minReports);
+    }
+
+    /**
+     * Restituisce i seguiti di ogni utente (immutabile)
+     */
+    public Map<String, Set<String>> getFollowed() {
+        return followed;
+    }
+
+    /**
+     * Restituisce i post in memoria (immutabile)
+     */
+    public List<Post> getPosts() {
+        return ps;
+    }
+
+    /**
+     * Restituisce le segnalazioni di ogni post segnalato (immutabile)
+     */
+    public Map<Integer, PostReports> getReports() {
+        return rp;
+    }
+
+    public long getFollowedVersion() {
+        return followedVersion;
+    }
+
+    public long getPostsVersion() {
+        return postsVersion;
+    }
+
+    public long getReportsVersion() {
+        return reportsVersion;
+    }
+}
@@ -2,11 +2,23 @@ package app;
 
 import exception.EmptyFieldException;
 import exception.InvalidUsernameException;
+import exception.PostNotFoundException;
 import exception.UserNotFoundException;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.Map.Entry.comparingByValue;
 import static java.util.stream.Collectors.toMap;
@@ -24,6 +36,10 @@ public class SocialNetwork implements SocialNetworkInterface {
      *      di implementare dei metodi non specificati dalla consegna per facilitare
      *      i test da effettuare per il corretto funzionamento del dato. Ogni utente,
      *      come specificato, è identificato univocamente dall'username.
+     *      La Map, i suoi insiemi e la Lista sono strutture persistenti (PersistentMap, PersistentSet,
+     *      PersistentVector): ogni modifica crea una nuova versione che condivide il resto con la
+     *      precedente, per cui snapshot() costa O(1) e le interrogazioni lunghe possono girare sullo
+     *      snapshot senza lock mentre le scritture continuano.
      *
      *  ABSTRACTION FUNCTION:
      *      Map<String, Set<String>> dove:
@@ -33,185 +49,1156 @@ public class SocialNetwork implements SocialNetworkInterface {
      *      List<Post> dove:
      *          Post -> struttura dati post
      *
+     *      NavigableSet<Post> byTime dove:
+     *          i post di ps ordinati per timestamp (indice per le interrogazioni per intervallo di tempo)
+     *
+     *      Map<String, StringCounter> mentionsBy dove:
+     *          mentionsBy(a)(b) -> numero di menzioni di b nei post di a presenti in ps
+     *
+     *      MentionRanking mentionRanking dove:
+     *          per ogni utente b, le menzioni di b e il numero di a con mentionsBy(a)(b) > 0
+     *
+     *      Map<String, StringCounter> followersBy dove:
+     *          followersBy(b)(a) == 1 <=> a segue b (indice inverso di followed)
+     *
+     *      Map<String, List<Post>> postsBy dove:
+     *          postsBy(a) -> i post di a presenti in ps, in ordine di (timestamp, id)
+     *
+     *      Map<Post, Integer> positions dove:
+     *          positions(p) -> posizione (slot) di p nella versione positioned di ps
+     *
      *  REPRESENTATION INVARIANT:
-     *      followed != null &&
+     *      followed != null && ogni valore di followed è null o un PersistentSet &&
      *      ps != null &&
+     *      byTime != null && byTime contiene esattamente i post di ps &&
+     *      mentionsBy != null &&
+     *      followersBy != null && ogni suo contatore vale 0 o 1 &&
+     *      postsBy != null && nessuna sua lista è vuota && ogni post di ps compare nella lista del suo autore &&
+     *      ogni lista di postsBy è ordinata secondo Post.TIME_ORDER &&
+     *      (positions == null || (positioned != null && per ogni p di positioned positioned.slotAt(positions(p)) == p)) &&
      *      String != ""
      */
 
-    protected final Map<String, Set<String>> followed;
-    protected final List<Post> ps;
+    // versioni correnti (sostituite, mai modificate, da chi scrive sotto il write lock)
+    protected volatile PersistentMap<String, Set<String>> followed;
+    protected volatile PersistentVector<Post> ps;
+    private final NavigableSet<Post> byTime;
+
+    // lock a disposizione di chi usa la rete da più thread (la rete di per sé non si sincronizza)
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // bus su cui vengono pubblicate le modifiche (null se nessuno è interessato)
+    private ChangeEventBus events;
+
+    // utenti e parole di tendenza (null finché non viene attivato con enableTrending)
+    private TrendingTracker trending;
+
+    // classifica PageRank degli utenti (null finché non viene attivata con enableInfluenceRank)
+    private volatile InfluenceRank influenceRank;
+
+    // impronte dei post recenti per riconoscere le copie (null finché non viene attivato con enableDuplicateDetection)
+    private DuplicateIndex duplicates;
+
+    // caselle delle notifiche di menzione (null finché non vengono attivate con enableMentionInboxes)
+    private volatile MentionInboxes inboxes;
+
+    // interrogazioni permanenti sulle parole dei nuovi post (vedi subscribe)
+    private volatile KeywordSubscriptions subscriptions = new KeywordSubscriptions();
+
+    // post più vecchi spostati su disco (null finché non viene attivato con enableColdStorage)
+    private ColdStorage cold;
+
+    // grafo delle menzioni: autore -> utenti menzionati nei suoi post (per recommendFollows)
+    private final Map<String, StringCounter> mentionsBy = new HashMap<>();
+
+    // classifica dei menzionati (per menzioni e per autori), aggiornata con mentionsBy
+    private final MentionRanking mentionRanking = new MentionRanking();
+
+    // indici per eliminare un utente senza scorrere tutta la rete: seguito -> chi lo segue, autore -> suoi post in memoria
+    private final Map<String, StringCounter> followersBy = new HashMap<>();
+    private final Map<String, List<Post>> postsBy = new HashMap<>();
+
+    // posizione in ps di ogni post in memoria, per togliere i post di un utente senza scorrere ps; vale
+    // per la versione positioned di ps (costruita alla prima eliminazione, ricostruita se ps cambia altrove)
+    private IdentityHashMap<Post, Integer> positions;
+    private PersistentVector<Post> positioned;
+
+    // limiti della visita a due passi di recommendFollows
+    static final int RECOMMEND_MAX_FANOUT = 1_000;     // seguiti letti per ogni seguito dell'utente
+    static final int RECOMMEND_MAX_VISITS = 100_000;   // archi letti in totale
+
+    // modalità di scansione delle interrogazioni su liste di post
+    private volatile ParallelScan scan = ParallelScan.SEQUENTIAL;
+
+    // versioni delle strutture, incrementate da ogni modifica (per riconoscere i risultati non più validi)
+    private final AtomicLong followedVersion = new AtomicLong();
+    private final AtomicLong postsVersion = new AtomicLong();
+
+    static final int MIN_USERNAME_LENGTH = 3;
+    static final int MAX_USERNAME_LENGTH = 24;
+
+
+
+    /**
+     * Costruttore della classe SocialNetwork.
+     */
+    public SocialNetwork() {
+        followed = PersistentMap.empty();
+        ps = PersistentVector.empty();
+        byTime = new ConcurrentSkipListSet<>(Post.TIME_ORDER);
+    }
+
+
+    /**
+     * Restituisce la rete sociale derivata dalla lista di post (parametro del metodo)
+     * @param ps lista dei post
+     * @return rete utente-lista follower in base agli autori dei post
+     */
+    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws UserNotFoundException {
+        return guessFollowers(ps, scan);
+    }
+
+    /**
+     * Restituisce la rete sociale derivata dalla lista di post, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return rete utente-lista follower in base agli autori dei post
+     */
+    public Map<String, Set<String>> guessFollowers(List<Post> ps, ParallelScan mode) throws UserNotFoundException {
+        return mode.scan(ps, HashMap::new, (rs, p) -> {
+            if(!rs.containsKey(p.getAuthor())) {
+                rs.put(p.getAuthor(), getFollowers(p.getAuthor()));
+            }
+        }, (rs1, rs2) -> {
+            rs1.putAll(rs2);
+            return rs1;
+        });
+    }
+
+    /**
+     * Restituisce gli utenti più influenti delle rete sociale,
+     * ovvero quelli che hanno un numero maggiore di “follower”
+     * @return lista degli utenti con maggior numero di follower
+     */
+    public List<String> influencers() throws EmptyFieldException {
+        if(!ps.isEmpty() || (cold != null && cold.size() > 0)) {
+            return byFollowers(followerCounts());
+        } else {
+            throw new EmptyFieldException();
+        }
+    }
+
+    /**
+     * Suggerisce chi seguire: i candidati sono gli utenti seguiti dai seguiti di username (amici
+     * degli amici) che username non segue ancora. Il punteggio di un candidato è il numero di
+     * seguiti di username che lo seguono, moltiplicato per 1 + il numero di menzioni fra i due
+     * (menzioni del candidato nei post di username e viceversa).
+     * La visita a due passi è limitata: di ogni seguito si leggono al più RECOMMEND_MAX_FANOUT
+     * seguiti e in tutto al più RECOMMEND_MAX_VISITS archi, quindi per gli utenti con moltissimi
+     * seguiti il risultato è calcolato su un campione.
+     * @param username nome utente
+     * @param k numero massimo di utenti suggeriti
+     * @return lista di al più k utenti, dal punteggio più alto (a parità, in ordine alfabetico)
+     * @throws UserNotFoundException se l'utente specificato non esiste
+     */
+    public List<String> recommendFollows(String username, int k) throws UserNotFoundException {
+        if(!checkUser(username)) {
+            throw new UserNotFoundException();
+        }
+        Set<String> seguiti = followed.get(username);
+        if(k <= 0 || seguiti == null || seguiti.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        StringCounter menzioniUtente = mentionsBy.get(username);
+        return bestCandidates(twoHopCounts(username, seguiti), k, (c, amici) -> {
+            if(!followed.containsKey(c)) {
+                return -1;
+            }
+            long menzioni = (menzioniUtente != null ? menzioniUtente.get(c) : 0) + mentionCount(c, username);
+            return amici * (1 + menzioni);
+        });
+    }
 
-    private static final int MIN_USERNAME_LENGTH = 3;
-    private static final int MAX_USERNAME_LENGTH = 24;
+    /**
+     * Restituisce l’insieme degli utenti menzionati (inclusi) nei post presenti nella rete sociale
+     * @return lista degli utenti menzionati
+     */
+    public Set<String> getMentionedUsers() {
+        return getMentionedUsers(ps);
+    }
 
-    private static final String PREFIX_CHECK_MENTION = "@";
-    private static final String REGEX_CHECK_MENTION = "\\B"+PREFIX_CHECK_MENTION+"(?!(?:[a-z0-9.]*_){2})(?!(?:[a-z0-9_]*\\.){2})[._a-z0-9]{"+MIN_USERNAME_LENGTH+","+MAX_USERNAME_LENGTH+"}\\b";
+    /**
+     * Restituisce l’insieme degli utenti menzionati (inclusi) nella lista di post
+     * @param ps lista dei post
+     * @return lista degli utenti menzionati nei post dentro la lista "ps"
+     */
+    public Set<String> getMentionedUsers(List<Post> ps) {
+        return getMentionedUsers(ps, scan);
+    }
+
+    /**
+     * Restituisce l’insieme degli utenti menzionati nella lista di post, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista degli utenti menzionati nei post dentro la lista "ps"
+     */
+    public Set<String> getMentionedUsers(List<Post> ps, ParallelScan mode) {
+        return mentionedUsers(ps, mode);
+    }
+
+    /**
+     * Restituisce la lista dei post effettuati dall’utente nella rete sociale
+     * il cui nome è dato dal parametro username
+     * @param username nome utente
+     * @return lista di tutti i post dell'utente "username"
+     */
+    public List<Post> writtenBy(String username) {
+        List<Post> lista = cold != null ? cold.writtenBy(username) : new ArrayList<>();
+        for(Post p : ps) {
+            if(p.getAuthor().equals(username)) {
+                lista.add(p);
+            }
+        }
+
+        return lista;
+    }
+
+    /**
+     * Restituisce la lista dei post effettuati dall’utente il cui nome è dato
+     * dal parametro username presenti nella lista ps
+     * @param ps lista dei post
+     * @param username nome utente
+     * @return lista dei post scritti da username dentro la lista "ps"
+     */
+    public List<Post> writtenBy(List<Post> ps, String username) {
+        return writtenBy(ps, username, scan);
+    }
+
+    /**
+     * Restituisce la lista dei post di username presenti nella lista ps, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param username nome utente
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista dei post scritti da username dentro la lista "ps", nello stesso ordine
+     */
+    public List<Post> writtenBy(List<Post> ps, String username, ParallelScan mode) {
+        return mode.scan(ps, ArrayList::new, (lista, p) -> {
+            if(p.getAuthor().equals(username)) {
+                lista.add(p);
+            }
+        }, SocialNetwork::concat);
+    }
+
+    /**
+     * Restituisce la lista dei post presenti nella rete sociale che includono almeno una
+     * delle parole presenti nella lista delle parole argomento del metodo
+     * @param words lista di stringhe (parole)
+     * @return lista dei post che contengono almeno una delle parole in "words"
+     */
+    public List<Post> containing(List<String> words) {
+        if(cold == null) {
+            return containing(ps, words);
+        }
+        KeywordMatcher parole = new KeywordMatcher(words);
+        return concat(cold.matching(p -> parole.matches(p.getText())), containing(ps, words));
+    }
+
+    /**
+     * Restituisce la lista dei post presenti nella lista ps che includono almeno una
+     * delle parole presenti nella lista delle parole argomento del metodo
+     * @param ps lista dei post
+     * @param words lista di stringhe (parole)
+     * @return lista dei post dentro la lista "ps" che contengono almeno una delle parole in "words"
+     */
+    public List<Post> containing(List<Post> ps, List<String> words) {
+        return containing(ps, words, scan);
+    }
+
+    /**
+     * Restituisce la lista dei post presenti nella lista ps che includono almeno una
+     * delle parole, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param words lista di stringhe (parole)
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista dei post dentro la lista "ps" che contengono almeno una delle parole in "words", nello stesso ordine
+     */
+    public List<Post> containing(List<Post> ps, List<String> words, ParallelScan mode) {
+        KeywordMatcher parole = new KeywordMatcher(words);
+        return mode.scan(ps, ArrayList::new, (lista, p) -> {
+            if(parole.matches(p.getText())) {
+                lista.add(p);
+            }
+        }, SocialNetwork::concat);
+    }
+
+    /**
+     * Restituisce uno stream lazy dei post effettuati dall’utente nella rete sociale,
+     * valutato solo quando (e quanto) viene consumato. La rete non deve essere modificata
+     * finché lo stream non è stato consumato.
+     * @param username nome utente
+     * @return stream dei post dell'utente "username"
+     */
+    public Stream<Post> writtenByStream(String username) {
+        return ps.stream().filter(p -> p.getAuthor().equals(username));
+    }
+
+    /**
+     * Restituisce al massimo limit post effettuati dall’utente nella rete sociale
+     * successivi al post after, in ordine di (timestamp, id) (cursore per la paginazione)
+     * @param username nome utente
+     * @param after l'ultimo post già visto (null per iniziare dal primo)
+     * @param limit numero massimo di post restituiti
+     * @return pagina dei post dell'utente "username" successivi ad after
+     */
+    public List<Post> writtenBy(String username, Post after, int limit) {
+        if(limit < 0) {
+            throw new IllegalArgumentException();
+        }
+        List<Post> scritti = postsBy.get(username);
+        if(scritti == null) {
+            return new ArrayList<>();
+        }
+        // la lista dell'autore è in ordine di (timestamp, id): il cursore si trova per bisezione
+        int inizio = after == null ? 0 : firstAfter(scritti, after);
+        return new ArrayList<>(scritti.subList(inizio, (int) Math.min(scritti.size(), (long) inizio + limit)));
+    }
+
+    /**
+     * Restituisce uno stream lazy dei post presenti nella rete sociale che includono almeno una
+     * delle parole presenti nella lista, valutato solo quando (e quanto) viene consumato.
+     * La rete non deve essere modificata finché lo stream non è stato consumato.
+     * @param words lista di stringhe (parole)
+     * @return stream dei post che contengono almeno una delle parole in "words"
+     */
+    public Stream<Post> containingStream(List<String> words) {
+        KeywordMatcher parole = new KeywordMatcher(words);
+        return ps.stream().filter(p -> parole.matches(p.getText()));
+    }
+
+    /**
+     * Restituisce al massimo limit post che includono almeno una delle parole presenti
+     * nella lista successivi al post after, in ordine di (timestamp, id) (cursore per la paginazione)
+     * @param words lista di stringhe (parole)
+     * @param after l'ultimo post già visto (null per iniziare dal primo)
+     * @param limit numero massimo di post restituiti
+     * @return pagina dei post che contengono almeno una delle parole in "words" successivi ad after
+     */
+    public List<Post> containing(List<String> words, Post after, int limit) {
+        if(limit < 0) {
+            throw new IllegalArgumentException();
+        }
+        KeywordMatcher parole = new KeywordMatcher(words);
+        List<Post> pagina = new ArrayList<>(Math.min(limit, 16));
+        Iterator<Post> it = (after == null ? byTime : byTime.tailSet(Post.probe(after.getTimestamp(), after.getId()), true)).iterator();
+        while(pagina.size() < limit && it.hasNext()) {
+            Post p = it.next();
+            if((after == null || follows(p, after)) && parole.matches(p.getText())) {
+                pagina.add(p);
+            }
+        }
+        return pagina;
+    }
+
+    /**
+     * Restituisce i post della rete sociale inviati nell'intervallo [from, to), in ordine di invio
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post inviati fra from e to
+     */
+    public List<Post> postsBetween(long from, long to) {
+        return between(from, to, p -> true);
+    }
+
+    /**
+     * Restituisce gli n post più recenti della rete sociale, dal più recente
+     * @param n numero massimo di post restituiti
+     * @return lista degli n post più recenti
+     */
+    public List<Post> latest(int n) {
+        List<Post> lista = new ArrayList<>(Math.min(Math.max(n, 0), byTime.size()));
+        Iterator<Post> it = byTime.descendingIterator();
+        while(lista.size() < n && it.hasNext()) {
+            lista.add(it.next());
+        }
+        return lista;
+    }
+
+    /**
+     * Restituisce i post effettuati dall’utente username nell'intervallo [from, to), in ordine di invio
+     * @param username nome utente
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post di "username" inviati fra from e to
+     */
+    public List<Post> writtenBetween(String username, long from, long to) {
+        return between(from, to, p -> p.getAuthor().equals(username));
+    }
+
+    /**
+     * Restituisce i post inviati nell'intervallo [from, to) che includono almeno una
+     * delle parole presenti nella lista, in ordine di invio
+     * @param words lista di stringhe (parole)
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post inviati fra from e to che contengono almeno una delle parole in "words"
+     */
+    public List<Post> containingBetween(List<String> words, long from, long to) {
+        KeywordMatcher parole = new KeywordMatcher(words);
+        return between(from, to, p -> parole.matches(p.getText()));
+    }
+
+    /**
+     * Apre un'interrogazione permanente: invece di ripetere containing(words), i Flow.Subscriber
+     * iscritti alla KeywordSubscription ricevono i post aggiunti da questo momento che contengono
+     * almeno una delle parole, con il buffer predefinito di Flow.defaultBufferSize() post
+     * @param words lista di stringhe (parole)
+     * @return l'interrogazione, da chiudere con close() quando non serve più
+     */
+    public KeywordSubscription subscribe(Collection<String> words) {
+        return subscribe(words, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Apre un'interrogazione permanente (vedi subscribe(words)). Le parole di tutte le
+     * interrogazioni sono cercate con un unico automa, per cui aggiungere un post costa una sola
+     * lettura del testo qualunque sia il numero delle interrogazioni; chi aggiunge il post non
+     * aspetta i subscriber lenti (vedi KeywordSubscription)
+     * @param words lista di stringhe (parole)
+     * @param bufferCapacity post tenuti per ogni subscriber in attesa delle sue request
+     * @return l'interrogazione, da chiudere con close() quando non serve più
+     */
+    public KeywordSubscription subscribe(Collection<String> words, int bufferCapacity) {
+        return subscriptions.add(words, bufferCapacity);
+    }
+
+    /**
+     * Attiva il conteggio degli utenti menzionati e delle parole di tendenza
+     * (vengono contati i post aggiunti da questo momento in poi)
+     * @modifies this.trending
+     */
+    public void enableTrending() {
+        if(trending == null) {
+            trending = new TrendingTracker();
+        }
+    }
+
+    /**
+     * Restituisce i k utenti più menzionati nella finestra di tempo che termina adesso
+     * @param window ampiezza della finestra (al più un'ora)
+     * @param k numero di utenti da restituire
+     * @return mappa utente -> menzioni stimate, ordinata per menzioni decrescenti
+     * @throws IllegalStateException se il conteggio delle tendenze non è attivo
+     */
+    public Map<String, Long> trendingMentions(Duration window, int k) {
+        return trendingTracker().trendingMentions(window, k);
+    }
+
+    /**
+     * Restituisce le k parole più usate nella finestra di tempo che termina adesso
+     * @param window ampiezza della finestra (al più un'ora)
+     * @param k numero di parole da restituire
+     * @return mappa parola -> occorrenze stimate, ordinata per occorrenze decrescenti
+     * @throws IllegalStateException se il conteggio delle tendenze non è attivo
+     */
+    public Map<String, Long> trendingWords(Duration window, int k) {
+        return trendingTracker().trendingWords(window, k);
+    }
+
+
+    /**
+     * Attiva la classifica degli utenti per influenza (PageRank sul grafo dei seguiti),
+     * ricalcolata in background sul ForkJoinPool comune
+     * @param period intervallo fra un ricalcolo e il successivo
+     * @return la classifica (per forzare un ricalcolo con refresh)
+     * @modifies this.influenceRank
+     */
+    public InfluenceRank enableInfluenceRank(Duration period) {
+        if(influenceRank == null) {
+            InfluenceRank classifica = new InfluenceRank(this, ForkJoinPool.commonPool());
+            classifica.start(period);
+            influenceRank = classifica;
+        }
+        return influenceRank;
+    }
+
+    /**
+     * Restituisce i k utenti più influenti secondo PageRank, dall'ultimo calcolo completo
+     * (non richiede il lock della rete e non attende il ricalcolo in corso)
+     * @param k numero massimo di utenti
+     * @return lista di al più k utenti, dal più influente
+     * @throws IllegalStateException se la classifica non è attiva
+     */
+    public List<String> influencersByRank(int k) {
+        InfluenceRank classifica = influenceRank;
+        if(classifica == null) {
+            throw new IllegalStateException("Classifica non attiva: chiamare enableInfluenceRank()");
+        }
+        return classifica.influencersByRank(k);
+    }
+
+    /**
+     * Attiva il riconoscimento delle copie con finestra e somiglianza predefinite
+     * (DuplicateIndex.DEFAULT_WINDOW post, somiglianza DuplicateIndex.DEFAULT_SIMILARITY)
+     * @modifies this.duplicates
+     */
+    public void enableDuplicateDetection() {
+        enableDuplicateDetection(DuplicateIndex.DEFAULT_WINDOW, DuplicateIndex.DEFAULT_SIMILARITY);
+    }
+
+    /**
+     * Attiva il riconoscimento delle copie: da questo momento gli ultimi window post aggiunti
+     * vengono indicizzati per impronta esatta e MinHash (vedi DuplicateIndex)
+     * @param window numero di post recenti ricordati
+     * @param similarity somiglianza oltre cui due testi sono quasi-copie (0..1]
+     * @modifies this.duplicates
+     */
+    public void enableDuplicateDetection(int window, double similarity) {
+        if(duplicates == null) {
+            duplicates = new DuplicateIndex(window, similarity);
+        }
+    }
+
+    /**
+     * Restituisce i post recenti che sono copie o quasi-copie del post indicato
+     * @param p il post
+     * @return i duplicati fra gli ultimi post aggiunti (escluso p), dal più vecchio
+     * @throws IllegalStateException se il riconoscimento delle copie non è attivo
+     */
+    public List<Post> duplicatesOf(Post p) {
+        if(p == null) {
+            throw new NullPointerException();
+        }
+        return duplicateIndex().duplicatesOf(p);
+    }
+
+    /**
+     * Attiva il livello freddo: flushColdPosts sposterà in segmenti compressi nella directory i post
+     * più vecchi di maxAge. writtenBy, containing, postsBetween, writtenBetween, containingBetween,
+     * checkPost, deletePost e la moderazione di SafeSocialNetwork vedono anche i post su disco
+     * (come nuove istanze con gli stessi campi); gli stream, le pagine per id, latest, guessFollowers,
+     * getMentionedUsers e getMostReportedPosts vedono solo i post in memoria.
+     * @param directory la directory dei segmenti (creata se non esiste)
+     * @param maxAge età oltre cui un post viene spostato su disco
+     * @throws IOException se la directory non può essere creata
+     * @modifies this.cold
+     */
+    public void enableColdStorage(Path directory, Duration maxAge) throws IOException {
+        if(cold == null) {
+            cold = new ColdStorage(directory, maxAge);
+        }
+    }
+
+    /**
+     * Sposta su disco, in un nuovo segmento, i post più vecchi dell'età configurata
+     * (da chiamare periodicamente sotto il write lock). Le interrogazioni restituiscono gli
+     * stessi risultati prima e dopo lo spostamento.
+     * @return il numero di post spostati
+     * @throws IOException se la scrittura del segmento fallisce (in tal caso nessun post viene spostato)
+     * @throws IllegalStateException se il livello freddo non è attivo
+     * @modifies this.ps, this.byTime, this.postsBy, this.postsVersion
+     */
+    public int flushColdPosts() throws IOException {
+        ColdStorage c = coldStorage();
+        long limite = c.cutoff();
+        List<Post> vecchi = new ArrayList<>();
+        for(Post p : ps) {
+            if(p.getTimestamp() < limite) {
+                vecchi.add(p);
+            }
+        }
+        if(vecchi.isEmpty()) {
+            return 0;
+        }
+
+        c.add(vecchi);
+        postsVersion.incrementAndGet();
+        ps = ps.minusIf(p -> p.getTimestamp() < limite);
+        byTime.headSet(Post.probe(limite, Integer.MIN_VALUE)).clear();
+        for(Post p : vecchi) {
+            unlistPost(p);
+        }
+        return vecchi.size();
+    }
+
+    /**
+     * Restituisce il numero di post su disco
+     * @return il numero di post nel livello freddo (0 se non è attivo)
+     */
+    public int getColdPostCount() {
+        return cold != null ? cold.size() : 0;
+    }
+
+    /**
+     * Restituisce i k utenti più menzionati nei post della rete (in memoria e su disco), da una
+     * classifica aggiornata ad ogni post aggiunto o rimosso: costa O(k), senza scorrere i post
+     * @param k numero massimo di utenti
+     * @return mappa utente -> numero di menzioni, dal più menzionato (a parità in ordine alfabetico)
+     */
+    public Map<String, Integer> mostMentioned(int k) {
+        return mentionRanking.top(k, false);
+    }
+
+    /**
+     * Restituisce i k utenti menzionati dal maggior numero di autori diversi (vedi mostMentioned)
+     * @param k numero massimo di utenti
+     * @return mappa utente -> numero di autori che lo menzionano, dal più alto (a parità in ordine alfabetico)
+     */
+    public Map<String, Integer> mostMentionedByAuthors(int k) {
+        return mentionRanking.top(k, true);
+    }
+
+    /**
+     * Attiva le caselle delle notifiche: da questo momento ogni post aggiunto viene consegnato agli
+     * utenti esistenti che menziona (non all'autore), nella loro casella di al più capacity notifiche
+     * (le più vecchie vengono sovrascritte). Consegna, lettura e cursore non prendono lock (vedi
+     * MentionInboxes): unreadMentions e markRead si possono chiamare senza il lock della rete.
+     * @param capacity notifiche tenute per utente
+     * @modifies this.inboxes
+     */
+    public void enableMentionInboxes(int capacity) {
+        if(inboxes == null) {
+            inboxes = new MentionInboxes(capacity, this::checkUser);
+        }
+    }
+
+    /**
+     * Restituisce le notifiche di menzione non ancora lette, dalla più vecchia
+     * @param user l'utente
+     * @param limit numero massimo di notifiche
+     * @return gli id dei post che menzionano user (i post eliminati nel frattempo restano nella casella)
+     * @throws UserNotFoundException se l'utente non esiste
+     * @throws IllegalStateException se le caselle non sono attive
+     */
+    public int[] unreadMentions(String user, int limit) throws UserNotFoundException {
+        MentionInboxes caselle = mentionInboxes();
+        if(!checkUser(user)) {
+            throw new UserNotFoundException();
+        }
+        return caselle.unread(user, limit);
+    }
+
+    /**
+     * Segna come lette le notifiche di menzione fino a quella del post indicato compresa
+     * (di solito l'ultimo id restituito da unreadMentions)
+     * @param user l'utente
+     * @param postId l'id del post
+     * @throws UserNotFoundException se l'utente non esiste
+     * @throws IllegalStateException se le caselle non sono attive
+     */
+    public void markRead(String user, int postId) throws UserNotFoundException {
+        MentionInboxes caselle = mentionInboxes();
+        if(!checkUser(user)) {
+            throw new UserNotFoundException();
+        }
+        caselle.markRead(user, postId);
+    }
+
+    /**
+     * Stima la memoria occupata dalle strutture della rete, a partire dal layout degli oggetti della
+     * JVM e da un campione di al più MemoryLayout.SAMPLE elementi per collezione (senza visitare
+     * tutto lo heap). Le stringhe sono contate per ogni riferimento: quelle condivise fra più
+     * strutture (per esempio lo stesso nome in followed e negli autori dei post) sono contate più volte.
+     * @return mappa struttura -> byte stimati (followed, ps, byTime, mentionsBy, mentionRanking, followersBy, postsBy, cold se attivo, positions dopo la prima eliminazione di un utente)
+     */
+    public Map<String, Long> memoryReport() {
+        Map<String, Long> report = new LinkedHashMap<>();
+        report.put("followed", followed.estimatedBytes() + MemoryLayout.sampled(followed.entrySet(), e -> {
+            Set<String> seguiti = e.getValue();
+            long n = MemoryLayout.string(e.getKey());
+            if(seguiti != null) {
+                n += ((PersistentSet<String>) seguiti).estimatedBytes() + MemoryLayout.sampled(seguiti, MemoryLayout::string);
+            }
+            return n;
+        }));
+        report.put("ps", ps.estimatedBytes() + MemoryLayout.sampled(ps, Post::estimatedBytes));
+        report.put("byTime", MemoryLayout.skipList(byTime.size()));
+        // le chiavi di mentionsBy sono gli autori dei post, già contati in ps
+        report.put("mentionsBy", MemoryLayout.hashMap(mentionsBy.size()) + MemoryLayout.sampled(mentionsBy.values(), StringCounter::estimatedBytes));
+        report.put("mentionRanking", mentionRanking.estimatedBytes());
+        // le chiavi di followersBy e postsBy sono nomi già contati in followed e ps
+        report.put("followersBy", MemoryLayout.hashMap(followersBy.size()) + MemoryLayout.sampled(followersBy.values(), StringCounter::tableBytes));
+        report.put("postsBy", MemoryLayout.hashMap(postsBy.size()) + MemoryLayout.sampled(postsBy.values(), l -> MemoryLayout.arrayList(l.size())));
+        if(cold != null) {
+            report.put("cold", cold.estimatedBytes());
+        }
+        if(duplicates != null) {
+            report.put("duplicates", duplicates.estimatedBytes());
+        }
+        if(positions != null) {
+            // le chiavi sono i post già contati in ps; i valori sono Integer
+            report.put("positions", MemoryLayout.identityHashMap(positions.size()) + positions.size() * MemoryLayout.object(0, 4));
+        }
+        if(inboxes != null) {
+            report.put("inboxes", inboxes.estimatedBytes());
+        }
+        return report;
+    }
+
+    /**
+     * Restituisce una vista immutabile della rete in questo istante (seguiti e post in memoria),
+     * in O(1): le interrogazioni lunghe fatte sullo snapshot non prendono lock e non bloccano
+     * chi scrive. Va chiamato sotto il read lock perché seguiti e post siano coerenti fra loro,
+     * ma il lock serve solo per la durata della chiamata.
+     * @return lo snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(followed, ps, PersistentMap.empty(), scan, followedVersion.get(), postsVersion.get(), 0);
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private DuplicateIndex duplicateIndex() {
+        if(duplicates == null) {
+            throw new IllegalStateException("Riconoscimento delle copie non attivo: chiamare enableDuplicateDetection()");
+        }
+        return duplicates;
+    }
+
+    /**
+     * Verifica se il riconoscimento delle copie è attivo
+     */
+    protected boolean isDuplicateDetectionEnabled() {
+        return duplicates != null;
+    }
+
+    /**
+     * Conta i duplicati recenti del post fermandosi a limit
+     * @throws IllegalStateException se il riconoscimento delle copie non è attivo
+     */
+    protected int countDuplicates(Post p, int limit) {
+        return duplicateIndex().countDuplicates(p, limit);
+    }
+
+    private ColdStorage coldStorage() {
+        if(cold == null) {
+            throw new IllegalStateException("Livello freddo non attivo: chiamare enableColdStorage()");
+        }
+        return cold;
+    }
+
+    /**
+     * Cerca un post nel livello freddo, leggendo solo i blocchi il cui intervallo di id lo contiene
+     * @param idpost l'id del post
+     * @return il post, o null se non è su disco (o il livello freddo non è attivo)
+     */
+    Post findColdPost(int idpost) {
+        return cold != null ? cold.find(idpost) : null;
+    }
+
+    /**
+     * Restituisce tutti i post del livello freddo (legge tutti i segmenti)
+     * @return i post su disco, vuota se il livello freddo non è attivo
+     */
+    List<Post> coldPosts() {
+        return cold != null ? cold.matching(p -> true) : new ArrayList<>();
+    }
+
+    /**
+     * Elimina un post dal livello freddo, se attivo, e aggiorna gli indici
+     * @param idpost l'id del post
+     * @return il post eliminato, o null se non era su disco
+     * @modifies this.cold, this.postsVersion, this.mentionsBy
+     */
+    protected Post deleteColdPost(int idpost) {
+        Post p = cold != null ? cold.delete(idpost) : null;
+        if(p != null) {
+            unindexPost(p);
+        }
+        return p;
+    }
+
+    /**
+     * Post con timestamp in [from, to) che soddisfano filter, in ordine di invio (disco compreso)
+     */
+    private List<Post> between(long from, long to, Predicate<Post> filter) {
+        List<Post> lista = cold != null && from < to ? cold.between(from, to, filter) : new ArrayList<>();
+        boolean freddi = !lista.isEmpty();
+        for(Post p : range(from, to)) {
+            if(filter.test(p)) {
+                lista.add(p);
+            }
+        }
+        if(freddi) { // un post aggiunto in ritardo può essere più vecchio di quelli su disco
+            lista.sort(Post.TIME_ORDER);
+        }
+        return lista;
+    }
 
+    private MentionInboxes mentionInboxes() {
+        MentionInboxes caselle = inboxes;
+        if(caselle == null) {
+            throw new IllegalStateException("Notifiche non attive: chiamare enableMentionInboxes()");
+        }
+        return caselle;
+    }
 
+    /**
+     * Usa caselle delle notifiche condivise con altre reti (le shard di ShardedSocialNetwork)
+     * @modifies this.inboxes
+     */
+    void setMentionInboxes(MentionInboxes caselle) {
+        inboxes = caselle;
+    }
 
     /**
-     * Costruttore della classe SocialNetwork.
+     * Usa interrogazioni permanenti condivise con altre reti (le shard di ShardedSocialNetwork)
+     * @modifies this.subscriptions
      */
-    public SocialNetwork() {
-        followed = new HashMap<>();
-        ps = new ArrayList<>();
+    void setKeywordSubscriptions(KeywordSubscriptions condivise) {
+        subscriptions = condivise;
     }
 
+    private TrendingTracker trendingTracker() {
+        if(trending == null) {
+            throw new IllegalStateException("Tendenze non attive: chiamare enableTrending()");
+        }
+        return trending;
+    }
 
     /**
-     * Restituisce la rete sociale derivata dalla lista di post (parametro del metodo)
-     * @param ps lista dei post
-     * @return rete utente-lista follower in base agli autori dei post
+     * Aggiorna gli indici dopo l'aggiunta di un post a ps
+     * @param p il post aggiunto
+     * @modifies this.byTime, this.trending, this.postsVersion, this.mentionsBy, this.postsBy, this.duplicates, this.inboxes, this.subscriptions
      */
-    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws UserNotFoundException {
-        Map<String, Set<String>> rs = new HashMap<>();
-
-        for(Post p : ps) {
-            rs.put(p.getAuthor(), getFollowers(p.getAuthor()));
+    protected void indexPost(Post p) {
+        postsVersion.incrementAndGet();
+        byTime.add(p);
+        List<Post> scritti = postsBy.computeIfAbsent(p.getAuthor(), a -> new ArrayList<>(4));
+        if(scritti.isEmpty() || Post.TIME_ORDER.compare(scritti.get(scritti.size() - 1), p) < 0) {
+            scritti.add(p);
+        } else { // post ricostruito con un timestamp già passato
+            int i = Collections.binarySearch(scritti, p, Post.TIME_ORDER);
+            scritti.add(i < 0 ? -i - 1 : i, p);
         }
+        countMentions(p, 1);
+        if(trending != null) {
+            trending.record(p);
+        }
+        if(duplicates != null) {
+            duplicates.add(p);
+        }
+        MentionInboxes caselle = inboxes;
+        if(caselle != null) {
+            caselle.deliver(p);
+        }
+        subscriptions.deliver(p);
+    }
 
-        return rs;
+    /**
+     * Aggiunge in blocco post ricostruiti altrove (vedi Post.restore) con una sola nuova versione di
+     * ps; non controlla gli autori e, in SafeSocialNetwork, non segnala le copie (lo fa il chiamante)
+     * @param batch i post da aggiungere, in ordine
+     * @modifies this.ps, this.byTime, this.trending, this.postsVersion, this.mentionsBy, this.duplicates
+     */
+    void restorePosts(List<Post> batch) {
+        PersistentVector<Post> prima = ps;
+        ps = prima.plusAll(batch);
+        trackAppended(prima, batch);
+        for(Post p : batch) {
+            indexPost(p);
+            publish(ChangeEventType.post_added, p.getAuthor(), null, p, null, null);
+        }
     }
 
     /**
-     * Restituisce gli utenti più influenti delle rete sociale,
-     * ovvero quelli che hanno un numero maggiore di “follower”
-     * @return lista degli utenti con maggior numero di follower
+     * Aggiorna gli indici dopo la rimozione di un post da ps
+     * @param p il post rimosso
+     * @modifies this.byTime, this.postsVersion, this.mentionsBy, this.postsBy, this.duplicates
      */
-    public List<String> influencers() throws EmptyFieldException {
-        List<String> lista = new ArrayList<>();
-        Map<String, Integer> u_f = new LinkedHashMap<>();
+    protected void unindexPost(Post p) {
+        postsVersion.incrementAndGet();
+        byTime.remove(p);
+        unlistPost(p);
+        countMentions(p, -1);
+        if(duplicates != null) {
+            duplicates.remove(p);
+        }
+    }
 
-        if(!ps.isEmpty()) {
-            for(Map.Entry<String, Set<String>> entry : followed.entrySet()) {
-                if(entry.getValue() != null) {
-                    for(String s : entry.getValue()) {
-                        if(!u_f.containsKey(s)) {
-                            u_f.put(s, 1);
-                        } else {
-                            u_f.put(s, u_f.get(s)+1);
-                        }
-                    }
+    /**
+     * Conta, per ogni candidato, quanti dei seguiti di username presenti in questa rete lo seguono
+     * (visita a due passi limitata da RECOMMEND_MAX_FANOUT e RECOMMEND_MAX_VISITS)
+     * @param username l'utente a cui suggerire chi seguire (escluso dai candidati)
+     * @param seguiti gli utenti seguiti da username (esclusi dai candidati)
+     * @return i contatori dei candidati
+     */
+    StringCounter twoHopCounts(String username, Set<String> seguiti) {
+        StringCounter candidati = new StringCounter(Math.min(seguiti.size() * 16, RECOMMEND_MAX_VISITS));
+        int visite = 0;
+        for(String f : seguiti) {
+            Set<String> secondi = followed.get(f);
+            if(secondi == null) {
+                continue;
+            }
+            int letti = 0;
+            for(String c : secondi) {
+                if(letti++ == RECOMMEND_MAX_FANOUT || visite++ == RECOMMEND_MAX_VISITS) {
+                    break;
+                }
+                if(!c.equals(username) && !seguiti.contains(c)) {
+                    candidati.add(c, 1);
                 }
             }
-
-            u_f = u_f
-                    .entrySet()
-                    .stream()
-                    .sorted(reverseOrder(comparingByValue()))
-                    .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e2, LinkedHashMap::new));
-
-            for(Map.Entry<String, Integer> entry : u_f.entrySet()) {
-                lista.add(entry.getKey());
+            if(visite > RECOMMEND_MAX_VISITS) {
+                break;
             }
-
-            return lista;
-        } else {
-            throw new EmptyFieldException();
         }
+        return candidati;
     }
 
     /**
-     * Restituisce l’insieme degli utenti menzionati (inclusi) nei post presenti nella rete sociale
-     * @return lista degli utenti menzionati
+     * Toglie da ps i post dati (tutti in ps) per posizione, lasciando dei buchi: costa O(k log n)
+     * per k post invece di una scansione di ps. ps viene compattata quando i buchi superano i
+     * post rimasti, per cui la compattazione costa O(1) ammortizzato per post tolto.
+     * @param posts i post da togliere
+     * @return la nuova versione di ps
+     * @modifies this.positions, this.positioned
      */
-    public Set<String> getMentionedUsers() {
-        // minimo MIN_USERNAME_LENGTH caratteri - massimo MAX_USERNAME_LENGTH caratteri
-        Pattern pattern = Pattern.compile(REGEX_CHECK_MENTION, Pattern.CASE_INSENSITIVE);
-        Matcher matcher;
-
-        Set<String> utenti = new HashSet<>();
-        for(Post p : ps) {
-            matcher = pattern.matcher(p.getText());
-            while(matcher.find()) {
-                utenti.add(matcher.group().replace(PREFIX_CHECK_MENTION, "") + " [nel post di " + p.getAuthor() + "]");
+    private PersistentVector<Post> withoutPosts(List<Post> posts) {
+        PersistentVector<Post> v = ps;
+        if(positioned != v) {
+            v = reposition(v);
+        }
+        for(Post p : posts) {
+            Integer slot = positions.remove(p);
+            if(slot == null || v.slotAt(slot) != p) {
+                // indice non allineato: una sola scansione per tutti i post
+                Set<Post> suoi = Collections.newSetFromMap(new IdentityHashMap<>());
+                suoi.addAll(posts);
+                positions = null;
+                positioned = null;
+                return ps.minusIf(suoi::contains);
             }
+            v = v.minusAt(slot);
+        }
+        if(v.slots() - v.size() > v.size()) {
+            v = reposition(v);
         }
+        positioned = v;
+        return v;
+    }
 
-        return utenti;
+    /**
+     * Compatta v e ricostruisce positions sulla versione compattata
+     * @return la versione compattata
+     * @modifies this.positions
+     */
+    private PersistentVector<Post> reposition(PersistentVector<Post> v) {
+        PersistentVector<Post> compatta = v.compact();
+        positions = new IdentityHashMap<>(compatta.size());
+        int[] slot = {0};
+        compatta.forEach(p -> positions.put(p, slot[0]++));
+        return compatta;
     }
 
     /**
-     * Restituisce l’insieme degli utenti menzionati (inclusi) nella lista di post
-     * @param ps lista dei post
-     * @return lista degli utenti menzionati nei post dentro la lista "ps"
+     * Aggiorna positions dopo che i post aggiunti sono stati messi in fondo a prima (se positions
+     * descriveva prima; altrimenti verrà ricostruita alla prossima eliminazione)
+     * @modifies this.positions, this.positioned
      */
-    public Set<String> getMentionedUsers(List<Post> ps) {
-        // minimo MIN_USERNAME_LENGTH caratteri - massimo MAX_USERNAME_LENGTH caratteri
-        Pattern pattern = Pattern.compile(REGEX_CHECK_MENTION, Pattern.CASE_INSENSITIVE);
-        Matcher matcher;
+    private void trackAppended(PersistentVector<Post> prima, List<Post> aggiunti) {
+        if(positions == null || positioned != prima) {
+            return;
+        }
+        int slot = prima.slots();
+        for(Post p : aggiunti) {
+            positions.put(p, slot++);
+        }
+        positioned = ps;
+    }
 
-        Set<String> utenti = new HashSet<>();
-        for(Post p : this.ps) {
-            matcher = pattern.matcher(p.getText());
-            while(matcher.find()) {
-                utenti.add(matcher.group().replace(PREFIX_CHECK_MENTION, "") + " [nel post di " + p.getAuthor() + "]");
+    /**
+     * Rimuove gli utenti (tutti esistenti) con i loro seguiti, i loro follower e i loro post
+     * @param utenti gli utenti da rimuovere
+     * @return i post rimossi, in memoria e su disco
+     * @modifies this.followed, this.ps, this.byTime, this.cold, this.mentionsBy, this.followersBy, this.postsBy
+     */
+    protected List<Post> purgeUsers(Set<String> utenti) {
+        Set<Post> suoi = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(String u : utenti) {
+            List<Post> scritti = postsBy.remove(u); // tolte subito: unindexPost non deve scorrerle post per post
+            if(scritti != null) {
+                suoi.addAll(scritti);
+            }
+        }
+        List<Post> rimossi = new ArrayList<>(suoi);
+        if(!suoi.isEmpty()) {
+            ps = withoutPosts(rimossi);
+            for(Post p : rimossi) {
+                unindexPost(p);
+            }
+        }
+        if(cold != null) {
+            for(String u : utenti) {
+                for(Post p : cold.writtenBy(u)) {
+                    rimossi.add(deleteColdPost(p.getId()));
+                }
             }
         }
 
-        return utenti;
+        unfollowAll(utenti);
+        PersistentMap<String, Set<String>> f = followed;
+        for(String u : utenti) {
+            countFollows(u, f.get(u), -1);
+            f = f.minus(u);
+            mentionsBy.remove(u);
+            if(inboxes != null) {
+                inboxes.remove(u);
+            }
+        }
+        followed = f;
+        followedVersion.incrementAndGet();
+        return rimossi;
     }
 
     /**
-     * Restituisce la lista dei post effettuati dall’utente nella rete sociale
-     * il cui nome è dato dal parametro username
-     * @param username nome utente
-     * @return lista di tutti i post dell'utente "username"
+     * Fa smettere a tutti gli utenti di questa rete di seguire gli utenti indicati (che possono
+     * anche non esistere qui), in tempo proporzionale al numero dei loro follower
+     * @param utenti gli utenti da non seguire più
+     * @modifies this.followed, this.followersBy
      */
-    public List<Post> writtenBy(String username) {
-        List<Post> lista = new ArrayList<>();
-        for(Post p : ps) {
-            if(p.getAuthor().equals(username)) {
-                lista.add(p);
+    void unfollowAll(Collection<String> utenti) {
+        PersistentMap<String, Set<String>> f = followed;
+        for(String u : utenti) {
+            StringCounter chi = followersBy.remove(u);
+            if(chi == null) {
+                continue;
+            }
+            for(int i = 0; i < chi.capacity(); i++) {
+                String follower = chi.keyAt(i);
+                if(follower != null && chi.countAt(i) > 0) {
+                    f = f.plus(follower, PersistentSet.copyOf(f.get(follower)).minus(u));
+                    publish(ChangeEventType.follower_removed, follower, u, null, null, null);
+                }
             }
         }
+        if(f != followed) {
+            followed = f;
+            followedVersion.incrementAndGet();
+        }
+    }
 
-        return lista;
+    /**
+     * Aggiorna l'indice inverso dei seguiti
+     * @param user l'utente che segue (delta +1) o smette di seguire (delta -1) gli utenti indicati
+     * @param seguiti gli utenti seguiti (null = nessuno)
+     */
+    private void countFollows(String user, Set<String> seguiti, int delta) {
+        if(seguiti == null) {
+            return;
+        }
+        for(String s : seguiti) {
+            StringCounter chi = delta > 0 ? followersBy.computeIfAbsent(s, k -> new StringCounter(4)) : followersBy.get(s);
+            if(chi != null) {
+                chi.add(user, delta);
+            }
+        }
     }
 
     /**
-     * Restituisce la lista dei post effettuati dall’utente il cui nome è dato
-     * dal parametro username presenti nella lista ps
-     * @param ps lista dei post
-     * @param username nome utente
-     * @return lista dei post scritti da username dentro la lista "ps"
+     * Toglie un post dalla lista del suo autore in postsBy (se c'è)
      */
-    public List<Post> writtenBy(List<Post> ps, String username) {
-        List<Post> lista = new ArrayList<>();
-        for(Post p : ps) {
-            if(p.getAuthor().equals(username)) {
-                lista.add(p);
+    private void unlistPost(Post p) {
+        List<Post> scritti = postsBy.get(p.getAuthor());
+        if(scritti != null && scritti.remove(p) && scritti.isEmpty()) {
+            postsBy.remove(p.getAuthor());
+        }
+    }
+
+    /**
+     * Restituisce i conteggi della classifica dei menzionati per gli utenti indicati
+     * @param utenti gli utenti
+     * @param byAuthors true per gli autori diversi, false per le menzioni
+     * @return mappa utente -> conteggio (solo gli utenti con conteggio > 0)
+     */
+    Map<String, Integer> mentionedCounts(Collection<String> utenti, boolean byAuthors) {
+        Map<String, Integer> conteggi = new HashMap<>();
+        for(String u : utenti) {
+            int n = mentionRanking.count(u, byAuthors);
+            if(n > 0) {
+                conteggi.put(u, n);
             }
         }
+        return conteggi;
+    }
 
-        return lista;
+    /**
+     * Restituisce il numero di menzioni di mentioned nei post di author presenti in questa rete
+     */
+    int mentionCount(String author, String mentioned) {
+        StringCounter menzioni = mentionsBy.get(author);
+        return menzioni != null ? menzioni.get(mentioned) : 0;
     }
 
     /**
-     * Restituisce la lista dei post presenti nella rete sociale che includono almeno una
-     * delle parole presenti nella lista delle parole argomento del metodo
-     * @param words lista di stringhe (parole)
-     * @return lista dei post che contengono almeno una delle parole in "words"
+     * Sceglie i k candidati con il punteggio più alto con un heap di dimensione k
+     * @param candidati i candidati con il numero di amici in comune
+     * @param k numero massimo di candidati restituiti
+     * @param score punteggio di un candidato dato il numero di amici in comune (negativo = scartato)
+     * @return i migliori candidati, dal punteggio più alto (a parità, in ordine alfabetico)
      */
-    public List<Post> containing(List<String> words) {
-        List<Post> lista = new ArrayList<>();
-        for(Post p : ps) {
-            for(String s : words) {
-                if(p.getText().toLowerCase().contains(s.toLowerCase())) {
-                    lista.add(p);
-                    break;
+    static List<String> bestCandidates(StringCounter candidati, int k, ToLongBiFunction<String, Integer> score) {
+        // in testa il peggiore: punteggio minore, poi nome maggiore
+        PriorityQueue<Map.Entry<String, Long>> migliori = new PriorityQueue<>(k + 1, (e1, e2) -> {
+            int c = Long.compare(e1.getValue(), e2.getValue());
+            return c != 0 ? c : e2.getKey().compareTo(e1.getKey());
+        });
+        for(int i = 0; i < candidati.capacity(); i++) {
+            String c = candidati.keyAt(i);
+            if(c == null) {
+                continue;
+            }
+            long punteggio = score.applyAsLong(c, candidati.countAt(i));
+            if(punteggio >= 0) {
+                migliori.add(new AbstractMap.SimpleEntry<>(c, punteggio));
+                if(migliori.size() > k) {
+                    migliori.poll();
                 }
             }
         }
 
+        List<String> lista = new ArrayList<>(migliori.size());
+        while(!migliori.isEmpty()) {
+            lista.add(migliori.poll().getKey());
+        }
+        Collections.reverse(lista);
         return lista;
     }
 
+    /**
+     * Aggiorna il grafo delle menzioni con le menzioni di un post
+     * @param p il post
+     * @param delta +1 se il post è stato aggiunto, -1 se è stato rimosso
+     */
+    private void countMentions(Post p, int delta) {
+        String text = p.getText();
+        long m = MentionScanner.find(text, 0);
+        if(m == MentionScanner.NOT_FOUND) {
+            return;
+        }
+        StringCounter menzioni = mentionsBy.computeIfAbsent(p.getAuthor(), a -> new StringCounter(8));
+        while(m != MentionScanner.NOT_FOUND) {
+            String menzionato = text.substring(MentionScanner.start(m), MentionScanner.end(m));
+            int n = menzioni.add(menzionato, delta);
+            // l'autore conta fra quelli che menzionano l'utente finché ha almeno una menzione
+            mentionRanking.add(menzionato, delta, delta > 0 && n == delta ? 1 : delta < 0 && n == 0 ? -1 : 0);
+            m = MentionScanner.find(text, MentionScanner.end(m));
+        }
+    }
 
-    // ------------------------------
-    // METODI PRIVATI/PROTETTI
-    // ------------------------------
+    /**
+     * Restituisce la vista dei post con timestamp in [from, to), in O(log n)
+     */
+    private NavigableSet<Post> range(long from, long to) {
+        if(from >= to) {
+            return Collections.emptyNavigableSet();
+        }
+        return byTime.subSet(Post.probe(from, Integer.MIN_VALUE), true, Post.probe(to, Integer.MIN_VALUE), false);
+    }
 
     /**
      * Verifica che l'username esista nella mappa degli utenti
@@ -228,7 +1215,7 @@ public class SocialNetwork implements SocialNetworkInterface {
      * @return true se il post compare nella lista, false altrimenti
      */
     protected boolean checkPost(Post post) {
-        return ps.contains(post);
+        return ps.contains(post) || (cold != null && cold.contains(post));
     }
 
     /**
@@ -242,7 +1229,68 @@ public class SocialNetwork implements SocialNetworkInterface {
                 return true;
             }
         }
-        return false;
+        return cold != null && cold.find(idpost) != null;
+    }
+
+    /**
+     * Unisce due risultati parziali di una scansione mantenendo l'ordine
+     */
+    private static List<Post> concat(List<Post> l1, List<Post> l2) {
+        l1.addAll(l2);
+        return l1;
+    }
+
+    /**
+     * Indica se p segue il cursore after nell'ordine (timestamp, id) (le copie dello stesso post no)
+     */
+    private static boolean follows(Post p, Post after) {
+        int c = Long.compare(p.getTimestamp(), after.getTimestamp());
+        return c > 0 || c == 0 && p.getId() > after.getId();
+    }
+
+    /**
+     * Restituisce la posizione del primo post della lista (in ordine di (timestamp, id)) che segue after
+     */
+    private static int firstAfter(List<Post> lista, Post after) {
+        int lo = 0;
+        int hi = lista.size();
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(follows(lista.get(mid), after)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Pubblica una modifica sul bus degli eventi, se presente
+     */
+    protected void publish(ChangeEventType type, String user, String target, Post post, ReportReason reason, String text) {
+        if(events != null) {
+            events.publish(type, user, target, post, reason, text);
+        }
+    }
+
+    /**
+     * Restituisce il post con l'id specificato
+     * @param idpost l'id del post da cercare
+     * @return il post con id idpost
+     * @throws PostNotFoundException se il post non compare nella lista
+     */
+    protected Post getPost(int idpost) throws PostNotFoundException {
+        for(Post p : ps) {
+            if(p.getId() == idpost) {
+                return p;
+            }
+        }
+        Post p = cold != null ? cold.find(idpost) : null;
+        if(p != null) {
+            return p;
+        }
+        throw new PostNotFoundException();
     }
 
     /**
@@ -252,26 +1300,103 @@ public class SocialNetwork implements SocialNetworkInterface {
      * @throws UserNotFoundException se l'utente specificato non esiste
      */
     private Set<String> getFollowers(String username) throws UserNotFoundException {
-        Set<String> followers = new HashSet<>();
-
         if(checkUser(username)) {
-            for(Map.Entry<String, Set<String>> entry : followed.entrySet()) {
-                if(entry.getValue() != null) {
-                    for(String s : entry.getValue()) {
-                        if(s.equals(username)) {
-                            followers.add(entry.getKey());
-                            break;
-                        }
-                    }
-                }
-            }
+            return followersOf(username);
         } else {
             throw new UserNotFoundException();
         }
+    }
+
+    /**
+     * Restituisce gli utenti di questa rete che seguono username (senza verificare che esista)
+     * @param username l'username di cui vedere i follower
+     * @return set di stringhe contenente i nomi dei follower di username
+     */
+    Set<String> followersOf(String username) {
+        Set<String> followers = new HashSet<>();
+        StringCounter chi = followersBy.get(username);
+        if(chi != null) {
+            for(int i = 0; i < chi.capacity(); i++) {
+                if(chi.keyAt(i) != null && chi.countAt(i) > 0) {
+                    followers.add(chi.keyAt(i));
+                }
+            }
+        }
 
         return followers;
     }
 
+    /**
+     * Conta i follower di ogni utente seguito da almeno un utente di questa rete
+     * @return mappa utente -> numero di follower
+     */
+    Map<String, Integer> followerCounts() {
+        return countFollowers(followed);
+    }
+
+    /**
+     * Conta i follower di ogni utente seguito da almeno un utente della mappa dei seguiti
+     * @param followed utente -> insieme dei suoi seguiti
+     * @return mappa utente -> numero di follower
+     */
+    static Map<String, Integer> countFollowers(Map<String, Set<String>> followed) {
+        Map<String, Integer> u_f = new LinkedHashMap<>();
+        for(Map.Entry<String, Set<String>> entry : followed.entrySet()) {
+            if(entry.getValue() != null) {
+                for(String s : entry.getValue()) {
+                    u_f.merge(s, 1, Integer::sum);
+                }
+            }
+        }
+
+        return u_f;
+    }
+
+    /**
+     * Ordina gli utenti per numero di follower, dal più seguito
+     * @param u_f mappa utente -> numero di follower
+     * @return lista degli utenti
+     */
+    static List<String> byFollowers(Map<String, Integer> u_f) {
+        List<String> lista = new ArrayList<>();
+        Map<String, Integer> ordinati = u_f
+                .entrySet()
+                .stream()
+                .sorted(reverseOrder(comparingByValue()))
+                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e2, LinkedHashMap::new));
+
+        for(Map.Entry<String, Integer> entry : ordinati.entrySet()) {
+            lista.add(entry.getKey());
+        }
+
+        return lista;
+    }
+
+    /**
+     * Restituisce gli utenti menzionati nella lista di post, ognuno con l'autore del post
+     * @param ps lista dei post
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return insieme degli utenti menzionati
+     */
+    static Set<String> mentionedUsers(List<Post> ps, ParallelScan mode) {
+        // minimo MIN_USERNAME_LENGTH caratteri - massimo MAX_USERNAME_LENGTH caratteri
+        return mode.scan(ps, HashSet::new, (utenti, p) -> {
+            String text = p.getText();
+            long m = MentionScanner.find(text, 0);
+            while(m != MentionScanner.NOT_FOUND) {
+                utenti.add(text.substring(MentionScanner.start(m), MentionScanner.end(m)) + " [nel post di " + p.getAuthor() + "]");
+                m = MentionScanner.find(text, MentionScanner.end(m));
+            }
+        }, (u1, u2) -> {
+            if(u1.size() < u2.size()) {
+                u2.addAll(u1);
+                return u2;
+            }
+            u1.addAll(u2);
+            return u1;
+        });
+    }
+
     /**
      * Restituisce i nomi degli utenti seguiti da username
      * @param username l'utente di cui vedere i seguiti
@@ -296,7 +1421,7 @@ public class SocialNetwork implements SocialNetworkInterface {
      * @param username l'utente a cui viene aggiunto l'username da seguire
      * @param follower l'utente seguito da username
      * @throws UserNotFoundException se il parametro username non esiste
-     * @modifies this.followed
+     * @modifies this.followed, this.followersBy
      * @effects if followed.get(username) == null then
      *              this.followed = pre(this.followed) U {Set<username, follower>}
      *          else
@@ -304,15 +1429,13 @@ public class SocialNetwork implements SocialNetworkInterface {
      */
     public void addFollower(String username, String follower) throws UserNotFoundException {
         if(checkUser(username)) {
-            if(followed.get(username) == null) {
-                Set<String> set = new HashSet<>();
-                set.add(follower);
-                followed.put(username, set);
-            } else {
-                Set<String> followers = followed.get(username);
-                followers.add(follower);
-                followed.put(username, followers);
+            Set<String> followers = followed.get(username);
+            if(followers == null || !followers.contains(follower)) {
+                countFollows(username, Collections.singleton(follower), 1);
             }
+            followed = followed.plus(username, PersistentSet.copyOf(followers).plus(follower));
+            followedVersion.incrementAndGet();
+            publish(ChangeEventType.follower_added, username, follower, null, null, null);
         } else {
             throw new UserNotFoundException();
         }
@@ -323,16 +1446,18 @@ public class SocialNetwork implements SocialNetworkInterface {
      * @param username l'utente a cui viene rimosso l'username seguito
      * @param follower l'utente seguito da username
      * @throws UserNotFoundException se il parametro username non esiste
-     * @modifies this.followed
+     * @modifies this.followed, this.followersBy
      * @effects if followed.get(username) != null then
      *              this.followed = pre(this.followed.get(username).remove(follower))
      */
     public void removeFollower(String username, String follower) throws UserNotFoundException {
         if(checkUser(username)) {
-            if(followed.get(username) != null) {
-                Set<String> followers = followed.get(username);
-                followers.remove(follower);
-                followed.put(username, followers);
+            Set<String> followers = followed.get(username);
+            if(followers != null && followers.contains(follower)) {
+                countFollows(username, Collections.singleton(follower), -1);
+                followed = followed.plus(username, PersistentSet.copyOf(followers).minus(follower));
+                followedVersion.incrementAndGet();
+                publish(ChangeEventType.follower_removed, username, follower, null, null, null);
             }
         } else {
             throw new UserNotFoundException();
@@ -343,33 +1468,163 @@ public class SocialNetwork implements SocialNetworkInterface {
      * Inizializza un utente
      * @param username il nome dell'utente da creare
      * @param set il set di persone che username segue
-     * @modifies this.followed
+     * @modifies this.followed, this.followersBy
      * @effects this.followed = pre(this.followed) U {username, followers}
      */
     public void initializeUser(String username, Set<String> set) throws InvalidUsernameException {
         if(validateUsername(username)) {
-            followed.put(username, set);
+            countFollows(username, followed.get(username), -1);
+            countFollows(username, set, 1);
+            followed = followed.plus(username, set != null ? PersistentSet.copyOf(set) : null); // copia: set resta del chiamante
+            followedVersion.incrementAndGet();
+            publish(ChangeEventType.user_initialized, username, null, null, null, null);
+            if(set != null) {
+                for(String s : set) { // i seguiti iniziali, perché chi legge il bus possa ricostruire followed
+                    publish(ChangeEventType.follower_added, username, s, null, null, null);
+                }
+            }
         }
     }
 
     /**
      * Aggiunge un post alla lista.
      * @param p il post da aggiungere
-     * @modifies this.ps
+     * @modifies this.ps, this.byTime
      * @effects this.ps = pre(this.ps) U {p}
      */
     public void addPost(Post p) {
-        ps.add(p);
+        PersistentVector<Post> prima = ps;
+        ps = prima.plus(p);
+        trackAppended(prima, List.of(p));
+        indexPost(p);
+        publish(ChangeEventType.post_added, p.getAuthor(), null, p, null, null);
     }
 
     /**
      * Elimina un post dalla lista.
      * @param p il post da rimuovere
-     * @modifies this.ps
+     * @modifies this.ps, this.byTime
      * @effects this.ps = pre(this.ps) \ {p}
      */
     public void deletePost(Post p) {
-        ps.remove(p);
+        PersistentVector<Post> senza = ps.minus(p);
+        if(senza != ps) {
+            ps = senza;
+            unindexPost(p);
+            publish(ChangeEventType.post_deleted, p.getAuthor(), null, p, null, null);
+        } else if(cold != null && cold.contains(p)) {
+            deleteColdPost(p.getId());
+            publish(ChangeEventType.post_deleted, p.getAuthor(), null, p, null, null);
+        }
+    }
+
+    /**
+     * Elimina un utente con i suoi seguiti, i suoi follower (gli altri smettono di seguirlo) e i
+     * suoi post, in memoria e su disco, in tempo proporzionale a quanto l'utente occupa nella rete
+     * (vedi deleteUsers). Le sue menzioni nei post degli altri restano.
+     * @param username l'utente da eliminare
+     * @throws UserNotFoundException se l'utente non esiste
+     * @modifies this.followed, this.ps, this.byTime, this.cold, this.mentionsBy, this.followersBy, this.postsBy
+     */
+    public void deleteUser(String username) throws UserNotFoundException {
+        if(!checkUser(username)) {
+            throw new UserNotFoundException();
+        }
+        deleteUsers(Collections.singleton(username));
+    }
+
+    /**
+     * Elimina più utenti in un solo passaggio (per esempio una rete di bot), come deleteUser: i
+     * follower e i post da rimuovere si trovano negli indici followersBy e postsBy, e i post in
+     * memoria escono da ps con un'unica nuova versione. Vengono pubblicati follower_removed per i
+     * follower degli utenti, post_deleted per i loro post e user_deleted per ogni utente.
+     * @param usernames gli utenti da eliminare (quelli che non esistono vengono ignorati)
+     * @return il numero di utenti eliminati
+     * @modifies this.followed, this.ps, this.byTime, this.cold, this.mentionsBy, this.followersBy, this.postsBy
+     */
+    public int deleteUsers(Collection<String> usernames) {
+        Set<String> utenti = new HashSet<>();
+        for(String u : usernames) {
+            if(checkUser(u)) {
+                utenti.add(u);
+            }
+        }
+        if(utenti.isEmpty()) {
+            return 0;
+        }
+        for(Post p : purgeUsers(utenti)) {
+            publish(ChangeEventType.post_deleted, p.getAuthor(), null, p, null, null);
+        }
+        for(String u : utenti) {
+            publish(ChangeEventType.user_deleted, u, null, null, null, null);
+        }
+        return utenti.size();
+    }
+
+    /**
+     * Imposta il bus su cui pubblicare le modifiche della rete (null per disattivarlo).
+     * Le modifiche vanno serializzate: il bus accetta un solo produttore alla volta.
+     * @param bus il bus degli eventi
+     * @modifies this.events
+     */
+    public void setEventBus(ChangeEventBus bus) {
+        this.events = bus;
+    }
+
+    /**
+     * Restituisce il bus su cui vengono pubblicate le modifiche
+     * @return il bus degli eventi (null se non impostato)
+     */
+    public ChangeEventBus getEventBus() {
+        return events;
+    }
+
+    /**
+     * Restituisce la versione degli utenti e delle relazioni di follow: cambia ad ogni
+     * modifica di followed (aggiunta di utenti, follower aggiunti o rimossi)
+     * @return la versione corrente di followed
+     */
+    public long getFollowedVersion() {
+        return followedVersion.get();
+    }
+
+    /**
+     * Restituisce la versione della lista dei post: cambia ad ogni post aggiunto o rimosso
+     * @return la versione corrente di ps
+     */
+    public long getPostsVersion() {
+        return postsVersion.get();
+    }
+
+    /**
+     * Imposta la modalità di scansione usata dalle interrogazioni su liste di post
+     * (writtenBy, containing, getMentionedUsers e guessFollowers) quando non è indicata nella chiamata
+     * @param mode la modalità di scansione (ParallelScan.SEQUENTIAL, ParallelScan.PARALLEL o personalizzata)
+     * @modifies this.scan
+     */
+    public void setParallelScan(ParallelScan mode) {
+        if(mode == null) {
+            throw new NullPointerException();
+        }
+        scan = mode;
+    }
+
+    /**
+     * Restituisce la modalità di scansione delle interrogazioni su liste di post
+     * @return la modalità di scansione
+     */
+    public ParallelScan getParallelScan() {
+        return scan;
+    }
+
+    /**
+     * Restituisce il lock che i chiamanti concorrenti devono usare per accedere alla rete:
+     * read lock per le interrogazioni, write lock per le modifiche.
+     * I metodi della rete non lo acquisiscono da soli.
+     * @return il lock di lettura/scrittura della rete
+     */
+    public ReadWriteLock getLock() {
+        return lock;
     }
 
     /**
@@ -397,9 +1652,7 @@ public class SocialNetwork implements SocialNetworkInterface {
         if(username.length() < MIN_USERNAME_LENGTH || username.length() > MAX_USERNAME_LENGTH) {
             throw new InvalidUsernameException();
         } else {
-            Pattern pattern = Pattern.compile("[A-Za-z0-9_.]+", Pattern.CASE_INSENSITIVE);
-
-            return pattern.matcher(username).matches();
+            return MentionScanner.isValidUsername(username);
         }
     }
 }
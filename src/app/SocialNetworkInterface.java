@@ -6,6 +6,7 @@ import exception.UserNotFoundException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 // Leonardo Pantani | Java project for PR2 course at UNIPI
 
@@ -17,6 +18,14 @@ public interface SocialNetworkInterface {
      */
     Map<String, Set<String>> guessFollowers(List<Post> ps) throws UserNotFoundException;
 
+    /**
+     * Restituisce la rete sociale derivata dalla lista di post, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return rete utente-lista follower in base agli autori dei post
+     */
+    Map<String, Set<String>> guessFollowers(List<Post> ps, ParallelScan mode) throws UserNotFoundException;
+
     /**
      * Restituisce gli utenti più influenti delle rete sociale,
      * ovvero quelli che hanno un numero maggiore di “follower”
@@ -24,6 +33,35 @@ public interface SocialNetworkInterface {
      */
     List<String> influencers() throws EmptyFieldException;
 
+    /**
+     * Suggerisce chi seguire fra gli amici degli amici, per numero di seguiti che seguono il candidato
+     * pesato con le menzioni reciproche
+     * @param username nome utente
+     * @param k numero massimo di utenti suggeriti
+     * @return lista di al più k utenti, dal punteggio più alto
+     */
+    List<String> recommendFollows(String username, int k) throws UserNotFoundException;
+
+    /**
+     * Restituisce i k utenti più menzionati nei post della rete, con il numero di menzioni
+     * @param k numero massimo di utenti
+     * @return mappa utente -> numero di menzioni, dal più menzionato
+     */
+    Map<String, Integer> mostMentioned(int k);
+
+    /**
+     * Restituisce i k utenti menzionati dal maggior numero di autori diversi
+     * @param k numero massimo di utenti
+     * @return mappa utente -> numero di autori che lo menzionano, dal più alto
+     */
+    Map<String, Integer> mostMentionedByAuthors(int k);
+
+    /**
+     * Stima la memoria occupata dalle strutture della rete (con un campione degli elementi)
+     * @return mappa struttura -> byte stimati
+     */
+    Map<String, Long> memoryReport();
+
     /**
      * Restituisce l’insieme degli utenti menzionati (inclusi) nei post presenti nella rete sociale
      * @return lista degli utenti menzionati
@@ -37,6 +75,14 @@ public interface SocialNetworkInterface {
      */
     Set<String> getMentionedUsers(List<Post> ps);
 
+    /**
+     * Restituisce l’insieme degli utenti menzionati nella lista di post, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista degli utenti menzionati nei post dentro la lista "ps"
+     */
+    Set<String> getMentionedUsers(List<Post> ps, ParallelScan mode);
+
     /**
      * Restituisce la lista dei post effettuati dall’utente nella rete sociale
      * il cui nome è dato dal parametro username
@@ -54,6 +100,15 @@ public interface SocialNetworkInterface {
      */
     List<Post> writtenBy(List<Post> ps, String username);
 
+    /**
+     * Restituisce la lista dei post di username presenti nella lista ps, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param username nome utente
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista dei post scritti da username dentro la lista "ps", nello stesso ordine
+     */
+    List<Post> writtenBy(List<Post> ps, String username, ParallelScan mode);
+
     /**
      * Restituisce la lista dei post presenti nella rete sociale che includono almeno una
      * delle parole presenti nella lista delle parole argomento del metodo
@@ -61,4 +116,93 @@ public interface SocialNetworkInterface {
      * @return lista dei post che contengono almeno una delle parole in "words"
      */
     List<Post> containing(List<String> words);
+
+    /**
+     * Restituisce la lista dei post presenti nella lista ps che includono almeno una
+     * delle parole presenti nella lista delle parole argomento del metodo
+     * @param ps lista dei post
+     * @param words lista di stringhe (parole)
+     * @return lista dei post dentro la lista "ps" che contengono almeno una delle parole in "words"
+     */
+    List<Post> containing(List<Post> ps, List<String> words);
+
+    /**
+     * Restituisce la lista dei post presenti nella lista ps che includono almeno una
+     * delle parole, con la modalità di scansione indicata
+     * @param ps lista dei post
+     * @param words lista di stringhe (parole)
+     * @param mode modalità di scansione (sequenziale o parallela)
+     * @return lista dei post dentro la lista "ps" che contengono almeno una delle parole in "words", nello stesso ordine
+     */
+    List<Post> containing(List<Post> ps, List<String> words, ParallelScan mode);
+
+    /**
+     * Restituisce uno stream lazy dei post effettuati dall’utente nella rete sociale,
+     * valutato solo quando (e quanto) viene consumato
+     * @param username nome utente
+     * @return stream dei post dell'utente "username"
+     */
+    Stream<Post> writtenByStream(String username);
+
+    /**
+     * Restituisce al massimo limit post effettuati dall’utente nella rete sociale
+     * successivi al post after, in ordine di (timestamp, id) (cursore per la paginazione)
+     * @param username nome utente
+     * @param after l'ultimo post già visto (null per iniziare dal primo)
+     * @param limit numero massimo di post restituiti
+     * @return pagina dei post dell'utente "username" successivi ad after
+     */
+    List<Post> writtenBy(String username, Post after, int limit);
+
+    /**
+     * Restituisce uno stream lazy dei post presenti nella rete sociale che includono almeno una
+     * delle parole presenti nella lista, valutato solo quando (e quanto) viene consumato
+     * @param words lista di stringhe (parole)
+     * @return stream dei post che contengono almeno una delle parole in "words"
+     */
+    Stream<Post> containingStream(List<String> words);
+
+    /**
+     * Restituisce al massimo limit post che includono almeno una delle parole presenti
+     * nella lista successivi al post after, in ordine di (timestamp, id) (cursore per la paginazione)
+     * @param words lista di stringhe (parole)
+     * @param after l'ultimo post già visto (null per iniziare dal primo)
+     * @param limit numero massimo di post restituiti
+     * @return pagina dei post che contengono almeno una delle parole in "words" successivi ad after
+     */
+    List<Post> containing(List<String> words, Post after, int limit);
+
+    /**
+     * Restituisce i post della rete sociale inviati nell'intervallo [from, to), in ordine di invio
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post inviati fra from e to
+     */
+    List<Post> postsBetween(long from, long to);
+
+    /**
+     * Restituisce gli n post più recenti della rete sociale, dal più recente
+     * @param n numero massimo di post restituiti
+     * @return lista degli n post più recenti
+     */
+    List<Post> latest(int n);
+
+    /**
+     * Restituisce i post effettuati dall’utente username nell'intervallo [from, to), in ordine di invio
+     * @param username nome utente
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post di "username" inviati fra from e to
+     */
+    List<Post> writtenBetween(String username, long from, long to);
+
+    /**
+     * Restituisce i post inviati nell'intervallo [from, to) che includono almeno una
+     * delle parole presenti nella lista, in ordine di invio
+     * @param words lista di stringhe (parole)
+     * @param from timestamp iniziale (incluso, microsecondi)
+     * @param to timestamp finale (escluso, microsecondi)
+     * @return lista dei post inviati fra from e to che contengono almeno una delle parole in "words"
+     */
+    List<Post> containingBetween(List<String> words, long from, long to);
 }
@@ -0,0 +1,109 @@
+package app;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class SpaceSaving {
+    /*
+     *  OVERVIEW:
+     *      Algoritmo Space-Saving per i "heavy hitters": tiene al più capacity stringhe con un
+     *      contatore ciascuna. Quando arriva una stringa nuova e la tabella è piena, questa prende
+     *      il posto di quella col contatore minimo ereditandone il valore + 1. Ogni stringa con
+     *      frequenza reale maggiore di N/capacity è garantita essere presente, e il suo contatore
+     *      sovrastima la frequenza reale al più di N/capacity.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      keys[i], counts[i] per i in [0, size) -> stringa monitorata e suo contatore
+     *      index -> posizione di ogni stringa monitorata in keys
+     *
+     *  REPRESENTATION INVARIANT:
+     *      0 <= size <= capacity && index.size() == size &&
+     *      for each(i) in [0, size) : index.get(keys[i]) == i && counts[i] > 0
+     */
+
+    private final String[] keys;
+    private final long[] counts;
+    private final Map<String, Integer> index;
+    private int size;
+
+    /**
+     * Costruttore della classe SpaceSaving.
+     * @param capacity numero massimo di stringhe monitorate
+     */
+    public SpaceSaving(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        keys = new String[capacity];
+        counts = new long[capacity];
+        index = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Conta un'occorrenza della stringa
+     * @param key la stringa
+     * @modifies this
+     */
+    public void add(String key) {
+        Integer i = index.get(key);
+        if(i != null) {
+            counts[i]++;
+        } else if(size < keys.length) {
+            keys[size] = key;
+            counts[size] = 1;
+            index.put(key, size++);
+        } else {
+            int min = 0;
+            for(int j = 1; j < size; j++) {
+                if(counts[j] < counts[min]) {
+                    min = j;
+                }
+            }
+            index.remove(keys[min]);
+            keys[min] = key;
+            counts[min]++;
+            index.put(key, min);
+        }
+    }
+
+    /**
+     * Restituisce il numero di stringhe monitorate
+     * @return il numero di stringhe monitorate
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Restituisce la i-esima stringa monitorata
+     * @param i posizione in [0, size)
+     * @return la stringa
+     */
+    public String key(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Restituisce il contatore della i-esima stringa monitorata
+     * @param i posizione in [0, size)
+     * @return il contatore (stima per eccesso)
+     */
+    public long count(int i) {
+        return counts[i];
+    }
+
+    /**
+     * Svuota la struttura
+     * @modifies this
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(counts, 0);
+        index.clear();
+        size = 0;
+    }
+}
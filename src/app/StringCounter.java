@@ -0,0 +1,153 @@
+package app;
+
+import java.util.Arrays;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+final class StringCounter {
+    /*
+     *  OVERVIEW:
+     *      Contatori interi indicizzati da stringhe, in una tabella hash ad indirizzamento aperto
+     *      (scansione lineare) con chiavi e valori in due array paralleli: nessun oggetto per
+     *      contatore e nessun boxing. Le chiavi non vengono mai rimosse (i contatori possono
+     *      tornare a 0). Non è sincronizzato.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      keys[i] != null -> contatore della chiave keys[i] con valore counts[i]
+     *
+     *  REPRESENTATION INVARIANT:
+     *      keys.length == counts.length è potenza di 2 && size < keys.length * 3 / 4 &&
+     *      size == numero di i tali che keys[i] != null
+     */
+
+    private String[] keys;
+    private int[] counts;
+    private int size;
+
+    /**
+     * Costruttore della classe StringCounter.
+     * @param expected numero di chiavi previsto
+     */
+    StringCounter(int expected) {
+        int capacita = Integer.highestOneBit(Math.max(expected * 4 / 3, 8) - 1) << 1;
+        keys = new String[capacita];
+        counts = new int[capacita];
+    }
+
+    /**
+     * Somma delta al contatore della chiave (creandolo a 0 se non esiste)
+     * @return il nuovo valore del contatore
+     */
+    int add(String key, int delta) {
+        int i = slot(key);
+        if(keys[i] == null) {
+            keys[i] = key;
+            if(++size >= keys.length * 3 / 4) {
+                grow();
+                i = slot(key);
+            }
+        }
+        return counts[i] += delta;
+    }
+
+    /**
+     * Restituisce il valore del contatore della chiave (0 se non esiste)
+     */
+    int get(String key) {
+        int i = slot(key);
+        return keys[i] == null ? 0 : counts[i];
+    }
+
+    /**
+     * Numero di chiavi
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Numero di posizioni della tabella (per scorrere le chiavi con keyAt/countAt)
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Chiave nella posizione i (null se la posizione è libera)
+     */
+    String keyAt(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Contatore nella posizione i
+     */
+    int countAt(int i) {
+        return counts[i];
+    }
+
+    /**
+     * Stima la memoria occupata dai contatori e dalle chiavi (misurandone al più MemoryLayout.SAMPLE)
+     * @return i byte stimati
+     */
+    long estimatedBytes() {
+        long chiavi = 0;
+        int campioni = 0;
+        for(int i = 0; i < keys.length && campioni < MemoryLayout.SAMPLE; i++) {
+            if(keys[i] != null) {
+                chiavi += MemoryLayout.string(keys[i]);
+                campioni++;
+            }
+        }
+        if(campioni > 0) {
+            chiavi = chiavi * size / campioni;
+        }
+        return tableBytes() + chiavi;
+    }
+
+    /**
+     * Stima la memoria occupata dai contatori senza le chiavi (quando sono contate altrove)
+     * @return i byte stimati
+     */
+    long tableBytes() {
+        return MemoryLayout.object(2, 4) + MemoryLayout.refArray(keys.length) + MemoryLayout.array(counts.length, 4);
+    }
+
+    /**
+     * Azzera i contatori e rimuove le chiavi
+     */
+    void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private int slot(String key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode() * 0x9E3779B9;
+        for(int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+            if(keys[i] == null || keys[i].equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    private void grow() {
+        String[] vecchieChiavi = keys;
+        int[] vecchiContatori = counts;
+        keys = new String[vecchieChiavi.length * 2];
+        counts = new int[vecchieChiavi.length * 2];
+        for(int j = 0; j < vecchieChiavi.length; j++) {
+            if(vecchieChiavi[j] != null) {
+                int i = slot(vecchieChiavi[j]);
+                keys[i] = vecchieChiavi[j];
+                counts[i] = vecchiContatori[j];
+            }
+        }
+    }
+}
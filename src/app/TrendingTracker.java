@@ -0,0 +1,180 @@
+package app;
+
+import java.time.Duration;
+import java.util.*;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class TrendingTracker {
+    /*
+     *  OVERVIEW:
+     *      Tiene traccia, in memoria fissa, degli utenti più menzionati e delle parole più usate
+     *      negli ultimi minuti. Il tempo è diviso in BUCKETS secchi da un minuto organizzati ad
+     *      anello; ogni secchio ha un Count-Min sketch e un top-K Space-Saving per le menzioni
+     *      e altrettanti per le parole. Un post viene contato nel secchio del minuto del suo
+     *      timestamp; un secchio viene azzerato quando l'anello torna su di esso.
+     *      Un'interrogazione su una finestra unisce i top-K dei secchi della finestra per scegliere
+     *      i candidati e ne stima la frequenza sommando le stime dei Count-Min sketch.
+     *      Va usato sotto lo stesso lock della rete (record da chi scrive, le query da chi legge).
+     *
+     *  ABSTRACTION FUNCTION:
+     *      buckets[m % BUCKETS] -> conteggi dei post inviati nel minuto m, se buckets[..].minute == m
+     *
+     *  REPRESENTATION INVARIANT:
+     *      buckets.length == BUCKETS && for each(b) in buckets : b != null
+     */
+
+    public static final int BUCKETS = 60;               // finestra massima: 60 minuti
+    private static final long MICROS_PER_BUCKET = 60_000_000L;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 512;
+    private static final int TOP_K = 64;
+    private static final int MIN_WORD_LENGTH = 3;
+
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    private static final class Bucket {
+        long minute = -1;
+        final CountMinSketch mentionCounts = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        final SpaceSaving mentionTop = new SpaceSaving(TOP_K);
+        final CountMinSketch wordCounts = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        final SpaceSaving wordTop = new SpaceSaving(TOP_K);
+
+        void reset(long minute) {
+            this.minute = minute;
+            mentionCounts.clear();
+            mentionTop.clear();
+            wordCounts.clear();
+            wordTop.clear();
+        }
+    }
+
+    /**
+     * Costruttore della classe TrendingTracker.
+     */
+    public TrendingTracker() {
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Conta le menzioni e le parole di un post nel secchio del suo minuto
+     * (i post più vecchi della finestra massima vengono ignorati)
+     * @param p il post
+     * @modifies this.buckets
+     */
+    public void record(Post p) {
+        long minute = p.getTimestamp() / MICROS_PER_BUCKET;
+        Bucket b = buckets[(int) (minute % BUCKETS)];
+        if(b.minute != minute) {
+            if(b.minute > minute) {
+                return;
+            }
+            b.reset(minute);
+        }
+
+        String text = p.getText();
+        long m = MentionScanner.find(text, 0);
+        while(m != MentionScanner.NOT_FOUND) {
+            String utente = text.substring(MentionScanner.start(m), MentionScanner.end(m));
+            b.mentionCounts.add(utente);
+            b.mentionTop.add(utente);
+            m = MentionScanner.find(text, MentionScanner.end(m));
+        }
+
+        int inizio = -1;
+        for(int i = 0; i <= text.length(); i++) {
+            boolean parola = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(parola && inizio < 0) {
+                inizio = i;
+            } else if(!parola && inizio >= 0) {
+                if(i - inizio >= MIN_WORD_LENGTH && (inizio == 0 || text.charAt(inizio - 1) != '@')) {
+                    String w = text.substring(inizio, i).toLowerCase();
+                    b.wordCounts.add(w);
+                    b.wordTop.add(w);
+                }
+                inizio = -1;
+            }
+        }
+    }
+
+    /**
+     * Restituisce i k utenti più menzionati nella finestra di tempo che termina adesso
+     * @param window ampiezza della finestra (arrotondata al minuto, al più BUCKETS minuti)
+     * @param k numero di utenti da restituire
+     * @return mappa utente -> numero stimato di menzioni, ordinata per menzioni decrescenti
+     */
+    public Map<String, Long> trendingMentions(Duration window, int k) {
+        return top(window, k, true);
+    }
+
+    /**
+     * Restituisce le k parole più usate nella finestra di tempo che termina adesso
+     * @param window ampiezza della finestra (arrotondata al minuto, al più BUCKETS minuti)
+     * @param k numero di parole da restituire
+     * @return mappa parola -> numero stimato di occorrenze, ordinata per occorrenze decrescenti
+     */
+    public Map<String, Long> trendingWords(Duration window, int k) {
+        return top(window, k, false);
+    }
+
+    /**
+     * Restituisce la memoria occupata dagli sketch
+     * @return byte occupati (stima)
+     */
+    public long sizeInBytes() {
+        long totale = 0;
+        for(Bucket b : buckets) {
+            totale += b.mentionCounts.sizeInBytes() + b.wordCounts.sizeInBytes() + 2L * TOP_K * (4 + 8 + 48);
+        }
+        return totale;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    private Map<String, Long> top(Duration window, int k, boolean mentions) {
+        long now = System.currentTimeMillis() / 60_000L;
+        long minuti = Math.min(Math.max((window.toSeconds() + 59) / 60, 1), BUCKETS);
+
+        List<Bucket> finestra = new ArrayList<>((int) minuti);
+        for(long m = now - minuti + 1; m <= now; m++) {
+            Bucket b = buckets[(int) (m % BUCKETS)];
+            if(b.minute == m) {
+                finestra.add(b);
+            }
+        }
+
+        // 1) candidati: unione dei top-K dei secchi, ordinati per la somma dei contatori Space-Saving
+        Map<String, Long> candidati = new HashMap<>();
+        for(Bucket b : finestra) {
+            SpaceSaving ss = mentions ? b.mentionTop : b.wordTop;
+            for(int i = 0; i < ss.size(); i++) {
+                candidati.merge(ss.key(i), ss.count(i), Long::sum);
+            }
+        }
+        List<Map.Entry<String, Long>> ordinati = new ArrayList<>(candidati.entrySet());
+        ordinati.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+        // 2) stima dei migliori 4k candidati con i Count-Min sketch della finestra
+        List<Map.Entry<String, Long>> stime = new ArrayList<>();
+        for(int i = 0; i < ordinati.size() && i < 4 * k; i++) {
+            String key = ordinati.get(i).getKey();
+            long stima = 0;
+            for(Bucket b : finestra) {
+                stima += (mentions ? b.mentionCounts : b.wordCounts).estimate(key);
+            }
+            stime.add(new AbstractMap.SimpleEntry<>(key, stima));
+        }
+        stime.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+        Map<String, Long> risultato = new LinkedHashMap<>();
+        for(int i = 0; i < stime.size() && i < k; i++) {
+            risultato.put(stime.get(i).getKey(), stime.get(i).getValue());
+        }
+        return risultato;
+    }
+}
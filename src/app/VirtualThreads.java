@@ -0,0 +1,48 @@
+package app;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class VirtualThreads {
+    /*
+     *  OVERVIEW:
+     *      Classe di utilità che crea executor "un thread per task". Se la JVM supporta
+     *      i virtual thread (Java 21+) si usa Executors.newVirtualThreadPerTaskExecutor(),
+     *      altrimenti si ripiega su un pool di thread di piattaforma che cresce a richiesta.
+     *      Il metodo viene cercato per riflessione così il progetto compila anche con Java 17.
+     */
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Crea un executor che esegue ogni task su un nuovo virtual thread (se disponibili)
+     * @return l'executor creato
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Indica se gli executor creati usano virtual thread
+     * @return true se la JVM supporta i virtual thread, false altrimenti
+     */
+    public static boolean available() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
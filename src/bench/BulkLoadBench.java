@@ -0,0 +1,74 @@
+package bench;
+
+import app.BulkExporter;
+import app.BulkImporter;
+import app.JsonWriter;
+import app.SafeSocialNetwork;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class BulkLoadBench {
+    /*
+     *  OVERVIEW:
+     *      Misura BulkImporter e BulkExporter su un dump JSONL generato (utenti, due seguiti per
+     *      utente, post con una menzione): caricamento del JSONL, esportazione in CSV e caricamento
+     *      del CSV in una rete nuova. Con 10 milioni di post serve uno heap di qualche GB (-Xmx6g).
+     *
+     *      Uso: java -Xmx6g bench.BulkLoadBench [post] [utenti]   (default: 10000000, 100000)
+     */
+
+    public static void main(String[] args) throws Exception {
+        int post = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int utenti = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        Path directory = Files.createTempDirectory("bulk");
+        Path jsonl = directory.resolve("dump.jsonl");
+        Path csv = directory.resolve("dump.csv");
+
+        JsonWriter json = new JsonWriter(1 << 20);
+        try(OutputStream out = Files.newOutputStream(jsonl)) {
+            for(int i = 0; i < utenti; i++) {
+                json.beginObject().name("type").value("user").name("name").value("user" + i).endObject().newline();
+            }
+            for(int i = 0; i < utenti; i++) {
+                json.beginObject().name("type").value("follow").name("user").value("user" + i).name("followed").value("user" + ((i + 1) % utenti)).endObject().newline();
+                json.beginObject().name("type").value("follow").name("user").value("user" + i).name("followed").value("user" + ((i * 31L + 7) % utenti)).endObject().newline();
+                json.writeTo(out);
+                json.reset();
+            }
+            for(int i = 0; i < post; i++) {
+                json.beginObject().name("type").value("post").name("id").value(i).name("author").value("user" + (i % utenti))
+                        .name("text").value("post numero " + i + " per @user" + ((i * 7L) % utenti)).name("timestamp").value(1_600_000_000_000_000L + i)
+                        .endObject().newline();
+                if(json.size() > 1 << 20) {
+                    json.writeTo(out);
+                    json.reset();
+                }
+            }
+            json.writeTo(out);
+        }
+        System.out.printf("dump JSONL: %,d byte%n", Files.size(jsonl));
+
+        SafeSocialNetwork sn = new SafeSocialNetwork();
+        long inizio = System.nanoTime();
+        long records = BulkImporter.importFile(sn, jsonl);
+        System.out.printf("import JSONL: %,d record in %.1f s%n", records, (System.nanoTime() - inizio) / 1e9);
+
+        inizio = System.nanoTime();
+        records = BulkExporter.exportFile(sn, csv);
+        System.out.printf("export CSV:   %,d record in %.1f s (%,d byte)%n", records, (System.nanoTime() - inizio) / 1e9, Files.size(csv));
+
+        sn = null;
+        SafeSocialNetwork copia = new SafeSocialNetwork();
+        inizio = System.nanoTime();
+        records = BulkImporter.importFile(copia, csv);
+        System.out.printf("import CSV:   %,d record in %.1f s%n", records, (System.nanoTime() - inizio) / 1e9);
+
+        Files.delete(jsonl);
+        Files.delete(csv);
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,140 @@
+package bench;
+
+import app.HttpApi;
+import app.Post;
+import app.SafeSocialNetwork;
+import app.VirtualThreads;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class HttpLoadTest {
+    /*
+     *  OVERVIEW:
+     *      Test di carico in loopback di HttpApi. Popola una rete, avvia il server su una porta
+     *      libera di 127.0.0.1 e apre N connessioni keep-alive, ognuna su un proprio thread,
+     *      che inviano in ciclo richieste GET (writtenBy paginato e influencers) per la durata
+     *      indicata. Alla fine stampa il numero di richieste al secondo servite e gli errori.
+     *
+     *      Uso: java bench.HttpLoadTest [connessioni] [secondi]   (default 32, 10)
+     */
+
+    public static void main(String[] args) throws Exception {
+        int connessioni = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int secondi = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        SafeSocialNetwork sn = new SafeSocialNetwork();
+        for(int i = 0; i < 100; i++) {
+            sn.initializeUser("user" + i, Collections.singleton("user" + ((i + 1) % 100)));
+        }
+        for(int i = 0; i < 10_000; i++) {
+            sn.addPost(new Post("user" + (i % 100), "post numero " + i + " per @user" + ((i * 7) % 100)));
+        }
+
+        HttpApi api = new HttpApi(sn, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        api.start();
+
+        byte[][] richieste = {
+                request("/api/writtenBy?user=user42&limit=20"),
+                request("/api/influencers"),
+        };
+
+        LongAdder ok = new LongAdder();
+        LongAdder errori = new LongAdder();
+        long fine = System.nanoTime() + secondi * 1_000_000_000L;
+
+        Thread[] client = new Thread[connessioni];
+        for(int c = 0; c < connessioni; c++) {
+            final int id = c;
+            client[c] = new Thread(() -> {
+                try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), api.getPort())) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+                    int n = id;
+                    while(System.nanoTime() < fine) {
+                        out.write(richieste[n++ % richieste.length]);
+                        out.flush();
+                        if(readResponse(in) == 200) {
+                            ok.increment();
+                        } else {
+                            errori.increment();
+                        }
+                    }
+                } catch(IOException e) {
+                    errori.increment();
+                }
+            });
+            client[c].start();
+        }
+
+        long inizio = System.nanoTime();
+        for(Thread t : client) {
+            t.join();
+        }
+        double durata = (System.nanoTime() - inizio) / 1e9;
+        api.stop(0);
+
+        System.out.printf("connessioni=%d durata=%.1fs richieste=%d errori=%d -> %.0f richieste/s (%s)%n",
+                connessioni, durata, ok.sum(), errori.sum(), ok.sum() / durata,
+                VirtualThreads.available() ? "virtual thread" : "thread di piattaforma");
+    }
+
+    private static byte[] request(String path) {
+        return ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Legge una risposta HTTP/1.1 con Content-Length scartandone il corpo
+     * @return lo status code della risposta
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        int status = 0;
+        int contentLength = 0;
+        StringBuilder riga = new StringBuilder(64);
+        boolean primaRiga = true;
+        while(true) {
+            riga.setLength(0);
+            int c;
+            while((c = in.read()) != '\n') {
+                if(c < 0) {
+                    throw new IOException("Connessione chiusa");
+                }
+                if(c != '\r') {
+                    riga.append((char) c);
+                }
+            }
+            if(riga.length() == 0) {
+                break;
+            }
+            if(primaRiga) {
+                status = Integer.parseInt(riga.substring(9, 12));
+                primaRiga = false;
+            } else if(riga.length() > 15 && riga.substring(0, 15).equalsIgnoreCase("Content-Length:")) {
+                contentLength = Integer.parseInt(riga.substring(15).trim());
+            }
+        }
+        long daSaltare = contentLength;
+        while(daSaltare > 0) {
+            long saltati = in.skip(daSaltare);
+            if(saltati <= 0) {
+                if(in.read() < 0) {
+                    throw new IOException("Connessione chiusa");
+                }
+                saltati = 1;
+            }
+            daSaltare -= saltati;
+        }
+        return status;
+    }
+}
@@ -0,0 +1,134 @@
+package bench;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public final class LatencyHistogram {
+    /*
+     *  OVERVIEW:
+     *      Istogramma di latenze (nanosecondi) a bucket log-lineari, come HdrHistogram: ogni potenza
+     *      di 2 è divisa in SUB_BUCKETS bucket uguali, per cui ogni percentile ha un errore relativo
+     *      minore di 1/SUB_BUCKETS con memoria fissa e record O(1) senza allocazioni. Non è
+     *      thread-safe: ogni thread del carico ha i suoi istogrammi, uniti alla fine con add.
+     *      recordCorrected compensa la coordinated omission nei carichi a ciclo chiuso: una
+     *      richiesta lenta ha impedito l'invio di quelle che sarebbero partite nel frattempo, e le
+     *      loro latenze (latenza - k * intervallo atteso) vengono aggiunte.
+     *
+     *  ABSTRACTION FUNCTION:
+     *      multinsieme dei valori registrati, ognuno approssimato dal massimo del suo bucket:
+     *          counts[i] -> numero di valori nel bucket i
+     *      total -> numero di valori, sum -> loro somma, max -> il più grande
+     *
+     *  REPRESENTATION INVARIANT:
+     *      counts.length == BUCKETS && total == somma di counts && ogni counts[i] >= 0
+     */
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long sum;
+    private long max;
+
+    /**
+     * Registra una latenza
+     * @param nanos la latenza in nanosecondi (i valori negativi contano come 0)
+     */
+    public void record(long nanos) {
+        long v = Math.max(nanos, 0);
+        counts[index(v)]++;
+        total++;
+        sum += v;
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Registra una latenza aggiungendo quelle delle richieste che, con un intervallo atteso fra due
+     * richieste, non sono partite mentre si aspettava questa (vedi OVERVIEW)
+     * @param nanos la latenza in nanosecondi
+     * @param expectedInterval intervallo atteso fra due richieste in nanosecondi (0 = nessuna correzione)
+     */
+    public void recordCorrected(long nanos, long expectedInterval) {
+        record(nanos);
+        if(expectedInterval <= 0) {
+            return;
+        }
+        for(long mancata = nanos - expectedInterval; mancata >= expectedInterval; mancata -= expectedInterval) {
+            record(mancata);
+        }
+    }
+
+    /**
+     * Aggiunge a questo istogramma i valori di other
+     */
+    public void add(LatencyHistogram other) {
+        for(int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Restituisce il percentile richiesto
+     * @param percentile tra 0 e 100
+     * @return il valore sotto cui sta la percentuale indicata dei valori (0 se l'istogramma è vuoto)
+     */
+    public long percentile(double percentile) {
+        if(total == 0) {
+            return 0;
+        }
+        long soglia = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long visti = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            visti += counts[i];
+            if(visti >= soglia) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Bucket del valore: i valori < SUB_BUCKETS sono esatti, gli altri stanno nella loro potenza di 2
+     */
+    private static int index(long v) {
+        if(v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Valore più grande che finisce nel bucket i
+     */
+    private static long highest(int i) {
+        int regione = i >>> SUB_BITS;
+        if(regione == 0) {
+            return i;
+        }
+        int shift = regione - 1;
+        long minimo = (long) (SUB_BUCKETS + (i & (SUB_BUCKETS - 1))) << shift;
+        return minimo + (1L << shift) - 1;
+    }
+}
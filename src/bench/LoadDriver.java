@@ -0,0 +1,337 @@
+package bench;
+
+import app.JsonWriter;
+import app.Post;
+import app.ReportReason;
+import app.SafeSocialNetwork;
+import app.VirtualThreads;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class LoadDriver {
+    /*
+     *  OVERVIEW:
+     *      Driver di carico configurabile per SafeSocialNetwork (la batteria di Main resta il test
+     *      funzionale). N thread, di piattaforma o virtual thread, eseguono un mix pesato di
+     *      operazioni, ognuna sotto il lock della rete come farebbe un'applicazione: post, follow,
+     *      report (scritture), writtenBy paginato, containing paginato e influencers (letture).
+     *
+     *      A ciclo chiuso (rate=0) ogni thread invia la richiesta successiva appena finisce la
+     *      precedente; con expected=<µs> la latenza viene corretta per la coordinated omission
+     *      (vedi LatencyHistogram.recordCorrected). A ciclo aperto (rate=<op/s>) le richieste
+     *      hanno un orario previsto fisso, diviso fra i thread, e la latenza si misura dall'orario
+     *      previsto e non dall'invio effettivo, così un rallentamento non nasconde la coda che si
+     *      accumula. Per ogni operazione si stampano throughput, percentili della latenza
+     *      (risposta, e tempo di servizio dall'invio effettivo) ed errori, e si scrivono in JSON
+     *      nel file out per confrontare esecuzioni diverse. I primi warmup secondi non vengono
+     *      misurati.
+     *
+     *      Uso: java bench.LoadDriver [chiave=valore]...
+     *          threads=<n>        thread del carico (default: numero di core)
+     *          virtual=<bool>     usa virtual thread se disponibili (default false)
+     *          duration=<s>       secondi misurati, almeno 1 (default 10)
+     *          warmup=<s>         secondi iniziali non misurati (default 2)
+     *          rate=<op/s>        ciclo aperto con questo throughput totale (default 0 = ciclo chiuso)
+     *          expected=<µs>      intervallo atteso per la correzione a ciclo chiuso (default 0 = nessuna)
+     *          users=<n>          utenti iniziali (default 1000)
+     *          posts=<n>          post iniziali (default 20000)
+     *          mix=<op:peso,...>  pesi delle operazioni, non negativi (default post:20,follow:5,report:2,writtenBy:50,containing:20,influencers:3)
+     *          out=<file>         risultati in JSON (default load-results.json)
+     */
+
+    private static final String DEFAULT_MIX = "post:20,follow:5,report:2,writtenBy:50,containing:20,influencers:3";
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final int PAGE = 20;
+
+    /**
+     * Operazioni del mix
+     */
+    enum Operation {
+        post(true) {
+            void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) throws Exception {
+                sn.addPost(new Post(user(random, users), "post di carico per @" + user(random, users) + " su parola" + random.nextInt(100)));
+            }
+        },
+        follow(true) {
+            void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) throws Exception {
+                sn.addFollower(user(random, users), user(random, users));
+            }
+        },
+        report(true) {
+            void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) throws Exception {
+                List<Post> ps = sn.snapshot().getPosts();
+                ReportReason motivo = ReportReason.values()[random.nextInt(ReportReason.values().length - 1)]; // non custom
+                sn.reportPost(ps.get(random.nextInt(ps.size())), user(random, users), motivo);
+            }
+        },
+        writtenBy(false) {
+            void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) {
+                sn.writtenBy(user(random, users), null, PAGE);
+            }
+        },
+        containing(false) {
+            void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) {
+                sn.containing(Collections.singletonList("parola" + random.nextInt(100)), null, PAGE);
+            }
+        },
+        influencers(false) {
+            void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) throws Exception {
+                sn.influencers();
+            }
+        };
+
+        final boolean write;
+
+        Operation(boolean write) {
+            this.write = write;
+        }
+
+        abstract void run(SafeSocialNetwork sn, ThreadLocalRandom random, int users) throws Exception;
+
+        /**
+         * Esegue l'operazione sotto il write lock (scritture) o il read lock (letture) della rete
+         */
+        void runLocked(SafeSocialNetwork sn, ThreadLocalRandom random, int users) throws Exception {
+            Lock lock = write ? sn.getLock().writeLock() : sn.getLock().readLock();
+            lock.lock();
+            try {
+                run(sn, random, users);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static String user(ThreadLocalRandom random, int users) {
+            return "user" + random.nextInt(users);
+        }
+    }
+
+    /**
+     * Misure di un thread, per operazione
+     */
+    private static final class Results {
+        final LatencyHistogram[] response = new LatencyHistogram[Operation.values().length];
+        final LatencyHistogram[] service = new LatencyHistogram[Operation.values().length];
+        final long[] errors = new long[Operation.values().length];
+
+        Results() {
+            for(int i = 0; i < response.length; i++) {
+                response[i] = new LatencyHistogram();
+                service[i] = new LatencyHistogram();
+            }
+        }
+
+        void add(Results other) {
+            for(int i = 0; i < response.length; i++) {
+                response[i].add(other.response[i]);
+                service[i].add(other.service[i]);
+                errors[i] += other.errors[i];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opzioni = new HashMap<>();
+        for(String a : args) {
+            int uguale = a.indexOf('=');
+            if(uguale <= 0) {
+                throw new IllegalArgumentException("Opzione non valida (attesa chiave=valore): " + a);
+            }
+            opzioni.put(a.substring(0, uguale), a.substring(uguale + 1));
+        }
+        int thread = Integer.parseInt(opzioni.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean virtual = Boolean.parseBoolean(opzioni.getOrDefault("virtual", "false"));
+        int durata = Integer.parseInt(opzioni.getOrDefault("duration", "10"));
+        int warmup = Integer.parseInt(opzioni.getOrDefault("warmup", "2"));
+        long rate = Long.parseLong(opzioni.getOrDefault("rate", "0"));
+        long atteso = Long.parseLong(opzioni.getOrDefault("expected", "0")) * 1_000;
+        int utenti = Integer.parseInt(opzioni.getOrDefault("users", "1000"));
+        int post = Integer.parseInt(opzioni.getOrDefault("posts", "20000"));
+        String mix = opzioni.getOrDefault("mix", DEFAULT_MIX);
+        Path out = Path.of(opzioni.getOrDefault("out", "load-results.json"));
+        int[] pesi = weights(mix);
+        if(durata <= 0) {
+            throw new IllegalArgumentException("La durata deve essere di almeno un secondo: " + durata);
+        }
+        if(thread <= 0 || utenti <= 0 || warmup < 0 || rate < 0 || atteso < 0 || post < 0) {
+            throw new IllegalArgumentException("threads e users devono essere positivi, warmup, rate, expected e posts non negativi");
+        }
+
+        SafeSocialNetwork sn = new SafeSocialNetwork();
+        for(int i = 0; i < utenti; i++) {
+            sn.initializeUser("user" + i, Collections.singleton("user" + ((i + 1) % utenti)));
+        }
+        for(int i = 0; i < post; i++) {
+            sn.addPost(new Post("user" + (i % utenti), "post numero " + i + " per @user" + ((i * 7) % utenti) + " su parola" + (i % 100)));
+        }
+
+        long inizio = System.nanoTime();
+        long misura = inizio + warmup * 1_000_000_000L;
+        long fine = misura + durata * 1_000_000_000L;
+        long intervallo = rate > 0 ? Math.max(1, thread * 1_000_000_000L / rate) : 0; // fra due richieste di un thread
+
+        ExecutorService executor = virtual ? VirtualThreads.newPerTaskExecutor() : Executors.newFixedThreadPool(thread);
+        List<Future<Results>> futuri = new ArrayList<>();
+        for(int t = 0; t < thread; t++) {
+            long primo = inizio + (intervallo * t) / thread; // i thread a ciclo aperto sono sfasati
+            futuri.add(executor.submit(() -> run(sn, pesi, utenti, primo, misura, fine, intervallo, atteso)));
+        }
+        Results totale = new Results();
+        for(Future<Results> f : futuri) {
+            totale.add(f.get());
+        }
+        executor.shutdown();
+
+        print(totale, durata, thread, virtual, rate);
+        JsonWriter json = new JsonWriter(4096);
+        json.beginObject()
+                .name("config").beginObject()
+                .name("threads").value(thread)
+                .name("virtual").value(virtual && VirtualThreads.available())
+                .name("duration").value(durata)
+                .name("warmup").value(warmup)
+                .name("rate").value(rate)
+                .name("expectedMicros").value(atteso / 1_000)
+                .name("users").value(utenti)
+                .name("posts").value(post)
+                .name("mix").value(mix)
+                .endObject()
+                .name("operations").beginObject();
+        for(Operation o : Operation.values()) {
+            if(pesi[o.ordinal()] > 0) {
+                json.name(o.name());
+                write(json, totale.response[o.ordinal()], totale.service[o.ordinal()], totale.errors[o.ordinal()], durata);
+            }
+        }
+        json.endObject().endObject().newline();
+        try(OutputStream file = Files.newOutputStream(out)) {
+            json.writeTo(file);
+        }
+        System.out.println("Risultati in " + out.toAbsolutePath());
+    }
+
+
+    // ------------------------------
+    // METODI PRIVATI/PROTETTI
+    // ------------------------------
+
+    /**
+     * Ciclo di un thread del carico
+     * @param primo orario previsto della prima richiesta (ciclo aperto)
+     * @param misura inizio della misura (fine del riscaldamento)
+     * @param fine fine del carico
+     * @param intervallo intervallo fra due richieste del thread (0 = ciclo chiuso)
+     * @param atteso intervallo atteso per la correzione a ciclo chiuso (0 = nessuna)
+     */
+    private static Results run(SafeSocialNetwork sn, int[] pesi, int utenti, long primo, long misura, long fine, long intervallo, long atteso) {
+        Results r = new Results();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Operation[] operazioni = Operation.values();
+        int somma = Arrays.stream(pesi).sum();
+        long previsto = primo;
+        while(true) {
+            if(intervallo > 0) {
+                for(long attesa = previsto - System.nanoTime(); attesa > 0; attesa = previsto - System.nanoTime()) {
+                    LockSupport.parkNanos(attesa);
+                }
+            }
+            long invio = System.nanoTime();
+            if(invio >= fine || (intervallo > 0 && previsto >= fine)) {
+                return r;
+            }
+
+            int scelta = random.nextInt(somma);
+            int o = 0;
+            while(scelta >= pesi[o]) {
+                scelta -= pesi[o++];
+            }
+            try {
+                operazioni[o].runLocked(sn, random, utenti);
+            } catch(Exception e) {
+                if(invio >= misura) {
+                    r.errors[o]++;
+                }
+            }
+            long risposta = System.nanoTime();
+
+            if(invio >= misura) {
+                r.service[o].record(risposta - invio);
+                if(intervallo > 0) {
+                    r.response[o].record(risposta - previsto);
+                } else {
+                    r.response[o].recordCorrected(risposta - invio, atteso);
+                }
+            }
+            previsto += intervallo;
+        }
+    }
+
+    private static int[] weights(String mix) {
+        int[] pesi = new int[Operation.values().length];
+        for(String voce : mix.split(",")) {
+            String[] parti = voce.split(":");
+            if(parti.length != 2) {
+                throw new IllegalArgumentException("Voce del mix non valida (attesa operazione:peso): " + voce);
+            }
+            int peso = Integer.parseInt(parti[1].trim());
+            if(peso < 0) {
+                throw new IllegalArgumentException("Peso negativo nel mix: " + voce);
+            }
+            pesi[Operation.valueOf(parti[0].trim()).ordinal()] = peso;
+        }
+        if(Arrays.stream(pesi).sum() <= 0) {
+            throw new IllegalArgumentException("Il mix non contiene operazioni");
+        }
+        return pesi;
+    }
+
+    private static void print(Results r, int durata, int thread, boolean virtual, long rate) {
+        System.out.printf("thread=%d (%s) %s, %d s misurati%n", thread,
+                virtual && VirtualThreads.available() ? "virtual thread" : "thread di piattaforma",
+                rate > 0 ? "ciclo aperto a " + rate + " op/s" : "ciclo chiuso", durata);
+        System.out.printf("%-12s %12s %10s %10s %10s %10s %10s %10s %8s%n", "operazione", "op/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "serv. p99", "errori");
+        for(Operation o : Operation.values()) {
+            LatencyHistogram h = r.response[o.ordinal()];
+            long eseguite = r.service[o.ordinal()].count(); // response può contenere le richieste aggiunte dalla correzione
+            if(eseguite == 0) {
+                continue;
+            }
+            System.out.printf("%-12s %,12.0f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d%n", o.name(), eseguite / (double) durata,
+                    h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3, h.max() / 1e3,
+                    r.service[o.ordinal()].percentile(99) / 1e3, r.errors[o.ordinal()]);
+        }
+    }
+
+    /**
+     * Scrive le misure di un'operazione come oggetto JSON (latenze in nanosecondi)
+     */
+    private static void write(JsonWriter json, LatencyHistogram risposta, LatencyHistogram servizio, long errori, int durata) {
+        json.beginObject()
+                .name("count").value(servizio.count())
+                .name("throughput").value(servizio.count() / durata)
+                .name("errors").value(errori)
+                .name("responseNanos").beginObject();
+        percentiles(json, risposta);
+        json.endObject().name("serviceNanos").beginObject();
+        percentiles(json, servizio);
+        json.endObject().endObject();
+    }
+
+    private static void percentiles(JsonWriter json, LatencyHistogram h) {
+        for(double p : PERCENTILES) {
+            json.name("p" + (p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p))).value(h.percentile(p));
+        }
+        json.name("max").value(h.max()).name("mean").value(Math.round(h.mean()));
+    }
+}
@@ -0,0 +1,115 @@
+package bench;
+
+import app.Post;
+import app.SocialNetwork;
+
+import java.util.*;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class RecommendBench {
+    /*
+     *  OVERVIEW:
+     *      Misura il tempo di SocialNetwork.recommendFollows su un grafo con milioni di archi
+     *      (utenti con seguiti casuali più qualche utente molto seguito e molto "seguente") e lo
+     *      confronta con una versione ingenua che, per ogni utente della rete, conta gli amici in
+     *      comune e le menzioni scorrendo tutti i post.
+     *
+     *      Uso: java bench.RecommendBench [utenti] [seguiti per utente]   (default: 100000, 20)
+     */
+
+    private static final int QUERIES = 200;
+    private static final int NAIVE_QUERIES = 3;
+
+    public static void main(String[] args) throws Exception {
+        int utenti = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int grado = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random random = new Random(1);
+
+        SocialNetwork sn = new SocialNetwork();
+        Map<String, Set<String>> grafo = new HashMap<>();
+        for(int i = 0; i < utenti; i++) {
+            Set<String> seguiti = new HashSet<>();
+            // l'1% degli utenti segue migliaia di persone
+            int quanti = i % 100 == 0 ? grado * 250 : grado;
+            while(seguiti.size() < quanti) {
+                // metà dei seguiti fra i primi 1000 utenti (molto seguiti), metà a caso
+                seguiti.add("user" + (random.nextBoolean() ? random.nextInt(1_000) : random.nextInt(utenti)));
+            }
+            seguiti.remove("user" + i);
+            grafo.put("user" + i, seguiti);
+            sn.initializeUser("user" + i, new HashSet<>(seguiti));
+        }
+        List<Post> post = new ArrayList<>();
+        for(int i = 0; i < utenti; i++) {
+            post.add(new Post("user" + random.nextInt(utenti), "ciao @user" + random.nextInt(utenti)));
+            sn.addPost(post.get(i));
+        }
+        long archi = 0;
+        for(Set<String> s : grafo.values()) {
+            archi += s.size();
+        }
+        System.out.printf("utenti=%,d archi=%,d post=%,d%n", utenti, archi, utenti);
+
+        for(int r = 0; r < 3; r++) { // riscaldamento
+            for(int q = 0; q < QUERIES; q++) {
+                sn.recommendFollows("user" + random.nextInt(utenti), 10);
+            }
+        }
+        long inizio = System.nanoTime();
+        for(int q = 0; q < QUERIES; q++) {
+            sn.recommendFollows("user" + (q * 97 % utenti), 10);
+        }
+        double ms = (System.nanoTime() - inizio) / 1e6 / QUERIES;
+
+        inizio = System.nanoTime();
+        for(int q = 0; q < NAIVE_QUERIES; q++) {
+            naive(grafo, post, "user" + (q * 97 % utenti), 10);
+        }
+        double msIngenuo = (System.nanoTime() - inizio) / 1e6 / NAIVE_QUERIES;
+
+        System.out.printf("recommendFollows  %10.3f ms/interrogazione%n", ms);
+        System.out.printf("ingenuo           %10.3f ms/interrogazione (%.0fx)%n", msIngenuo, msIngenuo / ms);
+    }
+
+    /**
+     * Per ogni utente della rete conta gli amici in comune intersecando gli insiemi dei seguiti,
+     * poi scorre tutti i post per le menzioni
+     */
+    private static List<String> naive(Map<String, Set<String>> grafo, List<Post> post, String utente, int k) {
+        Set<String> seguiti = grafo.get(utente);
+        Map<String, Long> punteggi = new HashMap<>();
+        for(String c : grafo.keySet()) {
+            if(c.equals(utente) || seguiti.contains(c)) {
+                continue;
+            }
+            long amici = 0;
+            for(String f : seguiti) {
+                Set<String> s = grafo.get(f);
+                if(s != null && s.contains(c)) {
+                    amici++;
+                }
+            }
+            if(amici > 0) {
+                punteggi.put(c, amici);
+            }
+        }
+        Map<String, Long> menzioni = new HashMap<>();
+        for(Post p : post) {
+            for(String parola : p.getText().split("\\s+")) {
+                if(!parola.startsWith("@")) {
+                    continue;
+                }
+                String menzionato = parola.substring(1);
+                if(p.getAuthor().equals(utente) && punteggi.containsKey(menzionato)) {
+                    menzioni.merge(menzionato, 1L, Long::sum);
+                } else if(menzionato.equals(utente) && punteggi.containsKey(p.getAuthor())) {
+                    menzioni.merge(p.getAuthor(), 1L, Long::sum);
+                }
+            }
+        }
+        List<String> lista = new ArrayList<>(punteggi.keySet());
+        lista.sort(Comparator.comparing((String c) -> -punteggi.get(c) * (1 + menzioni.getOrDefault(c, 0L))).thenComparing(c -> c));
+        return lista.subList(0, Math.min(k, lista.size()));
+    }
+}
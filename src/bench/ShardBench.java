@@ -0,0 +1,71 @@
+package bench;
+
+import app.Post;
+import app.ShardedSocialNetwork;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Leonardo Pantani | Java project for PR2 course at UNIPI
+
+public class ShardBench {
+    /*
+     *  OVERVIEW:
+     *      Misura il throughput di ShardedSocialNetwork con un carico misto, al variare del
+     *      numero di shard. Per ogni configurazione N thread eseguono in ciclo, per la durata
+     *      indicata: 70% writtenBy di un utente casuale, 25% addPost di un utente casuale,
+     *      5% containing su tutta la rete. Con una sola shard tutti i thread si contendono lo
+     *      stesso lock; con più shard le operazioni su utenti diversi procedono in parallelo.
+     *
+     *      Uso: java bench.ShardBench [thread] [secondi]   (default: numero di core, 5)
+     */
+
+    private static final int USERS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int thread = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int secondi = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        for(int shard : new int[]{1, thread, 4 * thread}) {
+            ShardedSocialNetwork sn = new ShardedSocialNetwork(shard);
+            for(int i = 0; i < USERS; i++) {
+                sn.initializeUser("user" + i, Collections.singleton("user" + ((i + 1) % USERS)));
+            }
+            for(int i = 0; i < 20_000; i++) {
+                sn.addPost(new Post("user" + (i % USERS), "post numero " + i + " per @user" + ((i * 7) % USERS)));
+            }
+
+            LongAdder operazioni = new LongAdder();
+            long fine = System.nanoTime() + secondi * 1_000_000_000L;
+            Thread[] t = new Thread[thread];
+            for(int i = 0; i < thread; i++) {
+                t[i] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        while(System.nanoTime() < fine) {
+                            String utente = "user" + random.nextInt(USERS);
+                            int tipo = random.nextInt(100);
+                            if(tipo < 70) {
+                                sn.writtenBy(utente);
+                            } else if(tipo < 95) {
+                                sn.addPost(new Post(utente, "nuovo post di " + utente));
+                            } else {
+                                sn.containing(Collections.singletonList("@" + utente));
+                            }
+                            operazioni.increment();
+                        }
+                    } catch(Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                t[i].start();
+            }
+            for(Thread x : t) {
+                x.join();
+            }
+
+            System.out.printf("shard=%-4d thread=%-3d %,12.0f op/s%n", shard, thread, operazioni.sum() / (double) secondi);
+        }
+    }
+}